@@ -425,6 +425,9 @@ public class JavaSEAssets extends Assets {
 	private final JavaSEGame game;
 	private File[] directories = {};
 
+	// 已挂载的LPK2资源包,按挂载顺序查找
+	private JavaSEAssetPack[] packs = {};
+
 	private Scale assetScale = null;
 
 	public JavaSEAssets(JavaSEGame game) {
@@ -439,6 +442,44 @@ public class JavaSEAssets extends Assets {
 		directories = ndirs;
 	}
 
+	/**
+	 * 挂载一个LPK2资源包,之后加载资源时优先从资源包中查找
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public JavaSEAssetPack addPack(String path) throws IOException {
+		return addPack(resolvePath(path));
+	}
+
+	public JavaSEAssetPack addPack(File file) throws IOException {
+		final JavaSEAssetPack pack = new JavaSEAssetPack(file);
+		JavaSEAssetPack[] npacks = new JavaSEAssetPack[packs.length + 1];
+		System.arraycopy(packs, 0, npacks, 0, packs.length);
+		npacks[npacks.length - 1] = pack;
+		packs = npacks;
+		return pack;
+	}
+
+	public void removePack(JavaSEAssetPack pack) {
+		int idx = -1;
+		for (int i = 0; i < packs.length; i++) {
+			if (packs[i] == pack) {
+				idx = i;
+				break;
+			}
+		}
+		if (idx == -1) {
+			return;
+		}
+		JavaSEAssetPack[] npacks = new JavaSEAssetPack[packs.length - 1];
+		System.arraycopy(packs, 0, npacks, 0, idx);
+		System.arraycopy(packs, idx + 1, npacks, idx, packs.length - idx - 1);
+		packs = npacks;
+		pack.close();
+	}
+
 	public void setAssetScale(float scaleFactor) {
 		this.assetScale = new Scale(scaleFactor);
 	}
@@ -515,6 +556,17 @@ public class JavaSEAssets extends Assets {
 	}
 
 	protected Resource requireResource(final String path) throws IOException {
+		final JavaSEAssetPack[] mounted = packs;
+		for (int i = 0; i < mounted.length; i++) {
+			final JavaSEAssetPack pack = mounted[i];
+			if (pack.contains(path)) {
+				return new PackResource(pack, path);
+			}
+			final String packPath = getPath(path);
+			if (pack.contains(packPath)) {
+				return new PackResource(pack, packPath);
+			}
+		}
 		String serachPath = getPath(path);
 		URL url = classLoader.getResource(serachPath);
 		if (url == null && !path.startsWith("/")) {
@@ -696,6 +748,43 @@ public class JavaSEAssets extends Assets {
 		}
 	}
 
+	protected static class PackResource extends Resource {
+
+		public final JavaSEAssetPack pack;
+
+		public final String name;
+
+		public PackResource(JavaSEAssetPack pack, String name) {
+			this.pack = pack;
+			this.name = name;
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			return pack.openStream(name);
+		}
+
+		@Override
+		public BufferedImage readImage() throws IOException {
+			InputStream in = openStream();
+			try {
+				return ImageIO.read(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		@Override
+		public AudioInputStream openAudioStream() throws Exception {
+			return AudioSystem.getAudioInputStream(new ByteArrayInputStream(readBytes()));
+		}
+
+		@Override
+		public byte[] readBytes() throws IOException {
+			return pack.readBytes(name);
+		}
+	}
+
 	@Override
 	protected ImageImpl.Data load(String path) throws Exception {
 		if (path == null || TextureSource.RenderCanvas.equals(path)) {
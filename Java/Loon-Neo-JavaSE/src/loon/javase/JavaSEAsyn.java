@@ -1,5 +1,6 @@
 package loon.javase;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 
 import loon.Asyn;
@@ -24,4 +25,38 @@ public class JavaSEAsyn extends Asyn.Default {
 	public void invokeAsync(Runnable action) {
 		pool.execute(action);
 	}
+
+	@Override
+	public void invokeAsyncAndWait(final Runnable action, int workers) {
+		final CountDownLatch latch = new CountDownLatch(workers);
+		for (int i = 0; i < workers; i++) {
+			pool.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						action.run();
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+		try {
+			action.run();
+		} finally {
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					latch.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
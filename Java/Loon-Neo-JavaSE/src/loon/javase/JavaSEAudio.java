@@ -97,6 +97,21 @@ public final class JavaSEAudio {
 			final boolean music) {
 		SoundImpl<Object> anySound = null;
 		final String ext = LSystem.getExtension(path).trim().toLowerCase();
+		if (game instanceof JavaSEGame && ((JavaSEGame) game).isSoftwareMixer()) {
+			final JavaSEMixerSound sound = new JavaSEMixerSound(((JavaSEGame) game).audioMixer(), music);
+			LSystem.load(new Updateable() {
+				@Override
+				public void action(Object o) {
+					try {
+						sound.load(ext, in);
+						dispatchLoaded(sound, new Object());
+					} catch (IOException e) {
+						dispatchLoadError(sound, e);
+					}
+				}
+			});
+			return sound;
+		}
 		if ("ogg".equals(ext)) {
 			final JavaSEOggSound sound = new JavaSEOggSound(game);
 			LSystem.load(new Updateable() {
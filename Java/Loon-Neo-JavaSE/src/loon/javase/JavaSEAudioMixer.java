@@ -0,0 +1,707 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.javase;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+import loon.LRelease;
+import loon.utils.MathUtils;
+
+/**
+ * 软件混音器,所有声音混合后只占用一条SourceDataLine输出(44100Hz,16位立体声).
+ *
+ * 短音效预先解码为Sample,多个声道共享同一份PCM;音乐使用Stream,每个声道各自用JavaSEAudioDecoder边播放边分块解码.
+ * 声道数量固定,满额时按优先级抢占(优先级最低且最早开始的声道被替换,新声音优先级更低时则放弃播放).
+ * 不调用start时,也可以用render直接混音到内存中,便于无音频设备时测试.
+ */
+public class JavaSEAudioMixer implements LRelease {
+
+	public final static int RATE = 44100;
+
+	public final static int CHANNELS = 2;
+
+	public final static int DEFAULT_VOICES = 32;
+
+	public final static int PRIORITY_SOUND = 0;
+
+	public final static int PRIORITY_MUSIC = 100;
+
+	// 输出线程每次混音的帧数(约11ms)
+	private final static int BLOCK_FRAMES = 512;
+
+	/**
+	 * 预先解码的PCM数据,可以被多个声道同时播放
+	 */
+	public final static class Sample {
+
+		final short[] data;
+
+		final int channels;
+
+		final int rate;
+
+		final int frames;
+
+		public Sample(short[] data, int channels, int rate) {
+			this.data = data;
+			this.channels = channels;
+			this.rate = rate;
+			this.frames = data.length / channels;
+		}
+
+		public int getFrames() {
+			return frames;
+		}
+
+		public int getChannels() {
+			return channels;
+		}
+
+		public int getRate() {
+			return rate;
+		}
+
+		/**
+		 * 把解码器中的数据全部解出,超过maxFrames帧时返回null(应改用Stream播放)
+		 *
+		 * @param decoder
+		 * @param maxFrames
+		 * @return
+		 * @throws IOException
+		 */
+		public static Sample decode(JavaSEAudioDecoder decoder, int maxFrames) throws IOException {
+			try {
+				final int channels = decoder.channels();
+				final int limit = maxFrames * channels;
+				short[] data = new short[MathUtils.min(limit, 8192 * channels)];
+				int size = 0;
+				for (int count; (count = decoder.decode()) >= 0;) {
+					if (size + count > limit) {
+						return null;
+					}
+					if (size + count > data.length) {
+						final short[] tmp = new short[MathUtils.min(limit, MathUtils.max(data.length * 2, size + count))];
+						System.arraycopy(data, 0, tmp, 0, size);
+						data = tmp;
+					}
+					System.arraycopy(decoder.buffer(), 0, data, size, count);
+					size += count;
+				}
+				if (size != data.length) {
+					final short[] tmp = new short[size];
+					System.arraycopy(data, 0, tmp, 0, size);
+					data = tmp;
+				}
+				return new Sample(data, channels, decoder.rate());
+			} finally {
+				decoder.close();
+			}
+		}
+	}
+
+	/**
+	 * 压缩的音频数据,每次播放都新建解码器流式解码
+	 */
+	public final static class Stream {
+
+		final String ext;
+
+		final byte[] data;
+
+		public Stream(String ext, byte[] data) {
+			this.ext = ext;
+			this.data = data;
+		}
+
+		JavaSEAudioDecoder open() throws IOException {
+			return JavaSEAudioDecoder.open(ext, data);
+		}
+	}
+
+	private final static class Voice {
+
+		int id;
+
+		long order;
+
+		int priority;
+
+		Object owner;
+
+		Sample sample;
+
+		Stream stream;
+
+		JavaSEAudioDecoder decoder;
+
+		int channels;
+
+		float step;
+
+		int position;
+
+		int chunkSize;
+
+		float frac;
+
+		float curLeft, curRight, nextLeft, nextRight;
+
+		float volume, pan;
+
+		float gainLeft, gainRight;
+
+		boolean loop, ended;
+
+		boolean active() {
+			return sample != null || decoder != null;
+		}
+
+		void start(int channels, int rate) {
+			this.channels = channels;
+			this.step = (float) rate / RATE;
+			this.position = 0;
+			this.chunkSize = 0;
+			this.frac = 0;
+			this.ended = false;
+			this.curLeft = curRight = 0;
+			readFrame();
+			curLeft = nextLeft;
+			curRight = nextRight;
+			readFrame();
+		}
+
+		void free() {
+			if (decoder != null) {
+				decoder.close();
+				decoder = null;
+			}
+			sample = null;
+			stream = null;
+			owner = null;
+			id = 0;
+		}
+
+		private boolean nextChunk() {
+			try {
+				for (int count; (count = decoder.decode()) >= 0;) {
+					if (count > 0) {
+						chunkSize = count;
+						position = 0;
+						return true;
+					}
+				}
+				if (loop) {
+					decoder.close();
+					decoder = stream.open();
+					for (int count; (count = decoder.decode()) >= 0;) {
+						if (count > 0) {
+							chunkSize = count;
+							position = 0;
+							return true;
+						}
+					}
+				}
+			} catch (IOException e) {
+			}
+			return false;
+		}
+
+		/**
+		 * 读取下一帧到next(单声道复制到两侧),没有数据时标记ended
+		 */
+		void readFrame() {
+			if (ended) {
+				nextLeft = nextRight = 0;
+				return;
+			}
+			short[] src;
+			int index;
+			if (sample != null) {
+				if (position >= sample.frames) {
+					if (!loop || sample.frames == 0) {
+						ended = true;
+						nextLeft = nextRight = 0;
+						return;
+					}
+					position = 0;
+				}
+				src = sample.data;
+				index = position * channels;
+			} else {
+				if (position * channels >= chunkSize && !nextChunk()) {
+					ended = true;
+					nextLeft = nextRight = 0;
+					return;
+				}
+				src = decoder.buffer();
+				index = position * channels;
+			}
+			position++;
+			nextLeft = src[index];
+			nextRight = channels > 1 ? src[index + 1] : nextLeft;
+		}
+	}
+
+	private final Voice[] _voices;
+
+	private final Object _lock = new Object();
+
+	private int _idCounter;
+
+	private long _orderCounter;
+
+	private float _masterVolume = 1f;
+
+	private float[] _mixBuffer;
+
+	private long _framesRendered;
+
+	private int _stolenCount;
+
+	private int _rejectedCount;
+
+	private SourceDataLine _line;
+
+	private Thread _thread;
+
+	private volatile boolean _running;
+
+	private volatile boolean _paused;
+
+	public JavaSEAudioMixer() {
+		this(DEFAULT_VOICES);
+	}
+
+	public JavaSEAudioMixer(int maxVoices) {
+		_voices = new Voice[MathUtils.max(1, maxVoices)];
+		for (int i = 0; i < _voices.length; i++) {
+			_voices[i] = new Voice();
+		}
+		_mixBuffer = new float[BLOCK_FRAMES * CHANNELS];
+	}
+
+	/**
+	 * 打开音频设备并启动输出线程
+	 *
+	 * @return 没有可用的音频设备时返回false,此时仍可使用render
+	 */
+	public synchronized boolean start() {
+		if (_running) {
+			return true;
+		}
+		try {
+			final AudioFormat format = new AudioFormat(RATE, 16, CHANNELS, true, false);
+			_line = AudioSystem.getSourceDataLine(format);
+			_line.open(format, BLOCK_FRAMES * CHANNELS * 2 * 4);
+			_line.start();
+		} catch (Exception e) {
+			_line = null;
+			return false;
+		}
+		_running = true;
+		_thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				final short[] samples = new short[BLOCK_FRAMES * CHANNELS];
+				final byte[] bytes = new byte[samples.length * 2];
+				while (_running) {
+					if (_paused) {
+						fillSilence(samples, 0, BLOCK_FRAMES);
+					} else {
+						render(samples, 0, BLOCK_FRAMES);
+					}
+					for (int i = 0, j = 0; i < samples.length; i++, j += 2) {
+						final short v = samples[i];
+						bytes[j] = (byte) v;
+						bytes[j + 1] = (byte) (v >> 8);
+					}
+					_line.write(bytes, 0, bytes.length);
+				}
+			}
+		}, "JavaSEAudioMixer");
+		_thread.setDaemon(true);
+		_thread.setPriority(Thread.MAX_PRIORITY);
+		_thread.start();
+		return true;
+	}
+
+	public boolean isStarted() {
+		return _running;
+	}
+
+	/**
+	 * 暂停输出(声道保持当前位置)
+	 */
+	public void pause() {
+		_paused = true;
+	}
+
+	public void resume() {
+		_paused = false;
+	}
+
+	public boolean isPaused() {
+		return _paused;
+	}
+
+	private static void fillSilence(short[] out, int offset, int frames) {
+		for (int i = offset, size = offset + frames * CHANNELS; i < size; i++) {
+			out[i] = 0;
+		}
+	}
+
+	/**
+	 * 播放预先解码的音效
+	 *
+	 * @param sample
+	 * @param volume
+	 * @param pan      声像,-1为左,1为右
+	 * @param loop
+	 * @param priority 数值越大越不容易被抢占
+	 * @param owner    声道所属对象,可按此对象统一停止或调整音量
+	 * @return 声道id,没有可用声道时返回-1
+	 */
+	public int play(Sample sample, float volume, float pan, boolean loop, int priority, Object owner) {
+		if (sample == null) {
+			return -1;
+		}
+		synchronized (_lock) {
+			final Voice voice = allocate(priority);
+			if (voice == null) {
+				return -1;
+			}
+			voice.sample = sample;
+			return begin(voice, sample.channels, sample.rate, volume, pan, loop, priority, owner);
+		}
+	}
+
+	/**
+	 * 流式播放压缩数据
+	 *
+	 * @param stream
+	 * @param volume
+	 * @param pan
+	 * @param loop
+	 * @param priority
+	 * @param owner
+	 * @return 声道id,没有可用声道或数据无法解码时返回-1
+	 */
+	public int play(Stream stream, float volume, float pan, boolean loop, int priority, Object owner) {
+		if (stream == null) {
+			return -1;
+		}
+		final JavaSEAudioDecoder decoder;
+		try {
+			// 读取文件头可能较慢,放在锁外执行
+			decoder = stream.open();
+		} catch (IOException e) {
+			return -1;
+		}
+		synchronized (_lock) {
+			final Voice voice = allocate(priority);
+			if (voice == null) {
+				decoder.close();
+				return -1;
+			}
+			voice.stream = stream;
+			voice.decoder = decoder;
+			return begin(voice, decoder.channels(), decoder.rate(), volume, pan, loop, priority, owner);
+		}
+	}
+
+	private int begin(Voice voice, int channels, int rate, float volume, float pan, boolean loop, int priority,
+			Object owner) {
+		if (++_idCounter <= 0) {
+			_idCounter = 1;
+		}
+		voice.id = _idCounter;
+		voice.order = ++_orderCounter;
+		voice.priority = priority;
+		voice.owner = owner;
+		voice.loop = loop;
+		voice.volume = MathUtils.clamp(volume, 0f, 1f);
+		voice.pan = MathUtils.clamp(pan, -1f, 1f);
+		voice.start(channels, rate);
+		voice.gainLeft = gainLeft(voice);
+		voice.gainRight = gainRight(voice);
+		return voice.id;
+	}
+
+	private Voice allocate(int priority) {
+		Voice victim = null;
+		for (int i = 0; i < _voices.length; i++) {
+			final Voice voice = _voices[i];
+			if (!voice.active()) {
+				return voice;
+			}
+			if (victim == null || voice.priority < victim.priority
+					|| (voice.priority == victim.priority && voice.order < victim.order)) {
+				victim = voice;
+			}
+		}
+		if (victim.priority > priority) {
+			_rejectedCount++;
+			return null;
+		}
+		victim.free();
+		_stolenCount++;
+		return victim;
+	}
+
+	private Voice find(int id) {
+		if (id <= 0) {
+			return null;
+		}
+		for (int i = 0; i < _voices.length; i++) {
+			if (_voices[i].id == id) {
+				return _voices[i];
+			}
+		}
+		return null;
+	}
+
+	public boolean isPlaying(int id) {
+		synchronized (_lock) {
+			return find(id) != null;
+		}
+	}
+
+	public boolean isPlaying(Object owner) {
+		synchronized (_lock) {
+			for (int i = 0; i < _voices.length; i++) {
+				if (_voices[i].active() && _voices[i].owner == owner) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	public void stop(int id) {
+		synchronized (_lock) {
+			final Voice voice = find(id);
+			if (voice != null) {
+				voice.free();
+			}
+		}
+	}
+
+	public void stop(Object owner) {
+		synchronized (_lock) {
+			for (int i = 0; i < _voices.length; i++) {
+				if (_voices[i].active() && _voices[i].owner == owner) {
+					_voices[i].free();
+				}
+			}
+		}
+	}
+
+	public void stopAll() {
+		synchronized (_lock) {
+			for (int i = 0; i < _voices.length; i++) {
+				_voices[i].free();
+			}
+		}
+	}
+
+	public void setVolume(int id, float volume) {
+		synchronized (_lock) {
+			final Voice voice = find(id);
+			if (voice != null) {
+				voice.volume = MathUtils.clamp(volume, 0f, 1f);
+			}
+		}
+	}
+
+	public void setVolume(Object owner, float volume) {
+		synchronized (_lock) {
+			for (int i = 0; i < _voices.length; i++) {
+				if (_voices[i].active() && _voices[i].owner == owner) {
+					_voices[i].volume = MathUtils.clamp(volume, 0f, 1f);
+				}
+			}
+		}
+	}
+
+	public void setPan(int id, float pan) {
+		synchronized (_lock) {
+			final Voice voice = find(id);
+			if (voice != null) {
+				voice.pan = MathUtils.clamp(pan, -1f, 1f);
+			}
+		}
+	}
+
+	public void setLooping(Object owner, boolean loop) {
+		synchronized (_lock) {
+			for (int i = 0; i < _voices.length; i++) {
+				if (_voices[i].active() && _voices[i].owner == owner) {
+					_voices[i].loop = loop;
+				}
+			}
+		}
+	}
+
+	public void setMasterVolume(float volume) {
+		synchronized (_lock) {
+			_masterVolume = MathUtils.clamp(volume, 0f, 1f);
+		}
+	}
+
+	public float getMasterVolume() {
+		return _masterVolume;
+	}
+
+	private float gainLeft(Voice voice) {
+		return _masterVolume * voice.volume * (voice.pan > 0 ? 1f - voice.pan : 1f);
+	}
+
+	private float gainRight(Voice voice) {
+		return _masterVolume * voice.volume * (voice.pan < 0 ? 1f + voice.pan : 1f);
+	}
+
+	/**
+	 * 混合所有声道,输出frames帧16位交错立体声到out中
+	 *
+	 * @param out
+	 * @param offset
+	 * @param frames
+	 * @return 参与混音的声道数
+	 */
+	public int render(short[] out, int offset, int frames) {
+		final int size = frames * CHANNELS;
+		int mixed = 0;
+		synchronized (_lock) {
+			if (_mixBuffer.length < size) {
+				_mixBuffer = new float[size];
+			}
+			final float[] mix = _mixBuffer;
+			for (int i = 0; i < size; i++) {
+				mix[i] = 0f;
+			}
+			for (int v = 0; v < _voices.length; v++) {
+				final Voice voice = _voices[v];
+				if (!voice.active()) {
+					continue;
+				}
+				mixed++;
+				// 音量变化时在一个混音块内线性过渡,避免爆音
+				final float targetLeft = gainLeft(voice);
+				final float targetRight = gainRight(voice);
+				float gl = voice.gainLeft;
+				float gr = voice.gainRight;
+				final float dl = (targetLeft - gl) / frames;
+				final float dr = (targetRight - gr) / frames;
+				final float step = voice.step;
+				float frac = voice.frac;
+				for (int i = 0; i < size; i += 2) {
+					mix[i] += (voice.curLeft + (voice.nextLeft - voice.curLeft) * frac) * gl;
+					mix[i + 1] += (voice.curRight + (voice.nextRight - voice.curRight) * frac) * gr;
+					gl += dl;
+					gr += dr;
+					frac += step;
+					while (frac >= 1f) {
+						frac -= 1f;
+						voice.curLeft = voice.nextLeft;
+						voice.curRight = voice.nextRight;
+						voice.readFrame();
+					}
+					if (voice.ended && voice.curLeft == 0 && voice.curRight == 0) {
+						break;
+					}
+				}
+				voice.frac = frac;
+				voice.gainLeft = targetLeft;
+				voice.gainRight = targetRight;
+				if (voice.ended) {
+					voice.free();
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				final float val = mix[i];
+				out[offset + i] = (short) (val > 32767f ? 32767 : (val < -32768f ? -32768 : val));
+			}
+			_framesRendered += frames;
+		}
+		return mixed;
+	}
+
+	public int getMaxVoices() {
+		return _voices.length;
+	}
+
+	public int getActiveVoices() {
+		synchronized (_lock) {
+			int count = 0;
+			for (int i = 0; i < _voices.length; i++) {
+				if (_voices[i].active()) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * 因声道已满被抢占的次数
+	 *
+	 * @return
+	 */
+	public int getStolenCount() {
+		return _stolenCount;
+	}
+
+	/**
+	 * 因优先级不足未能播放的次数
+	 *
+	 * @return
+	 */
+	public int getRejectedCount() {
+		return _rejectedCount;
+	}
+
+	public long getFramesRendered() {
+		return _framesRendered;
+	}
+
+	@Override
+	public synchronized void close() {
+		_running = false;
+		if (_thread != null) {
+			try {
+				_thread.join(500);
+			} catch (InterruptedException e) {
+			}
+			_thread = null;
+		}
+		if (_line != null) {
+			_line.stop();
+			_line.close();
+			_line = null;
+		}
+		stopAll();
+	}
+}
@@ -50,6 +50,34 @@ public class JavaSEGame extends LGame {
 		public boolean vSyncEnabled = true;
 
 		public String[] iconPaths = null;
+
+		/**
+		 * 是否使用文件日志保存数据(默认false,使用java.util.prefs,每次修改都会立即写盘).
+		 * 
+		 * 开启后数据改为保存在saveDir下的文件中,首次使用时会把Preferences中已有的同名数据复制过去(Preferences本身不变),
+		 * 之后的修改只写入文件,再关闭此项时不会看到开启期间保存的数据.
+		 */
+		public boolean journalSave = false;
+
+		/**
+		 * 日志保存数据的目录(为null时使用用户目录下的.loon)
+		 */
+		public String saveDir = null;
+
+		/**
+		 * 网络客户端是否使用NIO长度前缀分帧(4字节大端长度+数据),服务器需使用相同帧格式
+		 */
+		public boolean nioNetwork = false;
+
+		/**
+		 * 是否使用软件混音器播放声音(所有声音共用一条输出线路,音乐流式解码)
+		 */
+		public boolean softwareMixer = false;
+
+		/**
+		 * 软件混音器的最大同时发声数,超过时按优先级抢占
+		 */
+		public int mixerVoices = JavaSEAudioMixer.DEFAULT_VOICES;
 	}
 
 	final static private Runtime systemRuntime = Runtime.getRuntime();
@@ -154,6 +182,8 @@ public class JavaSEGame extends LGame {
 
 	private final JavaSEAccelerometer accelerometer = new JavaSEAccelerometer();
 	private final JavaSESave save;
+
+	private JavaSEAudioMixer mixer;
 	private final JavaSEGraphics graphics;
 	private final JavaSEInputMake input;
 	private final JavaSEAssets assets = new JavaSEAssets(this);
@@ -210,7 +240,7 @@ public class JavaSEGame extends LGame {
 		this.preInit();
 		this.graphics = createGraphics();
 		this.input = createInput();
-		this.save = new JavaSESave(log, config.appName);
+		this.save = createSave(config);
 		this.clipboard = new JavaSEClipboard();
 		if (config.activationKey != -1) {
 			input.keyboardEvents.connect(new Port<KeyMake.Event>() {
@@ -269,6 +299,9 @@ public class JavaSEGame extends LGame {
 
 	@Override
 	public NetworkClient networkClient() {
+		if (setting instanceof JavaSetting && ((JavaSetting) setting).nioNetwork) {
+			return new JavaSENioClient();
+		}
 		return new JavaSESocketClient();
 	}
 
@@ -293,6 +326,38 @@ public class JavaSEGame extends LGame {
 		return log;
 	}
 
+	protected JavaSESave createSave(LSetting config) {
+		if (config instanceof JavaSetting && ((JavaSetting) config).journalSave) {
+			final String dir = ((JavaSetting) config).saveDir;
+			return new JavaSEJournalSave(log, config.appName,
+					dir == null ? JavaSEJournalSave.defaultDirectory() : new File(dir));
+		}
+		return new JavaSESave(log, config.appName);
+	}
+
+	/**
+	 * 是否启用了软件混音器
+	 *
+	 * @return
+	 */
+	public boolean isSoftwareMixer() {
+		return setting instanceof JavaSetting && ((JavaSetting) setting).softwareMixer;
+	}
+
+	/**
+	 * 获得软件混音器,首次调用时创建并打开音频输出
+	 *
+	 * @return
+	 */
+	public synchronized JavaSEAudioMixer audioMixer() {
+		if (mixer == null) {
+			mixer = new JavaSEAudioMixer(
+					setting instanceof JavaSetting ? ((JavaSetting) setting).mixerVoices : JavaSEAudioMixer.DEFAULT_VOICES);
+			mixer.start();
+		}
+		return mixer;
+	}
+
 	@Override
 	public JavaSESave save() {
 		return save;
@@ -403,6 +468,15 @@ public class JavaSEGame extends LGame {
 
 	public void shutdown() {
 		super.shutdown();
+		if (save instanceof LRelease) {
+			((LRelease) save).close();
+		}
+		synchronized (this) {
+			if (mixer != null) {
+				mixer.close();
+				mixer = null;
+			}
+		}
 		try {
 			pool.shutdown();
 			pool.awaitTermination(1, TimeUnit.SECONDS);
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.javase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import loon.SoundImpl;
+
+/**
+ * 通过JavaSEAudioMixer播放的声音.音效在加载时解码为共享的Sample,可以重叠播放;音乐(或超过residentSeconds的音效)只保存压缩数据,播放时流式解码.
+ */
+public class JavaSEMixerSound extends SoundImpl<Object> {
+
+	// 超过此长度的音效不再预先解码
+	public static float residentSeconds = 10f;
+
+	private final JavaSEAudioMixer _mixer;
+
+	private final boolean _music;
+
+	private JavaSEAudioMixer.Sample _sample;
+
+	private JavaSEAudioMixer.Stream _stream;
+
+	private int _priority;
+
+	private float _pan;
+
+	public JavaSEMixerSound(JavaSEAudioMixer mixer, boolean music) {
+		this._mixer = mixer;
+		this._music = music;
+		this._priority = music ? JavaSEAudioMixer.PRIORITY_MUSIC : JavaSEAudioMixer.PRIORITY_SOUND;
+	}
+
+	synchronized void load(String ext, InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		for (int len; (len = in.read(buffer)) != -1;) {
+			out.write(buffer, 0, len);
+		}
+		in.close();
+		final byte[] data = out.toByteArray();
+		if (!_music) {
+			_sample = JavaSEAudioMixer.Sample.decode(JavaSEAudioDecoder.open(ext, data),
+					(int) (residentSeconds * JavaSEAudioMixer.RATE));
+		}
+		if (_sample == null) {
+			_stream = new JavaSEAudioMixer.Stream(ext, data);
+		}
+	}
+
+	public boolean isResident() {
+		return _sample != null;
+	}
+
+	public int getPriority() {
+		return _priority;
+	}
+
+	public void setPriority(int priority) {
+		this._priority = priority;
+	}
+
+	public float getPan() {
+		return _pan;
+	}
+
+	public void setPan(float pan) {
+		this._pan = pan;
+	}
+
+	@Override
+	protected synchronized boolean playingImpl() {
+		return _mixer.isPlaying(this);
+	}
+
+	@Override
+	protected synchronized boolean playImpl() {
+		if (_music) {
+			_mixer.stop(this);
+		}
+		final int id;
+		if (_sample != null) {
+			id = _mixer.play(_sample, volume, _pan, looping, _priority, this);
+		} else {
+			id = _mixer.play(_stream, volume, _pan, looping, _priority, this);
+		}
+		return id != -1;
+	}
+
+	@Override
+	protected synchronized void stopImpl() {
+		_mixer.stop(this);
+	}
+
+	@Override
+	protected synchronized void setLoopingImpl(boolean looping) {
+		_mixer.setLooping(this, looping);
+	}
+
+	@Override
+	protected synchronized void setVolumeImpl(float volume) {
+		_mixer.setVolume(this, volume);
+	}
+
+	@Override
+	protected synchronized void releaseImpl() {
+		_mixer.stop(this);
+		_sample = null;
+		_stream = null;
+	}
+}
@@ -0,0 +1,378 @@
+/**
+ * Copyright 2008 - 2015 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.lwjgl;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import loon.LRelease;
+
+/**
+ * 以内存映射方式读取Loon-Build生成的LPK2资源包(格式见loon.build.packer.AssetPackMake).
+ *
+ * 打开时只映射文件并读取文件头,查找资源时按名称散列直接定位条目,读取资源时也直接从映射区生成流,不复制整个资源包.
+ * 读取的数据会与条目中的CRC32比较,readBytes读取完毕时,openStream的流读到末尾时不一致则抛出IOException.
+ */
+public class Lwjgl3AssetPack implements LRelease {
+
+	public static final int MAGIC = ('L') | ('P' << 8) | ('K' << 16) | ('2' << 24);
+
+	public static final int VERSION = 1;
+
+	public static final int FLAG_DEFLATE = 1;
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int ENTRY_SIZE = 48;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * 直接读取映射区的输入流
+	 */
+	private static class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			final int skip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skip);
+			return skip;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * 读到末尾时校验CRC32的输入流
+	 */
+	private static class CheckedStream extends FilterInputStream {
+
+		private final CRC32 crc = new CRC32();
+
+		private final int expected;
+
+		private final String name;
+
+		private boolean checked;
+
+		CheckedStream(InputStream in, int expected, String name) {
+			super(in);
+			this.expected = expected;
+			this.name = name;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = in.read();
+			if (b == -1) {
+				check();
+			} else {
+				crc.update(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int n = in.read(b, off, len);
+			if (n == -1) {
+				check();
+			} else {
+				crc.update(b, off, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// 跳过的数据也要计入校验
+			final byte[] tmp = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			while (skipped < n) {
+				final int read = read(tmp, 0, (int) Math.min(tmp.length, n - skipped));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void check() throws IOException {
+			if (!checked) {
+				checked = true;
+				if ((int) crc.getValue() != expected) {
+					throw new IOException("crc mismatch in pack entry : " + name);
+				}
+			}
+		}
+	}
+
+	private final String path;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int count;
+
+	private final int buckets;
+
+	private final int bucketOffset;
+
+	private final int entryOffset;
+
+	private final int namesOffset;
+
+	public Lwjgl3AssetPack(String path) throws IOException {
+		this(new File(path));
+	}
+
+	public Lwjgl3AssetPack(File f) throws IOException {
+		this.path = f.getPath();
+		this.file = new RandomAccessFile(f, "r");
+		try {
+			this.channel = file.getChannel();
+			final long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("invalid pack size : " + path);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("not a LPK2 pack : " + path);
+			}
+			if (buffer.getInt(4) > VERSION) {
+				throw new IOException("unsupported pack version " + buffer.getInt(4) + " : " + path);
+			}
+			this.count = buffer.getInt(8);
+			this.buckets = buffer.getInt(12);
+			this.bucketOffset = (int) buffer.getLong(16);
+			this.entryOffset = bucketOffset + buckets * 4;
+			this.namesOffset = (int) buffer.getLong(24);
+			if (buckets <= 0 || (buckets & (buckets - 1)) != 0 || namesOffset > size) {
+				throw new IOException("broken pack directory : " + path);
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public static String normalize(String name) {
+		String res = name.trim().replace('\\', '/');
+		while (res.startsWith("/")) {
+			res = res.substring(1);
+		}
+		if (res.startsWith("./")) {
+			res = res.substring(2);
+		}
+		return res.toLowerCase();
+	}
+
+	private static int hash(byte[] bytes) {
+		int h = 0x811C9DC5;
+		for (int i = 0; i < bytes.length; i++) {
+			h ^= (bytes[i] & 0xFF);
+			h *= 0x01000193;
+		}
+		return h;
+	}
+
+	/**
+	 * 查找资源条目的位置,不存在时返回-1
+	 */
+	private int find(String name) {
+		if (name == null) {
+			return -1;
+		}
+		final byte[] key = normalize(name).getBytes(UTF8);
+		final int h = hash(key);
+		for (int i = buffer.getInt(bucketOffset + (h & (buckets - 1)) * 4); i != -1;) {
+			if (i < 0 || i >= count) {
+				return -1;
+			}
+			final int pos = entryOffset + i * ENTRY_SIZE;
+			if (buffer.getInt(pos) == h && buffer.getInt(pos + 12) == key.length) {
+				final int nameOffset = namesOffset + buffer.getInt(pos + 8);
+				boolean same = true;
+				for (int n = 0; n < key.length; n++) {
+					if (buffer.get(nameOffset + n) != key[n]) {
+						same = false;
+						break;
+					}
+				}
+				if (same) {
+					return pos;
+				}
+			}
+			i = buffer.getInt(pos + 4);
+		}
+		return -1;
+	}
+
+	public boolean contains(String name) {
+		return find(name) != -1;
+	}
+
+	/**
+	 * 资源解压后的大小,不存在时返回-1
+	 */
+	public long getSize(String name) {
+		final int pos = find(name);
+		return pos == -1 ? -1 : buffer.getLong(pos + 40);
+	}
+
+	/**
+	 * 打开资源的输入流,未压缩的资源直接读取映射区
+	 */
+	public InputStream openStream(String name) throws IOException {
+		final int pos = find(name);
+		if (pos == -1) {
+			return null;
+		}
+		final ByteBuffer data = slice(pos);
+		final int crc = buffer.getInt(pos + 20);
+		if ((buffer.getInt(pos + 16) & FLAG_DEFLATE) != 0) {
+			return new CheckedStream(new InflaterInputStream(new BufferInputStream(data), new Inflater(true), 8192) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					inf.end();
+				}
+			}, crc, name);
+		}
+		return new CheckedStream(new BufferInputStream(data), crc, name);
+	}
+
+	public byte[] readBytes(String name) throws IOException {
+		final int pos = find(name);
+		if (pos == -1) {
+			return null;
+		}
+		final long size = buffer.getLong(pos + 40);
+		final byte[] result = new byte[(int) size];
+		final ByteBuffer data = slice(pos);
+		if ((buffer.getInt(pos + 16) & FLAG_DEFLATE) != 0) {
+			final byte[] packed = new byte[data.remaining()];
+			data.get(packed);
+			final Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(packed);
+				int n = 0;
+				while (n < result.length && !inflater.finished()) {
+					final int read = inflater.inflate(result, n, result.length - n);
+					if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					n += read;
+				}
+				if (n != result.length) {
+					throw new IOException("broken pack entry : " + name);
+				}
+			} catch (java.util.zip.DataFormatException e) {
+				throw new IOException("broken pack entry : " + name, e);
+			} finally {
+				inflater.end();
+			}
+		} else {
+			data.get(result);
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(result);
+		if ((int) crc.getValue() != buffer.getInt(pos + 20)) {
+			throw new IOException("crc mismatch in pack entry : " + name);
+		}
+		return result;
+	}
+
+	private ByteBuffer slice(int pos) throws IOException {
+		final long offset = buffer.getLong(pos + 24);
+		final long stored = buffer.getLong(pos + 32);
+		if (offset < 0 || offset + stored > buffer.capacity()) {
+			throw new IOException("broken pack entry in " + path);
+		}
+		final ByteBuffer data = buffer.duplicate();
+		data.position((int) offset);
+		data.limit((int) (offset + stored));
+		return data.slice();
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+		}
+	}
+
+}
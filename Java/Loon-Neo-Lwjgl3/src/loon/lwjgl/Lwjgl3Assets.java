@@ -413,6 +413,9 @@ public class Lwjgl3Assets extends Assets {
 	private final Lwjgl3Game game;
 	private File[] directories = {};
 
+	// 已挂载的LPK2资源包,按挂载顺序查找
+	private Lwjgl3AssetPack[] packs = {};
+
 	private Scale assetScale = null;
 
 	public Lwjgl3Assets(Lwjgl3Game game) {
@@ -427,6 +430,44 @@ public class Lwjgl3Assets extends Assets {
 		directories = ndirs;
 	}
 
+	/**
+	 * 挂载一个LPK2资源包,之后加载资源时优先从资源包中查找
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public Lwjgl3AssetPack addPack(String path) throws IOException {
+		return addPack(resolvePath(path));
+	}
+
+	public Lwjgl3AssetPack addPack(File file) throws IOException {
+		final Lwjgl3AssetPack pack = new Lwjgl3AssetPack(file);
+		Lwjgl3AssetPack[] npacks = new Lwjgl3AssetPack[packs.length + 1];
+		System.arraycopy(packs, 0, npacks, 0, packs.length);
+		npacks[npacks.length - 1] = pack;
+		packs = npacks;
+		return pack;
+	}
+
+	public void removePack(Lwjgl3AssetPack pack) {
+		int idx = -1;
+		for (int i = 0; i < packs.length; i++) {
+			if (packs[i] == pack) {
+				idx = i;
+				break;
+			}
+		}
+		if (idx == -1) {
+			return;
+		}
+		Lwjgl3AssetPack[] npacks = new Lwjgl3AssetPack[packs.length - 1];
+		System.arraycopy(packs, 0, npacks, 0, idx);
+		System.arraycopy(packs, idx + 1, npacks, idx, packs.length - idx - 1);
+		packs = npacks;
+		pack.close();
+	}
+
 	public void setAssetScale(float scaleFactor) {
 		this.assetScale = new Scale(scaleFactor);
 	}
@@ -504,6 +545,17 @@ public class Lwjgl3Assets extends Assets {
 	}
 
 	protected Resource requireResource(final String path) throws IOException {
+		final Lwjgl3AssetPack[] mounted = packs;
+		for (int i = 0; i < mounted.length; i++) {
+			final Lwjgl3AssetPack pack = mounted[i];
+			if (pack.contains(path)) {
+				return new PackResource(pack, path);
+			}
+			final String packPath = getPath(path);
+			if (pack.contains(packPath)) {
+				return new PackResource(pack, packPath);
+			}
+		}
 		String serachPath = getPath(path);
 		URL url = classLoader.getResource(serachPath);
 		if (url == null && !path.startsWith("/")) {
@@ -685,6 +737,43 @@ public class Lwjgl3Assets extends Assets {
 		}
 	}
 
+	protected static class PackResource extends Resource {
+
+		public final Lwjgl3AssetPack pack;
+
+		public final String name;
+
+		public PackResource(Lwjgl3AssetPack pack, String name) {
+			this.pack = pack;
+			this.name = name;
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			return pack.openStream(name);
+		}
+
+		@Override
+		public BufferedImage readImage() throws IOException {
+			InputStream in = openStream();
+			try {
+				return ImageIO.read(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		@Override
+		public AudioInputStream openAudioStream() throws Exception {
+			return AudioSystem.getAudioInputStream(new ByteArrayInputStream(readBytes()));
+		}
+
+		@Override
+		public byte[] readBytes() throws IOException {
+			return pack.readBytes(name);
+		}
+	}
+
 	@Override
 	protected ImageImpl.Data load(String path) throws Exception {
 		if (path == null || TextureSource.RenderCanvas.equals(path)) {
@@ -97,6 +97,21 @@ public final class Lwjgl3Audio {
 			final boolean music) {
 		SoundImpl<Object> anySound = null;
 		final String ext = LSystem.getExtension(path).trim().toLowerCase();
+		if (game instanceof Lwjgl3Game && ((Lwjgl3Game) game).isSoftwareMixer()) {
+			final Lwjgl3MixerSound sound = new Lwjgl3MixerSound(((Lwjgl3Game) game).audioMixer(), music);
+			LSystem.load(new Updateable() {
+				@Override
+				public void action(Object o) {
+					try {
+						sound.load(ext, in);
+						dispatchLoaded(sound, new Object());
+					} catch (IOException e) {
+						dispatchLoadError(sound, e);
+					}
+				}
+			});
+			return sound;
+		}
 		if ("ogg".equals(ext)) {
 			final Lwjgl3OggSound sound = new Lwjgl3OggSound(game);
 			LSystem.load(new Updateable() {
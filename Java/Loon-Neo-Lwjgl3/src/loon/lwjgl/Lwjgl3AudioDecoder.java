@@ -0,0 +1,350 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.lwjgl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import com.jcraft.jogg.Packet;
+import com.jcraft.jogg.Page;
+import com.jcraft.jogg.StreamState;
+import com.jcraft.jogg.SyncState;
+import com.jcraft.jorbis.Block;
+import com.jcraft.jorbis.Comment;
+import com.jcraft.jorbis.DspState;
+import com.jcraft.jorbis.Info;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.SampleBuffer;
+import loon.LSystem;
+import loon.utils.MathUtils;
+
+/**
+ * 分块解码的音频流,每次decode只解出一小段16位交错PCM(ogg为一个数据包,mp3为一帧),供Lwjgl3AudioMixer边解码边混音.
+ *
+ * 解码器只持有压缩后的原始数据,循环播放时用open重新创建即可,不会把整首音乐解码到内存中.
+ */
+public abstract class Lwjgl3AudioDecoder {
+
+	/**
+	 * 按扩展名创建解码器(ogg使用jorbis,mp3使用javazoom,其它格式交给javax.sound解析)
+	 *
+	 * @param ext
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	public static Lwjgl3AudioDecoder open(String ext, byte[] data) throws IOException {
+		final String type = ext == null ? LSystem.EMPTY : ext.trim().toLowerCase();
+		if ("ogg".equals(type)) {
+			return new OggDecoder(data);
+		} else if ("mp3".equals(type)) {
+			return new MP3Decoder(data);
+		}
+		return new PcmDecoder(data);
+	}
+
+	protected int _channels;
+
+	protected int _rate;
+
+	protected short[] _buffer;
+
+	public int channels() {
+		return _channels;
+	}
+
+	public int rate() {
+		return _rate;
+	}
+
+	/**
+	 * 最近一次decode得到的交错采样
+	 *
+	 * @return
+	 */
+	public short[] buffer() {
+		return _buffer;
+	}
+
+	/**
+	 * 解码下一段数据
+	 *
+	 * @return 写入buffer的交错采样数量(帧数*声道数),为-1时表示数据结束
+	 * @throws IOException
+	 */
+	public abstract int decode() throws IOException;
+
+	public abstract void close();
+
+	private static class OggDecoder extends Lwjgl3AudioDecoder {
+
+		private final static int BUFSIZE = 4096;
+
+		private final InputStream _input;
+
+		private final SyncState _sync = new SyncState();
+
+		private final StreamState _stream = new StreamState();
+
+		private final Page _page = new Page();
+
+		private final Packet _packet = new Packet();
+
+		private final Info _info = new Info();
+
+		private final Comment _comment = new Comment();
+
+		private final DspState _dsp = new DspState();
+
+		private final Block _block = new Block(_dsp);
+
+		private final float[][][] _pcm = new float[1][][];
+
+		private int[] _index;
+
+		private boolean _eos;
+
+		OggDecoder(byte[] data) throws IOException {
+			_input = new ByteArrayInputStream(data);
+			_sync.init();
+			_info.init();
+			_comment.init();
+			if (!nextPage()) {
+				throw new IOException("Input does not appear to be an Ogg bitstream.");
+			}
+			_stream.init(_page.serialno());
+			_stream.reset();
+			if (_stream.pagein(_page) < 0 || _stream.packetout(_packet) != 1
+					|| _info.synthesis_headerin(_comment, _packet) < 0) {
+				throw new IOException("This Ogg bitstream does not contain Vorbis audio data.");
+			}
+			for (int i = 0; i < 2;) {
+				final int result = _stream.packetout(_packet);
+				if (result == 1) {
+					_info.synthesis_headerin(_comment, _packet);
+					i++;
+				} else if (result == -1) {
+					throw new IOException("Corrupt secondary header.");
+				} else if (!nextPage()) {
+					throw new IOException("End of file before finding all Vorbis headers!");
+				} else {
+					_stream.pagein(_page);
+				}
+			}
+			_dsp.synthesis_init(_info);
+			_block.init(_dsp);
+			_channels = _info.channels;
+			_rate = _info.rate;
+			_index = new int[_channels];
+			_buffer = new short[BUFSIZE * _channels];
+		}
+
+		private boolean nextPage() throws IOException {
+			for (;;) {
+				final int result = _sync.pageout(_page);
+				if (result == 1) {
+					return true;
+				}
+				if (result == 0) {
+					final int index = _sync.buffer(BUFSIZE);
+					final int bytes = _input.read(_sync.data, index, BUFSIZE);
+					if (bytes <= 0) {
+						return false;
+					}
+					_sync.wrote(bytes);
+				}
+			}
+		}
+
+		@Override
+		public int decode() throws IOException {
+			for (;;) {
+				final int samples = _dsp.synthesis_pcmout(_pcm, _index);
+				if (samples > 0) {
+					final int count = MathUtils.min(samples, BUFSIZE);
+					final float[][] pcm = _pcm[0];
+					final int channels = _channels;
+					final short[] out = _buffer;
+					for (int c = 0; c < channels; c++) {
+						final float[] src = pcm[c];
+						final int offset = _index[c];
+						for (int i = 0, ptr = c; i < count; i++, ptr += channels) {
+							int val = (int) (src[offset + i] * 32767f);
+							if (val > 32767) {
+								val = 32767;
+							} else if (val < -32768) {
+								val = -32768;
+							}
+							out[ptr] = (short) val;
+						}
+					}
+					_dsp.synthesis_read(count);
+					return count * channels;
+				}
+				final int result = _stream.packetout(_packet);
+				if (result == 1) {
+					if (_block.synthesis(_packet) == 0) {
+						_dsp.synthesis_blockin(_block);
+					}
+				} else if (result == 0) {
+					// 串接的多段ogg只播放第一段
+					if (_eos || !nextPage() || _page.granulepos() == 0) {
+						return -1;
+					}
+					_stream.pagein(_page);
+					_eos = _page.eos() != 0;
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			_stream.clear();
+			_block.clear();
+			_dsp.clear();
+			_info.clear();
+			_sync.clear();
+		}
+	}
+
+	private static class MP3Decoder extends Lwjgl3AudioDecoder {
+
+		private final Bitstream _bitstream;
+
+		private final Decoder _decoder = new Decoder();
+
+		private int _pending;
+
+		MP3Decoder(byte[] data) throws IOException {
+			_bitstream = new Bitstream(new ByteArrayInputStream(data));
+			// 码率与声道要在第一帧解码后才能确定
+			_pending = decodeFrame();
+			if (_pending < 0) {
+				throw new IOException("Input does not appear to be an MPEG audio stream.");
+			}
+			_channels = _decoder.getOutputChannels();
+			_rate = _decoder.getOutputFrequency();
+		}
+
+		private int decodeFrame() throws IOException {
+			try {
+				final Header header = _bitstream.readFrame();
+				if (header == null) {
+					return -1;
+				}
+				final SampleBuffer output = (SampleBuffer) _decoder.decodeFrame(header, _bitstream);
+				_bitstream.closeFrame();
+				_buffer = output.getBuffer();
+				return output.getBufferLength();
+			} catch (Exception e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		@Override
+		public int decode() throws IOException {
+			if (_pending != 0) {
+				final int count = _pending;
+				_pending = 0;
+				return count;
+			}
+			return decodeFrame();
+		}
+
+		@Override
+		public void close() {
+			try {
+				_bitstream.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
+	private static class PcmDecoder extends Lwjgl3AudioDecoder {
+
+		private final AudioInputStream _input;
+
+		private final byte[] _bytes;
+
+		private int _remain;
+
+		PcmDecoder(byte[] data) throws IOException {
+			try {
+				AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data));
+				final AudioFormat baseFormat = ais.getFormat();
+				if (baseFormat.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || baseFormat.getSampleSizeInBits() != 16
+						|| baseFormat.isBigEndian()) {
+					final AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+							baseFormat.getSampleRate(), 16, baseFormat.getChannels(), baseFormat.getChannels() * 2,
+							baseFormat.getSampleRate(), false);
+					ais = AudioSystem.getAudioInputStream(decodedFormat, ais);
+				}
+				_input = ais;
+				_channels = ais.getFormat().getChannels();
+				_rate = (int) ais.getFormat().getSampleRate();
+				_bytes = new byte[4096 * _channels];
+				_buffer = new short[2048 * _channels];
+			} catch (Exception e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		@Override
+		public int decode() throws IOException {
+			int len = _remain;
+			final int frameSize = _channels * 2;
+			// 按整帧转换,不足一帧的字节留到下次decode
+			while (len < frameSize) {
+				final int read = _input.read(_bytes, len, _bytes.length - len);
+				if (read < 0) {
+					return -1;
+				}
+				len += read;
+			}
+			final int size = len - len % frameSize;
+			final int count = size >> 1;
+			for (int i = 0, j = 0; i < count; i++, j += 2) {
+				_buffer[i] = (short) ((_bytes[j] & 0xFF) | (_bytes[j + 1] << 8));
+			}
+			_remain = len - size;
+			if (_remain > 0) {
+				System.arraycopy(_bytes, size, _bytes, 0, _remain);
+			}
+			return count;
+		}
+
+		@Override
+		public void close() {
+			try {
+				_input.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2008 - 2020 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.lwjgl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import loon.LSysException;
+import loon.canvas.Pixmap;
+import loon.utils.ArrayByte;
+import loon.utils.Deflate;
+
+/**
+ * 桌面环境用的并行zlib/png压缩,把数据切分为若干段交给线程池分别压缩(每段以之前32K数据为字典),再拼接为单一zlib流.
+ */
+public final class Lwjgl3Deflate {
+
+	public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+	private static class ChunkTask implements Callable<byte[]> {
+
+		private final byte[] _data;
+
+		private final int _offset, _length, _level;
+
+		private final boolean _last;
+
+		ChunkTask(byte[] data, int offset, int length, int level, boolean last) {
+			this._data = data;
+			this._offset = offset;
+			this._length = length;
+			this._level = level;
+			this._last = last;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			return Deflate.deflate(_data, _offset, _length, _level, _last);
+		}
+	}
+
+	public static byte[] toZLIB(byte[] raw, int level) {
+		return toZLIB(raw, level, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	public static byte[] toZLIB(byte[] raw, int level, int chunkSize, ExecutorService pool) {
+		if (level <= Deflate.NO_COMPRESSION || raw.length <= chunkSize || pool == null) {
+			return ArrayByte.toZLIB(raw, level);
+		}
+		final int count = (raw.length + chunkSize - 1) / chunkSize;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final Future<byte[]>[] futures = new Future[count];
+		for (int i = 0; i < count; i++) {
+			final int offset = i * chunkSize;
+			final int length = Math.min(chunkSize, raw.length - offset);
+			futures[i] = pool.submit(new ChunkTask(raw, offset, length, level, i == count - 1));
+		}
+		final int adler = Deflate.adler32(raw);
+		final byte[][] chunks = new byte[count][];
+		try {
+			for (int i = 0; i < count; i++) {
+				chunks[i] = futures[i].get();
+			}
+		} catch (Exception ex) {
+			throw new LSysException("Parallel deflate failed !", ex);
+		}
+		return ArrayByte.toZLIB(ArrayByte.BIG_ENDIAN, level, chunks, adler);
+	}
+
+	public static byte[] toPNG(Pixmap pixmap, int level) {
+		return toPNG(pixmap, level, ForkJoinPool.commonPool());
+	}
+
+	public static byte[] toPNG(Pixmap pixmap, int level, ExecutorService pool) {
+		final byte[] raw = Pixmap.createScanlines(pixmap, level > Deflate.NO_COMPRESSION);
+		return Pixmap.toPNG(pixmap.getWidth(), pixmap.getHeight(), toZLIB(raw, level, DEFAULT_CHUNK_SIZE, pool));
+	}
+}
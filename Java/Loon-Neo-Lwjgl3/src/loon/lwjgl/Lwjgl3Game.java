@@ -63,8 +63,10 @@ import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
 
 import loon.LGame;
+import loon.LRelease;
 import loon.LSetting;
 import loon.LTexture;
+import loon.NetworkClient;
 import loon.Support;
 import loon.canvas.Image;
 import loon.canvas.Pixmap;
@@ -96,6 +98,34 @@ public class Lwjgl3Game extends LGame {
 		public String[] iconPaths = null;
 
 		public int synMode = Lwjgl3Sync.LWJGL_GLFW;
+
+		/**
+		 * 是否使用文件日志保存数据(默认false,使用java.util.prefs,每次修改都会立即写盘).
+		 * 
+		 * 开启后数据改为保存在saveDir下的文件中,首次使用时会把Preferences中已有的同名数据复制过去(Preferences本身不变),
+		 * 之后的修改只写入文件,再关闭此项时不会看到开启期间保存的数据.
+		 */
+		public boolean journalSave = false;
+
+		/**
+		 * 日志保存数据的目录(为null时使用用户目录下的.loon)
+		 */
+		public String saveDir = null;
+
+		/**
+		 * 网络客户端是否使用NIO长度前缀分帧(4字节大端长度+数据),服务器需使用相同帧格式
+		 */
+		public boolean nioNetwork = false;
+
+		/**
+		 * 是否使用软件混音器播放声音(所有声音共用一条输出线路,音乐流式解码)
+		 */
+		public boolean softwareMixer = false;
+
+		/**
+		 * 软件混音器的最大同时发声数,超过时按优先级抢占
+		 */
+		public int mixerVoices = Lwjgl3AudioMixer.DEFAULT_VOICES;
 	}
 
 	private Lwjgl3Sync sync;
@@ -202,6 +232,8 @@ public class Lwjgl3Game extends LGame {
 
 	private final Lwjgl3Accelerometer accelerometer = new Lwjgl3Accelerometer();
 	private final Lwjgl3Save save;
+
+	private Lwjgl3AudioMixer mixer;
 	private final Lwjgl3ImplGraphics graphics;
 	private final Lwjgl3Input input;
 	private final Lwjgl3Clipboard clipboard;
@@ -361,7 +393,7 @@ public class Lwjgl3Game extends LGame {
 		}
 		GL.createCapabilities();
 
-		this.save = new Lwjgl3Save(log, config.appName);
+		this.save = createSave(config);
 		this.clipboard = new Lwjgl3Clipboard();
 
 		if (config.activationKey != -1) {
@@ -435,7 +467,10 @@ public class Lwjgl3Game extends LGame {
 	}
 
 	@Override
-	public Lwjgl3SocketClient networkClient() {
+	public NetworkClient networkClient() {
+		if (setting instanceof JavaSetting && ((JavaSetting) setting).nioNetwork) {
+			return new Lwjgl3NioClient();
+		}
 		return new Lwjgl3SocketClient();
 	}
 
@@ -454,6 +489,38 @@ public class Lwjgl3Game extends LGame {
 		return log;
 	}
 
+	protected Lwjgl3Save createSave(LSetting config) {
+		if (config instanceof JavaSetting && ((JavaSetting) config).journalSave) {
+			final String dir = ((JavaSetting) config).saveDir;
+			return new Lwjgl3JournalSave(log, config.appName,
+					dir == null ? Lwjgl3JournalSave.defaultDirectory() : new File(dir));
+		}
+		return new Lwjgl3Save(log, config.appName);
+	}
+
+	/**
+	 * 是否启用了软件混音器
+	 *
+	 * @return
+	 */
+	public boolean isSoftwareMixer() {
+		return setting instanceof JavaSetting && ((JavaSetting) setting).softwareMixer;
+	}
+
+	/**
+	 * 获得软件混音器,首次调用时创建并打开音频输出
+	 *
+	 * @return
+	 */
+	public synchronized Lwjgl3AudioMixer audioMixer() {
+		if (mixer == null) {
+			mixer = new Lwjgl3AudioMixer(
+					setting instanceof JavaSetting ? ((JavaSetting) setting).mixerVoices : Lwjgl3AudioMixer.DEFAULT_VOICES);
+			mixer.start();
+		}
+		return mixer;
+	}
+
 	@Override
 	public Lwjgl3Save save() {
 		return save;
@@ -562,6 +629,15 @@ public class Lwjgl3Game extends LGame {
 	@Override
 	public void shutdown() {
 		super.shutdown();
+		if (save instanceof LRelease) {
+			((LRelease) save).close();
+		}
+		synchronized (this) {
+			if (mixer != null) {
+				mixer.close();
+				mixer = null;
+			}
+		}
 		try {
 			pool.shutdown();
 			pool.awaitTermination(1, TimeUnit.SECONDS);
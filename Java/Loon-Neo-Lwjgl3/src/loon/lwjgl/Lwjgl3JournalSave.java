@@ -0,0 +1,545 @@
+/**
+ * Copyright 2008 - 2015 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.lwjgl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+import java.util.zip.CRC32;
+
+import loon.LRelease;
+import loon.Log;
+import loon.SaveBatchImpl;
+
+/**
+ * 以文件保存数据的Save实现(写入时只修改内存,由后台线程延迟写盘).
+ *
+ * 数据由快照文件(name.save)与追加日志(name.journal)组成.setItem与removeItem只修改内存并合并到待写入表中,
+ * 后台线程最多延迟flushDelay毫秒后把待写入表作为一条带校验的记录追加到日志并同步到磁盘,日志超过一定大小时重写快照并清空日志.
+ *
+ * 读取时先载入快照,再按顺序重放日志中校验通过的记录,遇到写了一半的记录(进程崩溃或断电)即停止并截掉该部分,因此恢复后的数据总是某次写盘时的完整状态.
+ * startBatch提交的修改会一次性进入待写入表,总是写在同一条记录中,要么全部生效要么全部不生效.
+ */
+class Lwjgl3JournalSave extends Lwjgl3Save implements LRelease {
+
+	private static final int SNAPSHOT_MAGIC = ('L') | ('S' << 8) | ('V' << 16) | ('1' << 24);
+
+	private static final int JOURNAL_MAGIC = ('L') | ('S' << 8) | ('J' << 16) | ('1' << 24);
+
+	private static final byte OP_SET = 1;
+
+	private static final byte OP_REMOVE = 2;
+
+	private static final long DEFAULT_FLUSH_DELAY = 500;
+
+	// 日志小于此值时不重写快照
+	private static final long MIN_COMPACT_SIZE = 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// 待写入表中表示删除的值
+	private static final String REMOVED = new String("<removed>");
+
+	private final Log log;
+
+	private final String storageName;
+
+	private final File snapshotFile;
+
+	private final File journalFile;
+
+	private final Object ioLock = new Object();
+
+	private final HashMap<String, String> values = new HashMap<String, String>();
+
+	private LinkedHashMap<String, String> dirty = new LinkedHashMap<String, String>();
+
+	private ScheduledExecutorService flusher;
+
+	private RandomAccessFile journal;
+
+	private long flushDelay = DEFAULT_FLUSH_DELAY;
+
+	private long snapshotSize;
+
+	private boolean loaded;
+
+	private boolean scheduled;
+
+	private boolean isPersisted;
+
+	private boolean closed;
+
+	Lwjgl3JournalSave(Log log, String storage, File dir) {
+		super(log, storage);
+		this.log = log;
+		this.storageName = storage;
+		this.snapshotFile = new File(dir, storage + ".save");
+		this.journalFile = new File(dir, storage + ".journal");
+	}
+
+	static File defaultDirectory() {
+		return new File(System.getProperty("user.home", "."), ".loon");
+	}
+
+	private synchronized void init() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		synchronized (ioLock) {
+			try {
+				final File dir = snapshotFile.getParentFile();
+				if (dir != null && !dir.exists()) {
+					dir.mkdirs();
+				}
+				final boolean exists = snapshotFile.exists() || journalFile.exists();
+				if (snapshotFile.exists()) {
+					readSnapshot();
+				}
+				openJournal();
+				isPersisted = exists;
+				if (!exists) {
+					importPreferences();
+				}
+			} catch (IOException e) {
+				log.warn("Couldn't open save file: " + e.getMessage());
+				isPersisted = false;
+			}
+		}
+	}
+
+	/**
+	 * 首次使用时载入旧版本保存在Preferences中的数据
+	 */
+	private void importPreferences() {
+		try {
+			Preferences root = Preferences.userRoot();
+			if (!root.nodeExists(storageName)) {
+				return;
+			}
+			Preferences prefs = root.node(storageName);
+			String[] keys = prefs.keys();
+			for (int i = 0; i < keys.length; i++) {
+				String v = prefs.get(keys[i], null);
+				if (v != null) {
+					values.put(keys[i], v);
+					dirty.put(keys[i], v);
+				}
+			}
+			if (!dirty.isEmpty()) {
+				schedule();
+			}
+		} catch (Exception e) {
+			log.warn("Couldn't import Preferences: " + e.getMessage());
+		}
+	}
+
+	private void readSnapshot() throws IOException {
+		final byte[] data = Files.readAllBytes(snapshotFile.toPath());
+		snapshotSize = data.length;
+		if (data.length < 12) {
+			log.warn("Broken save snapshot: " + snapshotFile);
+			return;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length - 4);
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			log.warn("Unknown save snapshot: " + snapshotFile);
+			return;
+		}
+		final int count = in.readInt();
+		final HashMap<String, String> result = new HashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			result.put(readString(in), readString(in));
+		}
+		if (in.readInt() != (int) crc.getValue()) {
+			log.warn("Broken save snapshot: " + snapshotFile);
+			return;
+		}
+		values.putAll(result);
+	}
+
+	private void openJournal() throws IOException {
+		journal = new RandomAccessFile(journalFile, "rw");
+		if (journal.length() < 4) {
+			journal.setLength(0);
+			journal.writeInt(JOURNAL_MAGIC);
+			journal.getFD().sync();
+			return;
+		}
+		if (journal.readInt() != JOURNAL_MAGIC) {
+			throw new IOException("Unknown save journal: " + journalFile);
+		}
+		// 重放日志,记录格式为 长度,校验值,内容
+		long valid = journal.getFilePointer();
+		final long length = journal.length();
+		for (;;) {
+			if (valid + 8 > length) {
+				break;
+			}
+			journal.seek(valid);
+			final int size = journal.readInt();
+			final int check = journal.readInt();
+			if (size < 0 || valid + 8 + size > length) {
+				break;
+			}
+			final byte[] payload = new byte[size];
+			journal.readFully(payload);
+			final CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int) crc.getValue() != check) {
+				break;
+			}
+			apply(payload);
+			valid += 8 + size;
+		}
+		if (valid < length) {
+			log.warn("Discarding incomplete save journal tail: " + (length - valid) + " bytes");
+			journal.setLength(valid);
+			journal.getFD().sync();
+		}
+		journal.seek(valid);
+	}
+
+	private void apply(byte[] payload) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			final byte op = in.readByte();
+			final String key = readString(in);
+			if (op == OP_SET) {
+				values.put(key, readString(in));
+			} else if (op == OP_REMOVE) {
+				values.remove(key);
+			} else {
+				throw new IOException("Unknown save journal operation " + op);
+			}
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int len = in.readInt();
+		if (len < 0) {
+			throw new EOFException();
+		}
+		final byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeString(DataOutputStream out, String v) throws IOException {
+		final byte[] bytes = v.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@Override
+	public void setItem(String key, String value) {
+		init();
+		synchronized (this) {
+			values.put(key, value);
+			dirty.put(key, value);
+			schedule();
+		}
+	}
+
+	@Override
+	public void removeItem(String key) {
+		init();
+		synchronized (this) {
+			values.remove(key);
+			dirty.put(key, REMOVED);
+			schedule();
+		}
+	}
+
+	@Override
+	public synchronized String getItem(String key) {
+		init();
+		return values.get(key);
+	}
+
+	@Override
+	public Batch startBatch() {
+		return new SaveBatchImpl(this) {
+
+			private final LinkedHashMap<String, String> _changes = new LinkedHashMap<String, String>();
+
+			@Override
+			protected void setImpl(String key, String data) {
+				_changes.put(key, data);
+			}
+
+			@Override
+			protected void removeImpl(String key) {
+				_changes.put(key, REMOVED);
+			}
+
+			@Override
+			protected void onAfterCommit() {
+				commitBatch(_changes);
+			}
+		};
+	}
+
+	private void commitBatch(Map<String, String> changes) {
+		init();
+		synchronized (this) {
+			for (Map.Entry<String, String> e : changes.entrySet()) {
+				final String value = e.getValue();
+				if (value == REMOVED) {
+					values.remove(e.getKey());
+				} else {
+					values.put(e.getKey(), value);
+				}
+				dirty.put(e.getKey(), value);
+			}
+			schedule();
+		}
+	}
+
+	@Override
+	public synchronized Iterable<String> keys() {
+		init();
+		return new ArrayList<String>(values.keySet());
+	}
+
+	@Override
+	public boolean isPersisted() {
+		return isPersisted;
+	}
+
+	/**
+	 * 设置修改后最多延迟多少毫秒写盘
+	 *
+	 * @param delay
+	 */
+	public synchronized void setFlushDelay(long delay) {
+		this.flushDelay = Math.max(0, delay);
+	}
+
+	public synchronized long getFlushDelay() {
+		return flushDelay;
+	}
+
+	public synchronized int getPendingCount() {
+		return dirty.size();
+	}
+
+	private void schedule() {
+		if (scheduled || closed || dirty.isEmpty()) {
+			return;
+		}
+		scheduled = true;
+		if (flusher == null) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "LoonSaveFlusher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread("LoonSaveShutdown") {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
+		flusher.schedule(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, flushDelay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 立即把待写入的修改写入磁盘(在调用的线程中执行)
+	 */
+	public void flush() {
+		synchronized (ioLock) {
+			final LinkedHashMap<String, String> changes;
+			HashMap<String, String> copy = null;
+			synchronized (this) {
+				scheduled = false;
+				if (journal == null || dirty.isEmpty()) {
+					return;
+				}
+				changes = dirty;
+				dirty = new LinkedHashMap<String, String>();
+				if (needCompact(changes.size())) {
+					copy = new HashMap<String, String>(values);
+				}
+			}
+			try {
+				appendJournal(changes);
+				if (copy != null) {
+					compact(copy);
+				}
+				isPersisted = true;
+			} catch (IOException e) {
+				log.warn("Error persisting save data: " + e.getMessage());
+				isPersisted = false;
+				// 写盘失败时把修改放回待写入表,下次再试
+				synchronized (this) {
+					changes.putAll(dirty);
+					dirty = changes;
+					schedule();
+				}
+			}
+		}
+	}
+
+	private boolean needCompact(int pending) {
+		try {
+			final long size = journal.length() + pending * 32L;
+			return size > MIN_COMPACT_SIZE && size > snapshotSize;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void appendJournal(LinkedHashMap<String, String> changes) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(changes.size());
+		for (Map.Entry<String, String> e : changes.entrySet()) {
+			final String value = e.getValue();
+			if (value == REMOVED) {
+				out.writeByte(OP_REMOVE);
+				writeString(out, e.getKey());
+			} else {
+				out.writeByte(OP_SET);
+				writeString(out, e.getKey());
+				writeString(out, value);
+			}
+		}
+		out.flush();
+		final byte[] payload = bytes.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+		final ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + 8);
+		final DataOutputStream rec = new DataOutputStream(record);
+		rec.writeInt(payload.length);
+		rec.writeInt((int) crc.getValue());
+		rec.write(payload);
+		rec.flush();
+		final long start = journal.length();
+		journal.seek(start);
+		try {
+			journal.write(record.toByteArray());
+			journal.getFD().sync();
+		} catch (IOException e) {
+			// 截掉写了一半的记录
+			journal.setLength(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * 把完整数据写成新快照(先写临时文件再替换),然后清空日志
+	 */
+	private void compact(HashMap<String, String> data) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(data.size());
+		for (Map.Entry<String, String> e : data.entrySet()) {
+			writeString(out, e.getKey());
+			writeString(out, e.getValue());
+		}
+		out.flush();
+		final CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		final File tmp = new File(snapshotFile.getPath() + ".tmp");
+		final FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			bytes.writeTo(fos);
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+		try {
+			Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		snapshotSize = bytes.size();
+		// 新快照已包含日志中的全部内容,此时崩溃重放旧日志也只会得到相同的结果
+		journal.setLength(4);
+		journal.seek(4);
+		journal.getFD().sync();
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		flush();
+		synchronized (ioLock) {
+			if (flusher != null) {
+				flusher.shutdown();
+			}
+			if (journal != null) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+				}
+				journal = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "JournalSave [" + snapshotFile + "]";
+	}
+}
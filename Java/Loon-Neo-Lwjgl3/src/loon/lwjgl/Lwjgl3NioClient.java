@@ -0,0 +1,697 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.lwjgl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import loon.LSystem;
+import loon.NetworkClient;
+import loon.NetworkMessageHandler;
+import loon.events.Updateable;
+
+/**
+ * 基于NIO Selector的NetworkClient.
+ *
+ * <pre>
+ * 帧格式 : int length(big-endian) + byte[length]
+ * </pre>
+ *
+ * 与Lwjgl3SocketClient按read()原样返回数据不同,此类按长度拆分出完整的消息,每条消息只分配一次byte[].
+ * 读写都在一个后台线程中完成,send只把数据追加到池化的直接缓冲区,同一帧内的多次send会合并为一次gathering write.
+ * 收到的消息(以及open,close,error回调)先进入队列,默认每帧在游戏线程中统一派发一次,不会在网络线程中修改游戏状态.
+ * 不使用游戏线程派发时(例如没有运行游戏),可以setAutoDispatch(false)后自行调用dispatch.
+ *
+ * 注意:对端也必须使用相同的长度前缀格式,暂不支持TLS.
+ */
+public class Lwjgl3NioClient implements NetworkClient {
+
+	public static final int HEADER_SIZE = 4;
+
+	// 池化直接缓冲区的大小,超过此大小的消息单独分配
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int MAX_POOLED = 32;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	// byte[]为收到的消息,Runnable为回调事件
+	private final ConcurrentLinkedQueue<Object> inbound = new ConcurrentLinkedQueue<Object>();
+
+	private final Object writeLock = new Object();
+
+	private final ArrayList<ByteBuffer> pendingWrites = new ArrayList<ByteBuffer>();
+
+	private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+	private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+	private final BlockingQueue<byte[]> responseQueue = new ArrayBlockingQueue<byte[]>(1);
+
+	private final AtomicLong framesSent = new AtomicLong();
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private volatile long framesReceived, bytesReceived, writeCalls;
+
+	private final Updateable dispatchTask = new Updateable() {
+
+		@Override
+		public void action(Object a) {
+			dispatch();
+		}
+	};
+
+	// 单个连接只在网络线程中使用的状态,重连时换成新的对象
+	private final static class Link {
+
+		final Selector selector;
+
+		final SocketChannel channel;
+
+		final ArrayList<ByteBuffer> writing = new ArrayList<ByteBuffer>();
+
+		ByteBuffer readBuffer;
+
+		ByteBuffer frameBuffer;
+
+		boolean eof;
+
+		Link(Selector sel, SocketChannel ch) {
+			this.selector = sel;
+			this.channel = ch;
+		}
+	}
+
+	private ByteBuffer writeTail;
+
+	private volatile Link link;
+
+	private volatile boolean connected;
+
+	private volatile boolean closing;
+
+	private volatile long lastReadTime;
+
+	private boolean timeoutFired;
+
+	private boolean autoDispatch = true;
+
+	private int maxFrameSize = 16 * 1024 * 1024;
+
+	private NetworkMessageHandler messageHandler;
+	private Runnable openCallback;
+	private Runnable closeCallback;
+	private Consumer<Exception> errorCallback;
+	private int reconnectInterval = 0;
+	private int timeout = 0;
+	private String lastHost;
+	private int lastPort;
+	private boolean useTLS = false;
+	private Timer heartbeatTimer;
+
+	@Override
+	public void connect(final String host, final int port) {
+		this.lastHost = host;
+		this.lastPort = port;
+		shutdown();
+		closing = false;
+		try {
+			final Selector sel = Selector.open();
+			final SocketChannel ch = SocketChannel.open();
+			ch.configureBlocking(false);
+			ch.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+			ch.connect(new InetSocketAddress(host, port));
+			ch.register(sel, SelectionKey.OP_CONNECT);
+			final Link l = new Link(sel, ch);
+			this.link = l;
+			this.lastReadTime = System.currentTimeMillis();
+			final Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					loop(l);
+				}
+			}, "Lwjgl3NioClient");
+			thread.setDaemon(true);
+			thread.start();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public void connect(String uri) {
+		try {
+			String[] parts = uri.split(":");
+			if (parts.length == 2) {
+				connect(parts[0], Integer.parseInt(parts[1]));
+			} else {
+				connect(uri, 80);
+			}
+		} catch (Exception e) {
+			fail(e);
+		}
+	}
+
+	private void loop(final Link l) {
+		final Selector sel = l.selector;
+		final SocketChannel ch = l.channel;
+		try {
+			while (link == l && !l.eof) {
+				sel.select(timeout > 0 ? timeout : 1000);
+				if (link != l) {
+					break;
+				}
+				final SelectionKey key = ch.keyFor(sel);
+				if (key == null || !key.isValid()) {
+					break;
+				}
+				if (connected && writeRequested.getAndSet(false)) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+				for (Iterator<SelectionKey> it = sel.selectedKeys().iterator(); it.hasNext();) {
+					final SelectionKey k = it.next();
+					it.remove();
+					if (!k.isValid()) {
+						continue;
+					}
+					if (k.isConnectable()) {
+						finishConnect(k, l);
+					}
+					if (k.isValid() && k.isReadable()) {
+						read(l);
+					}
+					if (k.isValid() && k.isWritable()) {
+						write(k, l);
+					}
+				}
+				checkTimeout();
+			}
+		} catch (Exception e) {
+			if (link == l) {
+				fail(e);
+			}
+		} finally {
+			// 不是被close或新的connect替换掉时,说明连接被对端关闭或出错
+			final boolean remote = link == l;
+			if (remote) {
+				link = null;
+				connected = false;
+			}
+			closeQuietly(sel, ch);
+			recycle(l, remote);
+			if (remote && !closing) {
+				post(new Runnable() {
+
+					@Override
+					public void run() {
+						if (closeCallback != null) {
+							closeCallback.run();
+						}
+					}
+				});
+				tryReconnect();
+			}
+		}
+	}
+
+	private void finishConnect(SelectionKey key, Link l) throws IOException {
+		if (!l.channel.finishConnect()) {
+			return;
+		}
+		connected = true;
+		lastReadTime = System.currentTimeMillis();
+		if (l.readBuffer == null) {
+			l.readBuffer = acquire();
+		}
+		int ops = SelectionKey.OP_READ;
+		synchronized (writeLock) {
+			if (!pendingWrites.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+		}
+		key.interestOps(ops);
+		post(new Runnable() {
+
+			@Override
+			public void run() {
+				if (openCallback != null) {
+					openCallback.run();
+				}
+			}
+		});
+	}
+
+	private void read(Link l) throws IOException {
+		final ByteBuffer buf = l.readBuffer;
+		final int n = l.channel.read(buf);
+		if (n < 0) {
+			// 对端关闭
+			l.eof = true;
+			return;
+		}
+		if (n == 0) {
+			return;
+		}
+		bytesReceived += n;
+		lastReadTime = System.currentTimeMillis();
+		timeoutFired = false;
+		buf.flip();
+		for (;;) {
+			if (l.frameBuffer != null) {
+				// 超过缓冲区大小的消息,分多次读满
+				final ByteBuffer frame = l.frameBuffer;
+				final int take = Math.min(frame.remaining(), buf.remaining());
+				final int limit = buf.limit();
+				buf.limit(buf.position() + take);
+				frame.put(buf);
+				buf.limit(limit);
+				if (frame.hasRemaining()) {
+					break;
+				}
+				received(frame.array());
+				l.frameBuffer = null;
+				continue;
+			}
+			if (buf.remaining() < HEADER_SIZE) {
+				break;
+			}
+			final int len = buf.getInt(buf.position());
+			if (len < 0 || len > maxFrameSize) {
+				throw new IOException("Invalid frame length " + len);
+			}
+			if (buf.remaining() - HEADER_SIZE >= len) {
+				buf.position(buf.position() + HEADER_SIZE);
+				final byte[] data = new byte[len];
+				buf.get(data);
+				received(data);
+			} else if (len + HEADER_SIZE > buf.capacity()) {
+				buf.position(buf.position() + HEADER_SIZE);
+				l.frameBuffer = ByteBuffer.allocate(len);
+			} else {
+				break;
+			}
+		}
+		buf.compact();
+	}
+
+	private void received(final byte[] data) {
+		framesReceived++;
+		if (!responseQueue.offer(data)) {
+			responseQueue.poll();
+			responseQueue.offer(data);
+		}
+		post(data);
+	}
+
+	private void write(SelectionKey key, Link l) throws IOException {
+		final ArrayList<ByteBuffer> writing = l.writing;
+		if (writing.isEmpty()) {
+			synchronized (writeLock) {
+				writing.addAll(pendingWrites);
+				pendingWrites.clear();
+				writeTail = null;
+			}
+			for (int i = 0; i < writing.size(); i++) {
+				writing.get(i).flip();
+			}
+		}
+		if (!writing.isEmpty()) {
+			final ByteBuffer[] buffers = writing.toArray(new ByteBuffer[writing.size()]);
+			l.channel.write(buffers);
+			writeCalls++;
+			int done = 0;
+			for (; done < buffers.length && !buffers[done].hasRemaining(); done++) {
+				recycle(buffers[done]);
+			}
+			writing.subList(0, done).clear();
+		}
+		if (writing.isEmpty()) {
+			synchronized (writeLock) {
+				if (pendingWrites.isEmpty()) {
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				}
+			}
+		}
+	}
+
+	private void checkTimeout() {
+		if (timeout <= 0 || !connected || timeoutFired) {
+			return;
+		}
+		if (System.currentTimeMillis() - lastReadTime >= timeout) {
+			timeoutFired = true;
+			post(new Runnable() {
+
+				@Override
+				public void run() {
+					if (messageHandler != null) {
+						messageHandler.handleTimeout();
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void send(byte[] data) {
+		if (data == null) {
+			return;
+		}
+		final Link l = link;
+		if (l == null) {
+			fail(new IOException("Not connected"));
+			return;
+		}
+		final int size = HEADER_SIZE + data.length;
+		synchronized (writeLock) {
+			if (size > BUFFER_SIZE) {
+				final ByteBuffer big = ByteBuffer.allocate(size);
+				big.putInt(data.length).put(data);
+				pendingWrites.add(big);
+				writeTail = null;
+			} else {
+				if (writeTail == null || writeTail.remaining() < size) {
+					writeTail = acquire();
+					pendingWrites.add(writeTail);
+				}
+				writeTail.putInt(data.length).put(data);
+			}
+		}
+		framesSent.incrementAndGet();
+		bytesSent.addAndGet(size);
+		// 合并同一时间的多次send,只唤醒一次网络线程
+		if (writeRequested.compareAndSet(false, true)) {
+			l.selector.wakeup();
+		}
+	}
+
+	@Override
+	public void sendAndWait(byte[] data, int timeoutMillis) {
+		responseQueue.clear();
+		send(data);
+		getSendData(timeoutMillis);
+	}
+
+	public byte[] getSendData(int timeoutMillis) {
+		try {
+			return responseQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+		}
+		return null;
+	}
+
+	/**
+	 * 派发队列中全部的消息与回调,返回派发的消息数量
+	 *
+	 * @return
+	 */
+	public int dispatch() {
+		dispatchScheduled.set(false);
+		int count = 0;
+		for (Object o; (o = inbound.poll()) != null;) {
+			if (o instanceof byte[]) {
+				count++;
+				if (messageHandler != null) {
+					messageHandler.handleMessage((byte[]) o);
+				}
+			} else {
+				((Runnable) o).run();
+			}
+		}
+		return count;
+	}
+
+	private void post(Object o) {
+		inbound.add(o);
+		if (autoDispatch && dispatchScheduled.compareAndSet(false, true)) {
+			// 交给游戏线程在下一帧统一派发,没有运行游戏时直接派发
+			if (!LSystem.load(dispatchTask)) {
+				dispatch();
+			}
+		}
+	}
+
+	private void fail(final Exception e) {
+		post(new Runnable() {
+
+			@Override
+			public void run() {
+				if (errorCallback != null) {
+					errorCallback.accept(e);
+				}
+				if (messageHandler != null) {
+					messageHandler.handleError(e);
+				}
+			}
+		});
+	}
+
+	private ByteBuffer acquire() {
+		final ByteBuffer buf = bufferPool.poll();
+		if (buf != null) {
+			buf.clear();
+			return buf;
+		}
+		return ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	private void recycle(ByteBuffer buf) {
+		if (buf.isDirect() && buf.capacity() == BUFFER_SIZE && bufferPool.size() < MAX_POOLED) {
+			buf.clear();
+			bufferPool.offer(buf);
+		}
+	}
+
+	private void recycle(Link l, boolean pending) {
+		for (int i = 0; i < l.writing.size(); i++) {
+			recycle(l.writing.get(i));
+		}
+		l.writing.clear();
+		if (pending) {
+			synchronized (writeLock) {
+				for (int i = 0; i < pendingWrites.size(); i++) {
+					recycle(pendingWrites.get(i));
+				}
+				pendingWrites.clear();
+				writeTail = null;
+			}
+		}
+		if (l.readBuffer != null) {
+			recycle(l.readBuffer);
+			l.readBuffer = null;
+		}
+		l.frameBuffer = null;
+	}
+
+	private void tryReconnect() {
+		if (lastHost != null && reconnectInterval > 0) {
+			new Timer(true).schedule(new TimerTask() {
+				@Override
+				public void run() {
+					if (!closing) {
+						connect(lastHost, lastPort);
+					}
+				}
+			}, reconnectInterval);
+		}
+	}
+
+	private static void closeQuietly(Selector sel, SocketChannel ch) {
+		try {
+			if (ch != null) {
+				ch.close();
+			}
+		} catch (IOException e) {
+		}
+		try {
+			if (sel != null) {
+				sel.close();
+			}
+		} catch (IOException e) {
+		}
+	}
+
+	private void shutdown() {
+		final Link l = link;
+		link = null;
+		connected = false;
+		if (l != null) {
+			l.selector.wakeup();
+		}
+		synchronized (writeLock) {
+			pendingWrites.clear();
+			writeTail = null;
+		}
+	}
+
+	@Override
+	public void onMessage(NetworkMessageHandler handler) {
+		this.messageHandler = handler;
+	}
+
+	@Override
+	public void onOpen(Runnable callback) {
+		this.openCallback = callback;
+	}
+
+	@Override
+	public void onClose(Runnable callback) {
+		this.closeCallback = callback;
+	}
+
+	@Override
+	public void onError(Consumer<Exception> callback) {
+		this.errorCallback = callback;
+	}
+
+	@Override
+	public void close() {
+		closing = true;
+		if (heartbeatTimer != null) {
+			heartbeatTimer.cancel();
+			heartbeatTimer = null;
+		}
+		shutdown();
+		if (closeCallback != null) {
+			closeCallback.run();
+		}
+	}
+
+	/**
+	 * 读取超时时间,超过此时间没有收到数据时调用NetworkMessageHandler.handleTimeout
+	 */
+	@Override
+	public void setTimeout(int millis) {
+		this.timeout = Math.max(0, millis);
+	}
+
+	@Override
+	public void enableHeartbeat(int intervalMillis, final byte[] pingData) {
+		if (heartbeatTimer != null) {
+			heartbeatTimer.cancel();
+		}
+		heartbeatTimer = new Timer(true);
+		heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
+			@Override
+			public void run() {
+				if (connected) {
+					send(pingData);
+				}
+			}
+		}, intervalMillis, intervalMillis);
+	}
+
+	@Override
+	public void enableAutoReconnect(int retryIntervalMillis) {
+		this.reconnectInterval = retryIntervalMillis;
+	}
+
+	@Override
+	public void enableTLS(boolean enabled) {
+		this.useTLS = enabled;
+	}
+
+	public boolean isUseTLS() {
+		return useTLS;
+	}
+
+	/**
+	 * 为true(默认)时每帧在游戏线程中派发一次,为false时需要自行调用dispatch
+	 *
+	 * @param a
+	 * @return
+	 */
+	public Lwjgl3NioClient setAutoDispatch(boolean a) {
+		this.autoDispatch = a;
+		return this;
+	}
+
+	public boolean isAutoDispatch() {
+		return autoDispatch;
+	}
+
+	public Lwjgl3NioClient setMaxFrameSize(int size) {
+		this.maxFrameSize = Math.max(1, size);
+		return this;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public int getPendingCount() {
+		return inbound.size();
+	}
+
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public long getFramesReceived() {
+		return framesReceived;
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * 实际调用channel.write的次数(与getFramesSent比较可以看出合并的效果)
+	 *
+	 * @return
+	 */
+	public long getWriteCalls() {
+		return writeCalls;
+	}
+
+	@Override
+	public NetworkMessageHandler getMessageHandler() {
+		return messageHandler;
+	}
+}
@@ -57,6 +57,19 @@ public class PBody {
 	
 	protected Object tag;
 
+	protected boolean sleeping;
+
+	protected boolean sleepingAllowed = true;
+
+	// 位置持续停留在休眠锚点附近的时间
+	protected float sleepTime;
+
+	// 开始计时时的位置与角度,抖动但没有实际移动的物体同样可以休眠
+	protected float sleepX, sleepY, sleepAng;
+
+	// 本次step中在世界物体数组里的位置,构建岛屿时使用
+	int index;
+
 	public PBody(float angle, boolean fixate, PShape[] ss) {
 		pos = new Vector2f();
 		vel = new Vector2f();
@@ -82,6 +95,7 @@ public class PBody {
 	}
 
 	public void addShape(PShape s) {
+		wakeUp();
 		if (w != null) {
 			w.addShape(s);
 		}
@@ -102,6 +116,7 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			wakeUp();
 			vel.x += fx * invM;
 			vel.y += fy * invM;
 			return;
@@ -112,6 +127,10 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			// 求解器每帧都会施加冲量,只唤醒不重置休眠计时
+			if (sleeping) {
+				wakeUp();
+			}
 			vel.x += fx * invM;
 			vel.y += fy * invM;
 			px -= pos.x;
@@ -125,6 +144,7 @@ public class PBody {
 		if (fix) {
 			return;
 		} else {
+			wakeUp();
 			angVel += torque * invI;
 			return;
 		}
@@ -239,6 +259,7 @@ public class PBody {
 	}
 
 	public void removeShape(PShape s) {
+		wakeUp();
 		for (int i = 0; i < numShapes; i++) {
 			if (shapes[i] != s) {
 				continue;
@@ -256,6 +277,7 @@ public class PBody {
 	}
 
 	public void setAngularVelocity(float v) {
+		wakeUp();
 		angVel = v;
 	}
 
@@ -263,6 +285,7 @@ public class PBody {
 		if (fix == fixate) {
 			return;
 		} else {
+			wakeUp();
 			fix = fixate;
 			calcMassData();
 			return;
@@ -270,9 +293,48 @@ public class PBody {
 	}
 
 	public void setVelocity(float vx, float vy) {
+		wakeUp();
 		vel.set(vx, vy);
 	}
 
+	/**
+	 * 物体是否处于休眠状态,休眠的物体不参与积分与接触求解,直到被碰撞或外力唤醒
+	 */
+	public boolean isSleeping() {
+		return sleeping;
+	}
+
+	/**
+	 * 唤醒物体,直接修改getPosition或getVelocity返回的向量后需要调用
+	 */
+	public void wakeUp() {
+		sleeping = false;
+		sleepTime = 0.0F;
+	}
+
+	void sleep() {
+		sleeping = true;
+		sleepTime = 0.0F;
+		vel.set(0.0F, 0.0F);
+		angVel = 0.0F;
+		correctVel.set(0.0F, 0.0F);
+		correctAngVel = 0.0F;
+	}
+
+	public boolean isSleepingAllowed() {
+		return sleepingAllowed;
+	}
+
+	/**
+	 * 是否允许物体休眠,由外部逐帧控制位置的物体应当关闭
+	 */
+	public void setSleepingAllowed(boolean allowed) {
+		this.sleepingAllowed = allowed;
+		if (!allowed) {
+			wakeUp();
+		}
+	}
+
 	void update() {
 		float twoPI = MathUtils.TWO_PI;
 		ang = (ang + twoPI) % twoPI;
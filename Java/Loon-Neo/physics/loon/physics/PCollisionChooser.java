@@ -17,6 +17,13 @@ package loon.physics;
 
 public class PCollisionChooser implements PCollider {
 
+	// 碰撞器不保存状态,复用实例以避免每个组合都重新创建
+	private final PPolygonPolygonCollider polygonCollider = new PPolygonPolygonCollider();
+
+	private final PCirclePolygonCollider circlePolygonCollider = new PCirclePolygonCollider();
+
+	private final PCircleCirlceCollider circleCollider = new PCircleCirlceCollider();
+
 	@Override
 	public int collide(PShape s1, PShape s2, PContact[] cs) {
 		PCollider collider = null;
@@ -27,10 +34,10 @@ public class PCollisionChooser implements PCollider {
 			switch (s2._type) {
 			case BOX_SHAPE:
 			case CONVEX_SHAPE:
-				collider = new PPolygonPolygonCollider();
+				collider = polygonCollider;
 				break;
 			case CIRCLE_SHAPE:
-				collider = new PCirclePolygonCollider();
+				collider = circlePolygonCollider;
 				flip = true;
 			case CONCAVE_SHAPE:
 			default:
@@ -41,10 +48,10 @@ public class PCollisionChooser implements PCollider {
 			switch (s2._type) {
 			case BOX_SHAPE:
 			case CONVEX_SHAPE:
-				collider = new PCirclePolygonCollider();
+				collider = circlePolygonCollider;
 				break;
 			case CIRCLE_SHAPE:
-				collider = new PCircleCirlceCollider();
+				collider = circleCollider;
 			case CONCAVE_SHAPE:
 			default:
 				break;
@@ -51,6 +51,11 @@ public class PDragJoint extends PJoint {
 		return bodyObject;
 	}
 
+	@Override
+	public PBody getBody1() {
+		return bodyObject;
+	}
+
 	public Vector2f getDragPoint() {
 		return dragPoint.cpy();
 	}
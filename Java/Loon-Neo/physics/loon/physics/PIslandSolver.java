@@ -0,0 +1,317 @@
+/**
+ * Copyright 2013 The Loon Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package loon.physics;
+
+import loon.Asyn;
+import loon.LSysException;
+import loon.utils.LongArray;
+import loon.utils.MathUtils;
+
+/**
+ * 按岛屿并行求解接触与关节.
+ *
+ * 不同岛屿之间没有共享的可移动物体(固定物体不接受冲量),因此各岛屿可以在Asyn.invokeAsyncAndWait的工作线程上同时求解,
+ * 岛屿内部仍按世界中的原有顺序执行,结果与单线程求解逐位一致.调用线程同样参与求解,等待工作线程结束由平台的Asyn实现,
+ * 不支持阻塞等待的平台只在调用线程上依次求解.
+ */
+final class PIslandSolver {
+
+	// 接触与关节总数低于该值时并行的调度开销大于收益
+	final static int MIN_PARALLEL_ITEMS = 64;
+
+	private static class Worker implements Runnable {
+
+		private final PIslandSolver solver;
+
+		Worker(PIslandSolver s) {
+			this.solver = s;
+		}
+
+		@Override
+		public void run() {
+			solver.work();
+		}
+	}
+
+	private final Asyn asyn;
+
+	private final int maxWorkers;
+
+	private final Worker worker;
+
+	private final Object lock = new Object();
+
+	// 岛屿划分,每个岛屿的物体,接触与关节连续存放,xxxStarts[k]到xxxStarts[k + 1]为岛屿k的范围
+	private int[] bodyIslands = new int[0];
+
+	private int[] islandIds = new int[0];
+
+	private int[] bodyStarts = new int[1];
+
+	private int[] solverStarts = new int[1];
+
+	private int[] jointStarts = new int[1];
+
+	private PBody[] islandBodies = new PBody[0];
+
+	private PSolver[] islandSolvers = new PSolver[0];
+
+	private PJoint[] islandJoints = new PJoint[0];
+
+	// 按岛屿大小从大到小派发,减少最后一个大岛屿拖慢整体的情况
+	private final LongArray order = new LongArray();
+
+	private int islandCount;
+
+	private float dt;
+
+	private int iterations;
+
+	// 以下字段由lock保护
+	private int nextIsland;
+
+	private int taskCount;
+
+	private Throwable error;
+
+	PIslandSolver(Asyn asyn, int workers) {
+		this.asyn = asyn;
+		this.maxWorkers = MathUtils.max(1, workers);
+		this.worker = new Worker(this);
+	}
+
+	boolean isAsyncSupported() {
+		return asyn != null && asyn.isAsyncSupported();
+	}
+
+	int getMaxWorkers() {
+		return maxWorkers;
+	}
+
+	/**
+	 * 划分岛屿并求解速度与位置修正
+	 *
+	 * @param roots 每个物体所在岛屿的根物体位置
+	 * @return 岛屿数量不足以并行时返回false,由调用者单线程求解
+	 */
+	boolean solve(PBody[] bodies, int numBodies, PSolver[] solvers, int numSolvers, PJoint[] joints, int numJoints,
+			int[] roots, float dt, int iterations) {
+		if (numSolvers + numJoints < MIN_PARALLEL_ITEMS || !isAsyncSupported()) {
+			return false;
+		}
+		if (!partition(bodies, numBodies, solvers, numSolvers, joints, numJoints, roots)) {
+			return false;
+		}
+		this.dt = dt;
+		this.iterations = iterations;
+		synchronized (lock) {
+			nextIsland = 0;
+			error = null;
+			taskCount = islandCount;
+		}
+		// 每个线程都领取岛屿直到没有剩余,全部线程返回时所有岛屿已求解完毕
+		asyn.invokeAsyncAndWait(worker, MathUtils.min(maxWorkers - 1, islandCount - 1));
+		Throwable cause;
+		synchronized (lock) {
+			cause = error;
+			taskCount = 0;
+			nextIsland = 0;
+			error = null;
+		}
+		if (cause != null) {
+			throw new LSysException("island solver failed : " + cause.getMessage(), cause);
+		}
+		return true;
+	}
+
+	private boolean partition(PBody[] bodies, int numBodies, PSolver[] solvers, int numSolvers, PJoint[] joints,
+			int numJoints, int[] roots) {
+		if (islandIds.length < numBodies) {
+			final int size = MathUtils.max(numBodies, islandIds.length * 2);
+			islandIds = new int[size];
+			bodyIslands = new int[size];
+			islandBodies = new PBody[size];
+		}
+		for (int i = 0; i < numBodies; i++) {
+			islandIds[i] = -1;
+		}
+		int count = 0;
+		for (int i = 0; i < numBodies; i++) {
+			final PBody b = bodies[i];
+			if (b.fix || b.sleeping) {
+				bodyIslands[i] = -1;
+				continue;
+			}
+			final int root = roots[i];
+			if (islandIds[root] == -1) {
+				islandIds[root] = count++;
+			}
+			bodyIslands[i] = islandIds[root];
+		}
+		if (count < 2) {
+			return false;
+		}
+		if (bodyStarts.length < count + 1) {
+			final int size = MathUtils.max(count + 1, bodyStarts.length * 2);
+			bodyStarts = new int[size];
+			solverStarts = new int[size];
+			jointStarts = new int[size];
+		}
+		for (int k = 0; k <= count; k++) {
+			bodyStarts[k] = 0;
+			solverStarts[k] = 0;
+			jointStarts[k] = 0;
+		}
+		// 计数后求前缀和,再按原有顺序依次放入
+		for (int i = 0; i < numBodies; i++) {
+			if (bodyIslands[i] != -1) {
+				bodyStarts[bodyIslands[i] + 1]++;
+			}
+		}
+		for (int i = 0; i < numSolvers; i++) {
+			solverStarts[islandOf(solvers[i].b1, solvers[i].b2, bodies, numBodies) + 1]++;
+		}
+		for (int i = 0; i < numJoints; i++) {
+			final int island = islandOf(joints[i].getBody1(), joints[i].getBody2(), bodies, numBodies);
+			if (island != -1) {
+				jointStarts[island + 1]++;
+			}
+		}
+		for (int k = 0; k < count; k++) {
+			bodyStarts[k + 1] += bodyStarts[k];
+			solverStarts[k + 1] += solverStarts[k];
+			jointStarts[k + 1] += jointStarts[k];
+		}
+		if (islandSolvers.length < numSolvers) {
+			islandSolvers = new PSolver[MathUtils.max(numSolvers, islandSolvers.length * 2)];
+		}
+		if (islandJoints.length < jointStarts[count]) {
+			islandJoints = new PJoint[MathUtils.max(jointStarts[count], islandJoints.length * 2)];
+		}
+		for (int i = 0; i < numBodies; i++) {
+			final int island = bodyIslands[i];
+			if (island != -1) {
+				islandBodies[bodyStarts[island]++] = bodies[i];
+			}
+		}
+		for (int i = 0; i < numSolvers; i++) {
+			final int island = islandOf(solvers[i].b1, solvers[i].b2, bodies, numBodies);
+			islandSolvers[solverStarts[island]++] = solvers[i];
+		}
+		for (int i = 0; i < numJoints; i++) {
+			final int island = islandOf(joints[i].getBody1(), joints[i].getBody2(), bodies, numBodies);
+			if (island != -1) {
+				islandJoints[jointStarts[island]++] = joints[i];
+			}
+		}
+		// 放入时起点已移动到下一个岛屿,整体右移一位还原
+		for (int k = count; k > 0; k--) {
+			bodyStarts[k] = bodyStarts[k - 1];
+			solverStarts[k] = solverStarts[k - 1];
+			jointStarts[k] = jointStarts[k - 1];
+		}
+		bodyStarts[0] = 0;
+		solverStarts[0] = 0;
+		jointStarts[0] = 0;
+		order.clear();
+		for (int k = 0; k < count; k++) {
+			final long size = (solverStarts[k + 1] - solverStarts[k]) + (jointStarts[k + 1] - jointStarts[k]);
+			order.add((size << 32) | k);
+		}
+		order.sort();
+		islandCount = count;
+		return true;
+	}
+
+	private int islandOf(PBody b1, PBody b2, PBody[] bodies, int numBodies) {
+		int island = islandOf(b1, bodies, numBodies);
+		if (island == -1) {
+			island = islandOf(b2, bodies, numBodies);
+		}
+		return island;
+	}
+
+	private int islandOf(PBody b, PBody[] bodies, int numBodies) {
+		if (b == null || b.index >= numBodies || bodies[b.index] != b) {
+			return -1;
+		}
+		return bodyIslands[b.index];
+	}
+
+	private void work() {
+		for (;;) {
+			int island;
+			synchronized (lock) {
+				if (nextIsland >= taskCount) {
+					return;
+				}
+				island = (int) order.get(taskCount - 1 - nextIsland);
+				nextIsland++;
+			}
+			try {
+				solveIsland(island);
+			} catch (Throwable cause) {
+				synchronized (lock) {
+					if (error == null) {
+						error = cause;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 与PPhysWorld单线程求解相同的步骤,只作用于一个岛屿
+	 */
+	private void solveIsland(int k) {
+		final int s0 = solverStarts[k], s1 = solverStarts[k + 1];
+		final int j0 = jointStarts[k], j1 = jointStarts[k + 1];
+		final int b0 = bodyStarts[k], b1 = bodyStarts[k + 1];
+		for (int i = s0; i < s1; i++) {
+			islandSolvers[i].preSolve();
+		}
+		for (int i = j0; i < j1; i++) {
+			islandJoints[i].preSolve(dt);
+		}
+		for (int j = 0; j < iterations; j++) {
+			for (int i = j0; i < j1; i++) {
+				islandJoints[i].solveVelocity(dt);
+			}
+			for (int i = s0; i < s1; i++) {
+				islandSolvers[i].solveVelocity();
+			}
+		}
+		for (int i = b0; i < b1; i++) {
+			final PBody b = islandBodies[i];
+			b.correctVel.x = b.vel.x * dt;
+			b.correctVel.y = b.vel.y * dt;
+			b.correctAngVel = b.angVel * dt;
+		}
+		for (int j = 0; j < iterations; j++) {
+			for (int i = j0; i < j1; i++) {
+				islandJoints[i].solvePosition();
+			}
+			for (int i = s0; i < s1; i++) {
+				islandSolvers[i].solvePosition();
+			}
+		}
+	}
+
+	int getIslandCount() {
+		return islandCount;
+	}
+
+}
@@ -29,6 +29,14 @@ public abstract class PJoint {
 		return type;
 	}
 
+	public PBody getBody1() {
+		return null;
+	}
+
+	public PBody getBody2() {
+		return null;
+	}
+
 	abstract void preSolve(float f);
 
 	public void remove() {
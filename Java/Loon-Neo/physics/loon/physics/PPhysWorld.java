@@ -15,7 +15,11 @@
  */
 package loon.physics;
 
+import loon.Asyn;
+import loon.LGame;
+import loon.LSystem;
 import loon.geom.Vector2f;
+import loon.utils.MathUtils;
 import loon.utils.TimeUtils;
 
 public class PPhysWorld {
@@ -36,6 +40,56 @@ public class PPhysWorld {
 	private PSolver[] solvers;
 	private long totalStepTime;
 
+	// 休眠判定:位移,转角阈值与持续时间
+	public final static float DEFAULT_LINEAR_SLEEP_TOLERANCE = 0.05F;
+
+	public final static float DEFAULT_ANGULAR_SLEEP_TOLERANCE = 2.0F * MathUtils.DEG_TO_RAD;
+
+	public final static float DEFAULT_TIME_TO_SLEEP = 0.5F;
+
+	private final PSolverMap solverMap = new PSolverMap();
+
+	// 窄检测输出的临时接触,由求解器复制引用后复用
+	private final PContact[] contactBuffer = new PContact[4];
+
+	private boolean sleepEnabled = true;
+
+	private float linearSleepTolerance = DEFAULT_LINEAR_SLEEP_TOLERANCE;
+
+	private float angularSleepTolerance = DEFAULT_ANGULAR_SLEEP_TOLERANCE;
+
+	private float timeToSleep = DEFAULT_TIME_TO_SLEEP;
+
+	// 岛屿构建使用的并查集与每个岛屿的统计
+	private int[] islandParents = new int[0];
+
+	private boolean[] islandAwakes = new boolean[0];
+
+	private float[] islandSleepTimes = new float[0];
+
+	private int islandCount;
+
+	private int sleepingBodyCount;
+
+	private long islandTime;
+
+	private int shapeIdCount;
+
+	public final static int DEFAULT_WORKERS = 4;
+
+	public final static int DEFAULT_MAX_SUB_STEPS = 8;
+
+	// 不为null时按岛屿并行求解
+	private PIslandSolver islandSolver;
+
+	private boolean deterministic;
+
+	private float fixedTimeStep;
+
+	private int maxSubSteps = DEFAULT_MAX_SUB_STEPS;
+
+	private float stepAccumulator;
+
 	public PPhysWorld() {
 		this.iterations = 10;
 		this.gravity = new Vector2f(0.0F, 9.80665F);
@@ -105,6 +159,7 @@ public class PPhysWorld {
 					shapes.length * 2);
 		}
 		shapes[numShapes] = s;
+		s._id = ++shapeIdCount;
 		s._sapAABB.set(sap, s, s._aabb);
 		numShapes++;
 	}
@@ -121,6 +176,9 @@ public class PPhysWorld {
 	private PCollisionChooser cc = new PCollisionChooser();
 
 	private void collide(long st) {
+		for (int i = 0; i < numSolvers; i++) {
+			solvers[i].rem = true;
+		}
 		PSortableObject obj[] = sap.sort();
 		if (sap.checkX) {
 			for (int i = 0; i < sap.numObject; i++)
@@ -161,38 +219,77 @@ public class PPhysWorld {
 
 		long en = nanoTime();
 		collisionDetectionTime = en - st;
-		for (int i = 0; i < numSolvers; i++) {
-			if (solvers[i].rem) {
-				removeSolver(i);
-				i--;
-			}
-		}
+		removeSolvers();
 	}
 	
 	private final static long nanoTime(){
 		return TimeUtils.nanoTime();
 	}
 
+	private static boolean isActive(PBody b) {
+		return b != null && !b.fix && !b.sleeping;
+	}
+
+	private static boolean isActive(PJoint j) {
+		PBody b1 = j.getBody1();
+		PBody b2 = j.getBody2();
+		return (b1 == null && b2 == null) || isActive(b1) || isActive(b2);
+	}
+
 	private void collisionShape(PShape s1, PShape s2, PCollisionChooser cc) {
-		PContact cs[] = new PContact[2];
-		int num = cc.collide(s1, s2, cs);
+		// 固定组合的先后顺序,排序结果变化时仍能找回同一个求解器
+		if (s1._id > s2._id) {
+			PShape t = s1;
+			s1 = s2;
+			s2 = t;
+		}
+		long key = PSolverMap.toKey(s1, s2);
+		PSolver solver = solverMap.get(key);
+		if (!isActive(s1._parent) && !isActive(s2._parent)) {
+			// 双方都静止时保留原有接触,唤醒后可以直接沿用
+			if (solver != null) {
+				solver.rem = false;
+			}
+			return;
+		}
+		int num = cc.collide(s1, s2, contactBuffer);
 		if (num == 0) {
 			return;
 		}
-		boolean found = false;
-		for (int f = 0; f < numSolvers; f++) {
-			if (s1 != solvers[f].s1 || s2 != solvers[f].s2) {
-				continue;
-			}
-			solvers[f].update(cs, num);
-			found = true;
-			break;
+		if (solver != null) {
+			solver.update(contactBuffer, num);
+		} else {
+			solver = new PSolver(s1, s2, contactBuffer, num);
+			solver.key = key;
+			solverMap.put(key, solver);
+			addSolver(solver);
 		}
+		for (int i = 0; i < num; i++) {
+			contactBuffer[i] = null;
+		}
+	}
 
-		if (!found) {
-			PSolver solver = new PSolver(s1, s2, cs, num);
-			addSolver(solver);
+	private void removeSolvers() {
+		int count = 0;
+		for (int i = 0; i < numSolvers; i++) {
+			PSolver solver = solvers[i];
+			if (solver.rem) {
+				solverMap.remove(solver.key);
+				// 失去支撑的休眠物体需要重新参与模拟
+				if (solver.b1.sleeping) {
+					solver.b1.wakeUp();
+				}
+				if (solver.b2.sleeping) {
+					solver.b2.wakeUp();
+				}
+			} else {
+				solvers[count++] = solver;
+			}
+		}
+		for (int i = count; i < numSolvers; i++) {
+			solvers[i] = null;
 		}
+		numSolvers = count;
 	}
 
 	public PBody[] getBodies() {
@@ -243,6 +340,140 @@ public class PPhysWorld {
 		return totalStepTime;
 	}
 
+	/**
+	 * 上一次step构建岛屿与判定休眠的耗时
+	 */
+	public long getIslandTime() {
+		return islandTime;
+	}
+
+	/**
+	 * 上一次step中相互接触(或以关节连接)的非固定物体组成的岛屿数量
+	 */
+	public int getIslandCount() {
+		return islandCount;
+	}
+
+	public int getSleepingBodyCount() {
+		return sleepingBodyCount;
+	}
+
+	public int getSolverCount() {
+		return numSolvers;
+	}
+
+	public boolean isSleepEnabled() {
+		return sleepEnabled;
+	}
+
+	public void setSleepEnabled(boolean enabled) {
+		if (sleepEnabled == enabled) {
+			return;
+		}
+		sleepEnabled = enabled;
+		if (!enabled) {
+			wakeUpAll();
+		}
+	}
+
+	public float getLinearSleepTolerance() {
+		return linearSleepTolerance;
+	}
+
+	public float getAngularSleepTolerance() {
+		return angularSleepTolerance;
+	}
+
+	public float getTimeToSleep() {
+		return timeToSleep;
+	}
+
+	/**
+	 * 设置休眠阈值,岛屿内所有物体在timeToSleep秒内的位移与转角都不超过阈值时整体休眠
+	 *
+	 * @param linear 位移
+	 * @param angular 转角(弧度)
+	 * @param timeToSleep 秒
+	 */
+	public void setSleepTolerance(float linear, float angular, float timeToSleep) {
+		this.linearSleepTolerance = linear;
+		this.angularSleepTolerance = angular;
+		this.timeToSleep = timeToSleep;
+	}
+
+	/**
+	 * 开启或关闭按岛屿并行求解,使用当前游戏的Asyn工作线程,不支持异步的平台上仍为单线程求解
+	 *
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel) {
+		if (parallel) {
+			final LGame game = LSystem.base();
+			setParallel(game != null ? game.asyn() : null, DEFAULT_WORKERS);
+		} else {
+			islandSolver = null;
+		}
+	}
+
+	/**
+	 * 使用指定的Asyn并行求解
+	 *
+	 * @param asyn
+	 * @param workers 同时求解的线程数(包含调用step的线程)
+	 */
+	public void setParallel(Asyn asyn, int workers) {
+		islandSolver = asyn == null ? null : new PIslandSolver(asyn, workers);
+	}
+
+	public boolean isParallel() {
+		return islandSolver != null && islandSolver.isAsyncSupported();
+	}
+
+	private boolean isParallelActive() {
+		return !deterministic && isParallel();
+	}
+
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+
+	/**
+	 * 严格确定模式:每步按形状组合固定接触求解顺序并且只在单线程求解,相同的初始状态与输入得到逐位相同的结果,
+	 * 用于回放与帧同步联网,一般与setFixedTimeStep一起使用
+	 *
+	 * @param deterministic
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	public float getFixedTimeStep() {
+		return fixedTimeStep;
+	}
+
+	public void setFixedTimeStep(float stepTime) {
+		setFixedTimeStep(stepTime, DEFAULT_MAX_SUB_STEPS);
+	}
+
+	/**
+	 * 设置固定步长,step传入的时间累积后按该步长推进,小于等于0时恢复为直接使用传入的时间
+	 *
+	 * @param stepTime
+	 * @param maxSubSteps 单次step最多推进的次数
+	 */
+	public void setFixedTimeStep(float stepTime, int maxSubSteps) {
+		this.fixedTimeStep = stepTime;
+		this.maxSubSteps = MathUtils.max(1, maxSubSteps);
+		this.stepAccumulator = 0F;
+	}
+
+	public void wakeUpAll() {
+		for (int i = 0; i < numBodies; i++) {
+			bodies[i].wakeUp();
+		}
+		sleepingBodyCount = 0;
+	}
+
 	private void removeBody(int index) {
 		for (int i = 0; i < bodies[index].numShapes; i++) {
 			PShape s = bodies[index].shapes[i];
@@ -285,16 +516,12 @@ public class PPhysWorld {
 		numShapes--;
 	}
 
-	private void removeSolver(int index) {
-		if (index != numSolvers - 1) {
-			System.arraycopy(solvers, index + 1, solvers, index, numSolvers
-					- index - 1);
-		}
-		numSolvers--;
-	}
-
 	public void setGravity(float gx, float gy) {
+		if (gravity.x == gx && gravity.y == gy) {
+			return;
+		}
 		gravity.set(gx, gy);
+		wakeUpAll();
 	}
 
 	public void setIterations(int iterations) {
@@ -303,17 +530,63 @@ public class PPhysWorld {
 
 	private void solve(float dt) {
 		long st = nanoTime();
+		// 只求解至少有一方处于活动状态的接触与关节,休眠岛屿不产生求解开销
+		int numActive = 0;
 		for (int i = 0; i < numSolvers; i++) {
+			PSolver solver = solvers[i];
+			if (isActive(solver.b1) || isActive(solver.b2)) {
+				solvers[i] = solvers[numActive];
+				solvers[numActive++] = solver;
+			}
+		}
+		if (deterministic) {
+			sortSolvers(numActive);
+		}
+		if (isParallelActive() && islandSolver.solve(bodies, numBodies, solvers, numActive, joints, numJoints,
+				islandParents, dt, iterations)) {
+			collisionSolveTime = nanoTime() - st;
+		} else {
+			solveSerial(dt, numActive, st);
+		}
+		st = nanoTime();
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (b.sleeping) {
+				continue;
+			}
+			if (b.fix) {
+				b.angVel = 0.0F;
+				b.vel.set(0.0F, 0.0F);
+			} else {
+				b.pos.x += b.correctVel.x;
+				b.pos.y += b.correctVel.y;
+				b.ang += b.correctAngVel;
+			}
+			b.update();
+		}
+
+		for (int i = 0; i < numJoints; i++) {
+			joints[i].update();
+		}
+		positionUpdateTime += nanoTime() - st;
+	}
+
+	private void solveSerial(float dt, int numActive, long st) {
+		for (int i = 0; i < numActive; i++) {
 			solvers[i].preSolve();
 		}
 		for (int i = 0; i < numJoints; i++) {
-			joints[i].preSolve(dt);
+			if (isActive(joints[i])) {
+				joints[i].preSolve(dt);
+			}
 		}
 		for (int j = 0; j < iterations; j++) {
 			for (int i = 0; i < numJoints; i++) {
-				joints[i].solveVelocity(dt);
+				if (isActive(joints[i])) {
+					joints[i].solveVelocity(dt);
+				}
 			}
-			for (int i = 0; i < numSolvers; i++) {
+			for (int i = 0; i < numActive; i++) {
 				solvers[i].solveVelocity();
 			}
 		}
@@ -322,7 +595,7 @@ public class PPhysWorld {
 		collisionSolveTime = en - st;
 		st = nanoTime();
 		for (int i = 0; i < numBodies; i++)
-			if (!bodies[i].fix) {
+			if (!bodies[i].fix && !bodies[i].sleeping) {
 				PBody b = bodies[i];
 				b.correctVel.x = b.vel.x * dt;
 				b.correctVel.y = b.vel.y * dt;
@@ -334,46 +607,218 @@ public class PPhysWorld {
 		st = nanoTime();
 		for (int j = 0; j < iterations; j++) {
 			for (int i = 0; i < numJoints; i++) {
-				joints[i].solvePosition();
+				if (isActive(joints[i])) {
+					joints[i].solvePosition();
+				}
 			}
-			for (int i = 0; i < numSolvers; i++) {
+			for (int i = 0; i < numActive; i++) {
 				solvers[i].solvePosition();
 			}
 		}
 
 		en = nanoTime();
 		collisionSolveTime += en - st;
-		st = nanoTime();
+	}
+
+	/**
+	 * 按形状编号组合排序,求解顺序只取决于当前状态,与接触产生的先后无关
+	 */
+	private void sortSolvers(int count) {
+		for (int i = 1; i < count; i++) {
+			PSolver solver = solvers[i];
+			long key = solver.key;
+			int j = i - 1;
+			for (; j > -1 && solvers[j].key > key; j--) {
+				solvers[j + 1] = solvers[j];
+			}
+			solvers[j + 1] = solver;
+		}
+	}
+
+	private int findIsland(int i) {
+		int[] parents = islandParents;
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	private void unionIsland(PBody b1, PBody b2) {
+		if (b1 == null || b2 == null || b1.fix || b2.fix || !isIndexed(b1) || !isIndexed(b2)) {
+			return;
+		}
+		int r1 = findIsland(b1.index);
+		int r2 = findIsland(b2.index);
+		if (r1 != r2) {
+			islandParents[r1] = r2;
+		}
+	}
+
+	private boolean isIndexed(PBody b) {
+		return b.index < numBodies && bodies[b.index] == b;
+	}
+
+	/**
+	 * 以接触和关节把非固定物体连接为岛屿(固定物体不传递连接),岛屿中只要有一个物体活动,整个岛屿都被唤醒
+	 */
+	private void buildIslands() {
+		if (!sleepEnabled && !isParallelActive()) {
+			islandCount = 0;
+			return;
+		}
+		long st = nanoTime();
+		if (islandParents.length < numBodies) {
+			int size = MathUtils.max(numBodies, islandParents.length * 2);
+			islandParents = new int[size];
+			islandAwakes = new boolean[size];
+			islandSleepTimes = new float[size];
+		}
+		for (int i = 0; i < numBodies; i++) {
+			islandParents[i] = i;
+			islandAwakes[i] = false;
+		}
+		for (int i = 0; i < numSolvers; i++) {
+			unionIsland(solvers[i].b1, solvers[i].b2);
+		}
+		for (int i = 0; i < numJoints; i++) {
+			unionIsland(joints[i].getBody1(), joints[i].getBody2());
+		}
+		int count = 0;
 		for (int i = 0; i < numBodies; i++) {
 			PBody b = bodies[i];
 			if (b.fix) {
-				b.angVel = 0.0F;
-				b.vel.set(0.0F, 0.0F);
-			} else {
-				b.pos.x += b.correctVel.x;
-				b.pos.y += b.correctVel.y;
-				b.ang += b.correctAngVel;
+				continue;
+			}
+			int root = findIsland(i);
+			// 压缩为直接指向根,并行求解时作为岛屿编号使用
+			islandParents[i] = root;
+			if (root == i) {
+				count++;
+			}
+			if (!b.sleeping) {
+				islandAwakes[root] = true;
 			}
-			b.update();
 		}
-
+		// 拖拽中的物体保持活动
 		for (int i = 0; i < numJoints; i++) {
-			joints[i].update();
+			if (joints[i].type == PJointType.DRAG_JOINT) {
+				PBody b = joints[i].getBody1();
+				if (b != null && !b.fix && isIndexed(b)) {
+					islandAwakes[findIsland(b.index)] = true;
+				}
+			}
 		}
-		en = nanoTime();
-		positionUpdateTime += en - st;
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (b.sleeping && islandAwakes[findIsland(i)]) {
+				b.wakeUp();
+				b.update();
+			}
+		}
+		islandCount = count;
+		islandTime = nanoTime() - st;
 	}
 
+	/**
+	 * 岛屿内所有物体的静止时间都达到阈值时,整个岛屿一起休眠
+	 */
+	private void updateSleep(float dt) {
+		if (!sleepEnabled) {
+			sleepingBodyCount = 0;
+			return;
+		}
+		long st = nanoTime();
+		final float linTol2 = linearSleepTolerance * linearSleepTolerance;
+		for (int i = 0; i < numBodies; i++) {
+			islandSleepTimes[i] = Float.MAX_VALUE;
+		}
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (b.fix || b.sleeping) {
+				continue;
+			}
+			// 接触求解会在静止物体上留下来回抖动的速度,因此以一段时间内的实际位移判定
+			float dx = b.pos.x - b.sleepX;
+			float dy = b.pos.y - b.sleepY;
+			float da = b.ang - b.sleepAng;
+			if (da > MathUtils.PI) {
+				da -= MathUtils.TWO_PI;
+			} else if (da < -MathUtils.PI) {
+				da += MathUtils.TWO_PI;
+			}
+			if (!b.sleepingAllowed) {
+				b.sleepTime = 0.0F;
+			} else if (b.sleepTime == 0.0F || dx * dx + dy * dy > linTol2
+					|| MathUtils.abs(da) > angularSleepTolerance) {
+				b.sleepX = b.pos.x;
+				b.sleepY = b.pos.y;
+				b.sleepAng = b.ang;
+				b.sleepTime = dt;
+			} else {
+				b.sleepTime += dt;
+			}
+			int root = findIsland(i);
+			if (b.sleepTime < islandSleepTimes[root]) {
+				islandSleepTimes[root] = b.sleepTime;
+			}
+		}
+		int count = 0;
+		for (int i = 0; i < numBodies; i++) {
+			PBody b = bodies[i];
+			if (b.fix) {
+				continue;
+			}
+			if (!b.sleeping && islandSleepTimes[findIsland(i)] >= timeToSleep) {
+				b.sleep();
+			}
+			if (b.sleeping) {
+				count++;
+			}
+		}
+		sleepingBodyCount = count;
+		islandTime += nanoTime() - st;
+	}
+
+	/**
+	 * 推进物理世界,设置了固定步长时把dt累积后按固定步长分多次推进
+	 *
+	 * @param dt
+	 */
 	public void step(float dt) {
+		if (fixedTimeStep <= 0F) {
+			stepOnce(dt);
+			return;
+		}
+		long st = nanoTime();
+		stepAccumulator += dt;
+		int count = 0;
+		while (stepAccumulator >= fixedTimeStep && count < maxSubSteps) {
+			stepOnce(fixedTimeStep);
+			stepAccumulator -= fixedTimeStep;
+			count++;
+		}
+		if (count == maxSubSteps && stepAccumulator >= fixedTimeStep) {
+			// 跟不上时丢弃积压的时间,避免越积越多
+			stepAccumulator = 0F;
+		}
+		totalStepTime = nanoTime() - st;
+	}
+
+	private void stepOnce(float dt) {
 		long st = nanoTime();
 		for (int i = 0; i < numBodies; i++)
 			if (bodies[i].rem) {
 				removeBody(i);
 				i--;
 			} else {
-				bodies[i].update();
-				if (!bodies[i].fix) {
-					PBody b = bodies[i];
+				PBody b = bodies[i];
+				b.index = i;
+				if (b.sleeping) {
+					continue;
+				}
+				b.update();
+				if (!b.fix) {
 					b.vel.x += gravity.x * dt;
 					b.vel.y += gravity.y * dt;
 				}
@@ -396,7 +841,9 @@ public class PPhysWorld {
 		long en = nanoTime();
 		positionUpdateTime = en - st;
 		collide(en);
+		buildIslands();
 		solve(dt);
+		updateSleep(dt);
 		long totalEn = nanoTime();
 		totalStepTime = totalEn - st;
 	}
@@ -43,6 +43,9 @@ public abstract class PShape {
 	protected Vector2f _pos;
 	
 	protected boolean _rem;
+
+	// 加入世界时分配的编号,用于组合接触求解器的键
+	protected int _id;
 	
 	protected float _rest;
 	
@@ -30,6 +30,9 @@ public class PSolver {
 	
 	protected boolean rem;
 
+	// 在PSolverMap中的键
+	protected long key;
+
 	protected PShape s1;
 	protected PShape s2;
 
@@ -40,10 +43,10 @@ public class PSolver {
 		b2 = s2._parent;
 		fric = MathUtils.sqrt(s1._fric * s2._fric);
 		rest = MathUtils.sqrt(s1._rest * s2._rest);
-		cs = contacts;
+		cs = new PContact[MathUtils.max(2, num)];
 		numContacts = num;
 		for (int i = 0; i < numContacts; i++) {
-			PContact c = cs[i];
+			PContact c = cs[i] = contacts[i];
 			c.rel1 = c.pos.sub(b1.pos);
 			c.rel2 = c.pos.sub(b2.pos);
 			c.massN = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
@@ -151,14 +154,10 @@ public class PSolver {
 	}
 
 	void update(PContact contacts[], int num) {
-		PContact old[] = cs;
-		int oldNumContacts = numContacts;
 		fric = MathUtils.sqrt(s1._fric * s2._fric);
 		rest = MathUtils.sqrt(s1._rest * s2._rest);
-		cs = contacts;
-		numContacts = num;
-		for (int i = 0; i < numContacts; i++) {
-			PContact c = cs[i];
+		for (int j = 0; j < num; j++) {
+			PContact c = contacts[j];
 			c.rel1 = c.pos.sub(b1.pos);
 			c.rel2 = c.pos.sub(b2.pos);
 			c.massN = PTransformer.calcEffectiveMass(b1, b2, c.rel1, c.rel2,
@@ -170,18 +169,25 @@ public class PSolver {
 			c.localRel2.set(c.rel2.x, c.rel2.y);
 			b1.mAng.transpose().mulEqual(c.localRel1);
 			b2.mAng.transpose().mulEqual(c.localRel2);
-		}
-
-		for (int i = 0; i < oldNumContacts; i++) {
-			for (int j = 0; j < numContacts; j++)
-				if (old[i].data.id == cs[j].data.id
-						&& old[i].data.flip == cs[j].data.flip) {
-					cs[j].norI = old[i].norI;
-					cs[j].tanI = old[i].tanI;
+			// 同一特征点的接触沿用上一帧的冲量(warm starting)
+			for (int i = 0; i < numContacts; i++) {
+				PContact old = cs[i];
+				if (old.data.id == c.data.id && old.data.flip == c.data.flip) {
+					c.norI = old.norI;
+					c.tanI = old.tanI;
 				}
-
+			}
 		}
-
+		if (num > cs.length) {
+			cs = new PContact[num];
+		}
+		for (int j = 0; j < num; j++) {
+			cs[j] = contacts[j];
+		}
+		for (int j = num; j < numContacts; j++) {
+			cs[j] = null;
+		}
+		numContacts = num;
 		rem = false;
 	}
 
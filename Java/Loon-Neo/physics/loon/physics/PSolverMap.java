@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 The Loon Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package loon.physics;
+
+/**
+ * 以形状组合为键的接触求解器缓存(开放寻址),用于在帧之间找回同一组合的求解器
+ */
+final class PSolverMap {
+
+	private long[] keys;
+
+	private PSolver[] values;
+
+	private int mask;
+
+	private int size;
+
+	PSolverMap() {
+		this(64);
+	}
+
+	PSolverMap(int capacity) {
+		int cap = 16;
+		while (cap < capacity) {
+			cap <<= 1;
+		}
+		keys = new long[cap];
+		values = new PSolver[cap];
+		mask = cap - 1;
+	}
+
+	/**
+	 * 两个形状编号组成的键,调用前需保证s1编号小于s2
+	 */
+	static long toKey(PShape s1, PShape s2) {
+		return ((long) s1._id << 32) | (s2._id & 0xFFFFFFFFL);
+	}
+
+	private int place(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	PSolver get(long key) {
+		for (int i = place(key);; i = (i + 1) & mask) {
+			final PSolver v = values[i];
+			if (v == null) {
+				return null;
+			}
+			if (keys[i] == key) {
+				return v;
+			}
+		}
+	}
+
+	void put(long key, PSolver solver) {
+		if ((size + 1) << 1 > keys.length) {
+			resize(keys.length << 1);
+		}
+		for (int i = place(key);; i = (i + 1) & mask) {
+			if (values[i] == null) {
+				keys[i] = key;
+				values[i] = solver;
+				size++;
+				return;
+			}
+			if (keys[i] == key) {
+				values[i] = solver;
+				return;
+			}
+		}
+	}
+
+	PSolver remove(long key) {
+		int i = place(key);
+		for (;; i = (i + 1) & mask) {
+			if (values[i] == null) {
+				return null;
+			}
+			if (keys[i] == key) {
+				break;
+			}
+		}
+		final PSolver old = values[i];
+		// 后移删除,保持探测链连续
+		int last = i;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			final int p = place(keys[j]);
+			if ((last <= j) ? (last < p && p <= j) : (last < p || p <= j)) {
+				continue;
+			}
+			keys[last] = keys[j];
+			values[last] = values[j];
+			last = j;
+		}
+		values[last] = null;
+		keys[last] = 0L;
+		size--;
+		return old;
+	}
+
+	private void resize(int cap) {
+		final long[] oldKeys = keys;
+		final PSolver[] oldValues = values;
+		keys = new long[cap];
+		values = new PSolver[cap];
+		mask = cap - 1;
+		size = 0;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = null;
+			keys[i] = 0L;
+		}
+		size = 0;
+	}
+
+}
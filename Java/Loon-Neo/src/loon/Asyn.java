@@ -171,4 +171,16 @@ public abstract class Asyn {
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * 在workers个异步线程与调用线程上同时执行action,全部执行完毕后才返回.
+	 * 
+	 * 默认只在调用线程执行一次(action需要自行领取任务,单独执行也能完成全部工作),支持阻塞等待的平台覆盖此方法.
+	 * 
+	 * @param action
+	 * @param workers
+	 */
+	public void invokeAsyncAndWait(Runnable action, int workers) {
+		action.run();
+	}
+
 }
@@ -22,6 +22,7 @@ package loon;
 
 import loon.LTexture.Format;
 import loon.action.sprite.Sprites;
+import loon.canvas.Image;
 import loon.component.Desktop;
 import loon.events.EventActionFuture;
 import loon.events.InputMake;
@@ -157,7 +158,7 @@ public abstract class LGame implements LRelease {
 	private final ObjectMap<String, Mesh> _texture_mesh_pools;
 
 	// 纹理惰性加载缓存
-	private final ObjectMap<String, LTexture> _texture_lazys;
+	private final LTextureRegistry _texture_lazys;
 
 	// 全部纹理数据
 	private final TArray<LTexture> _texture_all_list;
@@ -197,7 +198,8 @@ public abstract class LGame implements LRelease {
 		this._framebuffer_all_pools = new TArray<GLFrameBuffer>(DEF_TEXTURE_CACHE_SIZE);
 		this._texture_batch_pools = new IntMap<LTextureBatch>(DEF_TEXTURE_CACHE_SIZE);
 		this._texture_mesh_pools = new ObjectMap<String, Mesh>(DEF_TEXTURE_CACHE_SIZE);
-		this._texture_lazys = new ObjectMap<String, LTexture>(DEF_TEXTURE_CACHE_SIZE);
+		this._texture_lazys = new LTextureRegistry(DEF_TEXTURE_CACHE_SIZE,
+				config == null ? 0 : config.textureCacheBudget);
 		this._texture_all_list = new TArray<LTexture>(DEF_TEXTURE_CACHE_SIZE);
 		this._sprites_pools = new TArray<Sprites>(DEF_OTHER_CACHE_SIZE);
 		this._desktop_pools = new TArray<Desktop>(DEF_OTHER_CACHE_SIZE);
@@ -511,6 +513,8 @@ public abstract class LGame implements LRelease {
 	protected void emitFrame() {
 		try {
 			frame.emit(this);
+			// 在GL线程释放超出显存预算被淘汰的纹理
+			_texture_lazys.update();
 		} catch (Throwable cause) {
 			log().error("Frame tick exception :", cause);
 			if (displayImpl != null) {
@@ -1024,30 +1028,51 @@ public abstract class LGame implements LRelease {
 	 * @param config
 	 * @return
 	 */
-	public synchronized LTexture loadTexture(final String fileName, final Format config) {
+	public LTexture loadTexture(final String fileName, final Format config) {
 		if (StringUtils.isEmpty(fileName)) {
 			return null;
 		}
-		final String key = fileName.trim().toLowerCase();
-		final ObjectMap<String, LTexture> texs = new ObjectMap<String, LTexture>(_texture_lazys);
-		LTexture texture = texs.get(key);
-		if (texture == null) {
-			for (LTexture tex : texs.values()) {
-				if (tex.tmpLazy != null && tex.tmpLazy.toLowerCase().equals(key.toLowerCase())) {
-					texture = tex;
-					break;
-				}
-			}
+		LTexture texture = _texture_lazys.acquire(fileName);
+		if (texture != null) {
+			return texture;
 		}
-		if (texture != null && !texture.disposed()) {
-			texture._referenceCount++;
+		return putTextureCache(fileName, BaseIO.loadImage(fileName), config);
+	}
+
+	/**
+	 * 使用已经解码好的图片加载一个指定文件名纹理(存在缓存时会得到缓存图片,并释放传入的图片)
+	 * 
+	 * @param fileName
+	 * @param image
+	 * @param config
+	 * @return
+	 */
+	public LTexture loadTexture(final String fileName, final Image image, final Format config) {
+		if (StringUtils.isEmpty(fileName)) {
+			return null;
+		}
+		if (image == null) {
+			return loadTexture(fileName, config);
+		}
+		LTexture texture = _texture_lazys.acquire(fileName);
+		if (texture != null) {
+			image.close();
 			return texture;
 		}
-		texture = BaseIO.loadImage(fileName).onHaveToClose(true).createTexture(config);
+		return putTextureCache(fileName, image, config);
+	}
+
+	private LTexture putTextureCache(final String fileName, final Image image, final Format config) {
+		LTexture texture = image.onHaveToClose(true).createTexture(config);
 		texture.tmpLazy = fileName;
-		_texture_lazys.put(key, texture);
-		log().debug("Texture : " + fileName + " Loaded");
-		return texture;
+		final LTexture result = _texture_lazys.put(fileName, config, texture);
+		if (result != texture) {
+			// 其它线程已经加载了同一纹理
+			texture.close(true);
+		} else {
+			log().debug("Texture : " + fileName + " Loaded");
+		}
+		return result;
 	}
 
 	/**
@@ -1070,20 +1095,43 @@ public abstract class LGame implements LRelease {
 		if (tex == null) {
 			return null;
 		}
-		final String key = tex.src().trim().toLowerCase();
-		LTexture tex2d = _texture_lazys.remove(key);
-		if (tex2d == null) {
-			tex2d = _texture_lazys.remove(tex.tmpLazy);
-		}
-		return tex2d;
+		return _texture_lazys.remove(tex);
+	}
+
+	/**
+	 * 引用归零的缓存纹理在设置了显存预算时继续驻留,直到超出预算才被淘汰
+	 * 
+	 * @param tex
+	 * @return
+	 */
+	protected boolean retainTexture(final LTexture tex) {
+		return _texture_lazys.retain(tex);
+	}
+
+	/**
+	 * 获得从路径加载的纹理缓存,可查询命中,淘汰以及驻留显存等数据
+	 * 
+	 * @return
+	 */
+	public LTextureRegistry getTextureRegistry() {
+		return _texture_lazys;
+	}
+
+	/**
+	 * 设置纹理缓存的显存预算(字节),为0时不限制
+	 * 
+	 * @param budget
+	 */
+	public void setTextureCacheBudget(final long budget) {
+		_texture_lazys.setBudget(budget);
 	}
 
 	/**
 	 * 删除所有从路径加载的纹理图片并强制销毁纹理(但是手动生成的纹理此处不销毁,仅删除)
 	 */
 	public void destroySourceAllCache() {
-		if (_texture_lazys.size > 0) {
-			final TArray<LTexture> textures = new TArray<LTexture>(_texture_lazys.values());
+		final TArray<LTexture> textures = _texture_lazys.textures();
+		if (textures.size > 0) {
 			for (int i = 0; i < textures.size; i++) {
 				LTexture tex2d = textures.get(i);
 				if (tex2d != null && !tex2d.isClosed() && tex2d.getSource() != null
@@ -1101,8 +1149,8 @@ public abstract class LGame implements LRelease {
 	 * 强制销毁全部缓存的纹理图片(所有都不放过)
 	 */
 	public void destroyAllCache() {
-		if (_texture_lazys.size > 0) {
-			final TArray<LTexture> textures = new TArray<LTexture>(_texture_lazys.values());
+		final TArray<LTexture> textures = _texture_lazys.textures();
+		if (textures.size > 0) {
 			for (int i = 0; i < textures.size; i++) {
 				LTexture tex2d = textures.get(i);
 				if (tex2d != null && !tex2d.isClosed()) {
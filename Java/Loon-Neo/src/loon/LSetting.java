@@ -280,6 +280,16 @@ public class LSetting {
 	 */
 	public boolean saveTexturePixels = false;
 
+	/**
+	 * 路径加载纹理缓存的显存预算(字节),为0时不限制.设置后引用归零的纹理会继续驻留,超出预算时按最久未使用的顺序淘汰
+	 */
+	public long textureCacheBudget = 0;
+
+	/**
+	 * 默认批处理同时绑定的纹理数量,大于1时不同图集交错绘制也能合并为一次提交(最大为TrilateralBatch.MAX_TEXTURE_SLOTS)
+	 */
+	public int textureSlots = 1;
+
 	/**
 	 * 此项为true时,drag与move事件全游戏无效
 	 */
@@ -325,6 +335,8 @@ public class LSetting {
 		this.activationKey = setting.activationKey;
 		this.convertImagesOnLoad = setting.convertImagesOnLoad;
 		this.saveTexturePixels = setting.saveTexturePixels;
+		this.textureCacheBudget = setting.textureCacheBudget;
+		this.textureSlots = setting.textureSlots;
 		this.appName = setting.appName;
 		this.logoPath = setting.logoPath;
 		this.fontName = setting.fontName;
@@ -29,6 +29,7 @@ import loon.action.avg.drama.Command;
 import loon.action.collision.CollisionFilter;
 import loon.action.sprite.Sprites;
 import loon.action.sprite.effect.LightningEffect;
+import loon.canvas.Image;
 import loon.canvas.LColorList;
 import loon.canvas.LColorPool;
 import loon.canvas.LGradation;
@@ -58,6 +59,7 @@ import loon.opengl.ShaderSource;
 import loon.utils.MathUtils;
 import loon.utils.NumberUtils;
 import loon.utils.Scale;
+import loon.utils.StrBuilder;
 import loon.utils.TArray;
 import loon.utils.TempVars;
 import loon.utils.cache.Pools;
@@ -301,6 +303,62 @@ public final class LSystem {
 		}
 	}
 
+	public static final String getGLExMultiTextureVertexShader() {
+		ShaderCmd cmd = ShaderCmd.getCmd("glex_multi_vertex");
+		if (cmd.isCache()) {
+			return cmd.getShader();
+		} else {
+			cmd.putAttributeVec4(ShaderProgram.POSITION_ATTRIBUTE);
+			cmd.putAttributeVec4(ShaderProgram.COLOR_ATTRIBUTE);
+			cmd.putAttributeVec2(ShaderProgram.TEXCOORD_ATTRIBUTE + "0");
+			cmd.putAttributeFloat(ShaderProgram.TEXINDEX_ATTRIBUTE);
+			cmd.putUniformMat4("u_projTrans");
+			cmd.putVaryingVec4("v_color");
+			cmd.putVaryingVec2("v_texCoords");
+			cmd.putVaringFloat("v_texIndex");
+			cmd.putMainCmd("   v_color = " + ShaderProgram.COLOR_ATTRIBUTE + ";\n"
+					+ "   v_color.a = v_color.a * (255.0/254.0);\n" + "   v_texCoords = "
+					+ ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" + "   v_texIndex = " + ShaderProgram.TEXINDEX_ATTRIBUTE
+					+ ";\n" + "   gl_Position =  u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";");
+			return cmd.getShader();
+		}
+	}
+
+	/**
+	 * 多纹理批处理使用的片段着色器,GLSL ES 1.0不能以变量索引sampler数组,所以逐个比较纹理槽
+	 * 
+	 * @param slots
+	 * @return
+	 */
+	public static final String getGLExMultiTextureFragmentShader(int slots) {
+		ShaderCmd cmd = ShaderCmd.getCmd("glex_multi_fragment" + slots);
+		if (cmd.isCache()) {
+			return cmd.getShader();
+		} else {
+			cmd.putVarying("LOWP vec4", "v_color");
+			cmd.putVaryingVec2("v_texCoords");
+			cmd.putVaringFloat("v_texIndex");
+			cmd.putUniform("sampler2D", "u_texture");
+			for (int i = 1; i < slots; i++) {
+				cmd.putUniform("sampler2D", "u_texture" + i);
+			}
+			StrBuilder sbr = new StrBuilder();
+			sbr.append("  LOWP vec4 c;\n");
+			sbr.append("  if (v_texIndex < 0.5) {\n    c = texture2D(u_texture, v_texCoords);\n  }");
+			for (int i = 1; i < slots; i++) {
+				if (i < slots - 1) {
+					sbr.append(" else if (v_texIndex < " + i + ".5) {\n");
+				} else {
+					sbr.append(" else {\n");
+				}
+				sbr.append("    c = texture2D(u_texture" + i + ", v_texCoords);\n  }");
+			}
+			sbr.append("\n  gl_FragColor = v_color * c;");
+			cmd.putMainLowpCmd(sbr.toString());
+			return cmd.getShader();
+		}
+	}
+
 	public static final String getGLExLightFragmentShader() {
 		ShaderCmd cmd = ShaderCmd.getCmd("glex_light_fragment");
 		if (cmd.isCache()) {
@@ -1492,6 +1550,13 @@ public final class LSystem {
 		return false;
 	}
 
+	public static final LTextureRegistry getTextureRegistry() {
+		if (base() != null) {
+			return base().getTextureRegistry();
+		}
+		return null;
+	}
+
 	public static final int getRefTextureCount(String fileName) {
 		if (base() != null) {
 			return base().getRefTextureCount(fileName);
@@ -1527,6 +1592,13 @@ public final class LSystem {
 		return null;
 	}
 
+	public static final LTexture loadTexture(String fileName, Image image, Format config) {
+		if (base() != null) {
+			return base().loadTexture(fileName, image, config);
+		}
+		return null;
+	}
+
 	public static final LTexture loadTexture(String fileName) {
 		if (base() != null) {
 			return base().loadTexture(fileName);
@@ -1585,7 +1585,7 @@ public final class LTexture extends Painter implements LRelease {
 		} else if (_referenceCount <= 0 && _gfx.game.getRefTextureCount(getSource()) <= 0) {
 			if (_parent != null && _parent.isChildAllClose()) {
 				_parent.close();
-			} else {
+			} else if (!_gfx.game.retainTexture(this)) {
 				_closed = true;
 				_countTexture--;
 				freeTexture();
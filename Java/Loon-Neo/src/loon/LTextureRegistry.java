@@ -0,0 +1,384 @@
+/**
+ * Copyright 2008 - 2015 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon;
+
+import loon.LTexture.Format;
+import loon.utils.ObjectMap;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * 从路径加载的纹理缓存.
+ *
+ * 以规范化后的路径为键直接查找,按最近使用顺序排列纹理,并统计纹理占用的显存.设置了显存预算时,
+ * 引用归零的纹理不会立即注销,而是继续驻留以便再次加载时直接取用,总量超过预算后按最久未使用的顺序淘汰,
+ * 被淘汰的路径在下次加载时会自动从源文件重新载入.淘汰的纹理只放入队列,由GL线程在update时释放,不在锁内也不在其它线程注销纹理.
+ */
+public final class LTextureRegistry {
+
+	private static class Entry {
+
+		final String key;
+
+		String path;
+
+		Format format;
+
+		LTexture texture;
+
+		int bytes;
+
+		// 最近使用链表,head为最久未使用
+		Entry prev, next;
+
+		Entry(String key) {
+			this.key = key;
+		}
+	}
+
+	private final ObjectMap<String, Entry> _entries;
+
+	private Entry _head, _tail;
+
+	// 显存预算(字节),为0时不限制,也不保留引用归零的纹理
+	private long _budget;
+
+	private long _residentBytes;
+
+	private int _residentCount;
+
+	private long _hits, _misses, _reloads, _evictions;
+
+	// 已淘汰,等待GL线程释放的纹理
+	private final TArray<LTexture> _evicted = new TArray<LTexture>();
+
+	LTextureRegistry(int capacity, long budget) {
+		this._entries = new ObjectMap<String, Entry>(capacity);
+		this._budget = budget < 0 ? 0 : budget;
+	}
+
+	/**
+	 * 规范化纹理路径作为缓存键
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static String toKey(String path) {
+		if (path == null) {
+			return null;
+		}
+		return path.trim().replace('\\', '/').toLowerCase();
+	}
+
+	/**
+	 * 获得已驻留的纹理并增加引用,不存在时返回null
+	 */
+	synchronized LTexture acquire(String path) {
+		final Entry entry = _entries.get(toKey(path));
+		if (entry == null || entry.texture == null) {
+			return null;
+		}
+		final LTexture texture = entry.texture;
+		if (texture.isClosed()) {
+			unlink(entry);
+			entry.texture = null;
+			return null;
+		}
+		texture._referenceCount = texture._referenceCount < 0 ? 1 : texture._referenceCount + 1;
+		updateBytes(entry);
+		touch(entry);
+		_hits++;
+		return texture;
+	}
+
+	/**
+	 * 放入新加载的纹理,若其它线程已放入同一路径的纹理则返回已有纹理(并增加其引用)
+	 */
+	synchronized LTexture put(String path, Format format, LTexture texture) {
+		final String key = toKey(path);
+		Entry entry = _entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key);
+			_entries.put(key, entry);
+			_misses++;
+		} else if (entry.texture != null && !entry.texture.isClosed()) {
+			final LTexture old = entry.texture;
+			old._referenceCount = old._referenceCount < 0 ? 1 : old._referenceCount + 1;
+			touch(entry);
+			return old;
+		} else {
+			// 被淘汰过的路径,重新载入
+			if (entry.texture != null) {
+				unlink(entry);
+				entry.texture = null;
+			}
+			_reloads++;
+		}
+		entry.path = path;
+		entry.format = format;
+		entry.texture = texture;
+		entry.bytes = 0;
+		texture._referenceCount = 1;
+		link(entry);
+		updateBytes(entry);
+		trim(null);
+		return texture;
+	}
+
+	/**
+	 * 引用归零的纹理在有显存预算时继续驻留
+	 *
+	 * @return 返回true时纹理被缓存保留,不需要注销
+	 */
+	synchronized boolean retain(LTexture texture) {
+		if (_budget <= 0 || texture == null) {
+			return false;
+		}
+		final Entry entry = find(texture);
+		if (entry == null) {
+			return false;
+		}
+		texture._referenceCount = 0;
+		updateBytes(entry);
+		touch(entry);
+		// 正在释放的纹理不参与本次淘汰,否则调用者会在淘汰之后再注销一次
+		trim(entry);
+		return true;
+	}
+
+	/**
+	 * 在GL线程每帧调用,按预算淘汰纹理并释放已淘汰的纹理
+	 */
+	public void update() {
+		LTexture[] list = null;
+		synchronized (this) {
+			trim(null);
+			if (_evicted.size > 0) {
+				list = new LTexture[_evicted.size];
+				for (int i = 0; i < list.length; i++) {
+					list[i] = _evicted.get(i);
+				}
+				_evicted.clear();
+			}
+		}
+		if (list != null) {
+			for (int i = 0; i < list.length; i++) {
+				final LTexture texture = list[i];
+				// 释放前被重新引用的纹理不再注销
+				if (texture._referenceCount <= 0 && !texture.isClosed()) {
+					texture._referenceCount = 0;
+					texture.close(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 等待释放的纹理数量
+	 */
+	public synchronized int getPendingEvictionCount() {
+		return _evicted.size;
+	}
+
+	/**
+	 * 纹理被注销时从缓存中删除
+	 */
+	synchronized LTexture remove(LTexture texture) {
+		final Entry entry = find(texture);
+		if (entry == null) {
+			return null;
+		}
+		unlink(entry);
+		_entries.remove(entry.key);
+		return texture;
+	}
+
+	synchronized LTexture get(String path) {
+		final Entry entry = _entries.get(toKey(path));
+		return entry == null ? null : entry.texture;
+	}
+
+	private Entry find(LTexture texture) {
+		if (texture == null || texture.tmpLazy == null) {
+			return null;
+		}
+		final Entry entry = _entries.get(toKey(texture.tmpLazy));
+		if (entry == null || entry.texture != texture) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * 超出预算时,从最久未使用的纹理开始淘汰没有引用的纹理,淘汰的纹理放入队列等待update释放
+	 *
+	 * @param exclude 不参与淘汰的项
+	 */
+	private void trim(Entry exclude) {
+		if (_budget <= 0) {
+			return;
+		}
+		Entry entry = _head;
+		while (entry != null && _residentBytes > _budget) {
+			final Entry next = entry.next;
+			final LTexture texture = entry.texture;
+			if (entry != exclude && texture != null && texture._referenceCount <= 0 && !texture.isDisabledTexture()) {
+				unlink(entry);
+				entry.texture = null;
+				_evictions++;
+				_evicted.add(texture);
+			}
+			entry = next;
+		}
+	}
+
+	private void updateBytes(Entry entry) {
+		final int size = entry.texture == null ? 0 : entry.texture.getMemSize();
+		if (size > 0 && size != entry.bytes) {
+			_residentBytes += size - entry.bytes;
+			entry.bytes = size;
+		}
+	}
+
+	private void touch(Entry entry) {
+		if (entry == _tail) {
+			return;
+		}
+		unlink(entry);
+		link(entry);
+	}
+
+	private void link(Entry entry) {
+		entry.prev = _tail;
+		entry.next = null;
+		if (_tail != null) {
+			_tail.next = entry;
+		} else {
+			_head = entry;
+		}
+		_tail = entry;
+		_residentCount++;
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.prev == null && entry != _head) {
+			return;
+		}
+		if (entry.prev != null) {
+			entry.prev.next = entry.next;
+		} else {
+			_head = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.prev = entry.prev;
+		} else {
+			_tail = entry.prev;
+		}
+		entry.prev = entry.next = null;
+		_residentBytes -= entry.bytes;
+		entry.bytes = 0;
+		_residentCount--;
+	}
+
+	/**
+	 * 返回全部驻留纹理(包括等待释放的淘汰纹理)的快照
+	 */
+	synchronized TArray<LTexture> textures() {
+		final TArray<LTexture> list = new TArray<LTexture>(_residentCount);
+		for (Entry entry = _head; entry != null; entry = entry.next) {
+			if (entry.texture != null) {
+				list.add(entry.texture);
+			}
+		}
+		// 尚未释放的淘汰纹理也交给调用者销毁
+		list.addAll(_evicted);
+		return list;
+	}
+
+	synchronized void clear() {
+		_entries.clear();
+		_evicted.clear();
+		_head = _tail = null;
+		_residentBytes = 0;
+		_residentCount = 0;
+	}
+
+	/**
+	 * 设置显存预算(字节),为0时不限制
+	 *
+	 * @param budget
+	 * @return
+	 */
+	public synchronized LTextureRegistry setBudget(long budget) {
+		this._budget = budget < 0 ? 0 : budget;
+		trim(null);
+		return this;
+	}
+
+	public synchronized long getBudget() {
+		return _budget;
+	}
+
+	public synchronized boolean contains(String path) {
+		if (StringUtils.isEmpty(path)) {
+			return false;
+		}
+		final Entry entry = _entries.get(toKey(path));
+		return entry != null && entry.texture != null;
+	}
+
+	public synchronized long getResidentBytes() {
+		return _residentBytes;
+	}
+
+	public synchronized int getResidentCount() {
+		return _residentCount;
+	}
+
+	public synchronized long getHitCount() {
+		return _hits;
+	}
+
+	public synchronized long getMissCount() {
+		return _misses;
+	}
+
+	public synchronized long getReloadCount() {
+		return _reloads;
+	}
+
+	public synchronized long getEvictionCount() {
+		return _evictions;
+	}
+
+	public synchronized LTextureRegistry resetCounters() {
+		_hits = _misses = _reloads = _evictions = 0;
+		return this;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LTextureRegistry [resident=" + _residentCount + ", bytes=" + _residentBytes + ", budget=" + _budget
+				+ ", hits=" + _hits + ", misses=" + _misses + ", reloads=" + _reloads + ", evictions=" + _evictions
+				+ "]";
+	}
+
+}
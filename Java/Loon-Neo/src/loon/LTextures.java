@@ -21,6 +21,7 @@
 package loon;
 
 import loon.LTexture.Format;
+import loon.canvas.Image;
 
 public final class LTextures {
 
@@ -56,10 +57,18 @@ public final class LTextures {
 		return LSystem.getRefTextureCount(fileName);
 	}
 
+	public static LTextureRegistry getRegistry() {
+		return LSystem.getTextureRegistry();
+	}
+
 	public static LTexture loadTexture(String fileName, Format config) {
 		return LSystem.loadTexture(fileName, config);
 	}
 
+	public static LTexture loadTexture(String fileName, Image image, Format config) {
+		return LSystem.loadTexture(fileName, image, config);
+	}
+
 	public static LTexture loadTexture(String fileName) {
 		return LSystem.loadTexture(fileName);
 	}
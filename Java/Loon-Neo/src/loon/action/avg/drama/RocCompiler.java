@@ -0,0 +1,1099 @@
+/**
+ * Copyright 2008 - 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.action.avg.drama.RocProgram.Expr;
+import loon.action.avg.drama.RocProgram.Function;
+import loon.action.avg.drama.RocProgram.Instr;
+import loon.action.avg.drama.RocScript.ScriptException;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.StrBuilder;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * 把RocScript过滤后的脚本文本编译为RocProgram.
+ *
+ * 分词规则与RocScript的解释执行相同(另外把单独的LF也视为行尾),语法按解释器的递归下降顺序解析,
+ * 编译结果按脚本文本的散列值缓存,同一脚本再次载入时直接取用.单行语句中的错误编译为ERROR指令,
+ * 与解释器一样在执行到该语句时才报告.
+ */
+final class RocCompiler {
+
+	// 缓存的编译结果上限,超出时淘汰最早放入的
+	private static final int MAX_CACHE = 32;
+
+	private static final IntMap<RocProgram> _cache = new IntMap<RocProgram>();
+
+	private static final IntArray _cacheOrder = new IntArray();
+
+	private static final String DELIMS = " \r\n,<>+-/*%^=();#";
+
+	private static final String RELOPS = new String(new char[] { RocProgram.LE, RocProgram.GE, '<', '>',
+			RocProgram.EQ });
+
+	private static final String[] SELECT_OPS = { "and", "or", "not", "xor", "xand" };
+
+	private static final String[] COMM_TABLE = { "", "print", "input", "return", "then", "end", "begin", "else",
+			"if", "for", "while", "function", "wait", "println" };
+
+	// 分词类型
+	private static final int T_EOL = 0;
+	private static final int T_EOP = 1;
+	private static final int T_DELIM = 2;
+	private static final int T_NAME = 3;
+	private static final int T_COMMAND = 4;
+	private static final int T_NUMBER = 5;
+	private static final int T_STRING = 6;
+	private static final int T_BOOLEAN = 7;
+	private static final int T_MACROS = 8;
+	private static final int T_WAIT = 9;
+
+	// 命令(与RocScript的commTable序号相同)
+	private static final int C_PRINT = 1;
+	private static final int C_INPUT = 2;
+	private static final int C_RETURN = 3;
+	private static final int C_THEN = 4;
+	private static final int C_END = 5;
+	private static final int C_BEGIN = 6;
+	private static final int C_ELSE = 7;
+	private static final int C_IF = 8;
+	private static final int C_FOR = 9;
+	private static final int C_WHILE = 10;
+	private static final int C_FUNCTION = 11;
+	private static final int C_WAIT = 12;
+	private static final int C_PRINTLN = 13;
+
+	static int hash(char[] src) {
+		int h = 0;
+		for (int i = 0; i < src.length; i++) {
+			h = 31 * h + src[i];
+		}
+		return h;
+	}
+
+	/**
+	 * 获得脚本的编译结果,相同文本的脚本只编译一次
+	 *
+	 * @param script
+	 * @param src
+	 * @return
+	 * @throws ScriptException
+	 */
+	static RocProgram compile(RocScript script, char[] src) throws ScriptException {
+		final int h = hash(src);
+		synchronized (_cache) {
+			final RocProgram program = _cache.get(h);
+			if (program != null && program.matches(src)) {
+				return program;
+			}
+		}
+		final RocProgram program = new RocCompiler(script, src).build(h);
+		synchronized (_cache) {
+			if (!_cache.containsKey(h)) {
+				_cacheOrder.add(h);
+			}
+			_cache.put(h, program);
+			while (_cacheOrder.length > MAX_CACHE) {
+				_cache.remove(_cacheOrder.removeIndex(0));
+			}
+		}
+		return program;
+	}
+
+	static void clearCache() {
+		synchronized (_cache) {
+			_cache.clear();
+			_cacheOrder.clear();
+		}
+	}
+
+	static int getCacheSize() {
+		synchronized (_cache) {
+			return _cache.size();
+		}
+	}
+
+	/**
+	 * 编译错误,出现在单行语句中时改为执行到该处时再报告
+	 */
+	private static final class Failure extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		final int error;
+
+		final int token;
+
+		// 语句本身已编译完成,只是行尾有多余的内容
+		final boolean complete;
+
+		Failure(int error, int token, boolean complete) {
+			this.error = error;
+			this.token = token;
+			this.complete = complete;
+		}
+	}
+
+	private final RocScript script;
+
+	private final char[] src;
+
+	// 分词结果,lines为读完该词后解释器的行号,ends为读完该词后的文本位置
+	private int[] kinds = new int[256];
+
+	private int[] subs = new int[256];
+
+	private int[] lines = new int[256];
+
+	private int[] ends = new int[256];
+
+	private String[] texts = new String[256];
+
+	private int count;
+
+	private int pos;
+
+	// 调用未定义的函数时报告的错误,取决于调用所在的语句
+	private int callError = RocScript.UNEXPITEM;
+
+	private final TArray<Instr> code = new TArray<Instr>();
+
+	private final ObjectMap<String, Integer> slots = new ObjectMap<String, Integer>();
+
+	private final TArray<String> symbols = new TArray<String>();
+
+	private final ObjectMap<String, Integer> functionIndex = new ObjectMap<String, Integer>();
+
+	private final TArray<Function> functions = new TArray<Function>();
+
+	private RocCompiler(RocScript script, char[] src) {
+		this.script = script;
+		this.src = src;
+	}
+
+	private RocProgram build(int hash) throws ScriptException {
+		try {
+			lex();
+			declareFunctions();
+			pos = 0;
+			statements(false);
+		} catch (Failure f) {
+			final int t = f.token;
+			int type = typeOf(t);
+			if (type == RocProgram.I_VARIABLE && script.isSystemFunction(texts[t])) {
+				type = RocProgram.I_FUNCT;
+			}
+			script.handleError(f.error, ends[t], lines[t], texts[t], type, commOf(t));
+		}
+		code.add(new Instr(RocProgram.HALT, count - 1));
+		final Instr[] list = new Instr[code.size];
+		for (int i = 0; i < list.length; i++) {
+			list[i] = code.get(i);
+		}
+		final String[] names = new String[symbols.size];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = symbols.get(i);
+		}
+		final Function[] funcs = new Function[functions.size];
+		for (int i = 0; i < funcs.length; i++) {
+			funcs[i] = functions.get(i);
+		}
+		final int[] tokenEnds = new int[count];
+		final int[] tokenLines = new int[count];
+		final String[] tokenTexts = new String[count];
+		final int[] tokenTypes = new int[count];
+		final int[] tokenComms = new int[count];
+		System.arraycopy(ends, 0, tokenEnds, 0, count);
+		System.arraycopy(lines, 0, tokenLines, 0, count);
+		System.arraycopy(texts, 0, tokenTexts, 0, count);
+		for (int i = 0; i < count; i++) {
+			tokenTypes[i] = typeOf(i);
+			tokenComms[i] = commOf(i);
+		}
+		return new RocProgram(src, hash, list, names, slots, funcs, tokenEnds, tokenLines, tokenTexts, tokenTypes,
+				tokenComms);
+	}
+
+	/**
+	 * 词在解释器中的类型,名称统一为变量,执行时再按当时的变量与函数区分
+	 */
+	private int typeOf(int t) {
+		switch (kinds[t]) {
+		case T_EOL:
+			return RocProgram.I_EOL;
+		case T_EOP:
+			return RocProgram.I_EOP;
+		case T_DELIM:
+			return RocProgram.I_DELIMITER;
+		case T_COMMAND:
+		case T_WAIT:
+			return RocProgram.I_COMMAND;
+		case T_NUMBER:
+			return RocProgram.I_NUMBER;
+		case T_STRING:
+			return RocProgram.I_STRING;
+		case T_BOOLEAN:
+			return RocProgram.I_BOOLEAN;
+		case T_MACROS:
+			return RocProgram.I_MACROS;
+		default:
+			return RocProgram.I_VARIABLE;
+		}
+	}
+
+	private int commOf(int t) {
+		return kinds[t] == T_COMMAND || kinds[t] == T_WAIT ? subs[t] : 0;
+	}
+
+	private int current() {
+		return pos < count ? pos : count - 1;
+	}
+
+	private void error(int error) {
+		throw new Failure(error, current(), false);
+	}
+
+	private void addToken(int kind, int sub, String text, int line, int end) {
+		if (count == kinds.length) {
+			final int size = count * 2;
+			final int[] k = new int[size];
+			final int[] s = new int[size];
+			final int[] l = new int[size];
+			final int[] e = new int[size];
+			final String[] t = new String[size];
+			System.arraycopy(kinds, 0, k, 0, count);
+			System.arraycopy(subs, 0, s, 0, count);
+			System.arraycopy(lines, 0, l, 0, count);
+			System.arraycopy(ends, 0, e, 0, count);
+			System.arraycopy(texts, 0, t, 0, count);
+			kinds = k;
+			subs = s;
+			lines = l;
+			ends = e;
+			texts = t;
+		}
+		kinds[count] = kind;
+		subs[count] = sub;
+		lines[count] = line;
+		ends[count] = end;
+		texts[count] = text;
+		count++;
+	}
+
+	private static boolean isDelim(char c) {
+		return DELIMS.indexOf(c) != -1;
+	}
+
+	private void lex() {
+		final int size = src.length;
+		int idx = 0;
+		int line = 1;
+		for (;;) {
+			while (idx < size && (src[idx] == ' ' || src[idx] == '\t')) {
+				idx++;
+			}
+			if (idx >= size) {
+				addToken(T_EOP, 0, " ", line, idx);
+				return;
+			}
+			char ch = src[idx];
+			if (ch == '\r' || ch == '\n') {
+				idx += (ch == '\r' && idx + 1 < size && src[idx + 1] == '\n') ? 2 : 1;
+				// 解释器读到行尾时行号加一
+				line++;
+				addToken(T_EOL, 0, " ", line, idx);
+				continue;
+			}
+			if (ch == '#' || (ch == '/' && idx + 1 < size && src[idx + 1] == '/')) {
+				while (idx < size && src[idx] != '\r' && src[idx] != '\n') {
+					idx++;
+				}
+				continue;
+			}
+			if (ch == '<' || ch == '>' || ch == '=') {
+				if (idx + 1 < size && src[idx + 1] == '=') {
+					final char op = ch == '<' ? RocProgram.LE : (ch == '>' ? RocProgram.GE : RocProgram.EQ);
+					idx += 2;
+					addToken(T_DELIM, op, String.valueOf(op), line, idx);
+				} else {
+					idx++;
+					addToken(T_DELIM, ch, String.valueOf(ch), line, idx);
+				}
+				continue;
+			}
+			if (isDelim(ch)) {
+				idx++;
+				addToken(T_DELIM, ch, String.valueOf(ch), line, idx);
+				continue;
+			}
+			if (ch == '"') {
+				final StrBuilder sbr = new StrBuilder();
+				idx++;
+				while (idx < size && src[idx] != '"' && src[idx] != '\r' && src[idx] != '\n') {
+					sbr.append(src[idx++]);
+				}
+				if (idx >= size || src[idx] != '"') {
+					addToken(T_STRING, 0, sbr.toString(), line, idx);
+					pos = count - 1;
+					error(RocScript.MISSQUOTE);
+				}
+				idx++;
+				addToken(T_STRING, 0, sbr.toString(), line, idx);
+				continue;
+			}
+			final int start = idx;
+			while (idx < size && !isDelim(src[idx])) {
+				idx++;
+			}
+			final String word = new String(src, start, idx - start);
+			if (MathUtils.isNan(word)) {
+				addToken(T_NUMBER, 0, word, line, idx);
+				continue;
+			}
+			if (StringUtils.isBoolean(word)) {
+				addToken(T_BOOLEAN, 0, word, line, idx);
+				continue;
+			}
+			final String key = StringUtils.rtrim(word.toLowerCase());
+			final int select = indexOf(SELECT_OPS, key);
+			if (select != -1) {
+				addToken(T_DELIM, -1 - select, word, line, idx);
+				continue;
+			}
+			final int comm = indexOf(COMM_TABLE, key);
+			if (comm > 0) {
+				if (comm == C_WAIT) {
+					while (idx < size && (src[idx] == ' ' || src[idx] == '\t')) {
+						idx++;
+					}
+					final int begin = idx;
+					while (idx < size && !(src[idx] == ' ' || src[idx] == '\t' || src[idx] == '\r'
+							|| src[idx] == '\n')) {
+						idx++;
+					}
+					addToken(T_WAIT, comm, new String(src, begin, idx - begin), line, idx);
+				} else {
+					addToken(T_COMMAND, comm, word, line, idx);
+				}
+				continue;
+			}
+			if ("{".equals(key)) {
+				// 与解释器相同,宏指令中的换行不计入行号
+				final int begin = idx;
+				while (idx < size && src[idx] != '}') {
+					idx++;
+				}
+				final String text = new String(src, begin, idx - begin);
+				if (idx < size) {
+					idx++;
+				}
+				addToken(T_MACROS, 0, text, line, idx);
+				continue;
+			}
+			if ("}".equals(key)) {
+				addToken(T_MACROS, 1, word, line, idx);
+				continue;
+			}
+			addToken(T_NAME, 0, word, line, idx);
+		}
+	}
+
+	private static int indexOf(String[] list, String key) {
+		for (int i = 0; i < list.length; i++) {
+			if (list[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 预先登记全部函数名称,执行时由DEFINE指令标记为已定义
+	 */
+	private void declareFunctions() {
+		for (int i = 0; i + 1 < count; i++) {
+			if (kinds[i] == T_COMMAND && subs[i] == C_FUNCTION && kinds[i + 1] == T_NAME) {
+				final String name = texts[i + 1].toLowerCase();
+				if (!functionIndex.containsKey(name)) {
+					functionIndex.put(name, functions.size);
+					functions.add(new Function(name));
+				}
+			}
+		}
+	}
+
+	private int slot(String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = symbols.size;
+			slots.put(name, slot);
+			symbols.add(name);
+		}
+		return slot.intValue();
+	}
+
+	private Instr emit(int op) {
+		final Instr instr = new Instr(op, current());
+		code.add(instr);
+		return instr;
+	}
+
+	private int kind() {
+		return kinds[pos];
+	}
+
+	private boolean isDelim(String s) {
+		return kinds[pos] == T_DELIM && texts[pos].equals(s);
+	}
+
+	private boolean isCommand(int comm) {
+		return kinds[pos] == T_COMMAND && subs[pos] == comm;
+	}
+
+	private boolean isLineEnd() {
+		return kinds[pos] == T_EOL || kinds[pos] == T_EOP;
+	}
+
+	private void advance() {
+		if (pos < count - 1) {
+			pos++;
+		}
+	}
+
+	private void expect(String delim, int error) {
+		if (!isDelim(delim)) {
+			error(error);
+		}
+		advance();
+	}
+
+	private void expectLineEnd() {
+		if (!isLineEnd()) {
+			error(RocScript.UNEXPITEM);
+		}
+	}
+
+	/**
+	 * 单行语句编译完成后检查行尾,多余的内容在语句执行后报错
+	 */
+	private void statementEnd() {
+		if (!isLineEnd()) {
+			throw new Failure(RocScript.UNEXPITEM, pos, true);
+		}
+	}
+
+	/**
+	 * 编译语句直到脚本结束或遇到当前层的end与else
+	 *
+	 * @return 结束时的命令
+	 */
+	private int statements(boolean inBlock) {
+		for (;;) {
+			while (kind() == T_EOL) {
+				advance();
+			}
+			if (kind() == T_EOP) {
+				if (inBlock) {
+					error(RocScript.ENDEXPECTED);
+				}
+				return -1;
+			}
+			if (isCommand(C_END) || isCommand(C_ELSE)) {
+				if (inBlock) {
+					return subs[pos];
+				}
+				// 多余的end与else,解释器执行到此处时才报错
+				emit(RocProgram.ERROR).b = RocScript.SYNTAX;
+				advance();
+				continue;
+			}
+			statement();
+		}
+	}
+
+	private void statement() {
+		switch (kind()) {
+		case T_COMMAND:
+			switch (subs[pos]) {
+			case C_IF:
+				ifStatement();
+				return;
+			case C_FOR:
+				forStatement();
+				return;
+			case C_WHILE:
+				whileStatement();
+				return;
+			case C_FUNCTION:
+				functionStatement();
+				return;
+			}
+			break;
+		case T_MACROS:
+			if (subs[pos] == 0) {
+				emit(RocProgram.MACROS).text = texts[pos];
+			}
+			advance();
+			return;
+		}
+		final int mark = code.size;
+		try {
+			simpleStatement();
+		} catch (Failure f) {
+			// 与解释器相同,没有执行到的语句不会报错
+			if (!f.complete) {
+				code.truncate(mark);
+			}
+			final Instr instr = new Instr(RocProgram.ERROR, f.token);
+			instr.b = f.error;
+			code.add(instr);
+			while (!isLineEnd()) {
+				advance();
+			}
+		}
+	}
+
+	private void simpleStatement() {
+		switch (kind()) {
+		case T_NAME:
+			nameStatement();
+			break;
+		case T_COMMAND:
+			switch (subs[pos]) {
+			case C_PRINT:
+			case C_PRINTLN:
+				printStatement(subs[pos] == C_PRINTLN);
+				break;
+			case C_RETURN:
+				returnStatement();
+				break;
+			default:
+				error(RocScript.UNEXPITEM);
+			}
+			break;
+		case T_WAIT:
+			waitStatement();
+			break;
+		default:
+			error(RocScript.UNEXPITEM);
+		}
+	}
+
+	private void nameStatement() {
+		final String name = texts[pos];
+		if (pos + 1 < count && kinds[pos + 1] == T_DELIM && "(".equals(texts[pos + 1])) {
+			final Instr instr = emit(RocProgram.CALL);
+			callError = RocScript.EQUALEXPECTED;
+			instr.expr = call();
+			statementEnd();
+			return;
+		}
+		if (functionIndex.containsKey(name.toLowerCase())) {
+			advance();
+			error(RocScript.UNBALPARENS);
+		}
+		if (!Character.isLetter(name.charAt(0))) {
+			error(RocScript.UNKOWN);
+		}
+		final Instr instr = emit(RocProgram.ASSIGN);
+		instr.a = slot(name);
+		advance();
+		expect("=", RocScript.EQUALEXPECTED);
+		callError = RocScript.UNEXPITEM;
+		instr.expr = analysis();
+		instr.token = pos;
+		statementEnd();
+	}
+
+	private void printStatement(boolean line) {
+		final Instr instr = emit(RocProgram.PRINT);
+		instr.b = line ? 1 : 0;
+		final TArray<Expr> exprs = new TArray<Expr>();
+		final IntArray seps = new IntArray();
+		advance();
+		while (!isLineEnd()) {
+			callError = RocScript.SYNTAX;
+			exprs.add(analysis());
+			if (isDelim(",")) {
+				seps.add(1);
+				advance();
+			} else if (isDelim(";")) {
+				seps.add(2);
+				advance();
+			} else if (isLineEnd()) {
+				seps.add(0);
+			} else {
+				error(RocScript.SYNTAX);
+			}
+		}
+		instr.exprs = new Expr[exprs.size];
+		for (int i = 0; i < instr.exprs.length; i++) {
+			instr.exprs[i] = exprs.get(i);
+		}
+		instr.seps = seps.toArray();
+	}
+
+	private void returnStatement() {
+		final Instr ret = emit(RocProgram.RETURN);
+		advance();
+		callError = RocScript.UNEXPITEM;
+		ret.expr = analysis();
+		ret.token = pos;
+		// 与解释器相同,返回值之后同一行的内容不再检查
+		while (!isLineEnd()) {
+			advance();
+		}
+	}
+
+	private void ifStatement() {
+		Instr branch = emit(RocProgram.IF);
+		advance();
+		callError = RocScript.THENEXPECTED;
+		branch.expr = analysis();
+		branch.token = pos;
+		thenLine(branch);
+		final TArray<Instr> jumps = new TArray<Instr>();
+		int end = statements(true);
+		while (end == C_ELSE) {
+			jumps.add(emit(RocProgram.JUMP));
+			if (branch == null) {
+				error(RocScript.SYNTAX);
+			}
+			branch.a = code.size;
+			advance();
+			if (isCommand(C_IF)) {
+				branch = emit(RocProgram.ELSEIF);
+				advance();
+				callError = RocScript.THENEXPECTED;
+				branch.expr = analysis();
+				branch.token = pos;
+				thenLine(branch);
+			} else {
+				expectLineEnd();
+				branch = null;
+			}
+			end = statements(true);
+		}
+		final int target = code.size;
+		emit(RocProgram.END_BLOCK);
+		if (branch != null) {
+			branch.a = target;
+		}
+		for (int i = 0; i < jumps.size; i++) {
+			jumps.get(i).a = target;
+		}
+		advance();
+		expectLineEnd();
+	}
+
+	/**
+	 * 缺少then时解释器只在条件成立时报错,条件不成立时直接跳到end
+	 */
+	private void thenLine(Instr branch) {
+		openLine(branch, C_THEN);
+	}
+
+	private void openLine(Instr branch, int comm) {
+		if (!isCommand(comm)) {
+			branch.b = pos;
+			while (!isLineEnd()) {
+				advance();
+			}
+			return;
+		}
+		advance();
+		expectLineEnd();
+	}
+
+	private void beginLine(int error) {
+		if (!isCommand(C_BEGIN)) {
+			error(error);
+		}
+		advance();
+		expectLineEnd();
+	}
+
+	private void endLine() {
+		if (statements(true) != C_END) {
+			error(RocScript.SYNTAX);
+		}
+	}
+
+	private void forStatement() {
+		advance();
+		final String name = texts[pos];
+		if (kind() != T_NAME || !Character.isLetter(name.charAt(0))) {
+			error(RocScript.UNKOWN);
+		}
+		final int slot = slot(name);
+		advance();
+		if (isDelim("=")) {
+			final Instr init = emit(RocProgram.ASSIGN);
+			init.a = slot;
+			init.b = 1;
+			advance();
+			callError = RocScript.SYNTAX;
+			init.expr = analysis();
+			init.token = pos;
+		}
+		expect(",", RocScript.SYNTAX);
+		final Instr enter = emit(RocProgram.FOR_ENTER);
+		callError = RocScript.SYNTAX;
+		enter.expr = analysis();
+		enter.token = pos;
+		expect(",", RocScript.SYNTAX);
+		callError = RocScript.DOEXPECTED;
+		enter.step = analysis();
+		openLine(enter, C_BEGIN);
+		final int body = code.size;
+		endLine();
+		// 循环末尾重新计算条件时,解释器的行号停在end所在的行
+		final Instr next = emit(RocProgram.FOR_NEXT);
+		next.a = body;
+		next.b = slot;
+		next.expr = enter.expr;
+		next.step = enter.step;
+		emit(RocProgram.END_BLOCK);
+		enter.a = code.size;
+		advance();
+		expectLineEnd();
+	}
+
+	private void whileStatement() {
+		final Instr enter = emit(RocProgram.WHILE_ENTER);
+		advance();
+		callError = RocScript.DOEXPECTED;
+		enter.expr = analysis();
+		enter.token = pos;
+		openLine(enter, C_BEGIN);
+		final int body = code.size;
+		endLine();
+		final Instr next = emit(RocProgram.WHILE_NEXT);
+		next.a = body;
+		next.expr = enter.expr;
+		emit(RocProgram.END_BLOCK);
+		enter.a = code.size;
+		advance();
+		expectLineEnd();
+	}
+
+	private void functionStatement() {
+		final Instr define = emit(RocProgram.DEFINE);
+		advance();
+		if (kind() != T_NAME || !Character.isLetter(texts[pos].charAt(0))) {
+			error(RocScript.UNKOWN);
+		}
+		final int index = functionIndex.get(texts[pos].toLowerCase()).intValue();
+		final Function func = functions.get(index);
+		define.a = index;
+		advance();
+		expect("(", RocScript.SYNTAX);
+		final IntArray params = new IntArray();
+		if (!isDelim(")")) {
+			for (;;) {
+				if (kind() != T_NAME || !Character.isLetter(texts[pos].charAt(0))) {
+					error(RocScript.UNKOWN);
+				}
+				params.add(slot(texts[pos]));
+				advance();
+				if (!isDelim(",")) {
+					break;
+				}
+				advance();
+			}
+		}
+		expect(")", RocScript.SYNTAX);
+		func.begin = current();
+		beginLine(RocScript.SYNTAX);
+		// 函数体紧跟在定义处,顺序执行时跳过
+		func.params = params.toArray();
+		func.entry = code.size;
+		endLine();
+		emit(RocProgram.RETURN);
+		define.b = code.size;
+		advance();
+		expectLineEnd();
+	}
+
+	private void waitStatement() {
+		final Instr instr = emit(RocProgram.WAIT);
+		final String value = texts[pos];
+		long sleep = 0;
+		if (MathUtils.isNan(value)) {
+			sleep = (long) Double.parseDouble(value);
+		} else {
+			try {
+				sleep = script.getWaitTime(value);
+			} catch (Throwable ex) {
+				error(RocScript.SYNTAX);
+			}
+		}
+		instr.time = sleep <= 0 ? 1 : sleep;
+		advance();
+		statementEnd();
+	}
+
+	private Expr analysis() {
+		if (isLineEnd()) {
+			error(RocScript.EXPERR);
+		}
+		return exp1();
+	}
+
+	private boolean isRelOp() {
+		return kind() == T_DELIM && texts[pos].length() == 1 && RELOPS.indexOf(texts[pos].charAt(0)) != -1;
+	}
+
+	private boolean isBoolOp() {
+		return kind() == T_DELIM && subs[pos] < 0;
+	}
+
+	/**
+	 * 运算结果的错误在右侧运算数之后的词上报告,左侧运算数的错误在运算符上报告
+	 */
+	private Expr binary(int type, int op, int at, Expr left, Expr right) {
+		final Expr expr = new Expr(type, current());
+		expr.op = op;
+		expr.at = at;
+		expr.left = left;
+		expr.right = right;
+		return expr;
+	}
+
+	private Expr exp1() {
+		Expr result = exp2();
+		for (;;) {
+			final int at = pos;
+			if (isRelOp()) {
+				final int op = texts[pos].charAt(0);
+				advance();
+				final Expr right = exp2();
+				result = binary(RocProgram.E_REL, op, at, result, right);
+			} else if (isBoolOp()) {
+				final int op = -1 - subs[pos];
+				advance();
+				// 与解释器相同,逻辑运算的右侧为其后的整个表达式
+				final Expr right = exp1();
+				result = binary(RocProgram.E_BOOL, op, at, result, right);
+			} else {
+				return result;
+			}
+		}
+	}
+
+	private Expr exp2() {
+		Expr result = exp3();
+		for (;;) {
+			final int at = pos;
+			if (isDelim("+")) {
+				advance();
+				final Expr right = exp3();
+				result = binary(RocProgram.E_ADD, '+', at, result, right);
+			} else if (isDelim("-")) {
+				advance();
+				final Expr right = exp3();
+				result = binary(RocProgram.E_SUB, '-', at, result, right);
+			} else {
+				return result;
+			}
+		}
+	}
+
+	private Expr exp3() {
+		Expr result = exp4();
+		for (;;) {
+			final int at = pos;
+			if (isDelim("*")) {
+				advance();
+				final Expr right = exp4();
+				result = binary(RocProgram.E_MUL, '*', at, result, right);
+			} else if (isDelim("/")) {
+				advance();
+				final Expr right = exp4();
+				result = binary(RocProgram.E_DIV, '/', at, result, right);
+			} else if (isDelim("%")) {
+				advance();
+				final Expr right = exp4();
+				result = binary(RocProgram.E_MOD, '%', at, result, right);
+			} else {
+				return result;
+			}
+		}
+	}
+
+	private Expr exp4() {
+		final Expr result = exp5();
+		final int at = pos;
+		if (isDelim("^")) {
+			advance();
+			final Expr right = exp4();
+			return binary(RocProgram.E_POW, '^', at, result, right);
+		}
+		return result;
+	}
+
+	private Expr exp5() {
+		final int at = pos;
+		if (isDelim("-")) {
+			advance();
+			final Expr value = exp6();
+			return binary(RocProgram.E_NEG, '-', at, value, null);
+		}
+		if (isBoolOp() && -1 - subs[pos] == RocProgram.NOT) {
+			advance();
+			final Expr value = exp6();
+			return binary(RocProgram.E_NOT, RocProgram.NOT, at, value, null);
+		}
+		return exp6();
+	}
+
+	private Expr exp6() {
+		if (isDelim("(")) {
+			advance();
+			final int error = callError;
+			callError = RocScript.UNBALPARENS;
+			final Expr result = exp1();
+			callError = error;
+			expect(")", RocScript.UNBALPARENS);
+			result.group = true;
+			return result;
+		}
+		return atom();
+	}
+
+	private Expr constant(Object value) {
+		final Expr expr = new Expr(RocProgram.E_CONST, current());
+		expr.value = value;
+		return expr;
+	}
+
+	private Expr atom() {
+		final String text = texts[pos];
+		switch (kind()) {
+		case T_NAME:
+			if (pos + 1 < count && kinds[pos + 1] == T_DELIM && "(".equals(texts[pos + 1])) {
+				return call();
+			}
+			if (text.charAt(0) == '\'' || text.charAt(0) == '"') {
+				final Expr value = constant(
+						RocRuntime.toValue(text.length() > 2 ? text.substring(1, text.length() - 1) : text));
+				advance();
+				// 引号括起的名称为字符串常量
+				return value;
+			}
+			if (!Character.isLetter(text.charAt(0))) {
+				error(RocScript.UNKOWN);
+			}
+			final Expr var = new Expr(RocProgram.E_VAR, current());
+			var.name = text;
+			var.slot = slot(text);
+			advance();
+			return var;
+		case T_NUMBER:
+			Double number = null;
+			try {
+				number = Double.parseDouble(text);
+			} catch (NumberFormatException exc) {
+				error(RocScript.NOTANUMB);
+			}
+			final Expr value = constant(number);
+			advance();
+			return value;
+		case T_BOOLEAN:
+			final Expr bool = constant(StringUtils.toBoolean(text));
+			advance();
+			return bool;
+		case T_STRING:
+			final Expr str = constant(text);
+			advance();
+			return str;
+		default:
+			// 与解释器相同,缺少的运算数(包括行尾)取null并跳过该词
+			final Expr none = constant(null);
+			advance();
+			return none;
+		}
+	}
+
+	/**
+	 * 编译函数调用,已定义的函数按表达式传参,否则作为系统函数保留原始参数文本
+	 */
+	private Expr call() {
+		final String name = texts[pos].toLowerCase();
+		final Integer index = functionIndex.get(name);
+		final int error = callError;
+		advance();
+		final int at = pos;
+		advance();
+		if (index != null) {
+			final TArray<Expr> args = new TArray<Expr>();
+			if (!isDelim(")")) {
+				callError = RocScript.UNBALPARENS;
+				args.add(analysis());
+				while (isDelim(",")) {
+					advance();
+					args.add(analysis());
+				}
+				callError = error;
+			}
+			if (!isDelim(")")) {
+				error(RocScript.UNBALPARENS);
+			}
+			// 解释器在读完')'后跳到函数体
+			final Expr expr = new Expr(RocProgram.E_CALL, pos);
+			advance();
+			expr.name = name;
+			expr.op = index.intValue();
+			expr.at = at;
+			expr.error = error;
+			expr.args = new Expr[args.size];
+			for (int i = 0; i < expr.args.length; i++) {
+				expr.args[i] = args.get(i);
+			}
+			return expr;
+		}
+		final StrBuilder sbr = new StrBuilder();
+		if (!isDelim(")")) {
+			while (texts[pos].indexOf(')') == -1) {
+				if (isLineEnd()) {
+					error(RocScript.UNBALPARENS);
+				}
+				sbr.append(texts[pos]);
+				advance();
+			}
+			if (!isDelim(")")) {
+				error(RocScript.UNBALPARENS);
+			}
+		}
+		final Expr expr = new Expr(RocProgram.E_SYSCALL, pos);
+		advance();
+		expr.name = name;
+		expr.at = at;
+		expr.error = error;
+		expr.value = sbr.toString();
+		return expr;
+	}
+
+}
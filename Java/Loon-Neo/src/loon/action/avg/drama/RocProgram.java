@@ -0,0 +1,263 @@
+/**
+ * Copyright 2008 - 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.utils.ObjectMap;
+
+/**
+ * RocScript编译后的指令形式.
+ *
+ * 语句被展开为带跳转目标的指令序列,表达式为预先解析好的语法树,变量名解析为槽位序号,函数调用解析为函数表序号,
+ * 执行时不再重新分词,也不再按名称查找变量与函数.编译结果只与脚本文本有关,可被多个RocScript共享.
+ *
+ * 每条指令与表达式都记录了解释器在同一处报错时所在的词(token),词表保存其结束位置,行号,内容与类型,
+ * 使编译后执行的错误信息与解释执行相同.
+ */
+final class RocProgram {
+
+	// 指令
+	static final int NOP = 0;
+	// a=槽位,b=1时结果必须为数字
+	static final int ASSIGN = 1;
+	// 调用函数并丢弃结果
+	static final int CALL = 2;
+	// exprs与seps为各段内容与分隔符,b=1时为println
+	static final int PRINT = 3;
+	// 条件不成立时跳转到a,成立时新建变量层.b不为0时为缺少then的词,条件成立时报错
+	static final int IF = 4;
+	static final int ELSEIF = 5;
+	// expr为条件,step为步进,条件不成立时跳转到a.b不为0时为缺少begin的词
+	static final int FOR_ENTER = 6;
+	// 步进后写入槽位b,条件成立时跳转到循环体a
+	static final int FOR_NEXT = 7;
+	static final int WHILE_ENTER = 8;
+	static final int WHILE_NEXT = 9;
+	// 关闭变量层,并把外层已有的同名变量写回
+	static final int END_BLOCK = 10;
+	static final int JUMP = 11;
+	static final int RETURN = 12;
+	static final int WAIT = 13;
+	static final int MACROS = 14;
+	static final int HALT = 15;
+	// 登记函数a已定义(解释器执行到定义处才认识该函数),并跳过函数体到b
+	static final int DEFINE = 16;
+	// 执行到此处时报告错误b(解释器只在执行到出错的语句时才报错)
+	static final int ERROR = 17;
+
+	// 表达式
+	static final int E_CONST = 0;
+	static final int E_VAR = 1;
+	static final int E_CALL = 2;
+	static final int E_SYSCALL = 3;
+	static final int E_REL = 4;
+	static final int E_BOOL = 5;
+	static final int E_ADD = 6;
+	static final int E_SUB = 7;
+	static final int E_MUL = 8;
+	static final int E_DIV = 9;
+	static final int E_MOD = 10;
+	static final int E_POW = 11;
+	static final int E_NEG = 12;
+	static final int E_NOT = 13;
+
+	// 比较运算(与RocScript中的LE,GE,EQ相同)
+	static final char LE = 0;
+	static final char GE = 1;
+	static final char EQ = 4;
+
+	// 逻辑运算
+	static final int AND = 0;
+	static final int OR = 1;
+	static final int NOT = 2;
+	static final int XOR = 3;
+	static final int XAND = 4;
+
+	// 词的类型(与RocScript中的参数类型相同)
+	static final int I_DELIMITER = 1;
+	static final int I_VARIABLE = 2;
+	static final int I_COMMAND = 3;
+	static final int I_EOL = 4;
+	static final int I_EOP = 5;
+	static final int I_STRING = 6;
+	static final int I_NUMBER = 7;
+	static final int I_BOOLEAN = 8;
+	static final int I_FUNCT = 9;
+	static final int I_MACROS = 21;
+
+	static final class Instr {
+
+		final int op;
+
+		// 报错时所在的词
+		int token;
+
+		int a = -1;
+
+		int b;
+
+		long time;
+
+		Expr expr;
+
+		Expr step;
+
+		Expr[] exprs;
+
+		int[] seps;
+
+		String text;
+
+		Instr(int op, int token) {
+			this.op = op;
+			this.token = token;
+		}
+	}
+
+	static final class Expr {
+
+		final int type;
+
+		// 运算结果出错时所在的词(右侧运算数之后的词)
+		int token;
+
+		// 左侧运算数出错时所在的词(运算符),或调用时的'('
+		int at;
+
+		// 运算符,或函数表序号
+		int op;
+
+		// 调用未定义的函数时报告的错误(解释器把它当作变量,由之后的'('引发的错误)
+		int error;
+
+		// 括号括起的表达式,其中的计算在未定义的函数处中断时报告括号不匹配
+		boolean group;
+
+		// 常量值,或E_SYSCALL的原始参数
+		Object value;
+
+		int slot = -1;
+
+		String name;
+
+		Expr left, right;
+
+		Expr[] args;
+
+		Expr(int type, int token) {
+			this.type = type;
+			this.token = token;
+			this.at = token;
+		}
+	}
+
+	static final class Function {
+
+		final String name;
+
+		int[] params;
+
+		int entry;
+
+		// 定义中begin所在的词,调用时由此计算函数体的行号
+		int begin;
+
+		Function(String name) {
+			this.name = name;
+		}
+	}
+
+	final char[] source;
+
+	final int hash;
+
+	final Instr[] code;
+
+	final String[] symbols;
+
+	final ObjectMap<String, Integer> slots;
+
+	final Function[] functions;
+
+	// 词表,依次为读完该词后的文本位置,行号,内容,类型与命令序号
+	final int[] ends;
+
+	final int[] lines;
+
+	final String[] texts;
+
+	final int[] types;
+
+	final int[] comms;
+
+	RocProgram(char[] source, int hash, Instr[] code, String[] symbols, ObjectMap<String, Integer> slots,
+			Function[] functions, int[] ends, int[] lines, String[] texts, int[] types, int[] comms) {
+		this.source = source;
+		this.hash = hash;
+		this.code = code;
+		this.symbols = symbols;
+		this.slots = slots;
+		this.functions = functions;
+		this.ends = ends;
+		this.lines = lines;
+		this.texts = texts;
+		this.types = types;
+		this.comms = comms;
+	}
+
+	boolean matches(char[] src) {
+		if (src == source) {
+			return true;
+		}
+		if (src == null || source == null || src.length != source.length) {
+			return false;
+		}
+		for (int i = 0; i < src.length; i++) {
+			if (src[i] != source[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int slotOf(String name) {
+		final Integer slot = slots.get(name);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	int size() {
+		return code.length;
+	}
+
+	int indexOfFunction(String name) {
+		for (int i = 0; i < functions.length; i++) {
+			if (functions[i].name.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return "RocProgram [hash=" + hash + ", code=" + code.length + ", symbols=" + symbols.length + ", functions="
+				+ functions.length + "]";
+	}
+}
@@ -0,0 +1,987 @@
+/**
+ * Copyright 2008 - 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.avg.drama;
+
+import loon.Json;
+import loon.LSysException;
+import loon.LSystem;
+import loon.action.avg.drama.RocProgram.Expr;
+import loon.action.avg.drama.RocProgram.Function;
+import loon.action.avg.drama.RocProgram.Instr;
+import loon.action.avg.drama.RocScript.ScriptException;
+import loon.utils.Array;
+import loon.utils.ArrayMap;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * 执行RocProgram.
+ *
+ * 变量层与解释器相同(进入代码块或函数时新建一层,读取时由内向外查找,关闭时把外层已有的同名变量写回),
+ * 只是每层为按槽位存放的数组.wait与跳转函数只在顶层语句之间暂停,暂停时保存指令位置,下次next时继续执行.
+ *
+ * 报错的位置,行号与词和解释器相同:行号为词的静态行号加上执行时的偏移,偏移在调用函数,返回与循环回到开头时
+ * 按解释器跳转文本位置后继续计数的方式变化.
+ */
+final class RocRuntime {
+
+	// 变量值为null时的占位,用来区分未定义的变量
+	private static final Object NULL = new Object();
+
+	private static final int C_END = 5;
+
+	private final RocScript _script;
+
+	private final RocProgram _program;
+
+	private Object[][] _frames = new Object[8][];
+
+	// 每层进入时的行号偏移,循环回到开头时使用
+	private int[] _frameLines = new int[8];
+
+	private int _depth;
+
+	// 调用函数时的参数栈
+	private Object[] _args = new Object[16];
+
+	private int _argTop;
+
+	// 运行时新增的变量(脚本外注入或宏指令产生)
+	private ObjectMap<String, Integer> _extraSlots;
+
+	private TArray<String> _extraNames;
+
+	private int _pc;
+
+	// 当前的词,报错与previousitem使用
+	private int _token;
+
+	// 执行时行号与静态行号的差
+	private int _lineOffset;
+
+	// 不为-1时行号取该词所在的行(循环末尾重新计算条件时解释器停在end所在的行)
+	private int _lineToken = -1;
+
+	// 函数返回时的行号与所在的词
+	private int _returnLine;
+
+	private int _returnToken;
+
+	// 正在执行的系统函数调用
+	private int _callToken;
+
+	// 不为-1时表达式在该词('(')处中断,解释器把未定义的函数名当作变量,其后的内容不再计算
+	private int _cut = -1;
+
+	// 中断后在所在语句中报告的错误
+	private int _cutError;
+
+	// 解释器中每个函数只记录最近一次调用的返回位置
+	private final int[] _backTokens;
+
+	// 函数定义是否已执行,未定义的函数名在解释器中视为变量
+	private final boolean[] _defined;
+
+	private boolean _started;
+
+	private boolean _completed;
+
+	RocRuntime(RocScript script, RocProgram program) {
+		this._script = script;
+		this._program = program;
+		this._backTokens = new int[program.functions.length];
+		this._defined = new boolean[program.functions.length];
+	}
+
+	RocProgram getProgram() {
+		return _program;
+	}
+
+	/**
+	 * 开始执行,并导入开始前已注入的变量
+	 *
+	 * @param vars
+	 */
+	void start(Array<ArrayMap> vars) {
+		for (int i = 0; i < _depth; i++) {
+			clear(_frames[i]);
+		}
+		_depth = 0;
+		_argTop = 0;
+		_pc = 0;
+		_token = 0;
+		_lineOffset = 0;
+		_lineToken = -1;
+		for (int i = 0; i < _defined.length; i++) {
+			_defined[i] = false;
+			_backTokens[i] = -1;
+		}
+		_completed = false;
+		pushFrame();
+		if (vars != null) {
+			for (int i = 0; i < vars.size(); i++) {
+				putVariables(vars.get(i));
+			}
+		}
+		_started = true;
+	}
+
+	void reset() {
+		_started = false;
+		_completed = false;
+		_pc = 0;
+	}
+
+	boolean isStarted() {
+		return _started;
+	}
+
+	boolean isCompleted() {
+		return _completed;
+	}
+
+	int getLine() {
+		return lineOf(_token) + _lineOffset;
+	}
+
+	String getItem() {
+		return _program.texts[_token];
+	}
+
+	private int lineOf(int token) {
+		return _program.lines[_lineToken >= 0 ? _lineToken : token];
+	}
+
+	/**
+	 * 从上次暂停的位置继续执行
+	 *
+	 * @param single 为true时只执行一条指令
+	 * @return
+	 * @throws ScriptException
+	 */
+	Object next(boolean single) throws ScriptException {
+		if (_completed || _script.waitSleep() != -1) {
+			return null;
+		}
+		return run(_pc, -1, single);
+	}
+
+	private Object run(int start, int base, boolean single) throws ScriptException {
+		final Instr[] code = _program.code;
+		final boolean main = base == -1;
+		int ip = start;
+		for (;;) {
+			if (main && _script.isStopped()) {
+				_pc = ip;
+				return null;
+			}
+			final Instr in = code[ip];
+			_token = in.token;
+			_cut = -1;
+			switch (in.op) {
+			case RocProgram.ASSIGN:
+				final Object value = eval(in.expr);
+				if (in.b == 1 && !(value instanceof Double)) {
+					error(RocScript.EXPERR, tokenOf(in.token));
+				}
+				setSlot(in.a, value);
+				checkCut();
+				ip++;
+				break;
+			case RocProgram.CALL:
+				eval(in.expr);
+				checkCut();
+				ip++;
+				break;
+			case RocProgram.PRINT:
+				print(in);
+				ip++;
+				break;
+			case RocProgram.IF:
+				boolean result = false;
+				try {
+					final Object o = eval(in.expr);
+					if (o instanceof Boolean) {
+						result = ((Boolean) o).booleanValue();
+					} else if (o instanceof Number) {
+						result = ((Number) o).doubleValue() > 0;
+					}
+				} catch (ClassCastException exc) {
+					error(RocScript.NOTABOOL, tokenOf(in.token));
+				}
+				pushFrame();
+				// 条件不成立时解释器直接跳到end,不检查其后的内容
+				if (result) {
+					checkCut();
+					checkOpen(in);
+				}
+				ip = result ? ip + 1 : in.a;
+				break;
+			case RocProgram.ELSEIF:
+				if (test(in.expr, in.token)) {
+					checkOpen(in);
+					ip++;
+				} else {
+					ip = in.a;
+				}
+				break;
+			case RocProgram.FOR_ENTER:
+				if (test(in.expr, in.token)) {
+					eval(in.step);
+					checkCut();
+					checkOpen(in);
+					pushFrame();
+					ip++;
+				} else {
+					ip = in.a;
+				}
+				break;
+			case RocProgram.FOR_NEXT:
+				_lineToken = in.token;
+				setSlot(in.b, (double) eval(in.step));
+				_cut = -1;
+				ip = loop((boolean) eval(in.expr), in.a, ip);
+				break;
+			case RocProgram.WHILE_ENTER:
+				if (test(in.expr, in.token)) {
+					checkOpen(in);
+					pushFrame();
+					ip++;
+				} else {
+					ip = in.a;
+				}
+				break;
+			case RocProgram.WHILE_NEXT:
+				_lineToken = in.token;
+				ip = loop((boolean) eval(in.expr), in.a, ip);
+				break;
+			case RocProgram.END_BLOCK:
+				popFrame();
+				ip++;
+				break;
+			case RocProgram.JUMP:
+				ip = in.a;
+				break;
+			case RocProgram.DEFINE:
+				_defined[in.a] = true;
+				ip = in.b;
+				break;
+			case RocProgram.ERROR:
+				error(in.b, in.token);
+				ip++;
+				break;
+			case RocProgram.RETURN:
+				final Object ret = in.expr == null ? null : eval(in.expr);
+				_returnLine = lineOf(in.token) + _lineOffset;
+				_returnToken = in.token;
+				if (main) {
+					_completed = true;
+					_pc = ip;
+					return ret;
+				}
+				while (_depth > base) {
+					popFrame();
+				}
+				return ret;
+			case RocProgram.WAIT:
+				_script._sleep = in.time;
+				ip++;
+				break;
+			case RocProgram.MACROS:
+				_script.macrosCommand(in.text, getLine());
+				ip++;
+				break;
+			case RocProgram.HALT:
+				_completed = true;
+				_pc = ip;
+				return null;
+			default:
+				ip++;
+				break;
+			}
+			// 函数内的暂停等到返回顶层语句后才生效
+			if (main && (single || _script.waitSleep() != -1)) {
+				_pc = ip;
+				return null;
+			}
+		}
+	}
+
+	private boolean test(Expr expr, int token) throws ScriptException {
+		boolean result = false;
+		try {
+			result = (boolean) eval(expr);
+		} catch (ClassCastException exc) {
+			error(RocScript.NOTABOOL, tokenOf(token));
+		}
+		if (result) {
+			checkCut();
+		}
+		return result;
+	}
+
+	/**
+	 * 表达式中断时,出错的位置为中断处
+	 */
+	private int tokenOf(int token) {
+		return _cut == -1 ? token : _cut;
+	}
+
+	/**
+	 * 代码块开头缺少then或begin,解释器在条件成立时才报错
+	 */
+	private void checkOpen(Instr in) throws ScriptException {
+		if (in.b != 0) {
+			final boolean branch = in.op == RocProgram.IF || in.op == RocProgram.ELSEIF;
+			error(branch ? RocScript.THENEXPECTED : RocScript.DOEXPECTED, in.b);
+		}
+	}
+
+	/**
+	 * 语句中的表达式在'('处中断,报告该语句此时应有的错误
+	 */
+	private void checkCut() throws ScriptException {
+		if (_cut != -1) {
+			error(_cutError, _cut);
+		}
+	}
+
+	/**
+	 * 循环末尾的条件计算完毕,回到开头时解释器恢复进入循环时记录的行号
+	 */
+	private int loop(boolean again, int body, int ip) {
+		_lineToken = -1;
+		if (again) {
+			_lineOffset = _frameLines[_depth - 1] + 1;
+			return body;
+		}
+		return ip + 1;
+	}
+
+	private void print(Instr in) throws ScriptException {
+		final IScriptLog log = _script.getScriptLog();
+		final Expr[] exprs = in.exprs;
+		for (int i = 0; i < exprs.length; i++) {
+			final Object value = eval(exprs[i]);
+			if (in.b == 1) {
+				log.info(value);
+			} else {
+				log.line(value);
+			}
+			checkCut();
+			switch (in.seps[i]) {
+			case 1:
+				log.line(" ");
+				break;
+			case 2:
+				log.line("\t");
+				break;
+			}
+		}
+	}
+
+	private void error(int error, int token) throws ScriptException {
+		_token = token;
+		final RocProgram p = _program;
+		_script.handleError(error, p.ends[token], getLine(), p.texts[token], typeOf(token), p.comms[token]);
+	}
+
+	/**
+	 * 名称的类型与解释器相同,取决于执行到此处时已有的变量与已定义的函数
+	 */
+	private int typeOf(int token) {
+		final int type = _program.types[token];
+		if (type != RocProgram.I_VARIABLE) {
+			return type;
+		}
+		final String name = _program.texts[token];
+		if (lookup(name) != null) {
+			return type;
+		}
+		final int index = _program.indexOfFunction(name.toLowerCase());
+		if ((index != -1 && _defined[index]) || _script.isSystemFunction(name)) {
+			return RocProgram.I_FUNCT;
+		}
+		return type;
+	}
+
+	private Object eval(Expr e) throws ScriptException {
+		final Object result = value(e);
+		if (e.group && _cut != -1) {
+			error(RocScript.UNBALPARENS, _cut);
+		}
+		return result;
+	}
+
+	/**
+	 * 未定义的函数名与解释器相同按变量取值,并在其后的'('处中断表达式
+	 */
+	private Object cut(Expr e) {
+		final String name = _program.texts[e.at - 1];
+		Object o = lookup(name);
+		if (o == null) {
+			o = missing(name);
+		}
+		_cut = e.at;
+		_cutError = e.error;
+		return toValue(o);
+	}
+
+	private Object value(Expr e) throws ScriptException {
+		switch (e.type) {
+		case RocProgram.E_CONST:
+			return e.value;
+		case RocProgram.E_VAR:
+			Object o = lookup(e.slot);
+			if (o == null || o == NULL) {
+				o = missing(e.name);
+			}
+			return toValue(o);
+		case RocProgram.E_CALL:
+			return invoke(e);
+		case RocProgram.E_SYSCALL:
+			if (!_script.isSystemFunction(e.name)) {
+				return cut(e);
+			}
+			final int call = _callToken;
+			_callToken = e.token;
+			try {
+				return _script.callFunction(e.name, (String) e.value);
+			} finally {
+				_callToken = call;
+			}
+		case RocProgram.E_REL:
+			return relation(e);
+		case RocProgram.E_BOOL:
+			return logic(e);
+		case RocProgram.E_ADD:
+		case RocProgram.E_SUB:
+			return add(e);
+		case RocProgram.E_MUL:
+		case RocProgram.E_DIV:
+		case RocProgram.E_MOD:
+			return multiply(e);
+		case RocProgram.E_POW:
+			return power(e);
+		case RocProgram.E_NEG:
+		case RocProgram.E_NOT:
+			return unary(e);
+		default:
+			return null;
+		}
+	}
+
+	private Object relation(Expr e) throws ScriptException {
+		final Object left = eval(e.left);
+		if (_cut != -1) {
+			return left;
+		}
+		final Object right = eval(e.right);
+		if (isNumber(left)) {
+			final double l = (double) left;
+			final double r = (double) right;
+			switch (e.op) {
+			case '<':
+				return l < r;
+			case RocProgram.LE:
+				return l <= r;
+			case '>':
+				return l > r;
+			case RocProgram.GE:
+				return l >= r;
+			case RocProgram.EQ:
+				return l == r;
+			}
+			return left;
+		} else if (isBoolean(left)) {
+			return left;
+		}
+		final int test = ((String) left).compareTo((String) right);
+		switch (e.op) {
+		case '<':
+			return test < 0;
+		case RocProgram.LE:
+			return test <= 0;
+		case '>':
+			return test > 0;
+		case RocProgram.GE:
+			return test >= 0;
+		case RocProgram.EQ:
+			return test == 0;
+		}
+		return left;
+	}
+
+	private Object logic(Expr e) throws ScriptException {
+		final Object left = eval(e.left);
+		if (_cut != -1) {
+			return left;
+		}
+		if (isNumber(left)) {
+			eval(e.right);
+			return left;
+		} else if (!isBoolean(left)) {
+			return left;
+		}
+		// 与解释器相同,右侧不是布尔值时直接转换失败
+		final boolean rb = (boolean) eval(e.right);
+		final boolean lb = (boolean) left;
+		switch (e.op) {
+		case RocProgram.AND:
+			return lb && rb;
+		case RocProgram.OR:
+			return lb || rb;
+		case RocProgram.XOR:
+			return lb ^ rb;
+		case RocProgram.XAND:
+			return lb == rb;
+		}
+		return left;
+	}
+
+	private Object add(Expr e) throws ScriptException {
+		final Object left = eval(e.left);
+		if (_cut != -1) {
+			return left;
+		}
+		final Object right = eval(e.right);
+		if (isNumber(left)) {
+			if (!isNumber(right)) {
+				error(RocScript.NOTANUMB, tokenOf(e.token));
+				return null;
+			}
+			return e.type == RocProgram.E_ADD ? (double) left + (double) right : (double) left - (double) right;
+		} else if (!isBoolean(left)) {
+			if (isNumber(right) || isBoolean(right)) {
+				error(RocScript.NOTASTR, tokenOf(e.token));
+				return null;
+			}
+			if (e.type == RocProgram.E_SUB) {
+				error(RocScript.INVALIDEXP, tokenOf(e.token));
+			}
+			return (String) left + (String) right;
+		}
+		return left;
+	}
+
+	private Object multiply(Expr e) throws ScriptException {
+		final Object left = eval(e.left);
+		if (_cut != -1) {
+			return left;
+		}
+		if (!isNumber(left)) {
+			error(RocScript.NOTANUMB, e.at);
+			return null;
+		}
+		final Object right = eval(e.right);
+		if (!isNumber(right)) {
+			error(RocScript.NOTANUMB, tokenOf(e.token));
+			return null;
+		}
+		final double r = (double) right;
+		switch (e.type) {
+		case RocProgram.E_MUL:
+			return (double) left * r;
+		case RocProgram.E_DIV:
+			if (r == 0.0) {
+				error(RocScript.DIVBYZERO, tokenOf(e.token));
+			}
+			return (double) left / r;
+		default:
+			if (r == 0.0) {
+				error(RocScript.DIVBYZERO, tokenOf(e.token));
+			}
+			return (double) left % r;
+		}
+	}
+
+	private Object power(Expr e) throws ScriptException {
+		final Object left = eval(e.left);
+		if (_cut != -1) {
+			return left;
+		}
+		if (!isNumber(left)) {
+			error(RocScript.NOTANUMB, e.at);
+			return null;
+		}
+		final Object right = eval(e.right);
+		if (!isNumber(right)) {
+			error(RocScript.NOTANUMB, tokenOf(e.token));
+			return null;
+		}
+		final double ex = (double) left;
+		final double n = (double) right;
+		if (n == 0.0) {
+			return 1.0;
+		}
+		// 与解释器相同的逐次相乘
+		double result = ex;
+		for (double t = n - 1; t > 0; t--) {
+			result *= ex;
+		}
+		return result;
+	}
+
+	private Object unary(Expr e) throws ScriptException {
+		final Object value = eval(e.left);
+		if (isNumber(value)) {
+			if (e.type != RocProgram.E_NEG) {
+				error(RocScript.NOTABOOL, tokenOf(e.token));
+				return null;
+			}
+			return -(double) value;
+		} else if (isBoolean(value)) {
+			if (e.type != RocProgram.E_NOT) {
+				error(RocScript.NOTANUMB, tokenOf(e.token));
+				return null;
+			}
+			return !(boolean) value;
+		}
+		error(RocScript.INVALIDEXP, tokenOf(e.token));
+		return null;
+	}
+
+	private Object invoke(Expr e) throws ScriptException {
+		// 定义尚未执行时解释器把函数名当作变量,报错在其后的'('上
+		if (!_defined[e.op]) {
+			return cut(e);
+		}
+		final Function func = _program.functions[e.op];
+		final Expr[] args = e.args;
+		// 先在调用者的变量层中求出全部参数
+		final int top = _argTop;
+		if (top + args.length > _args.length) {
+			final Object[] list = new Object[MathUtils.max(top + args.length, _args.length * 2)];
+			System.arraycopy(_args, 0, list, 0, top);
+			_args = list;
+		}
+		for (int i = 0; i < args.length; i++) {
+			if (i >= func.params.length) {
+				// 与解释器相同,由参数表取值时越界
+				throw new LSysException("index can't be >= size: " + i + " >= " + func.params.length);
+			}
+			_args[top + i] = eval(args[i]);
+			_argTop = top + i + 1;
+			if (_cut != -1) {
+				error(RocScript.UNBALPARENS, _cut);
+			}
+		}
+		final int base = _depth;
+		// 解释器读完')'后跳到begin之后继续计数行号
+		_lineOffset = lineOf(e.token) + _lineOffset - _program.lines[func.begin];
+		_lineToken = -1;
+		_backTokens[e.op] = e.token;
+		pushFrame();
+		for (int i = 0; i < args.length; i++) {
+			setSlot(func.params[i], _args[top + i]);
+			_args[top + i] = null;
+		}
+		_argTop = top;
+		final Object result = run(func.entry, base, false);
+		// 返回语句不检查返回值之后的内容
+		_cut = -1;
+		final int back = _backTokens[e.op];
+		_lineOffset = _returnLine - _program.lines[back];
+		if (back != e.token) {
+			// 递归时外层的返回回到了最近一次调用的位置,解释器随后在函数的end上报错
+			error(RocScript.SYNTAX, nextEnd(back));
+		}
+		_token = e.token;
+		_script.setPreviousItem(_program.texts[_returnToken]);
+		return result;
+	}
+
+	private int nextEnd(int token) {
+		final RocProgram p = _program;
+		for (int i = token + 1; i < p.types.length; i++) {
+			if (p.types[i] == RocProgram.I_COMMAND && p.comms[i] == C_END) {
+				return i;
+			}
+		}
+		return p.types.length - 1;
+	}
+
+	private int slotCount() {
+		return _program.symbols.length + (_extraNames == null ? 0 : _extraNames.size);
+	}
+
+	private int slotOf(String name, boolean create) {
+		final int slot = _program.slotOf(name);
+		if (slot != -1) {
+			return slot;
+		}
+		if (_extraSlots != null) {
+			final Integer extra = _extraSlots.get(name);
+			if (extra != null) {
+				return extra.intValue();
+			}
+		}
+		if (!create) {
+			return -1;
+		}
+		if (_extraSlots == null) {
+			_extraSlots = new ObjectMap<String, Integer>();
+			_extraNames = new TArray<String>();
+		}
+		final int index = slotCount();
+		_extraSlots.put(name, index);
+		_extraNames.add(name);
+		return index;
+	}
+
+	private String nameOf(int slot) {
+		final int size = _program.symbols.length;
+		return slot < size ? _program.symbols[slot] : _extraNames.get(slot - size);
+	}
+
+	private void pushFrame() {
+		if (_depth == _frames.length) {
+			final Object[][] frames = new Object[_depth * 2][];
+			final int[] lines = new int[_depth * 2];
+			System.arraycopy(_frames, 0, frames, 0, _depth);
+			System.arraycopy(_frameLines, 0, lines, 0, _depth);
+			_frames = frames;
+			_frameLines = lines;
+		}
+		_frameLines[_depth] = _lineOffset;
+		final Object[] frame = _frames[_depth];
+		if (frame == null || frame.length < slotCount()) {
+			_frames[_depth] = new Object[slotCount()];
+		}
+		_depth++;
+	}
+
+	/**
+	 * 关闭最内层,把外层已有的同名变量写回
+	 */
+	private void popFrame() {
+		final Object[] frame = _frames[--_depth];
+		final Object[] outer = _depth > 0 ? _frames[_depth - 1] : null;
+		for (int i = 0; i < frame.length; i++) {
+			final Object v = frame[i];
+			if (v != null) {
+				if (outer != null && i < outer.length && outer[i] != null) {
+					outer[i] = v;
+				}
+				frame[i] = null;
+			}
+		}
+	}
+
+	private static void clear(Object[] frame) {
+		if (frame != null) {
+			for (int i = 0; i < frame.length; i++) {
+				frame[i] = null;
+			}
+		}
+	}
+
+	private void setSlot(int slot, Object value) {
+		Object[] frame = _frames[_depth - 1];
+		if (slot >= frame.length) {
+			final Object[] list = new Object[MathUtils.max(slot + 1, slotCount())];
+			System.arraycopy(frame, 0, list, 0, frame.length);
+			_frames[_depth - 1] = frame = list;
+		}
+		frame[slot] = value == null ? NULL : value;
+	}
+
+	private Object lookup(int slot) {
+		for (int i = _depth - 1; i >= 0; i--) {
+			final Object[] frame = _frames[i];
+			if (slot < frame.length) {
+				final Object v = frame[slot];
+				if (v != null) {
+					return v;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Object lookup(String name) {
+		final int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		final Object v = lookup(slot);
+		return v == NULL ? null : v;
+	}
+
+	/**
+	 * 变量不存在时按名称中的'.'查询所属的对象(json)
+	 */
+	private Object missing(String vname) {
+		Object o = null;
+		final Object[] result = findVar(vname);
+		if (result != null) {
+			final String method = (String) result[1];
+			final Object vl = result[2];
+			if (vl instanceof Json.Object) {
+				o = _script.queryJson(vl, vname, method);
+			} else {
+				o = vl;
+			}
+		}
+		return o == null ? LSystem.UNKNOWN : o;
+	}
+
+	private Object[] findVar(String vname) {
+		final int idx = vname.lastIndexOf('.');
+		if (idx == -1) {
+			return null;
+		}
+		final String name = vname.substring(0, idx);
+		final Object o = lookup(name);
+		if (o != null) {
+			return new Object[] { name, vname.substring(idx + 1), o };
+		}
+		return findVar(name);
+	}
+
+	/**
+	 * 与解释器中getVarVal相同的按名称取值,供系统函数参数使用
+	 */
+	Object getVarVal(String vname) throws ScriptException {
+		if (vname.indexOf(LSystem.SINGLE_QUOTE) == 0 || vname.indexOf(LSystem.DOUBLE_QUOTES) == 0) {
+			if (vname.length() > 2) {
+				return vname.substring(1, vname.length() - 1);
+			}
+			return vname;
+		}
+		if (!Character.isLetter(vname.charAt(0))) {
+			error(RocScript.UNKOWN, _callToken);
+			return 0;
+		}
+		final Object o = lookup(vname);
+		return o == null ? missing(vname) : o;
+	}
+
+	void setVar(String name, Object value) {
+		setSlot(slotOf(name, true), value);
+	}
+
+	Object getLastVar(String name) {
+		final int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		final Object[] frame = _frames[_depth - 1];
+		return slot < frame.length && frame[slot] != NULL ? frame[slot] : null;
+	}
+
+	Object getFirstVar(String name) {
+		final int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		final Object[] frame = _frames[0];
+		return slot < frame.length && frame[slot] != NULL ? frame[slot] : null;
+	}
+
+	/**
+	 * 与解释器相同,由外向内返回第一个不为null的值
+	 */
+	Object getVar(String name) {
+		final int slot = slotOf(name, false);
+		if (slot == -1) {
+			return null;
+		}
+		for (int i = 0; i < _depth; i++) {
+			final Object[] frame = _frames[i];
+			if (slot < frame.length && frame[slot] != null && frame[slot] != NULL) {
+				return frame[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 当前可见的全部变量,内层覆盖外层
+	 */
+	ArrayMap getVariables() {
+		final ArrayMap map = new ArrayMap();
+		for (int i = 0; i < _depth; i++) {
+			final Object[] frame = _frames[i];
+			for (int j = 0; j < frame.length; j++) {
+				final Object v = frame[j];
+				if (v != null) {
+					map.put(nameOf(j), v == NULL ? null : v);
+				}
+			}
+		}
+		return map;
+	}
+
+	void putVariables(ArrayMap map) {
+		if (map == null) {
+			return;
+		}
+		for (int i = 0; i < map.size(); i++) {
+			final Object key = map.getKey(i);
+			if (key != null) {
+				setVar(key.toString(), map.get(i));
+			}
+		}
+	}
+
+	static boolean isNumber(Object o) {
+		if (o == null || o instanceof Boolean) {
+			return false;
+		}
+		if (o instanceof Double) {
+			final double v = ((Double) o).doubleValue();
+			return !(Double.isNaN(v) || Double.isInfinite(v));
+		}
+		return MathUtils.isNan(o.toString());
+	}
+
+	static boolean isBoolean(Object o) {
+		if (o == null) {
+			return false;
+		}
+		if (o instanceof Boolean) {
+			return true;
+		}
+		if (o instanceof Double) {
+			return isNumber(o);
+		}
+		final String str = o.toString().toLowerCase();
+		return StringUtils.isBoolean(str) || MathUtils.isNan(str);
+	}
+
+	/**
+	 * 与解释器读取变量时相同的类型转换
+	 */
+	static Object toValue(Object o) {
+		if (o instanceof Number || o instanceof Boolean) {
+			return o;
+		} else if (isNumber(o)) {
+			return Double.parseDouble(o.toString());
+		} else if (isBoolean(o)) {
+			return StringUtils.toBoolean((String) o);
+		}
+		return o;
+	}
+
+}
@@ -34,6 +34,8 @@ import loon.utils.res.TextResource;
 /**
  * Loon默认提供的脚本解释器，无平台依赖，用来实现一种近似于Processing的线型渲染与操作，
  * 另外，RocScript中也允许使用Command中的命令.
+ * 
+ * 默认先把脚本编译为指令形式(RocProgram)再执行,编译结果按脚本内容缓存,setCompiled(false)时使用原有的逐词解释执行.
  */
 public class RocScript {
 
@@ -45,6 +47,30 @@ public class RocScript {
 
 	private ArrayMap waitTimes = new ArrayMap();
 
+	/**
+	 * 编译与编译后执行时报告错误,位置与词的信息和解释执行时相同
+	 * 
+	 * @param error
+	 * @param idx
+	 * @param line
+	 * @param item
+	 * @param type
+	 * @param comm
+	 * @throws ScriptException
+	 */
+	void handleError(int error, int idx, int line, String item, int type, int comm) throws ScriptException {
+		this.textIdx = idx;
+		this.textLine = line;
+		this.item = item;
+		this.itemType = type;
+		this.commType = comm;
+		handleError(error);
+	}
+
+	void setPreviousItem(String item) {
+		this.previousItem = item;
+	}
+
 	private void handleError(int error) throws ScriptException {
 		String[] errors = new String[UNKNOWN + 1];
 		errors[SYNTAX] = "Syntax Error";
@@ -115,28 +141,28 @@ public class RocScript {
 	private final int PRINTLN = 13;
 
 	// 错误
-	private final int SYNTAX = 0;
-	private final int UNBALPARENS = 1;
-	private final int DIVBYZERO = 2;
-	private final int EQUALEXPECTED = 3;
-	private final int UNKOWN = 4;
-	private final int NOTABOOL = 5;
-	private final int NOTANUMB = 6;
-	private final int NOTASTR = 7;
-	private final int DUPFUNCTION = 8;
-	private final int ENDEXPECTED = 9;
-	private final int THENEXPECTED = 10;
-	private final int MISSQUOTE = 11;
-	private final int DOEXPECTED = 12;
-	private final int UNKFUNCTION = 13;
-	private final int INVALIDEXP = 14;
-	private final int UNEXPITEM = 15;
-	private final int TOOMANYPARAMS = 16;
-
-	private final int FILENOTFOUND = 17;
-	private final int INPUTIOERROR = 18;
-	private final int EXPERR = 19;
-	private final int FILEIOERROR = 20;
+	final static int SYNTAX = 0;
+	final static int UNBALPARENS = 1;
+	final static int DIVBYZERO = 2;
+	final static int EQUALEXPECTED = 3;
+	final static int UNKOWN = 4;
+	final static int NOTABOOL = 5;
+	final static int NOTANUMB = 6;
+	final static int NOTASTR = 7;
+	final static int DUPFUNCTION = 8;
+	final static int ENDEXPECTED = 9;
+	final static int THENEXPECTED = 10;
+	final static int MISSQUOTE = 11;
+	final static int DOEXPECTED = 12;
+	final static int UNKFUNCTION = 13;
+	final static int INVALIDEXP = 14;
+	final static int UNEXPITEM = 15;
+	final static int TOOMANYPARAMS = 16;
+
+	final static int FILENOTFOUND = 17;
+	final static int INPUTIOERROR = 18;
+	final static int EXPERR = 19;
+	final static int FILEIOERROR = 20;
 
 	// 宏
 	private final int MACROS = 21;
@@ -159,6 +185,11 @@ public class RocScript {
 
 	private boolean _stop = false;
 
+	// 是否以编译后的指令形式执行
+	private boolean _compiled = true;
+
+	private RocRuntime _runtime;
+
 	private int textIdx;
 	private int textLine;
 
@@ -288,7 +319,7 @@ public class RocScript {
 			if (ch == flag) {
 				out.append(flag);
 				if (i + 1 < chars.length && chars[i + 1] != LSystem.LF) {
-					out.append(LSystem.LS);
+					out.append(LSystem.NL);
 				}
 			} else {
 				out.append(ch);
@@ -346,7 +377,7 @@ public class RocScript {
 			} else {
 				out.append(cmd);
 			}
-			out.append(LSystem.LS);
+			out.append(LSystem.NL);
 		}
 		return out.toString();
 	}
@@ -445,6 +476,9 @@ public class RocScript {
 		itemType = 0;
 		commType = 0;
 		macroType = -1;
+		if (_runtime != null) {
+			_runtime.reset();
+		}
 	}
 
 	/**
@@ -467,6 +501,64 @@ public class RocScript {
 		_stop = true;
 	}
 
+	boolean isStopped() {
+		return _stop;
+	}
+
+	IScriptLog getScriptLog() {
+		return scriptLog;
+	}
+
+	/**
+	 * 设置是否先编译脚本再执行(默认为true),应在脚本开始执行前设置
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public RocScript setCompiled(boolean c) {
+		if (this._compiled != c) {
+			this._compiled = c;
+			this._runtime = null;
+		}
+		return this;
+	}
+
+	public boolean isCompiled() {
+		return this._compiled;
+	}
+
+	/**
+	 * 清空全部脚本的编译缓存
+	 */
+	public static void clearCompiledCache() {
+		RocCompiler.clearCache();
+	}
+
+	public static int getCompiledCacheSize() {
+		return RocCompiler.getCacheSize();
+	}
+
+	/**
+	 * 获得编译后的执行器,首次执行时编译脚本(相同内容的脚本直接使用缓存)
+	 * 
+	 * @return
+	 * @throws ScriptException
+	 */
+	private RocRuntime compiled() throws ScriptException {
+		if (_runtime == null) {
+			debug("Compiling script...");
+			_runtime = new RocRuntime(this, RocCompiler.compile(this, _cmdcontexts));
+		}
+		if (!_runtime.isStarted()) {
+			_runtime.start(vars);
+		}
+		return _runtime;
+	}
+
+	private boolean isCompiledRunning() {
+		return _runtime != null && _runtime.isStarted();
+	}
+
 	/**
 	 * 执行脚本命令
 	 * 
@@ -474,6 +566,15 @@ public class RocScript {
 	 * @throws ScriptException
 	 */
 	public Object next() throws ScriptException {
+		if (_compiled) {
+			try {
+				return compiled().next(false);
+			} finally {
+				if (_runtime != null) {
+					previousItem = _runtime.getItem();
+				}
+			}
+		}
 		try {
 			debug("Starting script...");
 			if (_sleep != -1) {
@@ -566,6 +667,15 @@ public class RocScript {
 	}
 
 	public Object running() throws ScriptException {
+		if (_compiled) {
+			try {
+				return compiled().next(true);
+			} finally {
+				if (_runtime != null) {
+					previousItem = _runtime.getItem();
+				}
+			}
+		}
 		try {
 			debug("Starting script...");
 
@@ -693,7 +803,7 @@ public class RocScript {
 		}
 	}
 
-	private void macrosCommand(String context, int id) {
+	void macrosCommand(String context, int id) {
 		if (!initNextMacros) {
 			return;
 		}
@@ -704,9 +814,13 @@ public class RocScript {
 		} else {
 			macros_executer.formatCommand("script" + id, res);
 		}
-		for (int i = 0; i < vars.size(); i++) {
-			ArrayMap maps = vars.get(i);
-			macros_executer.setVariables(maps);
+		if (isCompiledRunning()) {
+			macros_executer.setVariables(_runtime.getVariables());
+		} else {
+			for (int i = 0; i < vars.size(); i++) {
+				ArrayMap maps = vars.get(i);
+				macros_executer.setVariables(maps);
+			}
 		}
 		if (scriptLog != null) {
 			scriptLog.info("Syncing...");
@@ -718,14 +832,18 @@ public class RocScript {
 			}
 			if (macros_listeners != null) {
 				for (IMacros macros_listener : macros_listeners) {
-					macros_listener.call(scriptLog, textLine, macros_executer, result);
+					macros_listener.call(scriptLog, id, macros_executer, result);
 				}
 			}
 		}
 		if (scriptLog != null) {
 			scriptLog.info("Synchro is completed.");
 		}
-		vars.add(macros_executer.getVariables());
+		if (isCompiledRunning()) {
+			_runtime.putVariables(macros_executer.getVariables());
+		} else {
+			vars.add(macros_executer.getVariables());
+		}
 	}
 
 	private void println() throws ScriptException {
@@ -1031,38 +1149,7 @@ public class RocScript {
 				}
 			}
 
-			if (v.length() > 0 && v.indexOf(LSystem.COMMA) == -1) {
-				if (v.indexOf(LSystem.DOUBLE_QUOTES) == -1 && v.indexOf(LSystem.SLASH) == -1
-						&& !isNumber(v)) {
-					String tmp = getVarVal(v).toString();
-					if (!LSystem.UNKNOWN.equalsIgnoreCase(tmp)) {
-						v = tmp;
-					}
-				}
-			} else if (v.indexOf(LSystem.COMMA) != -1) {
-				String[] split = StringUtils.split(v, LSystem.COMMA);
-				StrBuilder sbr = new StrBuilder();
-				for (String s : split) {
-					if (s.indexOf(LSystem.DOUBLE_QUOTES) == -1 && v.indexOf(LSystem.SLASH) == -1 && !isNumber(s)) {
-						String tmp = getVarVal(s).toString();
-						if (!LSystem.UNKNOWN.equalsIgnoreCase(tmp)) {
-							sbr.append(tmp.toString());
-						} else {
-							sbr.append(s);
-						}
-					} else {
-						sbr.append(s);
-					}
-					sbr.append(LSystem.COMMA);
-				}
-				v = sbr.toString();
-				if (v.endsWith(",")) {
-					v = v.substring(0, v.length() - 1);
-				}
-
-			}
-			Object reuslt = _rocFunctions.getValue(this, key, v);
-			return reuslt == null ? LSystem.UNKNOWN : reuslt;
+			return callFunction(key, v);
 		}
 
 		Function f = (Function) functs.get(item.toLowerCase());
@@ -1105,6 +1192,53 @@ public class RocScript {
 		return next();
 	}
 
+	/**
+	 * 调用系统函数,参数中的变量名替换为变量值
+	 * 
+	 * @param key
+	 * @param v
+	 * @return
+	 * @throws ScriptException
+	 */
+	Object callFunction(String key, String v) throws ScriptException {
+		if (v.length() > 0 && v.indexOf(LSystem.COMMA) == -1) {
+			if (v.indexOf(LSystem.DOUBLE_QUOTES) == -1 && v.indexOf(LSystem.SLASH) == -1
+					&& !isNumber(v)) {
+				String tmp = getVarVal(v).toString();
+				if (!LSystem.UNKNOWN.equalsIgnoreCase(tmp)) {
+					v = tmp;
+				}
+			}
+		} else if (v.indexOf(LSystem.COMMA) != -1) {
+			String[] split = StringUtils.split(v, LSystem.COMMA);
+			StrBuilder sbr = new StrBuilder();
+			for (String s : split) {
+				if (s.indexOf(LSystem.DOUBLE_QUOTES) == -1 && v.indexOf(LSystem.SLASH) == -1 && !isNumber(s)) {
+					String tmp = getVarVal(s).toString();
+					if (!LSystem.UNKNOWN.equalsIgnoreCase(tmp)) {
+						sbr.append(tmp.toString());
+					} else {
+						sbr.append(s);
+					}
+				} else {
+					sbr.append(s);
+				}
+				sbr.append(LSystem.COMMA);
+			}
+			v = sbr.toString();
+			if (v.endsWith(",")) {
+				v = v.substring(0, v.length() - 1);
+			}
+
+		}
+		Object reuslt = _rocFunctions.getValue(this, key, v);
+		return reuslt == null ? LSystem.UNKNOWN : reuslt;
+	}
+
+	boolean isSystemFunction(String key) {
+		return _rocFunctions._system_functs.contains(key.trim().toLowerCase());
+	}
+
 	private boolean endCommand(boolean force) throws ScriptException {
 		debug("End LoonFun");
 
@@ -1219,6 +1353,9 @@ public class RocScript {
 	 * @return
 	 */
 	public boolean isCompleted() {
+		if (_compiled && _runtime != null && _runtime.isStarted()) {
+			return _runtime.isCompleted();
+		}
 		return this.itemType == EOP;
 	}
 
@@ -1933,7 +2070,7 @@ public class RocScript {
 	 * @param method
 	 * @return
 	 */
-	private Object queryJson(Object vl, String vname, String method) {
+	Object queryJson(Object vl, String vname, String method) {
 		int start = 0;
 		int end = 0;
 		Object o = null;
@@ -2118,6 +2255,9 @@ public class RocScript {
 	}
 
 	private Object getVarVal(String vname) throws ScriptException {
+		if (isCompiledRunning()) {
+			return _runtime.getVarVal(vname);
+		}
 		if (vname.indexOf(LSystem.SINGLE_QUOTE) == 0 || vname.indexOf(LSystem.DOUBLE_QUOTES) == 0) {
 			if (vname.length() > 2) {
 				return vname.substring(1, vname.length() - 1);
@@ -2173,7 +2313,9 @@ public class RocScript {
 	 * @param obj
 	 */
 	public void addVar(String name, Object obj) {
-		if (vars != null) {
+		if (isCompiledRunning()) {
+			_runtime.setVar(name, obj);
+		} else if (vars != null) {
 			vars.last().put(name, obj);
 		}
 	}
@@ -2185,6 +2327,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getLastVar(String name) {
+		if (isCompiledRunning()) {
+			return _runtime.getLastVar(name);
+		}
 		if (vars != null) {
 			return vars.last().get(name);
 		}
@@ -2198,6 +2343,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getFirstVar(String name) {
+		if (isCompiledRunning()) {
+			return _runtime.getFirstVar(name);
+		}
 		if (vars != null) {
 			return vars.first().get(name);
 		}
@@ -2211,6 +2359,9 @@ public class RocScript {
 	 * @return
 	 */
 	public Object getVar(String name) {
+		if (isCompiledRunning()) {
+			return _runtime.getVar(name);
+		}
 		if (vars != null) {
 			Object result = null;
 			for (; vars.hashNext();) {
@@ -26,10 +26,15 @@ import loon.geom.Vector2f;
 import loon.utils.LIterator;
 import loon.utils.MathUtils;
 import loon.utils.ObjectSet;
-import loon.utils.SortedList;
 import loon.utils.TArray;
 import loon.utils.cache.Pool;
 
+/**
+ * 基于BSP树的碰撞检查器.
+ * 
+ * 本身不加锁,修改(add/remove/update)与查询不能同时进行;开启concurrentQueries后,每次查询都使用独立的临时对象,
+ * 多个线程可以在没有修改时同时查询.
+ */
 public final class BSPCollisionChecker implements CollisionChecker {
 
 	private final static int MAX_SIZE = 1024;
@@ -93,21 +98,64 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		return new RectBox(x, y, w, h);
 	}
 
-	private final CollisionBaseQuery actorQuery = new CollisionBaseQuery();
+	/**
+	 * 单次查询使用的临时对象
+	 */
+	private static final class QueryContext {
+
+		final CollisionBaseQuery actorQuery = new CollisionBaseQuery();
+
+		final CollisionNeighbourQuery neighbourQuery = new CollisionNeighbourQuery();
+
+		final CollisionPointQuery pointQuery = new CollisionPointQuery();
+
+		final CollisionInRangeQuery inRangeQuery = new CollisionInRangeQuery();
 
-	private final CollisionNeighbourQuery neighbourQuery = new CollisionNeighbourQuery();
+		final ObjectSet<CollisionObject> cacheSet = new ObjectSet<CollisionObject>();
+
+		final TArray<BSPCollisionNode> cacheNodeStack = new TArray<BSPCollisionNode>();
+
+		final boolean shared;
+
+		QueryContext(boolean shared) {
+			this.shared = shared;
+		}
+
+		LIterator<CollisionObject> actorsIterator(BSPCollisionNode node) {
+			return shared ? node.getActorsIterator() : node.newActorsIterator();
+		}
+	}
 
-	private final CollisionPointQuery pointQuery = new CollisionPointQuery();
+	private final QueryContext _sharedContext = new QueryContext(true);
 
-	private final CollisionInRangeQuery inRangeQuery = new CollisionInRangeQuery();
+	private boolean _concurrentQueries;
 
 	private int cellSizeX, cellSizeY;
 
 	private BSPCollisionNode bspTree;
 
-	private ObjectSet<CollisionObject> cacheSet = new ObjectSet<CollisionObject>();
+	private QueryContext obtainContext() {
+		if (_concurrentQueries) {
+			return new QueryContext(false);
+		}
+		final QueryContext ctx = _sharedContext;
+		ctx.cacheSet.clear();
+		ctx.cacheNodeStack.clear();
+		return ctx;
+	}
 
-	private SortedList<BSPCollisionNode> cacheNodeStack = new SortedList<BSPCollisionNode>();
+	/**
+	 * 是否允许多个线程同时查询(查询期间不能修改),开启后每次查询会创建独立的临时对象
+	 * 
+	 * @param concurrent
+	 */
+	public void setConcurrentQueries(boolean concurrent) {
+		this._concurrentQueries = concurrent;
+	}
+
+	public boolean isConcurrentQueries() {
+		return _concurrentQueries;
+	}
 
 	@Override
 	public void initialize(int size) {
@@ -145,7 +193,7 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized void addObject(CollisionObject actor) {
+	public void addObject(CollisionObject actor) {
 		RectBox bounds = this.getActorBounds(actor);
 		float by;
 		if (this.bspTree == null) {
@@ -260,7 +308,7 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized void clear() {
+	public void clear() {
 		if (bspTree != null) {
 			bspTree.clear();
 		}
@@ -288,7 +336,7 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized void removeObject(CollisionObject obj) {
+	public void removeObject(CollisionObject obj) {
 		for (CollisionNode node = getNodeForActor(obj); node != null; node = getNodeForActor(obj)) {
 			BSPCollisionNode bspNode = node.getBSPNode();
 			node.remove();
@@ -431,10 +479,11 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		this.updateObject(obj);
 	}
 
-	private TArray<CollisionObject> getIntersectingObjects(final float x, final float y, final float w, final float h,
-			final CollisionQuery query) {
+	private TArray<CollisionObject> getIntersectingObjects(final QueryContext ctx, final float x, final float y,
+			final float w, final float h, final CollisionQuery query) {
+		final ObjectSet<CollisionObject> cacheSet = ctx.cacheSet;
 		cacheSet.clear();
-		this.getIntersectingObjects(x, y, w, h, query, cacheSet, this.bspTree);
+		this.getIntersectingObjects(ctx, x, y, w, h, query, cacheSet, this.bspTree);
 		final TArray<CollisionObject> l = new TArray<CollisionObject>(cacheSet.size());
 		for (LIterator<CollisionObject> it = cacheSet.iterator(); it.hasNext();) {
 			l.add(it.next());
@@ -442,23 +491,20 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		return l;
 	}
 
-	private void intersectingObjects(final float x, final float y, final float w, final float h, CollisionQuery query,
-			ObjectSet<CollisionObject> set) {
-		this.getIntersectingObjects(x, y, w, h, query, set, this.bspTree);
-	}
-
-	private void getIntersectingObjects(final float x, final float y, final float w, final float h,
-			final CollisionQuery query, final ObjectSet<CollisionObject> resultSet, final BSPCollisionNode startNode) {
+	private void getIntersectingObjects(final QueryContext ctx, final float x, final float y, final float w,
+			final float h, final CollisionQuery query, final ObjectSet<CollisionObject> resultSet,
+			final BSPCollisionNode startNode) {
+		final TArray<BSPCollisionNode> cacheNodeStack = ctx.cacheNodeStack;
 		cacheNodeStack.clear();
 		try {
 			if (startNode != null) {
 				cacheNodeStack.add(startNode);
 			}
 			int idx = 0;
-			for (; cacheNodeStack.size() != 0 && idx < MAX_SIZE;) {
-				final BSPCollisionNode node = (BSPCollisionNode) cacheNodeStack.removeLast();
+			for (; cacheNodeStack.size != 0 && idx < MAX_SIZE;) {
+				final BSPCollisionNode node = cacheNodeStack.pop();
 				if (node.getArea().intersects(x, y, w, h)) {
-					LIterator<CollisionObject> i = node.getActorsIterator();
+					LIterator<CollisionObject> i = ctx.actorsIterator(node);
 					for (; i.hasNext();) {
 						CollisionObject left = i.next();
 						if (query.checkCollision(left) && !resultSet.contains(left)) {
@@ -480,12 +526,12 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		}
 	}
 
-	private CollisionObject checkForOnlyCollision(final CollisionObject ignore, final BSPCollisionNode node,
-			final CollisionQuery query) {
+	private CollisionObject checkForOnlyCollision(final QueryContext ctx, final CollisionObject ignore,
+			final BSPCollisionNode node, final CollisionQuery query) {
 		if (node == null) {
 			return null;
 		}
-		final LIterator<CollisionObject> i = node.getActorsIterator();
+		final LIterator<CollisionObject> i = ctx.actorsIterator(node);
 		CollisionObject candidate;
 		do {
 			if (!i.hasNext()) {
@@ -496,19 +542,20 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		return candidate;
 	}
 
-	private CollisionObject getOnlyObjectDownTree(final CollisionObject ignore, final RectBox r,
-			final CollisionQuery query, final BSPCollisionNode startNode) {
+	private CollisionObject getOnlyObjectDownTree(final QueryContext ctx, final CollisionObject ignore,
+			final RectBox r, final CollisionQuery query, final BSPCollisionNode startNode) {
 		if (startNode == null) {
 			return null;
 		} else {
+			final TArray<BSPCollisionNode> cacheNodeStack = ctx.cacheNodeStack;
 			cacheNodeStack.clear();
 			if (startNode != null) {
 				cacheNodeStack.add(startNode);
 			}
-			while (cacheNodeStack.size() != 0) {
-				final BSPCollisionNode node = (BSPCollisionNode) cacheNodeStack.removeLast();
+			while (cacheNodeStack.size != 0) {
+				final BSPCollisionNode node = cacheNodeStack.pop();
 				if (node.getArea().intersects(r)) {
-					CollisionObject res = this.checkForOnlyCollision(ignore, node, query);
+					CollisionObject res = this.checkForOnlyCollision(ctx, ignore, node, query);
 					if (res != null) {
 						return res;
 					}
@@ -527,22 +574,25 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		}
 	}
 
-	private CollisionObject getOnlyIntersectingDown(RectBox rect, CollisionQuery query, CollisionObject actor) {
-		return getOnlyIntersectingDown(rect.x, rect.y, rect.width, rect.height, query, actor);
+	private CollisionObject getOnlyIntersectingDown(QueryContext ctx, RectBox rect, CollisionQuery query,
+			CollisionObject actor) {
+		return getOnlyIntersectingDown(ctx, rect.x, rect.y, rect.width, rect.height, query, actor);
 	}
 
-	private CollisionObject getOnlyIntersectingDown(final float x, final float y, final float w, final float h,
-			final CollisionQuery query, final CollisionObject actor) {
-		if (this.bspTree == null) {
+	private CollisionObject getOnlyIntersectingDown(final QueryContext ctx, final float x, final float y,
+			final float w, final float h, final CollisionQuery query, final CollisionObject actor) {
+		final BSPCollisionNode root = this.bspTree;
+		if (root == null) {
 			return null;
 		} else {
+			final TArray<BSPCollisionNode> cacheNodeStack = ctx.cacheNodeStack;
 			cacheNodeStack.clear();
-			cacheNodeStack.add(this.bspTree);
+			cacheNodeStack.add(root);
 			int idx = 0;
-			for (; cacheNodeStack.size() != 0 && idx < MAX_SIZE;) {
-				BSPCollisionNode node = (BSPCollisionNode) cacheNodeStack.removeLast();
+			for (; cacheNodeStack.size != 0 && idx < MAX_SIZE;) {
+				BSPCollisionNode node = cacheNodeStack.pop();
 				if (node.getArea().contains(x, y, w, h)) {
-					CollisionObject res = this.checkForOnlyCollision(actor, node, query);
+					CollisionObject res = this.checkForOnlyCollision(ctx, actor, node, query);
 					if (res != null) {
 						return res;
 					}
@@ -561,15 +611,16 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		}
 	}
 
-	private CollisionObject getOnlyIntersectingUp(final RectBox rect, final CollisionQuery query,
-			final CollisionObject actor, final BSPCollisionNode start) {
-		return getOnlyIntersectingUp(rect.x, rect.y, rect.width, rect.height, query, actor, start);
+	private CollisionObject getOnlyIntersectingUp(final QueryContext ctx, final RectBox rect,
+			final CollisionQuery query, final CollisionObject actor, final BSPCollisionNode start) {
+		return getOnlyIntersectingUp(ctx, rect.x, rect.y, rect.width, rect.height, query, actor, start);
 	}
 
-	private CollisionObject getOnlyIntersectingUp(final float x, final float y, final float w, final float h,
-			final CollisionQuery query, final CollisionObject actor, BSPCollisionNode start) {
+	private CollisionObject getOnlyIntersectingUp(final QueryContext ctx, final float x, final float y,
+			final float w, final float h, final CollisionQuery query, final CollisionObject actor,
+			BSPCollisionNode start) {
 		for (; start != null && !start.getArea().contains(x, y, w, h);) {
-			final CollisionObject res = this.checkForOnlyCollision(actor, start, query);
+			final CollisionObject res = this.checkForOnlyCollision(ctx, actor, start, query);
 			if (res != null) {
 				return res;
 			}
@@ -579,19 +630,21 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjectsAt(final float x, final float y, final String flag) {
+	public TArray<CollisionObject> getObjectsAt(final float x, final float y, final String flag) {
 		final float px = x * this.cellSizeX + this.cellSizeX / 2f;
 		final float py = y * this.cellSizeY + this.cellSizeY / 2f;
-		this.pointQuery.init(px, py, flag, this._offsetLocation);
-		return this.getIntersectingObjects(px, py, 1, 1, this.pointQuery);
+		final QueryContext ctx = obtainContext();
+		ctx.pointQuery.init(px, py, flag, this._offsetLocation);
+		return this.getIntersectingObjects(ctx, px, py, 1, 1, ctx.pointQuery);
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getIntersectingObjects(final CollisionObject actor, final String flag) {
+	public TArray<CollisionObject> getIntersectingObjects(final CollisionObject actor, final String flag) {
 		final RectBox r = this.getActorBounds(actor);
-		this.actorQuery.init(flag, actor, _offsetLocation);
+		final QueryContext ctx = obtainContext();
+		ctx.actorQuery.init(flag, actor, _offsetLocation);
 		return getInTheLayerObjects(actor.getLayer(),
-				this.getIntersectingObjects(r.x, r.y, r.width, r.height, this.actorQuery));
+				this.getIntersectingObjects(ctx, r.x, r.y, r.width, r.height, ctx.actorQuery));
 	}
 
 	private final static float getRadius(float r1, float r2) {
@@ -599,23 +652,24 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjectsInRange(final float x, final float y, final float r,
+	public TArray<CollisionObject> getObjectsInRange(final float x, final float y, final float r,
 			final String flag) {
 		final float halfCellX = this.cellSizeX / 2;
 		final float halfCellY = this.cellSizeY / 2;
 		final float sizeRX = 2 * r * this.cellSizeX;
 		final float sizeRY = 2 * r * this.cellSizeY;
-		cacheSet.clear();
-		this.actorQuery.init(flag, null, this._offsetLocation);
-		intersectingObjects((x - r) * this.cellSizeX + halfCellX, (y - r) * this.cellSizeY + halfCellY, sizeRX, sizeRY,
-				this.actorQuery, cacheSet);
-		this.inRangeQuery.init(x * this.cellSizeX + halfCellX, y * this.cellSizeY + halfCellY,
+		final QueryContext ctx = obtainContext();
+		final ObjectSet<CollisionObject> cacheSet = ctx.cacheSet;
+		ctx.actorQuery.init(flag, null, this._offsetLocation);
+		getIntersectingObjects(ctx, (x - r) * this.cellSizeX + halfCellX, (y - r) * this.cellSizeY + halfCellY, sizeRX,
+				sizeRY, ctx.actorQuery, cacheSet, this.bspTree);
+		ctx.inRangeQuery.init(x * this.cellSizeX + halfCellX, y * this.cellSizeY + halfCellY,
 				r * getRadius(this.cellSizeX, this.cellSizeY), this._offsetLocation);
 		TArray<CollisionObject> rangeResult = new TArray<CollisionObject>();
 		LIterator<CollisionObject> it = cacheSet.iterator();
 		for (; it.hasNext();) {
 			CollisionObject a = it.next();
-			if (a != null && this.inRangeQuery.checkCollision(a)) {
+			if (a != null && ctx.inRangeQuery.checkCollision(a)) {
 				rangeResult.add(a);
 			}
 		}
@@ -623,7 +677,7 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getNeighbours(final CollisionObject actor, final float distance,
+	public TArray<CollisionObject> getNeighbours(final CollisionObject actor, final float distance,
 			final boolean diag, final String flag) {
 		final float x = actor.getX();
 		final float y = actor.getY();
@@ -631,52 +685,55 @@ public final class BSPCollisionChecker implements CollisionChecker {
 		final float yPixel = y * this.cellSizeY;
 		final float dxPixel = distance * this.cellSizeX;
 		final float dyPixel = distance * this.cellSizeY;
-		this.neighbourQuery.init(x, y, distance, diag, flag, this._offsetLocation);
-		return getInTheLayerObjects(actor.getLayer(), this.getIntersectingObjects(xPixel - dxPixel, yPixel - dyPixel,
-				dxPixel * 2 + 1, dyPixel * 2 + 1, this.neighbourQuery));
+		final QueryContext ctx = obtainContext();
+		ctx.neighbourQuery.init(x, y, distance, diag, flag, this._offsetLocation);
+		return getInTheLayerObjects(actor.getLayer(), this.getIntersectingObjects(ctx, xPixel - dxPixel,
+				yPixel - dyPixel, dxPixel * 2 + 1, dyPixel * 2 + 1, ctx.neighbourQuery));
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjectsList() {
+	public TArray<CollisionObject> getObjectsList() {
 		return this.getObjects((String) null);
 	}
 
 	@Override
-	public synchronized CollisionObject getOnlyObjectAt(final CollisionObject obj, final float dx, final float dy,
+	public CollisionObject getOnlyObjectAt(final CollisionObject obj, final float dx, final float dy,
 			final String flag) {
 		final float px = dx * this.cellSizeX + this.cellSizeX / 2f;
 		final float py = dy * this.cellSizeY + this.cellSizeY / 2f;
-		this.pointQuery.init(px, py, flag, _offsetLocation);
-		CollisionQuery query = this.pointQuery;
+		final QueryContext ctx = obtainContext();
+		ctx.pointQuery.init(px, py, flag, _offsetLocation);
+		CollisionQuery query = ctx.pointQuery;
 		if (flag != null) {
-			query = new CollisionClassQuery(flag, this.pointQuery, this._offsetLocation);
+			query = new CollisionClassQuery(flag, ctx.pointQuery, this._offsetLocation);
 		}
 		return getInTheLayerObject(obj.getLayer(),
-				this.getOnlyIntersectingDown(px, py, 1, 1, (CollisionQuery) query, obj));
+				this.getOnlyIntersectingDown(ctx, px, py, 1, 1, (CollisionQuery) query, obj));
 	}
 
 	@Override
-	public synchronized CollisionObject getOnlyIntersectingObject(final CollisionObject actor, final String flag) {
+	public CollisionObject getOnlyIntersectingObject(final CollisionObject actor, final String flag) {
 		final int layer = actor.getLayer();
 		RectBox rect = this.getActorBounds(actor);
-		this.actorQuery.init(flag, actor, this._offsetLocation);
+		final QueryContext ctx = obtainContext();
+		ctx.actorQuery.init(flag, actor, this._offsetLocation);
 		CollisionNode node = getNodeForActor(actor);
 		if (node == null) {
 			return null;
 		}
 		do {
 			final BSPCollisionNode bspNode = node.getBSPNode();
-			CollisionObject result = this.getOnlyObjectDownTree(actor, rect, this.actorQuery, bspNode);
+			CollisionObject result = this.getOnlyObjectDownTree(ctx, actor, rect, ctx.actorQuery, bspNode);
 			if (result != null) {
 				return getInTheLayerObject(layer, result);
 			}
-			result = this.getOnlyIntersectingUp(rect, this.actorQuery, actor, bspNode.getParent());
+			result = this.getOnlyIntersectingUp(ctx, rect, ctx.actorQuery, actor, bspNode.getParent());
 			if (result != null) {
 				return getInTheLayerObject(layer, result);
 			}
 			node = node.getNext();
 		} while (node != null);
-		return getInTheLayerObject(layer, this.getOnlyIntersectingDown(rect, this.actorQuery, actor));
+		return getInTheLayerObject(layer, this.getOnlyIntersectingDown(ctx, rect, ctx.actorQuery, actor));
 	}
 
 	private CollisionObject getInTheLayerObject(final int layer, final CollisionObject obj) {
@@ -704,14 +761,17 @@ public final class BSPCollisionChecker implements CollisionChecker {
 	}
 
 	@Override
-	public synchronized TArray<CollisionObject> getObjects(final String flag) {
-		cacheSet.clear();
-		if (this.bspTree != null) {
-			cacheNodeStack.add(this.bspTree);
-		}
-		for (; cacheNodeStack.size() != 0;) {
-			final BSPCollisionNode node = (BSPCollisionNode) cacheNodeStack.removeLast();
-			final LIterator<CollisionObject> i = node.getActorsIterator();
+	public TArray<CollisionObject> getObjects(final String flag) {
+		final QueryContext ctx = obtainContext();
+		final ObjectSet<CollisionObject> cacheSet = ctx.cacheSet;
+		final TArray<BSPCollisionNode> cacheNodeStack = ctx.cacheNodeStack;
+		final BSPCollisionNode root = this.bspTree;
+		if (root != null) {
+			cacheNodeStack.add(root);
+		}
+		for (; cacheNodeStack.size != 0;) {
+			final BSPCollisionNode node = cacheNodeStack.pop();
+			final LIterator<CollisionObject> i = ctx.actorsIterator(node);
 			while (i.hasNext()) {
 				CollisionObject left = i.next();
 				if (flag == null || flag.equals(left.getObjectFlag())) {
@@ -774,12 +834,8 @@ public final class BSPCollisionChecker implements CollisionChecker {
 
 	@Override
 	public void dispose() {
-		if (cacheSet != null) {
-			cacheSet.clear();
-		}
-		if (cacheNodeStack != null) {
-			cacheNodeStack.clear();
-		}
+		_sharedContext.cacheSet.clear();
+		_sharedContext.cacheNodeStack.clear();
 		_nodes.clear();
 	}
 
@@ -210,6 +210,15 @@ public final class BSPCollisionNode implements LRelease {
 		return this._actors.keys();
 	}
 
+	/**
+	 * 不复用迭代器对象,供多线程同时查询使用
+	 * 
+	 * @return
+	 */
+	public Keys<CollisionObject> newActorsIterator() {
+		return this._actors.newKeys();
+	}
+
 	public TArray<CollisionObject> getActorsList() {
 		TArray<CollisionObject> result = new TArray<CollisionObject>();
 		for (Keys<CollisionObject> key = this._actors.keys(); key.hasNext();) {
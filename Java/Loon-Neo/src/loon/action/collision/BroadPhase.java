@@ -0,0 +1,280 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.LRelease;
+import loon.utils.IdentityMap;
+import loon.utils.LongArray;
+import loon.utils.TArray;
+
+/**
+ * 碰撞粗检测(broad-phase)基类,只负责找出包围盒可能重叠的对象组合,精确碰撞仍由调用者判定.
+ *
+ * 每帧使用方式:
+ *
+ * <pre>
+ * broadPhase.begin();
+ * for (...) {
+ * 	broadPhase.update(obj, x, y, w, h);
+ * }
+ * broadPhase.end();
+ * broadPhase.findPairs(pairs);
+ * </pre>
+ *
+ * 对象在begin后按update的顺序获得编号(从0开始),findPairs输出的每一项为(小编号 &lt;&lt; 32 | 大编号),
+ * 排序后即为两两比较时的顺序.本帧未update的对象会在end时移除.
+ *
+ * @param <T>
+ */
+public abstract class BroadPhase<T> implements LRelease {
+
+	/**
+	 * 粗检测中的对象代理
+	 */
+	public static class Proxy<T> {
+
+		T obj;
+
+		int id;
+
+		int slot;
+
+		int stamp;
+
+		boolean alive;
+
+		float minX, minY, maxX, maxY;
+
+		// 网格使用的格子范围
+		int cellMinX, cellMinY, cellMaxX, cellMaxY;
+
+		// 动态树使用的叶子节点
+		int node = -1;
+
+		public T getObject() {
+			return obj;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public float getMinX() {
+			return minX;
+		}
+
+		public float getMinY() {
+			return minY;
+		}
+
+		public float getMaxX() {
+			return maxX;
+		}
+
+		public float getMaxY() {
+			return maxY;
+		}
+	}
+
+	public static int getFirst(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	public static int getSecond(long pair) {
+		return (int) pair;
+	}
+
+	protected static <T> long toPair(Proxy<T> a, Proxy<T> b) {
+		if (a.id < b.id) {
+			return ((long) a.id << 32) | b.id;
+		}
+		return ((long) b.id << 32) | a.id;
+	}
+
+	/**
+	 * 包围盒相交判定,边缘接触也视为相交,保证粗检测不会漏掉候选
+	 */
+	protected static <T> boolean overlaps(Proxy<T> a, Proxy<T> b) {
+		return a.minX <= b.maxX && a.maxX >= b.minX && a.minY <= b.maxY && a.maxY >= b.minY;
+	}
+
+	// 按引用查找代理,ActionObject等对象的hashCode会随坐标变化
+	protected final IdentityMap<T, Proxy<T>> _proxyMap = new IdentityMap<T, Proxy<T>>();
+
+	protected final TArray<Proxy<T>> _proxies = new TArray<Proxy<T>>();
+
+	private int _stamp;
+
+	private int _nextId;
+
+	private int _movedCount;
+
+	/**
+	 * 开始新的一帧,重新分配对象编号
+	 */
+	public BroadPhase<T> begin() {
+		_stamp++;
+		_nextId = 0;
+		_movedCount = 0;
+		return this;
+	}
+
+	/**
+	 * 添加或更新对象包围盒
+	 *
+	 * @param obj
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @return 对象本帧编号
+	 */
+	public int update(T obj, float x, float y, float w, float h) {
+		Proxy<T> proxy = _proxyMap.get(obj);
+		final float maxX = x + w;
+		final float maxY = y + h;
+		if (proxy == null) {
+			proxy = new Proxy<T>();
+			proxy.obj = obj;
+			proxy.alive = true;
+			proxy.minX = x;
+			proxy.minY = y;
+			proxy.maxX = maxX;
+			proxy.maxY = maxY;
+			proxy.slot = _proxies.size;
+			_proxies.add(proxy);
+			_proxyMap.put(obj, proxy);
+			proxy.id = _nextId++;
+			proxy.stamp = _stamp;
+			onAdd(proxy);
+		} else {
+			proxy.id = _nextId++;
+			proxy.stamp = _stamp;
+			if (proxy.minX != x || proxy.minY != y || proxy.maxX != maxX || proxy.maxY != maxY) {
+				proxy.minX = x;
+				proxy.minY = y;
+				proxy.maxX = maxX;
+				proxy.maxY = maxY;
+				_movedCount++;
+				onMove(proxy);
+			}
+		}
+		return proxy.id;
+	}
+
+	/**
+	 * 结束本帧更新,移除本帧没有update的对象
+	 */
+	public BroadPhase<T> end() {
+		for (int i = _proxies.size - 1; i > -1; i--) {
+			final Proxy<T> proxy = _proxies.get(i);
+			if (proxy.stamp != _stamp) {
+				removeProxy(proxy);
+			}
+		}
+		return this;
+	}
+
+	public boolean remove(T obj) {
+		final Proxy<T> proxy = _proxyMap.get(obj);
+		if (proxy == null) {
+			return false;
+		}
+		removeProxy(proxy);
+		return true;
+	}
+
+	private void removeProxy(Proxy<T> proxy) {
+		final int last = _proxies.size - 1;
+		final Proxy<T> tail = _proxies.get(last);
+		_proxies.set(proxy.slot, tail);
+		tail.slot = proxy.slot;
+		_proxies.removeIndex(last);
+		_proxyMap.remove(proxy.obj);
+		proxy.alive = false;
+		onRemove(proxy);
+		proxy.obj = null;
+	}
+
+	/**
+	 * 找出所有包围盒相交的对象组合
+	 *
+	 * @param pairs 输出,每项为(小编号 &lt;&lt; 32 | 大编号)
+	 * @return
+	 */
+	public LongArray findPairs(LongArray pairs) {
+		if (pairs == null) {
+			pairs = new LongArray();
+		} else {
+			pairs.clear();
+		}
+		if (_proxies.size > 1) {
+			collectPairs(pairs);
+		}
+		return pairs;
+	}
+
+	public Proxy<T> getProxy(T obj) {
+		return _proxyMap.get(obj);
+	}
+
+	public boolean contains(T obj) {
+		return _proxyMap.containsKey(obj);
+	}
+
+	public int size() {
+		return _proxies.size;
+	}
+
+	/**
+	 * 本帧包围盒发生变化的对象数量
+	 */
+	public int getMovedCount() {
+		return _movedCount;
+	}
+
+	public void clear() {
+		for (int i = 0; i < _proxies.size; i++) {
+			final Proxy<T> proxy = _proxies.get(i);
+			proxy.alive = false;
+			proxy.obj = null;
+		}
+		_proxies.clear();
+		_proxyMap.clear();
+		onClear();
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+	protected abstract void onAdd(Proxy<T> proxy);
+
+	protected abstract void onMove(Proxy<T> proxy);
+
+	protected abstract void onRemove(Proxy<T> proxy);
+
+	protected abstract void onClear();
+
+	protected abstract void collectPairs(LongArray pairs);
+
+}
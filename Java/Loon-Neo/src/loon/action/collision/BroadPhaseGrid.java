@@ -0,0 +1,304 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.LSysException;
+import loon.utils.IntMap;
+import loon.utils.LongArray;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 均匀网格粗检测,适合大小接近格子尺寸且分布较均匀的对象.
+ *
+ * 对象只在跨越的格子范围变化时才会重新登记,跨越格子过多的大对象单独存放,与其它对象逐个比较.
+ *
+ * @param <T>
+ */
+public class BroadPhaseGrid<T> extends BroadPhase<T> {
+
+	public final static float DEFAULT_CELL_SIZE = 64f;
+
+	public final static int DEFAULT_MAX_CELLS = 64;
+
+	private static class Cell<T> {
+
+		int x, y, key, index;
+
+		final TArray<Proxy<T>> proxies = new TArray<Proxy<T>>(8);
+	}
+
+	private static int toKey(int x, int y) {
+		return (x << 16) ^ (y & 0xFFFF);
+	}
+
+	private final IntMap<Cell<T>> _cellMap = new IntMap<Cell<T>>();
+
+	private final TArray<Cell<T>> _cells = new TArray<Cell<T>>();
+
+	private final TArray<Cell<T>> _freeCells = new TArray<Cell<T>>();
+
+	private final TArray<Proxy<T>> _larges = new TArray<Proxy<T>>();
+
+	private final float _cellSize;
+
+	private final float _invCellSize;
+
+	private final int _maxCells;
+
+	// 因键冲突未登记在_cellMap中的格子数
+	private int _aliasCount;
+
+	public BroadPhaseGrid() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public BroadPhaseGrid(float cellSize) {
+		this(cellSize, DEFAULT_MAX_CELLS);
+	}
+
+	/**
+	 * @param cellSize 格子大小
+	 * @param maxCells 单个对象最多登记的格子数,超过时作为大对象处理
+	 */
+	public BroadPhaseGrid(float cellSize, int maxCells) {
+		if (cellSize <= 0f) {
+			throw new LSysException("cellSize must be > 0 !");
+		}
+		this._cellSize = cellSize;
+		this._invCellSize = 1f / cellSize;
+		this._maxCells = MathUtils.max(1, maxCells);
+	}
+
+	@Override
+	protected void onAdd(Proxy<T> proxy) {
+		computeCells(proxy);
+		insertCells(proxy);
+	}
+
+	@Override
+	protected void onMove(Proxy<T> proxy) {
+		final int oldMinX = proxy.cellMinX;
+		final int oldMinY = proxy.cellMinY;
+		final int oldMaxX = proxy.cellMaxX;
+		final int oldMaxY = proxy.cellMaxY;
+		computeCells(proxy);
+		if (oldMinX == proxy.cellMinX && oldMinY == proxy.cellMinY && oldMaxX == proxy.cellMaxX
+				&& oldMaxY == proxy.cellMaxY) {
+			return;
+		}
+		final int newMinX = proxy.cellMinX;
+		final int newMinY = proxy.cellMinY;
+		final int newMaxX = proxy.cellMaxX;
+		final int newMaxY = proxy.cellMaxY;
+		proxy.cellMinX = oldMinX;
+		proxy.cellMinY = oldMinY;
+		proxy.cellMaxX = oldMaxX;
+		proxy.cellMaxY = oldMaxY;
+		removeCells(proxy);
+		proxy.cellMinX = newMinX;
+		proxy.cellMinY = newMinY;
+		proxy.cellMaxX = newMaxX;
+		proxy.cellMaxY = newMaxY;
+		insertCells(proxy);
+	}
+
+	@Override
+	protected void onRemove(Proxy<T> proxy) {
+		removeCells(proxy);
+	}
+
+	@Override
+	protected void onClear() {
+		for (int i = 0; i < _cells.size; i++) {
+			final Cell<T> cell = _cells.get(i);
+			cell.proxies.clear();
+			_freeCells.add(cell);
+		}
+		_cells.clear();
+		_cellMap.clear();
+		_larges.clear();
+		_aliasCount = 0;
+	}
+
+	private void computeCells(Proxy<T> proxy) {
+		proxy.cellMinX = MathUtils.floor(proxy.minX * _invCellSize);
+		proxy.cellMinY = MathUtils.floor(proxy.minY * _invCellSize);
+		proxy.cellMaxX = MathUtils.floor(proxy.maxX * _invCellSize);
+		proxy.cellMaxY = MathUtils.floor(proxy.maxY * _invCellSize);
+	}
+
+	private boolean isLarge(Proxy<T> proxy) {
+		final long w = (long) proxy.cellMaxX - proxy.cellMinX + 1;
+		final long h = (long) proxy.cellMaxY - proxy.cellMinY + 1;
+		return w * h > _maxCells;
+	}
+
+	private void insertCells(Proxy<T> proxy) {
+		if (isLarge(proxy)) {
+			_larges.add(proxy);
+			return;
+		}
+		for (int y = proxy.cellMinY; y <= proxy.cellMaxY; y++) {
+			for (int x = proxy.cellMinX; x <= proxy.cellMaxX; x++) {
+				obtainCell(x, y).proxies.add(proxy);
+			}
+		}
+	}
+
+	private void removeCells(Proxy<T> proxy) {
+		if (isLarge(proxy)) {
+			_larges.removeValue(proxy, true);
+			return;
+		}
+		for (int y = proxy.cellMinY; y <= proxy.cellMaxY; y++) {
+			for (int x = proxy.cellMinX; x <= proxy.cellMaxX; x++) {
+				final Cell<T> cell = findCell(x, y);
+				if (cell == null) {
+					continue;
+				}
+				cell.proxies.removeValue(proxy, true);
+				if (cell.proxies.size == 0) {
+					freeCell(cell);
+				}
+			}
+		}
+	}
+
+	private Cell<T> findCell(int x, int y) {
+		final Cell<T> cell = _cellMap.get(toKey(x, y));
+		if (cell != null && cell.x == x && cell.y == y) {
+			return cell;
+		}
+		if (_aliasCount == 0) {
+			return null;
+		}
+		for (int i = 0; i < _cells.size; i++) {
+			final Cell<T> c = _cells.get(i);
+			if (c.x == x && c.y == y) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	private Cell<T> obtainCell(int x, int y) {
+		final int key = toKey(x, y);
+		Cell<T> cell = findCell(x, y);
+		if (cell != null) {
+			return cell;
+		}
+		cell = _freeCells.size > 0 ? _freeCells.pop() : new Cell<T>();
+		cell.x = x;
+		cell.y = y;
+		cell.key = key;
+		cell.index = _cells.size;
+		_cells.add(cell);
+		if (_cellMap.containsKey(key)) {
+			// 极远坐标下的键冲突,该格子只能线性查找
+			_aliasCount++;
+		} else {
+			_cellMap.put(key, cell);
+		}
+		return cell;
+	}
+
+	private void freeCell(Cell<T> cell) {
+		if (_cellMap.get(cell.key) == cell) {
+			_cellMap.remove(cell.key);
+			if (_aliasCount > 0) {
+				for (int i = 0; i < _cells.size; i++) {
+					final Cell<T> c = _cells.get(i);
+					if (c != cell && c.key == cell.key) {
+						_cellMap.put(c.key, c);
+						_aliasCount--;
+						break;
+					}
+				}
+			}
+		} else {
+			_aliasCount--;
+		}
+		final int last = _cells.size - 1;
+		final Cell<T> tail = _cells.get(last);
+		_cells.set(cell.index, tail);
+		tail.index = cell.index;
+		_cells.removeIndex(last);
+		_freeCells.add(cell);
+	}
+
+	@Override
+	protected void collectPairs(LongArray pairs) {
+		for (int c = 0; c < _cells.size; c++) {
+			final Cell<T> cell = _cells.get(c);
+			final TArray<Proxy<T>> list = cell.proxies;
+			final int size = list.size;
+			for (int i = 0; i < size; i++) {
+				final Proxy<T> a = list.get(i);
+				for (int j = i + 1; j < size; j++) {
+					final Proxy<T> b = list.get(j);
+					if (!overlaps(a, b)) {
+						continue;
+					}
+					// 同一组合可能同时出现在多个格子,只在重叠区域左上角所在的格子输出
+					final int rx = a.cellMinX > b.cellMinX ? a.cellMinX : b.cellMinX;
+					final int ry = a.cellMinY > b.cellMinY ? a.cellMinY : b.cellMinY;
+					if (rx == cell.x && ry == cell.y) {
+						pairs.add(toPair(a, b));
+					}
+				}
+			}
+		}
+		final int largeSize = _larges.size;
+		if (largeSize == 0) {
+			return;
+		}
+		for (int i = 0; i < largeSize; i++) {
+			final Proxy<T> large = _larges.get(i);
+			for (int j = 0; j < _proxies.size; j++) {
+				final Proxy<T> other = _proxies.get(j);
+				if (other == large) {
+					continue;
+				}
+				// 两个大对象的组合只输出一次
+				if (isLarge(other) && other.slot < large.slot) {
+					continue;
+				}
+				if (overlaps(large, other)) {
+					pairs.add(toPair(large, other));
+				}
+			}
+		}
+	}
+
+	public float getCellSize() {
+		return _cellSize;
+	}
+
+	public int getCellCount() {
+		return _cells.size;
+	}
+
+	public int getLargeCount() {
+		return _larges.size;
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.utils.LongArray;
+import loon.utils.TArray;
+
+/**
+ * 排序扫描(sweep and prune)粗检测,对象按包围盒左边界排序,适合对象大小差异较大的场景.
+ *
+ * 对象每帧移动量不大时排序结果基本不变,使用插入排序维护,接近线性时间.
+ *
+ * @param <T>
+ */
+public class BroadPhaseSweep<T> extends BroadPhase<T> {
+
+	private final TArray<Proxy<T>> _sorted = new TArray<Proxy<T>>();
+
+	private int _removedCount;
+
+	@Override
+	protected void onAdd(Proxy<T> proxy) {
+		_sorted.add(proxy);
+	}
+
+	@Override
+	protected void onMove(Proxy<T> proxy) {
+	}
+
+	@Override
+	protected void onRemove(Proxy<T> proxy) {
+		// 延迟到下次检测时统一压缩
+		_removedCount++;
+	}
+
+	@Override
+	protected void onClear() {
+		_sorted.clear();
+		_removedCount = 0;
+	}
+
+	private void compact() {
+		int count = 0;
+		final int size = _sorted.size;
+		for (int i = 0; i < size; i++) {
+			final Proxy<T> proxy = _sorted.get(i);
+			if (proxy.alive) {
+				_sorted.set(count++, proxy);
+			}
+		}
+		_sorted.truncate(count);
+		_removedCount = 0;
+	}
+
+	private void sort() {
+		final int size = _sorted.size;
+		for (int i = 1; i < size; i++) {
+			final Proxy<T> proxy = _sorted.get(i);
+			final float minX = proxy.minX;
+			int j = i - 1;
+			for (; j > -1 && _sorted.get(j).minX > minX; j--) {
+				_sorted.set(j + 1, _sorted.get(j));
+			}
+			_sorted.set(j + 1, proxy);
+		}
+	}
+
+	@Override
+	protected void collectPairs(LongArray pairs) {
+		if (_removedCount > 0) {
+			compact();
+		}
+		sort();
+		final int size = _sorted.size;
+		for (int i = 0; i < size; i++) {
+			final Proxy<T> a = _sorted.get(i);
+			final float maxX = a.maxX;
+			for (int j = i + 1; j < size; j++) {
+				final Proxy<T> b = _sorted.get(j);
+				if (b.minX > maxX) {
+					break;
+				}
+				if (a.minY <= b.maxY && a.maxY >= b.minY) {
+					pairs.add(toPair(a, b));
+				}
+			}
+		}
+	}
+
+}
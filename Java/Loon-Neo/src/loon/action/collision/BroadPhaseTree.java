@@ -0,0 +1,456 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.utils.LongArray;
+import loon.utils.MathUtils;
+
+/**
+ * 动态包围盒树粗检测,不需要预设格子大小,适合对象大小与分布都不确定的场景.
+ *
+ * 叶子节点保存放大了margin的包围盒,对象只在移出该包围盒时才重新插入,插入后按节点高度旋转保持平衡.
+ *
+ * @param <T>
+ */
+public class BroadPhaseTree<T> extends BroadPhase<T> {
+
+	public final static float DEFAULT_MARGIN = 8f;
+
+	private final static int NULL_NODE = -1;
+
+	private float[] _minX, _minY, _maxX, _maxY;
+
+	private int[] _parent, _child1, _child2, _height;
+
+	private Object[] _data;
+
+	private int _capacity;
+
+	private int _root = NULL_NODE;
+
+	private int _freeNode = NULL_NODE;
+
+	private int _nodeCount;
+
+	private int[] _stack = new int[64];
+
+	private int[] _selfStack = new int[64];
+
+	private float _margin;
+
+	public BroadPhaseTree() {
+		this(DEFAULT_MARGIN);
+	}
+
+	/**
+	 * @param margin 叶子包围盒向四周放大的距离,越大重新插入越少,但候选组合越多
+	 */
+	public BroadPhaseTree(float margin) {
+		this._margin = MathUtils.max(0f, margin);
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		final int old = _capacity;
+		_minX = copyOf(_minX, capacity);
+		_minY = copyOf(_minY, capacity);
+		_maxX = copyOf(_maxX, capacity);
+		_maxY = copyOf(_maxY, capacity);
+		_parent = copyOf(_parent, capacity);
+		_child1 = copyOf(_child1, capacity);
+		_child2 = copyOf(_child2, capacity);
+		_height = copyOf(_height, capacity);
+		final Object[] data = new Object[capacity];
+		if (_data != null) {
+			System.arraycopy(_data, 0, data, 0, old);
+		}
+		_data = data;
+		for (int i = old; i < capacity - 1; i++) {
+			_parent[i] = i + 1;
+			_height[i] = -1;
+		}
+		_parent[capacity - 1] = _freeNode;
+		_height[capacity - 1] = -1;
+		_freeNode = old;
+		_capacity = capacity;
+	}
+
+	private static float[] copyOf(float[] src, int size) {
+		final float[] dst = new float[size];
+		if (src != null) {
+			System.arraycopy(src, 0, dst, 0, MathUtils.min(src.length, size));
+		}
+		return dst;
+	}
+
+	private static int[] copyOf(int[] src, int size) {
+		final int[] dst = new int[size];
+		if (src != null) {
+			System.arraycopy(src, 0, dst, 0, MathUtils.min(src.length, size));
+		}
+		return dst;
+	}
+
+	private int allocateNode() {
+		if (_freeNode == NULL_NODE) {
+			allocate(_capacity * 2);
+		}
+		final int node = _freeNode;
+		_freeNode = _parent[node];
+		_parent[node] = NULL_NODE;
+		_child1[node] = NULL_NODE;
+		_child2[node] = NULL_NODE;
+		_height[node] = 0;
+		_data[node] = null;
+		_nodeCount++;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		_parent[node] = _freeNode;
+		_height[node] = -1;
+		_data[node] = null;
+		_freeNode = node;
+		_nodeCount--;
+	}
+
+	private boolean isLeaf(int node) {
+		return _child1[node] == NULL_NODE;
+	}
+
+	private float perimeter(int node) {
+		return (_maxX[node] - _minX[node]) + (_maxY[node] - _minY[node]);
+	}
+
+	private float unionPerimeter(int a, int b) {
+		final float w = MathUtils.max(_maxX[a], _maxX[b]) - MathUtils.min(_minX[a], _minX[b]);
+		final float h = MathUtils.max(_maxY[a], _maxY[b]) - MathUtils.min(_minY[a], _minY[b]);
+		return w + h;
+	}
+
+	private void union(int node, int a, int b) {
+		_minX[node] = MathUtils.min(_minX[a], _minX[b]);
+		_minY[node] = MathUtils.min(_minY[a], _minY[b]);
+		_maxX[node] = MathUtils.max(_maxX[a], _maxX[b]);
+		_maxY[node] = MathUtils.max(_maxY[a], _maxY[b]);
+	}
+
+	private void setFatBounds(int node, Proxy<T> proxy) {
+		_minX[node] = proxy.minX - _margin;
+		_minY[node] = proxy.minY - _margin;
+		_maxX[node] = proxy.maxX + _margin;
+		_maxY[node] = proxy.maxY + _margin;
+	}
+
+	@Override
+	protected void onAdd(Proxy<T> proxy) {
+		final int node = allocateNode();
+		setFatBounds(node, proxy);
+		_data[node] = proxy;
+		proxy.node = node;
+		insertLeaf(node);
+	}
+
+	@Override
+	protected void onMove(Proxy<T> proxy) {
+		final int node = proxy.node;
+		if (_minX[node] <= proxy.minX && _minY[node] <= proxy.minY && _maxX[node] >= proxy.maxX
+				&& _maxY[node] >= proxy.maxY) {
+			return;
+		}
+		removeLeaf(node);
+		setFatBounds(node, proxy);
+		insertLeaf(node);
+	}
+
+	@Override
+	protected void onRemove(Proxy<T> proxy) {
+		final int node = proxy.node;
+		if (node == NULL_NODE) {
+			return;
+		}
+		removeLeaf(node);
+		freeNode(node);
+		proxy.node = NULL_NODE;
+	}
+
+	@Override
+	protected void onClear() {
+		_minX = _minY = _maxX = _maxY = null;
+		_parent = _child1 = _child2 = _height = null;
+		_data = null;
+		_capacity = 0;
+		_root = NULL_NODE;
+		_freeNode = NULL_NODE;
+		_nodeCount = 0;
+		allocate(16);
+	}
+
+	private void insertLeaf(int leaf) {
+		if (_root == NULL_NODE) {
+			_root = leaf;
+			_parent[leaf] = NULL_NODE;
+			return;
+		}
+		// 按周长代价寻找最合适的兄弟节点
+		int index = _root;
+		while (!isLeaf(index)) {
+			final int child1 = _child1[index];
+			final int child2 = _child2[index];
+			final float area = perimeter(index);
+			final float combinedArea = unionPerimeter(index, leaf);
+			final float cost = 2f * combinedArea;
+			final float inheritanceCost = 2f * (combinedArea - area);
+			float cost1 = unionPerimeter(leaf, child1) + inheritanceCost;
+			if (!isLeaf(child1)) {
+				cost1 -= perimeter(child1);
+			}
+			float cost2 = unionPerimeter(leaf, child2) + inheritanceCost;
+			if (!isLeaf(child2)) {
+				cost2 -= perimeter(child2);
+			}
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2 ? child1 : child2;
+		}
+		final int sibling = index;
+		final int oldParent = _parent[sibling];
+		final int newParent = allocateNode();
+		_parent[newParent] = oldParent;
+		union(newParent, leaf, sibling);
+		_height[newParent] = _height[sibling] + 1;
+		if (oldParent != NULL_NODE) {
+			if (_child1[oldParent] == sibling) {
+				_child1[oldParent] = newParent;
+			} else {
+				_child2[oldParent] = newParent;
+			}
+		} else {
+			_root = newParent;
+		}
+		_child1[newParent] = sibling;
+		_child2[newParent] = leaf;
+		_parent[sibling] = newParent;
+		_parent[leaf] = newParent;
+		refit(_parent[leaf]);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == _root) {
+			_root = NULL_NODE;
+			return;
+		}
+		final int parent = _parent[leaf];
+		final int grandParent = _parent[parent];
+		final int sibling = _child1[parent] == leaf ? _child2[parent] : _child1[parent];
+		if (grandParent != NULL_NODE) {
+			if (_child1[grandParent] == parent) {
+				_child1[grandParent] = sibling;
+			} else {
+				_child2[grandParent] = sibling;
+			}
+			_parent[sibling] = grandParent;
+			freeNode(parent);
+			refit(grandParent);
+		} else {
+			_root = sibling;
+			_parent[sibling] = NULL_NODE;
+			freeNode(parent);
+		}
+		_parent[leaf] = NULL_NODE;
+	}
+
+	private void refit(int index) {
+		while (index != NULL_NODE) {
+			index = balance(index);
+			final int child1 = _child1[index];
+			final int child2 = _child2[index];
+			_height[index] = 1 + MathUtils.max(_height[child1], _height[child2]);
+			union(index, child1, child2);
+			index = _parent[index];
+		}
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if (parent == NULL_NODE) {
+			_root = newChild;
+		} else if (_child1[parent] == oldChild) {
+			_child1[parent] = newChild;
+		} else {
+			_child2[parent] = newChild;
+		}
+	}
+
+	/**
+	 * 子树高度差大于1时旋转,返回旋转后该位置的节点
+	 */
+	private int balance(int a) {
+		if (isLeaf(a) || _height[a] < 2) {
+			return a;
+		}
+		final int b = _child1[a];
+		final int c = _child2[a];
+		final int diff = _height[c] - _height[b];
+		if (diff > 1) {
+			final int f = _child1[c];
+			final int g = _child2[c];
+			_child1[c] = a;
+			_parent[c] = _parent[a];
+			_parent[a] = c;
+			replaceChild(_parent[c], a, c);
+			if (_height[f] > _height[g]) {
+				_child2[c] = f;
+				_child2[a] = g;
+				_parent[g] = a;
+				union(a, b, g);
+				union(c, a, f);
+				_height[a] = 1 + MathUtils.max(_height[b], _height[g]);
+				_height[c] = 1 + MathUtils.max(_height[a], _height[f]);
+			} else {
+				_child2[c] = g;
+				_child2[a] = f;
+				_parent[f] = a;
+				union(a, b, f);
+				union(c, a, g);
+				_height[a] = 1 + MathUtils.max(_height[b], _height[f]);
+				_height[c] = 1 + MathUtils.max(_height[a], _height[g]);
+			}
+			return c;
+		}
+		if (diff < -1) {
+			final int d = _child1[b];
+			final int e = _child2[b];
+			_child1[b] = a;
+			_parent[b] = _parent[a];
+			_parent[a] = b;
+			replaceChild(_parent[b], a, b);
+			if (_height[d] > _height[e]) {
+				_child2[b] = d;
+				_child1[a] = e;
+				_parent[e] = a;
+				union(a, c, e);
+				union(b, a, d);
+				_height[a] = 1 + MathUtils.max(_height[c], _height[e]);
+				_height[b] = 1 + MathUtils.max(_height[a], _height[d]);
+			} else {
+				_child2[b] = e;
+				_child1[a] = d;
+				_parent[d] = a;
+				union(a, c, d);
+				union(b, a, e);
+				_height[a] = 1 + MathUtils.max(_height[c], _height[d]);
+				_height[b] = 1 + MathUtils.max(_height[a], _height[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	private boolean overlapsNode(int a, int b) {
+		return _minX[a] <= _maxX[b] && _maxX[a] >= _minX[b] && _minY[a] <= _maxY[b] && _maxY[a] >= _minY[b];
+	}
+
+	/**
+	 * 树自身遍历,每个组合只在两个叶子的最近公共祖先处被找到一次
+	 */
+	@Override
+	protected void collectPairs(LongArray pairs) {
+		if (_root == NULL_NODE || isLeaf(_root)) {
+			return;
+		}
+		int selfTop = 0;
+		int[] selfStack = _selfStack;
+		selfStack[selfTop++] = _root;
+		while (selfTop > 0) {
+			final int node = selfStack[--selfTop];
+			if (isLeaf(node)) {
+				continue;
+			}
+			final int child1 = _child1[node];
+			final int child2 = _child2[node];
+			if (selfTop + 2 > selfStack.length) {
+				selfStack = _selfStack = copyOf(selfStack, selfStack.length * 2);
+			}
+			selfStack[selfTop++] = child1;
+			selfStack[selfTop++] = child2;
+			collectPairs(child1, child2, pairs);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectPairs(int nodeA, int nodeB, LongArray pairs) {
+		int top = 0;
+		int[] stack = _stack;
+		stack[top++] = nodeA;
+		stack[top++] = nodeB;
+		while (top > 0) {
+			final int b = stack[--top];
+			final int a = stack[--top];
+			if (!overlapsNode(a, b)) {
+				continue;
+			}
+			final boolean leafA = isLeaf(a);
+			final boolean leafB = isLeaf(b);
+			if (leafA && leafB) {
+				final Proxy<T> pa = (Proxy<T>) _data[a];
+				final Proxy<T> pb = (Proxy<T>) _data[b];
+				if (overlaps(pa, pb)) {
+					pairs.add(toPair(pa, pb));
+				}
+				continue;
+			}
+			if (top + 4 > stack.length) {
+				stack = _stack = copyOf(stack, stack.length * 2);
+			}
+			// 拆分较大的节点
+			if (leafB || (!leafA && perimeter(a) > perimeter(b))) {
+				stack[top++] = _child1[a];
+				stack[top++] = b;
+				stack[top++] = _child2[a];
+				stack[top++] = b;
+			} else {
+				stack[top++] = a;
+				stack[top++] = _child1[b];
+				stack[top++] = a;
+				stack[top++] = _child2[b];
+			}
+		}
+	}
+
+	public BroadPhaseTree<T> setMargin(float margin) {
+		this._margin = MathUtils.max(0f, margin);
+		return this;
+	}
+
+	public float getMargin() {
+		return _margin;
+	}
+
+	public int getHeight() {
+		return _root == NULL_NODE ? 0 : _height[_root];
+	}
+
+	public int getNodeCount() {
+		return _nodeCount;
+	}
+
+}
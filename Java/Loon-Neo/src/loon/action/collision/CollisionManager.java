@@ -21,7 +21,10 @@
 package loon.action.collision;
 
 import loon.LSystem;
+import loon.geom.Shape;
 import loon.geom.Vector2f;
+import loon.utils.IdentityMap;
+import loon.utils.IntArray;
 import loon.utils.LIterator;
 import loon.utils.ObjectMap;
 import loon.utils.ObjectMap.Entries;
@@ -32,14 +35,51 @@ import loon.utils.TArray;
 
 /**
  * CollisionManager是一個手动的碰撞管理器,用来管理与检测指定[CollisionObject]对象的碰撞行为
+ * 
+ * 每个实例使用自己的锁,多个实例之间互不影响.开启batchUpdates后,添加,删除与更新对象只会进入队列,在commit时统一执行,
+ * 查询不再持有实例锁,多个线程可以同时查询上次commit后的结果.查询会登记为读者,commit时若仍有查询在进行,修改推迟到最后一个查询结束时执行,
+ * 在此期间以及commit执行期间开始的查询改为持锁执行,因此查询不会看到执行到一半的commit.切换batchUpdates时不应有正在进行的查询.
+ * 
+ * 开启preciseMode后,相交查询在BSP网格的矩形粗测之后,再以NarrowPhase比较对象的实际形状(默认为getRectBox,可用setPreciseShape指定).
+ * 形状的凸分解缓存在检测时会被写入,所以精确检测部分以形状表为锁串行执行,commit时预先刷新已登记的形状,缩短查询持锁的时间.
  */
 public class CollisionManager implements CollisionChecker {
 
+	private final static int PENDING_ADD = 0;
+
+	private final static int PENDING_REMOVE = 1;
+
+	private final static int PENDING_UPDATE = 2;
+
 	private final ObjectMap<String, SortedList<CollisionObject>> _freeObjects = new ObjectMap<String, SortedList<CollisionObject>>();
 
 	private final ObjectSet<String> _collisionClasses = new ObjectSet<String>();
 
-	private final CollisionChecker _collisionChecker = new BSPCollisionChecker();
+	private final BSPCollisionChecker _collisionChecker = new BSPCollisionChecker();
+
+	private final Object _lock = new Object();
+
+	private final TArray<CollisionObject> _pendingObjects = new TArray<CollisionObject>();
+
+	private final IntArray _pendingTypes = new IntArray();
+
+	// 按引用查找,ActionObject等对象的hashCode会随坐标变化
+	private final IdentityMap<CollisionObject, Shape> _preciseShapes = new IdentityMap<CollisionObject, Shape>();
+
+	private final TArray<Shape> _preciseTemp = new TArray<Shape>();
+
+	private final Object _readLock = new Object();
+
+	private volatile boolean _batchUpdates;
+
+	// 批量模式下正在进行的无锁查询数量
+	private int _readers;
+
+	private boolean _writing;
+
+	private boolean _commitDeferred;
+
+	private boolean _preciseMode;
 
 	private boolean _closed;
 
@@ -57,9 +97,249 @@ public class CollisionManager implements CollisionChecker {
 		this._collisionChecker.initialize(cellSizeX, cellSizeY);
 	}
 
+	/**
+	 * 是否批量更新,开启后对象的添加,删除与更新在commit时才生效,查询不再加锁
+	 * 
+	 * @param batch
+	 * @return
+	 */
+	public CollisionManager setBatchUpdates(boolean batch) {
+		synchronized (_lock) {
+			if (this._batchUpdates == batch) {
+				return this;
+			}
+			this._batchUpdates = batch;
+			commitPending();
+			_collisionChecker.setConcurrentQueries(batch);
+		}
+		return this;
+	}
+
+	public boolean isBatchUpdates() {
+		return _batchUpdates;
+	}
+
+	/**
+	 * 执行队列中的修改,批量更新模式下,查询只能看到commit之前的结果.若仍有无锁查询在进行,修改由最后一个结束的查询执行
+	 * 
+	 * @return
+	 */
+	public CollisionManager commit() {
+		synchronized (_lock) {
+			synchronized (_readLock) {
+				if (_readers > 0) {
+					_commitDeferred = true;
+					return this;
+				}
+				_commitDeferred = false;
+				_writing = true;
+			}
+			try {
+				commitPending();
+			} finally {
+				synchronized (_readLock) {
+					_writing = false;
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * 批量模式下登记一次无锁查询,commit正在执行或等待执行时返回false,查询需改为持锁执行
+	 * 
+	 * @return
+	 */
+	private boolean beginRead() {
+		synchronized (_readLock) {
+			if (_writing || _commitDeferred) {
+				return false;
+			}
+			_readers++;
+			return true;
+		}
+	}
+
+	private void endRead() {
+		boolean apply;
+		synchronized (_readLock) {
+			_readers--;
+			apply = _readers == 0 && _commitDeferred;
+		}
+		if (apply) {
+			commit();
+		}
+	}
+
+	/**
+	 * 是否在矩形粗测后使用形状精确检测(凹多边形,旋转图形等)
+	 * 
+	 * @param precise
+	 * @return
+	 */
+	public CollisionManager setPreciseMode(boolean precise) {
+		synchronized (_lock) {
+			this._preciseMode = precise;
+		}
+		return this;
+	}
+
+	public boolean isPreciseMode() {
+		return _preciseMode;
+	}
+
+	/**
+	 * 设置对象用于精确检测的形状,形状需要与对象同步移动,为null时恢复使用getRectBox
+	 * 
+	 * @param obj
+	 * @param shape
+	 * @return
+	 */
+	public CollisionManager setPreciseShape(CollisionObject obj, Shape shape) {
+		if (obj == null) {
+			return this;
+		}
+		synchronized (_preciseShapes) {
+			if (shape == null) {
+				_preciseShapes.remove(obj);
+			} else {
+				_preciseShapes.put(obj, shape);
+			}
+		}
+		return this;
+	}
+
+	public Shape getPreciseShape(CollisionObject obj) {
+		if (obj == null) {
+			return null;
+		}
+		synchronized (_preciseShapes) {
+			return preciseShape(obj);
+		}
+	}
+
+	private Shape preciseShape(CollisionObject obj) {
+		final Shape shape = _preciseShapes.get(obj);
+		return shape == null ? obj.getRectBox() : shape;
+	}
+
+	/**
+	 * 计算两个对象精确形状的接触信息(穿透深度,法线与接触点)
+	 * 
+	 * @param a
+	 * @param b
+	 * @param out
+	 * @return
+	 */
+	public boolean getContact(CollisionObject a, CollisionObject b, CollisionManifold out) {
+		if (a == null || b == null) {
+			out.reset();
+			return false;
+		}
+		synchronized (_preciseShapes) {
+			return NarrowPhase.collide(preciseShape(a), preciseShape(b), out);
+		}
+	}
+
+	private TArray<CollisionObject> filterPrecise(CollisionObject actor, TArray<CollisionObject> list) {
+		if (!_preciseMode || list == null || list.size == 0) {
+			return list;
+		}
+		// 凸分解缓存会在检测中刷新,批量模式下的并发查询在这里串行
+		synchronized (_preciseShapes) {
+			final Shape shape = preciseShape(actor);
+			for (int i = list.size - 1; i > -1; i--) {
+				if (!NarrowPhase.overlaps(shape, preciseShape(list.get(i)))) {
+					list.removeIndex(i);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 刷新已登记形状的凸分解缓存,之后没有再移动的形状在查询时只读
+	 */
+	private void validatePreciseShapes() {
+		synchronized (_preciseShapes) {
+			final TArray<Shape> shapes = _preciseShapes.values(_preciseTemp);
+			for (int i = 0; i < shapes.size; i++) {
+				shapes.get(i).getConvexCache();
+			}
+			shapes.clear();
+		}
+	}
+
+	private CollisionObject firstPrecise(CollisionObject actor, String flag) {
+		final TArray<CollisionObject> list = filterPrecise(actor,
+				this._collisionChecker.getIntersectingObjects(actor, flag));
+		return list == null || list.size == 0 ? null : list.get(0);
+	}
+
+	/**
+	 * 尚未commit的修改数量
+	 * 
+	 * @return
+	 */
+	public int getPendingCount() {
+		synchronized (_pendingObjects) {
+			return _pendingObjects.size;
+		}
+	}
+
+	private void commitPending() {
+		CollisionObject[] objects = null;
+		int[] types = null;
+		synchronized (_pendingObjects) {
+			if (_pendingObjects.size > 0) {
+				objects = new CollisionObject[_pendingObjects.size];
+				for (int i = 0; i < objects.length; i++) {
+					objects[i] = _pendingObjects.get(i);
+				}
+				types = _pendingTypes.toArray();
+				_pendingObjects.clear();
+				_pendingTypes.clear();
+			}
+		}
+		if (objects != null) {
+			for (int i = 0; i < objects.length; i++) {
+				final CollisionObject obj = objects[i];
+				switch (types[i]) {
+				case PENDING_ADD:
+					applyAdd(obj);
+					break;
+				case PENDING_REMOVE:
+					applyRemove(obj);
+					break;
+				default:
+					applyUpdate(obj);
+					break;
+				}
+			}
+		}
+		if (_batchUpdates) {
+			// 查询时不再整理对象,在此全部放入检查器
+			makeCollisionObjects(null, false);
+		}
+		if (_preciseMode) {
+			validatePreciseShapes();
+		}
+	}
+
+	private void addPending(CollisionObject obj, int type) {
+		synchronized (_pendingObjects) {
+			_pendingObjects.add(obj);
+			_pendingTypes.add(type);
+		}
+	}
+
 	@Override
 	public void clear() {
-		synchronized (CollisionManager.class) {
+		synchronized (_lock) {
+			synchronized (_pendingObjects) {
+				_pendingObjects.clear();
+				_pendingTypes.clear();
+			}
 			if (_collisionChecker != null) {
 				_collisionChecker.dispose();
 				_collisionChecker.clear();
@@ -70,6 +350,9 @@ public class CollisionManager implements CollisionChecker {
 			if (_collisionClasses != null) {
 				_collisionClasses.clear();
 			}
+			synchronized (_preciseShapes) {
+				_preciseShapes.clear();
+			}
 		}
 	}
 
@@ -115,6 +398,16 @@ public class CollisionManager implements CollisionChecker {
 
 	@Override
 	public void addObject(CollisionObject actor) {
+		if (_batchUpdates) {
+			addPending(actor, PENDING_ADD);
+			return;
+		}
+		synchronized (_lock) {
+			applyAdd(actor);
+		}
+	}
+
+	private void applyAdd(CollisionObject actor) {
 		String flag = actor.getObjectFlag();
 		if (this._collisionClasses.contains(flag)) {
 			this._collisionChecker.addObject(actor);
@@ -130,15 +423,39 @@ public class CollisionManager implements CollisionChecker {
 
 	@Override
 	public TArray<CollisionObject> getIntersectingObjects(CollisionObject actor, String flag) {
-		synchronized (CollisionManager.class) {
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return filterPrecise(actor, this._collisionChecker.getIntersectingObjects(actor, flag));
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return filterPrecise(actor, this._collisionChecker.getIntersectingObjects(actor, flag));
+			}
+		}
+		synchronized (_lock) {
 			this.prepareForCollision(actor, flag);
-			return this._collisionChecker.getIntersectingObjects(actor, flag);
+			return filterPrecise(actor, this._collisionChecker.getIntersectingObjects(actor, flag));
 		}
 	}
 
 	@Override
 	public TArray<CollisionObject> getNeighbours(CollisionObject actor, float distance, boolean diag, String flag) {
-		synchronized (CollisionManager.class) {
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return this._collisionChecker.getNeighbours(actor, distance, diag, flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return this._collisionChecker.getNeighbours(actor, distance, diag, flag);
+			}
+		}
+		synchronized (_lock) {
 			this.prepareForCollision(actor, flag);
 			return this._collisionChecker.getNeighbours(actor, distance, diag, flag);
 		}
@@ -146,31 +463,71 @@ public class CollisionManager implements CollisionChecker {
 
 	@Override
 	public TArray<CollisionObject> getObjects(String flag) {
-		TArray<CollisionObject> result = this._collisionChecker.getObjects(flag);
-		Entries<String, SortedList<CollisionObject>> entries = this._freeObjects.entries();
-		for (; entries.hasNext();) {
-			Entry<String, SortedList<CollisionObject>> entry = entries.next();
-			if (flag == null || flag.equals(entry.key)) {
-				for (LIterator<CollisionObject> it = entry.value.listIterator(); it.hasNext();) {
-					result.add(it.next());
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return this._collisionChecker.getObjects(flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return this._collisionChecker.getObjects(flag);
+			}
+		}
+		synchronized (_lock) {
+			TArray<CollisionObject> result = this._collisionChecker.getObjects(flag);
+			Entries<String, SortedList<CollisionObject>> entries = this._freeObjects.entries();
+			for (; entries.hasNext();) {
+				Entry<String, SortedList<CollisionObject>> entry = entries.next();
+				if (flag == null || flag.equals(entry.key)) {
+					for (LIterator<CollisionObject> it = entry.value.listIterator(); it.hasNext();) {
+						result.add(it.next());
+					}
 				}
 			}
+			return result;
 		}
-		return result;
 	}
 
 	@Override
 	public TArray<CollisionObject> getObjectsAt(float x, float y, String flag) {
-		this.makeCollisionObjects(flag, true);
-		return this._collisionChecker.getObjectsAt(x, y, flag);
-
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return this._collisionChecker.getObjectsAt(x, y, flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return this._collisionChecker.getObjectsAt(x, y, flag);
+			}
+		}
+		synchronized (_lock) {
+			this.makeCollisionObjects(flag, true);
+			return this._collisionChecker.getObjectsAt(x, y, flag);
+		}
 	}
 
 	@Override
 	public TArray<CollisionObject> getObjectsInRange(float x, float y, float r, String flag) {
-		this.makeCollisionObjects(flag, true);
-		return this._collisionChecker.getObjectsInRange(x, y, r, flag);
-
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return this._collisionChecker.getObjectsInRange(x, y, r, flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return this._collisionChecker.getObjectsInRange(x, y, r, flag);
+			}
+		}
+		synchronized (_lock) {
+			this.makeCollisionObjects(flag, true);
+			return this._collisionChecker.getObjectsInRange(x, y, r, flag);
+		}
 	}
 
 	@Override
@@ -180,18 +537,61 @@ public class CollisionManager implements CollisionChecker {
 
 	@Override
 	public CollisionObject getOnlyIntersectingObject(CollisionObject obj, String flag) {
-		this.prepareForCollision(obj, flag);
-		return this._collisionChecker.getOnlyIntersectingObject(obj, flag);
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return _preciseMode ? firstPrecise(obj, flag)
+							: this._collisionChecker.getOnlyIntersectingObject(obj, flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return _preciseMode ? firstPrecise(obj, flag)
+						: this._collisionChecker.getOnlyIntersectingObject(obj, flag);
+			}
+		}
+		synchronized (_lock) {
+			this.prepareForCollision(obj, flag);
+			return _preciseMode ? firstPrecise(obj, flag) : this._collisionChecker.getOnlyIntersectingObject(obj, flag);
+		}
 	}
 
 	@Override
 	public CollisionObject getOnlyObjectAt(CollisionObject obj, float dx, float dy, String flag) {
-		this.prepareForCollision(obj, flag);
-		return this._collisionChecker.getOnlyObjectAt(obj, dx, dy, flag);
+		if (_batchUpdates) {
+			if (beginRead()) {
+				try {
+					return this._collisionChecker.getOnlyObjectAt(obj, dx, dy, flag);
+				} finally {
+					endRead();
+				}
+			}
+			synchronized (_lock) {
+				return this._collisionChecker.getOnlyObjectAt(obj, dx, dy, flag);
+			}
+		}
+		synchronized (_lock) {
+			this.prepareForCollision(obj, flag);
+			return this._collisionChecker.getOnlyObjectAt(obj, dx, dy, flag);
+		}
 	}
 
 	@Override
 	public void removeObject(CollisionObject obj) {
+		if (_batchUpdates) {
+			addPending(obj, PENDING_REMOVE);
+			return;
+		}
+		synchronized (_lock) {
+			applyRemove(obj);
+		}
+	}
+
+	private void applyRemove(CollisionObject obj) {
+		synchronized (_preciseShapes) {
+			_preciseShapes.remove(obj);
+		}
 		SortedList<CollisionObject> classSet = this._freeObjects.get(obj.getObjectFlag());
 		if (classSet != null) {
 			classSet.remove(obj);
@@ -201,24 +601,41 @@ public class CollisionManager implements CollisionChecker {
 	}
 
 	public void removeObject(String flag) {
-		SortedList<CollisionObject> classSet = this._freeObjects.get(flag);
-		if (_collisionClasses != null) {
-			_collisionClasses.remove(flag);
-		}
-		if (classSet != null) {
-			classSet.remove(flag);
+		synchronized (_lock) {
+			SortedList<CollisionObject> classSet = this._freeObjects.get(flag);
+			if (_collisionClasses != null) {
+				_collisionClasses.remove(flag);
+			}
+			if (classSet != null) {
+				classSet.remove(flag);
+			}
 		}
 	}
 
 	@Override
 	public void updateObjectLocation(CollisionObject obj, float oldX, float oldY) {
-		if (!this._freeObjects.containsKey(obj.getObjectFlag())) {
-			this._collisionChecker.updateObjectLocation(obj, oldX, oldY);
+		if (_batchUpdates) {
+			addPending(obj, PENDING_UPDATE);
+			return;
+		}
+		synchronized (_lock) {
+			applyUpdate(obj);
 		}
 	}
 
 	@Override
 	public void updateObjectSize(CollisionObject obj) {
+		if (_batchUpdates) {
+			addPending(obj, PENDING_UPDATE);
+			return;
+		}
+		synchronized (_lock) {
+			applyUpdate(obj);
+		}
+	}
+
+	private void applyUpdate(CollisionObject obj) {
+		// 检查器的更新只读取对象当前的位置与大小
 		if (!this._freeObjects.containsKey(obj.getObjectFlag())) {
 			this._collisionChecker.updateObjectSize(obj);
 		}
@@ -280,16 +697,25 @@ public class CollisionManager implements CollisionChecker {
 
 	@Override
 	public void dispose() {
-		if (_freeObjects != null) {
-			_freeObjects.clear();
-		}
-		if (_collisionClasses != null) {
-			_collisionClasses.clear();
-		}
-		if (_collisionChecker != null) {
-			_collisionChecker.dispose();
-			_collisionChecker.clear();
+		synchronized (_lock) {
+			synchronized (_pendingObjects) {
+				_pendingObjects.clear();
+				_pendingTypes.clear();
+			}
+			if (_freeObjects != null) {
+				_freeObjects.clear();
+			}
+			if (_collisionClasses != null) {
+				_collisionClasses.clear();
+			}
+			synchronized (_preciseShapes) {
+				_preciseShapes.clear();
+			}
+			if (_collisionChecker != null) {
+				_collisionChecker.dispose();
+				_collisionChecker.clear();
+			}
+			_closed = true;
 		}
-		_closed = true;
 	}
 }
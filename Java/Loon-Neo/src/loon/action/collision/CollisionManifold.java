@@ -0,0 +1,102 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.geom.Vector2f;
+
+/**
+ * 精确碰撞(narrow-phase)的接触信息,normal为从A指向B的单位法线,沿normal把B移动depth即可分离两者.
+ */
+public class CollisionManifold {
+
+	public final static int MAX_POINTS = 2;
+
+	public boolean colliding;
+
+	public float depth;
+
+	public final Vector2f normal = new Vector2f();
+
+	public final Vector2f[] points = new Vector2f[] { new Vector2f(), new Vector2f() };
+
+	public int pointCount;
+
+	public CollisionManifold reset() {
+		colliding = false;
+		depth = 0f;
+		normal.set(0f, 0f);
+		pointCount = 0;
+		return this;
+	}
+
+	public CollisionManifold set(CollisionManifold other) {
+		colliding = other.colliding;
+		depth = other.depth;
+		normal.set(other.normal);
+		pointCount = other.pointCount;
+		for (int i = 0; i < pointCount; i++) {
+			points[i].set(other.points[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * 交换A与B(法线反向)
+	 *
+	 * @return
+	 */
+	public CollisionManifold flip() {
+		normal.set(-normal.x, -normal.y);
+		return this;
+	}
+
+	void addPoint(float x, float y) {
+		if (pointCount < MAX_POINTS) {
+			points[pointCount++].set(x, y);
+		}
+	}
+
+	public boolean isColliding() {
+		return colliding;
+	}
+
+	public float getDepth() {
+		return depth;
+	}
+
+	public Vector2f getNormal() {
+		return normal;
+	}
+
+	public int getPointCount() {
+		return pointCount;
+	}
+
+	public Vector2f getPoint(int index) {
+		return points[index];
+	}
+
+	@Override
+	public String toString() {
+		return "CollisionManifold [colliding=" + colliding + ", depth=" + depth + ", normal=" + normal + ", points="
+				+ pointCount + "]";
+	}
+}
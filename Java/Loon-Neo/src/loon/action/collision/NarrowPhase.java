@@ -0,0 +1,303 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.geom.Shape;
+import loon.utils.MathUtils;
+
+/**
+ * 碰撞精确检测(narrow-phase),使用分离轴定理(SAT)比较Shape的凸块,并以参考边裁剪得到接触点.
+ *
+ * 凸分解,边法线与包围盒缓存在ShapeConvexCache中,图形不变时每次查询不再重复计算,也不产生临时对象.
+ * 凹多边形由多个凸块组成,结果取穿透最深的一组凸块.
+ */
+public final class NarrowPhase {
+
+	// 选择参考边时对B的容差,避免两边分离距离接近时来回切换
+	private final static float REFERENCE_TOLERANCE = 0.005f;
+
+	private NarrowPhase() {
+	}
+
+	/**
+	 * 只判断两个图形是否重叠
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static boolean overlaps(Shape a, Shape b) {
+		if (a == null || b == null) {
+			return false;
+		}
+		final ShapeConvexCache ca = a.getConvexCache();
+		final ShapeConvexCache cb = b.getConvexCache();
+		if (!boundsOverlap(ca, cb)) {
+			return false;
+		}
+		for (int i = 0, sa = ca.getPieceCount(); i < sa; i++) {
+			final ShapeConvexCache.Piece pa = ca.getPiece(i);
+			for (int j = 0, sb = cb.getPieceCount(); j < sb; j++) {
+				final ShapeConvexCache.Piece pb = cb.getPiece(j);
+				if (pa.overlaps(pb) && penetration(pa, pb) >= 0f) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 计算两个图形的接触信息
+	 *
+	 * @param a
+	 * @param b
+	 * @param out
+	 * @return 是否碰撞
+	 */
+	public static boolean collide(Shape a, Shape b, CollisionManifold out) {
+		out.reset();
+		if (a == null || b == null) {
+			return false;
+		}
+		final ShapeConvexCache ca = a.getConvexCache();
+		final ShapeConvexCache cb = b.getConvexCache();
+		if (!boundsOverlap(ca, cb)) {
+			return false;
+		}
+		if (ca.getPieceCount() == 1 && cb.getPieceCount() == 1) {
+			return collide(ca.getPiece(0), cb.getPiece(0), out);
+		}
+		ShapeConvexCache.Piece bestA = null, bestB = null;
+		float bestDepth = -1f;
+		for (int i = 0, sa = ca.getPieceCount(); i < sa; i++) {
+			final ShapeConvexCache.Piece pa = ca.getPiece(i);
+			for (int j = 0, sb = cb.getPieceCount(); j < sb; j++) {
+				final ShapeConvexCache.Piece pb = cb.getPiece(j);
+				if (pa.overlaps(pb)) {
+					final float depth = penetration(pa, pb);
+					if (depth > bestDepth) {
+						bestDepth = depth;
+						bestA = pa;
+						bestB = pb;
+					}
+				}
+			}
+		}
+		if (bestA == null || bestDepth < 0f) {
+			return false;
+		}
+		return collide(bestA, bestB, out);
+	}
+
+	private static boolean boundsOverlap(ShapeConvexCache ca, ShapeConvexCache cb) {
+		ca.validate();
+		cb.validate();
+		return ca.getPieceCount() > 0 && cb.getPieceCount() > 0 && ca.getMinX() <= cb.getMaxX()
+				&& ca.getMaxX() >= cb.getMinX() && ca.getMinY() <= cb.getMaxY() && ca.getMaxY() >= cb.getMinY();
+	}
+
+	/**
+	 * 凸块a的各条边中,b在其法线方向上最深入的距离最大的一条边
+	 */
+	private static int findMaxSeparationEdge(ShapeConvexCache.Piece a, ShapeConvexCache.Piece b) {
+		final float[] va = a.vertices, na = a.normals, vb = b.vertices;
+		int bestEdge = -1;
+		float maxSeparation = -Float.MAX_VALUE;
+		for (int i = 0; i < a.size; i++) {
+			final float nx = na[i * 2], ny = na[i * 2 + 1];
+			if (nx == 0f && ny == 0f) {
+				continue;
+			}
+			final float ox = va[i * 2], oy = va[i * 2 + 1];
+			float si = Float.MAX_VALUE;
+			for (int j = 0; j < b.size; j++) {
+				final float d = nx * (vb[j * 2] - ox) + ny * (vb[j * 2 + 1] - oy);
+				if (d < si) {
+					si = d;
+					// 已经不可能超过当前最大值
+					if (si <= maxSeparation) {
+						break;
+					}
+				}
+			}
+			if (si > maxSeparation) {
+				maxSeparation = si;
+				bestEdge = i;
+				// 找到分离轴即可结束
+				if (si > 0f) {
+					break;
+				}
+			}
+		}
+		return bestEdge;
+	}
+
+	private static float edgeSeparation(ShapeConvexCache.Piece a, int edge, ShapeConvexCache.Piece b) {
+		if (edge < 0) {
+			return -Float.MAX_VALUE;
+		}
+		final float nx = a.normals[edge * 2], ny = a.normals[edge * 2 + 1];
+		final float ox = a.vertices[edge * 2], oy = a.vertices[edge * 2 + 1];
+		final float[] vb = b.vertices;
+		float si = Float.MAX_VALUE;
+		for (int j = 0; j < b.size; j++) {
+			final float d = nx * (vb[j * 2] - ox) + ny * (vb[j * 2 + 1] - oy);
+			if (d < si) {
+				si = d;
+			}
+		}
+		return si;
+	}
+
+	/**
+	 * 两个凸块的穿透深度,分离时返回负数
+	 */
+	private static float penetration(ShapeConvexCache.Piece a, ShapeConvexCache.Piece b) {
+		final float sa = edgeSeparation(a, findMaxSeparationEdge(a, b), b);
+		if (sa > 0f) {
+			return -sa;
+		}
+		final float sb = edgeSeparation(b, findMaxSeparationEdge(b, a), a);
+		if (sb > 0f) {
+			return -sb;
+		}
+		// 两者都没有有效边(点与点)时视为不相交
+		if (sa == -Float.MAX_VALUE && sb == -Float.MAX_VALUE) {
+			return -1f;
+		}
+		return -MathUtils.max(sa, sb);
+	}
+
+	private static boolean collide(ShapeConvexCache.Piece a, ShapeConvexCache.Piece b, CollisionManifold out) {
+		final int edgeA = findMaxSeparationEdge(a, b);
+		final float sepA = edgeSeparation(a, edgeA, b);
+		if (sepA > 0f) {
+			return false;
+		}
+		final int edgeB = findMaxSeparationEdge(b, a);
+		final float sepB = edgeSeparation(b, edgeB, a);
+		if (sepB > 0f || (edgeA < 0 && edgeB < 0)) {
+			return false;
+		}
+		final ShapeConvexCache.Piece ref, inc;
+		final int refEdge;
+		final boolean flip;
+		if (edgeA < 0 || (edgeB >= 0 && sepB > sepA + REFERENCE_TOLERANCE)) {
+			ref = b;
+			inc = a;
+			refEdge = edgeB;
+			flip = true;
+		} else {
+			ref = a;
+			inc = b;
+			refEdge = edgeA;
+			flip = false;
+		}
+		final float nx = ref.normals[refEdge * 2], ny = ref.normals[refEdge * 2 + 1];
+		out.colliding = true;
+		out.depth = -MathUtils.max(sepA, sepB);
+		if (flip) {
+			out.normal.set(-nx, -ny);
+		} else {
+			out.normal.set(nx, ny);
+		}
+		// 入射边为法线与参考边最相反的一条
+		int incEdge = 0;
+		float minDot = Float.MAX_VALUE;
+		for (int i = 0; i < inc.size; i++) {
+			final float d = nx * inc.normals[i * 2] + ny * inc.normals[i * 2 + 1];
+			if (d < minDot) {
+				minDot = d;
+				incEdge = i;
+			}
+		}
+		final int incNext = (incEdge + 1) % inc.size;
+		float x0 = inc.vertices[incEdge * 2], y0 = inc.vertices[incEdge * 2 + 1];
+		float x1 = inc.vertices[incNext * 2], y1 = inc.vertices[incNext * 2 + 1];
+		final int refNext = (refEdge + 1) % ref.size;
+		final float rx0 = ref.vertices[refEdge * 2], ry0 = ref.vertices[refEdge * 2 + 1];
+		final float rx1 = ref.vertices[refNext * 2], ry1 = ref.vertices[refNext * 2 + 1];
+		float tx = rx1 - rx0, ty = ry1 - ry0;
+		final float tlen = MathUtils.sqrt(tx * tx + ty * ty);
+		if (tlen > 0f) {
+			tx /= tlen;
+			ty /= tlen;
+		}
+		// 以参考边两端的侧面裁剪入射边
+		final float side0 = -(tx * rx0 + ty * ry0);
+		final float side1 = tx * rx1 + ty * ry1;
+		float d0 = -tx * x0 - ty * y0 - side0;
+		float d1 = -tx * x1 - ty * y1 - side0;
+		boolean clipped = true;
+		if (d0 > 0f && d1 > 0f) {
+			clipped = false;
+		} else if (d0 > 0f) {
+			final float t = d0 / (d0 - d1);
+			x0 = x0 + (x1 - x0) * t;
+			y0 = y0 + (y1 - y0) * t;
+		} else if (d1 > 0f) {
+			final float t = d0 / (d0 - d1);
+			x1 = x0 + (x1 - x0) * t;
+			y1 = y0 + (y1 - y0) * t;
+		}
+		if (clipped) {
+			d0 = tx * x0 + ty * y0 - side1;
+			d1 = tx * x1 + ty * y1 - side1;
+			if (d0 > 0f && d1 > 0f) {
+				clipped = false;
+			} else if (d0 > 0f) {
+				final float t = d0 / (d0 - d1);
+				x0 = x0 + (x1 - x0) * t;
+				y0 = y0 + (y1 - y0) * t;
+			} else if (d1 > 0f) {
+				final float t = d0 / (d0 - d1);
+				x1 = x0 + (x1 - x0) * t;
+				y1 = y0 + (y1 - y0) * t;
+			}
+		}
+		final float front = nx * rx0 + ny * ry0;
+		if (clipped) {
+			if (nx * x0 + ny * y0 - front <= 0f) {
+				out.addPoint(x0, y0);
+			}
+			if (nx * x1 + ny * y1 - front <= 0f && (x1 != x0 || y1 != y0)) {
+				out.addPoint(x1, y1);
+			}
+		}
+		if (out.pointCount == 0) {
+			// 裁剪失败(如点或线段与多边形相交)时取入射凸块最深入的顶点
+			float best = Float.MAX_VALUE;
+			float bx = 0f, by = 0f;
+			for (int i = 0; i < inc.size; i++) {
+				final float px = inc.vertices[i * 2], py = inc.vertices[i * 2 + 1];
+				final float d = nx * px + ny * py;
+				if (d < best) {
+					best = d;
+					bx = px;
+					by = py;
+				}
+			}
+			out.addPoint(bx, by);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,444 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.collision;
+
+import loon.geom.Shape;
+import loon.utils.IntArray;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * Shape的凸分解缓存,供NarrowPhase使用.
+ *
+ * 凹多边形用耳切法三角化后再合并相邻三角形(Hertel-Mehlhorn),得到数量较少的凸块;未闭合的图形按线段拆分.
+ * 分解结果只记录顶点序号,平移/旋转/缩放等仿射变换不会改变凸性,所以Shape的顶点版本变化时只重新计算坐标,法线与包围盒,
+ * 只有顶点数量变化或某个凸块不再是凸的时候才重新分解.
+ */
+public class ShapeConvexCache {
+
+	private final static float EPSILON = 1e-6f;
+
+	// 判断凹角时允许的误差(相邻两边夹角的正弦),共线顶点在旋转后可能出现微小的反向
+	private final static float CONVEX_TOLERANCE = 1e-3f;
+
+	/**
+	 * 一个凸块,顶点与法线均为世界坐标,法线为单位向量并指向外侧
+	 */
+	public final static class Piece {
+
+		int[] indices;
+
+		float[] vertices;
+
+		float[] normals;
+
+		int size;
+
+		float minX, minY, maxX, maxY;
+
+		Piece(int[] indices) {
+			this.indices = indices;
+			this.size = indices.length;
+			this.vertices = new float[size * 2];
+			this.normals = new float[size * 2];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public float[] getVertices() {
+			return vertices;
+		}
+
+		public float[] getNormals() {
+			return normals;
+		}
+
+		public float getMinX() {
+			return minX;
+		}
+
+		public float getMinY() {
+			return minY;
+		}
+
+		public float getMaxX() {
+			return maxX;
+		}
+
+		public float getMaxY() {
+			return maxY;
+		}
+
+		boolean overlaps(Piece o) {
+			return minX <= o.maxX && maxX >= o.minX && minY <= o.maxY && maxY >= o.minY;
+		}
+
+		/**
+		 * 从图形顶点中取出坐标并计算法线与包围盒
+		 *
+		 * @return 凸块不再是凸的时候返回false
+		 */
+		boolean refresh(float[] points) {
+			final int n = size;
+			float area = 0f;
+			for (int i = 0; i < n; i++) {
+				final int idx = indices[i] * 2;
+				vertices[i * 2] = points[idx];
+				vertices[i * 2 + 1] = points[idx + 1];
+			}
+			for (int i = 0; i < n; i++) {
+				final int j = (i + 1) % n;
+				area += vertices[i * 2] * vertices[j * 2 + 1] - vertices[j * 2] * vertices[i * 2 + 1];
+			}
+			// 镜像缩放会让顶点顺序反向,按面积符号确定外侧
+			final float sign = area < 0f ? -1f : 1f;
+			minX = maxX = vertices[0];
+			minY = maxY = vertices[1];
+			for (int i = 0; i < n; i++) {
+				final int j = (i + 1) % n;
+				final float x = vertices[i * 2], y = vertices[i * 2 + 1];
+				final float dx = vertices[j * 2] - x;
+				final float dy = vertices[j * 2 + 1] - y;
+				final float len = MathUtils.sqrt(dx * dx + dy * dy);
+				if (len > EPSILON) {
+					normals[i * 2] = sign * dy / len;
+					normals[i * 2 + 1] = -sign * dx / len;
+				} else {
+					normals[i * 2] = normals[i * 2 + 1] = 0f;
+				}
+				if (x < minX) {
+					minX = x;
+				} else if (x > maxX) {
+					maxX = x;
+				}
+				if (y < minY) {
+					minY = y;
+				} else if (y > maxY) {
+					maxY = y;
+				}
+				if (n > 2) {
+					final int k = (i + 2) % n;
+					final float ex = vertices[k * 2] - vertices[j * 2];
+					final float ey = vertices[k * 2 + 1] - vertices[j * 2 + 1];
+					final float elen = MathUtils.sqrt(ex * ex + ey * ey);
+					if (sign * (dx * ey - dy * ex) < -CONVEX_TOLERANCE * len * elen) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Shape _shape;
+
+	private final TArray<Piece> _pieces = new TArray<Piece>();
+
+	private int _version = -1;
+
+	private int _vertexCount = -1;
+
+	private boolean _closed;
+
+	private float _minX, _minY, _maxX, _maxY;
+
+	private int _rebuildCount;
+
+	private int _refreshCount;
+
+	public ShapeConvexCache(Shape shape) {
+		this._shape = shape;
+	}
+
+	/**
+	 * 检查图形是否已变化,需要时刷新坐标或重新分解
+	 *
+	 * @return
+	 */
+	public ShapeConvexCache validate() {
+		final float[] points = _shape.getPoints();
+		final int version = _shape.getPointsVersion();
+		if (version == _version && _vertexCount >= 0) {
+			return this;
+		}
+		_version = version;
+		int count = points == null ? 0 : points.length / 2;
+		// 首尾重复的顶点不参与分解
+		if (count > 3 && points[0] == points[count * 2 - 2] && points[1] == points[count * 2 - 1]) {
+			count--;
+		}
+		final boolean closed = _shape.closed();
+		if (count != _vertexCount || closed != _closed || !refresh(points)) {
+			_vertexCount = count;
+			_closed = closed;
+			decompose(points, count);
+			refresh(points);
+			_rebuildCount++;
+		} else {
+			_refreshCount++;
+		}
+		return this;
+	}
+
+	private boolean refresh(float[] points) {
+		final int size = _pieces.size;
+		if (size == 0) {
+			_minX = _minY = _maxX = _maxY = 0f;
+			return true;
+		}
+		for (int i = 0; i < size; i++) {
+			final Piece piece = _pieces.get(i);
+			if (!piece.refresh(points)) {
+				return false;
+			}
+			if (i == 0) {
+				_minX = piece.minX;
+				_minY = piece.minY;
+				_maxX = piece.maxX;
+				_maxY = piece.maxY;
+			} else {
+				_minX = MathUtils.min(_minX, piece.minX);
+				_minY = MathUtils.min(_minY, piece.minY);
+				_maxX = MathUtils.max(_maxX, piece.maxX);
+				_maxY = MathUtils.max(_maxY, piece.maxY);
+			}
+		}
+		return true;
+	}
+
+	private void decompose(float[] points, int count) {
+		_pieces.clear();
+		if (count <= 0) {
+			return;
+		}
+		if (count <= 2) {
+			_pieces.add(new Piece(range(count)));
+			return;
+		}
+		if (!_closed) {
+			for (int i = 0; i < count - 1; i++) {
+				_pieces.add(new Piece(new int[] { i, i + 1 }));
+			}
+			return;
+		}
+		final float area = signedArea(points, count);
+		if (isConvex(points, count, area < 0f ? -1f : 1f)) {
+			_pieces.add(new Piece(range(count)));
+			return;
+		}
+		final TArray<int[]> polys = triangulate(points, count, area < 0f ? -1f : 1f);
+		merge(points, polys, area < 0f ? -1f : 1f);
+		for (int i = 0; i < polys.size; i++) {
+			_pieces.add(new Piece(polys.get(i)));
+		}
+	}
+
+	private static int[] range(int count) {
+		final int[] result = new int[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = i;
+		}
+		return result;
+	}
+
+	private static float signedArea(float[] points, int count) {
+		float area = 0f;
+		for (int i = 0; i < count; i++) {
+			final int j = (i + 1) % count;
+			area += points[i * 2] * points[j * 2 + 1] - points[j * 2] * points[i * 2 + 1];
+		}
+		return area;
+	}
+
+	private static float cross(float[] points, int a, int b, int c) {
+		final float ax = points[a * 2], ay = points[a * 2 + 1];
+		return (points[b * 2] - ax) * (points[c * 2 + 1] - ay) - (points[b * 2 + 1] - ay) * (points[c * 2] - ax);
+	}
+
+	private static boolean concave(float[] points, int a, int b, int c, float sign) {
+		final float abx = points[b * 2] - points[a * 2], aby = points[b * 2 + 1] - points[a * 2 + 1];
+		final float bcx = points[c * 2] - points[b * 2], bcy = points[c * 2 + 1] - points[b * 2 + 1];
+		final float len = MathUtils.sqrt((abx * abx + aby * aby) * (bcx * bcx + bcy * bcy));
+		return sign * (abx * bcy - aby * bcx) < -CONVEX_TOLERANCE * len;
+	}
+
+	private static boolean isConvex(float[] points, int count, float sign) {
+		for (int i = 0; i < count; i++) {
+			if (concave(points, i, (i + 1) % count, (i + 2) % count, sign)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isConvex(float[] points, int[] poly, float sign) {
+		final int n = poly.length;
+		for (int i = 0; i < n; i++) {
+			if (concave(points, poly[i], poly[(i + 1) % n], poly[(i + 2) % n], sign)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean inTriangle(float[] points, int p, int a, int b, int c, float sign) {
+		return sign * cross(points, a, b, p) >= 0f && sign * cross(points, b, c, p) >= 0f
+				&& sign * cross(points, c, a, p) >= 0f;
+	}
+
+	/**
+	 * 耳切法三角化,返回的三角形与原多边形顶点顺序一致
+	 */
+	private static TArray<int[]> triangulate(float[] points, int count, float sign) {
+		final TArray<int[]> result = new TArray<int[]>(count);
+		final IntArray remain = new IntArray(count);
+		for (int i = 0; i < count; i++) {
+			remain.add(i);
+		}
+		int guard = 0;
+		for (int i = 0; remain.length > 3;) {
+			final int n = remain.length;
+			final int prev = remain.get((i + n - 1) % n);
+			final int curr = remain.get(i % n);
+			final int next = remain.get((i + 1) % n);
+			boolean ear = sign * cross(points, prev, curr, next) > EPSILON;
+			if (ear) {
+				for (int j = 0; j < n; j++) {
+					final int p = remain.get(j);
+					if (p != prev && p != curr && p != next && inTriangle(points, p, prev, curr, next, sign)) {
+						ear = false;
+						break;
+					}
+				}
+			}
+			// 自相交或退化的多边形找不到耳朵时强制切除,保证结束
+			if (ear || guard > n) {
+				if (sign * cross(points, prev, curr, next) > EPSILON) {
+					result.add(new int[] { prev, curr, next });
+				}
+				remain.removeIndex(i % n);
+				guard = 0;
+				i = i % (n - 1);
+			} else {
+				i = (i + 1) % n;
+				guard++;
+			}
+		}
+		if (remain.length == 3 && sign * cross(points, remain.get(0), remain.get(1), remain.get(2)) > EPSILON) {
+			result.add(new int[] { remain.get(0), remain.get(1), remain.get(2) });
+		}
+		return result;
+	}
+
+	/**
+	 * Hertel-Mehlhorn合并,共享一条边且合并后仍为凸的两块合为一块
+	 */
+	private static void merge(float[] points, TArray<int[]> polys, float sign) {
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < polys.size && !merged; i++) {
+				for (int j = i + 1; j < polys.size && !merged; j++) {
+					final int[] result = tryMerge(points, polys.get(i), polys.get(j), sign);
+					if (result != null) {
+						polys.set(i, result);
+						polys.removeIndex(j);
+						merged = true;
+					}
+				}
+			}
+		}
+	}
+
+	private static int[] tryMerge(float[] points, int[] p, int[] q, float sign) {
+		final int pn = p.length, qn = q.length;
+		for (int i = 0; i < pn; i++) {
+			final int a = p[i], b = p[(i + 1) % pn];
+			for (int j = 0; j < qn; j++) {
+				if (q[j] == b && q[(j + 1) % qn] == a) {
+					// p从b绕到a,再接上q中a之后到b之前的顶点
+					final int[] result = new int[pn + qn - 2];
+					int k = 0;
+					for (int m = 0; m < pn; m++) {
+						result[k++] = p[(i + 1 + m) % pn];
+					}
+					for (int m = 2; m < qn; m++) {
+						result[k++] = q[(j + m) % qn];
+					}
+					return isConvex(points, result, sign) ? result : null;
+				}
+			}
+		}
+		return null;
+	}
+
+	public Shape getShape() {
+		return _shape;
+	}
+
+	public int getPieceCount() {
+		return _pieces.size;
+	}
+
+	public Piece getPiece(int index) {
+		return _pieces.get(index);
+	}
+
+	public TArray<Piece> getPieces() {
+		return _pieces;
+	}
+
+	public float getMinX() {
+		return _minX;
+	}
+
+	public float getMinY() {
+		return _minY;
+	}
+
+	public float getMaxX() {
+		return _maxX;
+	}
+
+	public float getMaxY() {
+		return _maxY;
+	}
+
+	/**
+	 * 重新凸分解的次数
+	 *
+	 * @return
+	 */
+	public int getRebuildCount() {
+		return _rebuildCount;
+	}
+
+	/**
+	 * 只刷新坐标与法线的次数
+	 *
+	 * @return
+	 */
+	public int getRefreshCount() {
+		return _refreshCount;
+	}
+}
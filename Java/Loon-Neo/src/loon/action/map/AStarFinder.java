@@ -36,6 +36,7 @@ import loon.action.map.heuristics.Mixing;
 import loon.action.map.heuristics.Octile;
 import loon.events.Updateable;
 import loon.geom.Vector2f;
+import loon.utils.IntArray;
 import loon.utils.IntMap;
 import loon.utils.ObjectSet;
 import loon.utils.SortedList;
@@ -50,6 +51,16 @@ public class AStarFinder implements Updateable, LRelease {
 
 	public static final int ASTAR = 1;
 
+	/**
+	 * 跳点搜索,适用于统一代价并允许八方向移动的网格
+	 */
+	public static final int JPS = 2;
+
+	/**
+	 * 分层寻径(HPA*),适用于大地图上的长距离寻径
+	 */
+	public static final int HPASTAR = 3;
+
 	private static class ScoredPath {
 		float score;
 		Node node;
@@ -154,6 +165,26 @@ public class AStarFinder implements Updateable, LRelease {
 		return new TArray<Vector2f>(result);
 	}
 
+	/**
+	 * 使用地图自带的寻径上下文(整数索引与二叉堆)寻径,结果为格子索引(y * width + x),预热后不再分配对象
+	 * 
+	 * @param heuristic
+	 * @param field
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param bevel
+	 * @param flag
+	 * @param outPath
+	 * @return 路径长度,无路径时返回-1
+	 */
+	public static int find(AStarFindHeuristic heuristic, Field2D field, int x1, int y1, int x2, int y2,
+			boolean bevel, boolean flag, IntArray outPath) {
+		return field.getFinderContext().search(field, heuristic, x1, y1, x2, y2, false, bevel, flag, ASTAR, 8192,
+				outPath);
+	}
+
 	public static TArray<Vector2f> find(int[][] maps, int x1, int y1, int x2, int y2, boolean bevel, boolean flag) {
 		return find(null, maps, x1, y1, x2, y2, bevel, flag);
 	}
@@ -237,7 +268,7 @@ public class AStarFinder implements Updateable, LRelease {
 
 	private ObjectSet<Vector2f> _closedList;
 
-	private boolean _flying, _alldirMove, _closed, _running, _bevel;
+	private boolean _flying, _alldirMove, _closed, _running, _bevel, _indexed;
 
 	private Field2D _findMap;
 
@@ -294,6 +325,7 @@ public class AStarFinder implements Updateable, LRelease {
 		this._bevel = find._bevel;
 		this._alldirMove = find._alldirMove;
 		this._findHeuristic = find._findHeuristic;
+		this._indexed = find._indexed;
 		return this;
 	}
 
@@ -364,11 +396,40 @@ public class AStarFinder implements Updateable, LRelease {
 		return this._bevel;
 	}
 
+	/**
+	 * 设置是否使用整数索引与二叉堆实现的寻径模式(临时数据保存于Field2D的寻径上下文中)
+	 * 
+	 * @param indexed
+	 * @return
+	 */
+	public AStarFinder setIndexed(boolean indexed) {
+		this._indexed = indexed;
+		return this;
+	}
+
+	public boolean isIndexed() {
+		return this._indexed;
+	}
+
 	public TArray<Vector2f> findPath() {
 		return findPath(_bevel);
 	}
 
 	public TArray<Vector2f> findPath(boolean bevel) {
+		if (_algorithm == HPASTAR && _findMap != null) {
+			_running = true;
+			final TArray<Vector2f> result = _findMap.getHierarchicalFinder(_alldirMove).search(_startX, _startY,
+					_endX, _endY);
+			_running = false;
+			return result;
+		}
+		if ((_indexed || _algorithm == JPS) && _findMap != null) {
+			_running = true;
+			final TArray<Vector2f> result = _findMap.getFinderContext().search(_findMap, _findHeuristic, _startX,
+					_startY, _endX, _endY, _flying, bevel, _alldirMove, _algorithm, _overflow);
+			_running = false;
+			return result;
+		}
 		Vector2f start = new Vector2f(_startX, _startY);
 		Vector2f over = new Vector2f(_endX, _endY);
 		return calc(_findMap, start, over, bevel, _alldirMove);
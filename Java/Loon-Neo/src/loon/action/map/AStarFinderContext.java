@@ -0,0 +1,585 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.geom.Vector2f;
+import loon.utils.IntArray;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * A*寻径用的可复用上下文,以展平后的int格子索引(y * width + x)代替Vector2f节点,开放列表使用带索引的二叉堆.
+ *
+ * 所有临时数组在首次使用(或地图尺寸变化)时分配,之后的寻径不再产生任何对象(结果写入调用者提供的IntArray).
+ *
+ * 每个Field2D持有一个上下文(见{@link Field2D#getFinderContext()}),上下文不是线程安全的,不要跨线程共享.
+ */
+public class AStarFinderContext implements LRelease {
+
+	private final static int[] OFFSET_X = { 0, 1, 0, -1, -1, 1, 1, -1 };
+
+	private final static int[] OFFSET_Y = { -1, 0, 1, 0, -1, -1, 1, 1 };
+
+	private final static int[] BEVEL_OFFSET_X = { -1, 1, 1, -1, 1, -1, 0, 0 };
+
+	private final static int[] BEVEL_OFFSET_Y = { -1, -1, 1, 1, 0, 0, -1, 1 };
+
+	private final static byte STATE_OPEN = 1;
+
+	private final static byte STATE_CLOSED = 2;
+
+	private int _width, _height, _capacity;
+
+	private int _generation;
+
+	private int[] _stamps;
+
+	private byte[] _states;
+
+	private float[] _scores;
+
+	private float[] _costs;
+
+	private int[] _parents;
+
+	private int[] _sequences;
+
+	private int[] _heap;
+
+	private int[] _heapIndex;
+
+	private int _heapSize;
+
+	private int _sequence;
+
+	private int _expanded;
+
+	private final IntArray _tempPath = new IntArray(64);
+
+	private final int[] _jumpNeighbors = new int[16];
+
+	private Field2D _jumpField;
+
+	private int _jumpEndX, _jumpEndY;
+
+	/**
+	 * 确保上下文可容纳指定尺寸的地图
+	 *
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public AStarFinderContext ensure(int width, int height) {
+		final int size = width * height;
+		if (size > _capacity) {
+			_capacity = size;
+			_stamps = new int[size];
+			_states = new byte[size];
+			_scores = new float[size];
+			_costs = new float[size];
+			_parents = new int[size];
+			_sequences = new int[size];
+			_heap = new int[size];
+			_heapIndex = new int[size];
+			_generation = 0;
+		}
+		_width = width;
+		_height = height;
+		return this;
+	}
+
+	/**
+	 * 寻径并把结果(由起点到终点的格子索引)写入outPath
+	 *
+	 * @param field
+	 * @param heuristic
+	 * @param startX
+	 * @param startY
+	 * @param endX
+	 * @param endY
+	 * @param flying    是否无视地图障碍
+	 * @param bevel     是否优先斜向
+	 * @param diagonal  是否允许八方向移动
+	 * @param algorithm {@link AStarFinder#ASTAR},{@link AStarFinder#DIJKSTRA}或{@link AStarFinder#JPS}(JPS仅在允许八方向时生效,否则按ASTAR处理)
+	 * @param overflow  最大展开次数
+	 * @param outPath
+	 * @return 找到路径时返回路径长度,否则返回-1
+	 */
+	public int search(Field2D field, AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			boolean flying, boolean bevel, boolean diagonal, int algorithm, int overflow, IntArray outPath) {
+		outPath.clear();
+		ensure(field.getWidth(), field.getHeight());
+		_expanded = 0;
+		if (!field.contains(startX, startY) || !field.contains(endX, endY)) {
+			return -1;
+		}
+		final int width = _width;
+		final int start = startY * width + startX;
+		final int goal = endY * width + endX;
+		if (start == goal) {
+			outPath.add(start);
+			return 1;
+		}
+		if (algorithm == AStarFinder.JPS && diagonal) {
+			return searchJump(field, heuristic, startX, startY, endX, endY, overflow, outPath);
+		}
+		final AStarFindHeuristic finder = (heuristic == null ? AStarFinder.ASTAR_MANHATTAN : heuristic);
+		final boolean astar = (algorithm != AStarFinder.DIJKSTRA);
+		final int[] offsetX = bevel ? BEVEL_OFFSET_X : OFFSET_X;
+		final int[] offsetY = bevel ? BEVEL_OFFSET_Y : OFFSET_Y;
+		final int dirs = bevel ? (diagonal ? 8 : 6) : (diagonal ? 8 : 4);
+		nextGeneration();
+		_heapSize = 0;
+		_sequence = 0;
+		visit(start, -1, 0f);
+		push(start);
+		for (int j = 0; _heapSize > 0; j++) {
+			if (j > overflow) {
+				break;
+			}
+			final int current = pop();
+			_states[current] = STATE_CLOSED;
+			_expanded++;
+			if (current == goal) {
+				return buildPath(goal, outPath);
+			}
+			final int cx = current % width;
+			final int cy = current / width;
+			final float currentScore = _scores[current];
+			for (int i = 0; i < dirs; i++) {
+				final int nx = cx + offsetX[i];
+				final int ny = cy + offsetY[i];
+				if (!field.contains(nx, ny)) {
+					continue;
+				}
+				if (!flying && !field.isHit(nx, ny)) {
+					continue;
+				}
+				final int next = ny * width + nx;
+				final boolean seen = _stamps[next] == _generation;
+				if (seen && _states[next] == STATE_CLOSED) {
+					continue;
+				}
+				final float score = currentScore + finder.getScore(endX, endY, nx, ny) - field.getCost(nx, ny);
+				if (!seen) {
+					visit(next, current, score);
+					push(next);
+				} else if (!astar && score < _scores[next]) {
+					_parents[next] = current;
+					_scores[next] = score;
+					_sequences[next] = ++_sequence;
+					siftUp(_heapIndex[next]);
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 跳点搜索(Jump Point Search),适用于统一代价的八方向网格(斜向移动时不允许穿过障碍的夹角),
+	 * 只把跳点放入开放列表,结果会补全为逐格路径.地图的额外代价(getCost)在此模式下不生效.
+	 */
+	private int searchJump(Field2D field, AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			int overflow, IntArray outPath) {
+		final AStarFindHeuristic finder = (heuristic == null ? AStarFinder.ASTAR_OCTILE : heuristic);
+		final int width = _width;
+		final int start = startY * width + startX;
+		final int goal = endY * width + endX;
+		_jumpField = field;
+		_jumpEndX = endX;
+		_jumpEndY = endY;
+		nextGeneration();
+		_heapSize = 0;
+		_sequence = 0;
+		visit(start, -1, finder.getScore(endX, endY, startX, startY));
+		_costs[start] = 0f;
+		push(start);
+		try {
+			for (int j = 0; _heapSize > 0; j++) {
+				if (j > overflow) {
+					break;
+				}
+				final int current = pop();
+				_states[current] = STATE_CLOSED;
+				_expanded++;
+				if (current == goal) {
+					return buildJumpPath(goal, outPath);
+				}
+				final int cx = current % width;
+				final int cy = current / width;
+				final int count = findJumpNeighbors(current, cx, cy);
+				for (int i = 0; i < count; i += 2) {
+					final int nx = _jumpNeighbors[i];
+					final int ny = _jumpNeighbors[i + 1];
+					final int jumpPoint = jump(nx, ny, nx - cx, ny - cy);
+					if (jumpPoint == -1) {
+						continue;
+					}
+					final boolean seen = _stamps[jumpPoint] == _generation;
+					if (seen && _states[jumpPoint] == STATE_CLOSED) {
+						continue;
+					}
+					final int jx = jumpPoint % width;
+					final int jy = jumpPoint / width;
+					final float cost = _costs[current] + octile(jx - cx, jy - cy);
+					if (!seen) {
+						visit(jumpPoint, current, cost + finder.getScore(endX, endY, jx, jy));
+						_costs[jumpPoint] = cost;
+						push(jumpPoint);
+					} else if (cost < _costs[jumpPoint]) {
+						_parents[jumpPoint] = current;
+						_costs[jumpPoint] = cost;
+						_scores[jumpPoint] = cost + finder.getScore(endX, endY, jx, jy);
+						siftUp(_heapIndex[jumpPoint]);
+					}
+				}
+			}
+		} finally {
+			_jumpField = null;
+		}
+		return -1;
+	}
+
+	private static float octile(int dx, int dy) {
+		final int ax = dx < 0 ? -dx : dx;
+		final int ay = dy < 0 ? -dy : dy;
+		return ax < ay ? (MathUtils.SQRT2 - 1f) * ax + ay : (MathUtils.SQRT2 - 1f) * ay + ax;
+	}
+
+	private boolean walkable(int x, int y) {
+		return _jumpField.contains(x, y) && _jumpField.isHit(x, y);
+	}
+
+	private int addJumpNeighbor(int count, int x, int y) {
+		_jumpNeighbors[count] = x;
+		_jumpNeighbors[count + 1] = y;
+		return count + 2;
+	}
+
+	private int findJumpNeighbors(int cell, int x, int y) {
+		int count = 0;
+		final int parent = _parents[cell];
+		if (parent == -1) {
+			final boolean up = walkable(x, y - 1);
+			final boolean right = walkable(x + 1, y);
+			final boolean down = walkable(x, y + 1);
+			final boolean left = walkable(x - 1, y);
+			if (up) {
+				count = addJumpNeighbor(count, x, y - 1);
+			}
+			if (right) {
+				count = addJumpNeighbor(count, x + 1, y);
+			}
+			if (down) {
+				count = addJumpNeighbor(count, x, y + 1);
+			}
+			if (left) {
+				count = addJumpNeighbor(count, x - 1, y);
+			}
+			if (left && up && walkable(x - 1, y - 1)) {
+				count = addJumpNeighbor(count, x - 1, y - 1);
+			}
+			if (right && up && walkable(x + 1, y - 1)) {
+				count = addJumpNeighbor(count, x + 1, y - 1);
+			}
+			if (right && down && walkable(x + 1, y + 1)) {
+				count = addJumpNeighbor(count, x + 1, y + 1);
+			}
+			if (left && down && walkable(x - 1, y + 1)) {
+				count = addJumpNeighbor(count, x - 1, y + 1);
+			}
+			return count;
+		}
+		final int px = parent % _width;
+		final int py = parent / _width;
+		final int dx = MathUtils.sign(x - px);
+		final int dy = MathUtils.sign(y - py);
+		if (dx != 0 && dy != 0) {
+			final boolean vertical = walkable(x, y + dy);
+			final boolean horizontal = walkable(x + dx, y);
+			if (vertical) {
+				count = addJumpNeighbor(count, x, y + dy);
+			}
+			if (horizontal) {
+				count = addJumpNeighbor(count, x + dx, y);
+			}
+			if (vertical && horizontal && walkable(x + dx, y + dy)) {
+				count = addJumpNeighbor(count, x + dx, y + dy);
+			}
+		} else if (dx != 0) {
+			final boolean next = walkable(x + dx, y);
+			final boolean top = walkable(x, y - 1);
+			final boolean bottom = walkable(x, y + 1);
+			if (next) {
+				count = addJumpNeighbor(count, x + dx, y);
+				if (top && walkable(x + dx, y - 1)) {
+					count = addJumpNeighbor(count, x + dx, y - 1);
+				}
+				if (bottom && walkable(x + dx, y + 1)) {
+					count = addJumpNeighbor(count, x + dx, y + 1);
+				}
+			}
+			if (top) {
+				count = addJumpNeighbor(count, x, y - 1);
+			}
+			if (bottom) {
+				count = addJumpNeighbor(count, x, y + 1);
+			}
+		} else {
+			final boolean next = walkable(x, y + dy);
+			final boolean left = walkable(x - 1, y);
+			final boolean right = walkable(x + 1, y);
+			if (next) {
+				count = addJumpNeighbor(count, x, y + dy);
+				if (left && walkable(x - 1, y + dy)) {
+					count = addJumpNeighbor(count, x - 1, y + dy);
+				}
+				if (right && walkable(x + 1, y + dy)) {
+					count = addJumpNeighbor(count, x + 1, y + dy);
+				}
+			}
+			if (left) {
+				count = addJumpNeighbor(count, x - 1, y);
+			}
+			if (right) {
+				count = addJumpNeighbor(count, x + 1, y);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 沿指定方向跳跃,返回遇到的跳点(终点或存在强制邻居的格子),无跳点时返回-1
+	 */
+	private int jump(int x, int y, int dx, int dy) {
+		for (;;) {
+			if (!walkable(x, y)) {
+				return -1;
+			}
+			if (x == _jumpEndX && y == _jumpEndY) {
+				return y * _width + x;
+			}
+			if (dx != 0 && dy != 0) {
+				if (jump(x + dx, y, dx, 0) != -1 || jump(x, y + dy, 0, dy) != -1) {
+					return y * _width + x;
+				}
+				if (!walkable(x + dx, y) || !walkable(x, y + dy)) {
+					return -1;
+				}
+			} else if (dx != 0) {
+				if ((walkable(x, y - 1) && !walkable(x - dx, y - 1))
+						|| (walkable(x, y + 1) && !walkable(x - dx, y + 1))) {
+					return y * _width + x;
+				}
+			} else {
+				if ((walkable(x - 1, y) && !walkable(x - 1, y - dy))
+						|| (walkable(x + 1, y) && !walkable(x + 1, y - dy))) {
+					return y * _width + x;
+				}
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	/**
+	 * 由跳点还原逐格路径
+	 */
+	private int buildJumpPath(int goal, IntArray outPath) {
+		int node = goal;
+		while (node != -1) {
+			final int parent = _parents[node];
+			outPath.add(node);
+			if (parent != -1) {
+				final int x = node % _width;
+				final int y = node / _width;
+				final int dx = MathUtils.sign((parent % _width) - x);
+				final int dy = MathUtils.sign((parent / _width) - y);
+				int cx = x + dx;
+				int cy = y + dy;
+				int cell = cy * _width + cx;
+				while (cell != parent) {
+					outPath.add(cell);
+					cx += dx;
+					cy += dy;
+					cell = cy * _width + cx;
+				}
+			}
+			node = parent;
+		}
+		outPath.reverse();
+		return outPath.length;
+	}
+
+	/**
+	 * 把格子索引转为坐标数组
+	 *
+	 * @param path
+	 * @param out
+	 * @return
+	 */
+	public TArray<Vector2f> toPath(IntArray path, TArray<Vector2f> out) {
+		for (int i = 0; i < path.length; i++) {
+			final int idx = path.get(i);
+			out.add(new Vector2f(idx % _width, idx / _width));
+		}
+		return out;
+	}
+
+	public TArray<Vector2f> search(Field2D field, AStarFindHeuristic heuristic, int startX, int startY, int endX,
+			int endY, boolean flying, boolean bevel, boolean diagonal, int algorithm, int overflow) {
+		if (search(field, heuristic, startX, startY, endX, endY, flying, bevel, diagonal, algorithm, overflow,
+				_tempPath) == -1) {
+			return null;
+		}
+		return toPath(_tempPath, new TArray<Vector2f>(_tempPath.length));
+	}
+
+	/**
+	 * 最近一次寻径展开的节点数量
+	 *
+	 * @return
+	 */
+	public int getExpandedCount() {
+		return _expanded;
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	private void nextGeneration() {
+		_generation++;
+		if (_generation == Integer.MAX_VALUE) {
+			for (int i = 0; i < _capacity; i++) {
+				_stamps[i] = 0;
+			}
+			_generation = 1;
+		}
+	}
+
+	private void visit(int cell, int parent, float score) {
+		_stamps[cell] = _generation;
+		_states[cell] = STATE_OPEN;
+		_parents[cell] = parent;
+		_scores[cell] = score;
+		_sequences[cell] = ++_sequence;
+	}
+
+	private int buildPath(int goal, IntArray outPath) {
+		int node = goal;
+		while (node != -1) {
+			outPath.add(node);
+			node = _parents[node];
+		}
+		outPath.reverse();
+		return outPath.length;
+	}
+
+	/**
+	 * 分数小者优先,分数相同时后加入者优先(与SortedList实现的旧版排序一致)
+	 */
+	private boolean less(int a, int b) {
+		final float sa = _scores[a];
+		final float sb = _scores[b];
+		if (sa != sb) {
+			return sa < sb;
+		}
+		return _sequences[a] > _sequences[b];
+	}
+
+	private void push(int cell) {
+		final int idx = _heapSize++;
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+		siftUp(idx);
+	}
+
+	private int pop() {
+		final int top = _heap[0];
+		final int last = _heap[--_heapSize];
+		if (_heapSize > 0) {
+			_heap[0] = last;
+			_heapIndex[last] = 0;
+			siftDown(0);
+		}
+		_heapIndex[top] = -1;
+		return top;
+	}
+
+	private void siftUp(int idx) {
+		final int cell = _heap[idx];
+		while (idx > 0) {
+			final int parent = (idx - 1) >>> 1;
+			final int other = _heap[parent];
+			if (!less(cell, other)) {
+				break;
+			}
+			_heap[idx] = other;
+			_heapIndex[other] = idx;
+			idx = parent;
+		}
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+	}
+
+	private void siftDown(int idx) {
+		final int cell = _heap[idx];
+		final int half = _heapSize >>> 1;
+		while (idx < half) {
+			int child = (idx << 1) + 1;
+			final int right = child + 1;
+			if (right < _heapSize && less(_heap[right], _heap[child])) {
+				child = right;
+			}
+			final int other = _heap[child];
+			if (!less(other, cell)) {
+				break;
+			}
+			_heap[idx] = other;
+			_heapIndex[other] = idx;
+			idx = child;
+		}
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+	}
+
+	@Override
+	public void close() {
+		_stamps = null;
+		_states = null;
+		_scores = null;
+		_costs = null;
+		_parents = null;
+		_sequences = null;
+		_heap = null;
+		_heapIndex = null;
+		_capacity = 0;
+		_heapSize = 0;
+		_tempPath.clear();
+	}
+
+}
@@ -21,23 +21,16 @@
 package loon.action.map;
 
 import loon.geom.Vector2f;
-import loon.utils.LIterator;
-import loon.utils.SortedList;
 import loon.utils.TArray;
-import loon.utils.processes.GameProcessType;
-import loon.utils.processes.RealtimeProcess;
-import loon.utils.processes.RealtimeProcessManager;
-import loon.utils.timer.LTimerContext;
 
+/**
+ * 寻径池,异步寻径请求交由AStarFinderService执行(桌面环境在工作线程并行寻径,其它环境在主线程按每帧预算执行)
+ */
 public class AStarFinderPool {
 
 	private Field2D field;
 
-	private RealtimeProcess pathfinderProcess;
-
-	private boolean running;
-
-	private TaskQueue pathQueue = new TaskQueue();
+	private AStarFinderService service;
 
 	public AStarFinderPool(int[][] maps) {
 		this(new Field2D(maps));
@@ -45,49 +38,30 @@ public class AStarFinderPool {
 
 	public AStarFinderPool(Field2D field) {
 		this.field = field;
-		this.running = true;
-		pathfinderProcess = new RealtimeProcess("AStarProcess") {
-
-			@Override
-			public void run(LTimerContext time) {
-				if (running) {
-					emptyPathQueue();
-					kill();
-				}
-			}
-		};
-		pathfinderProcess.setProcessType(GameProcessType.Progress);
-		pathfinderProcess.sleep(1000000);
-		RealtimeProcessManager.get().addProcess(pathfinderProcess);
+		this.service = new AStarFinderService(field);
 	}
 
 	public void run() {
+		service.update();
+	}
 
+	public void stop() {
+		service.close();
 	}
 
-	private void emptyPathQueue() {
-		AStarFinder task;
-		for (; (task = pathQueue.poll()) != null;) {
-			task.action(task);
-		}
+	public AStarFinderService getService() {
+		return service;
 	}
 
-	public void stop() {
-		running = true;
-		pathfinderProcess.kill();
+	public AStarFinderService.PathRequest search(AStarFindHeuristic heuristic, int startx, int starty, int endx,
+			int endy, boolean flying, boolean flag, int priority, AStarFinderListener callback) {
+		return service.search(heuristic, startx, starty, endx, endy, flying, false, flag, AStarFinder.ASTAR,
+				priority, callback);
 	}
 
 	public void search(AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy, boolean flying,
 			boolean flag, AStarFinderListener callback) {
-		AStarFinder pathfinderTask = new AStarFinder(heuristic, field, startx, starty, endx, endy, flying, flag,
-				callback, AStarFinder.ASTAR);
-		AStarFinder existing = pathQueue.contains(pathfinderTask);
-		if (existing != null) {
-			existing.update(pathfinderTask);
-		} else {
-			pathQueue.add(pathfinderTask);
-		}
-		pathfinderProcess.kill();
+		search(heuristic, startx, starty, endx, endy, flying, flag, 0, callback);
 	}
 
 	public void search(AStarFindHeuristic heuristic, int startx, int starty, int endx, int endy, boolean flying,
@@ -115,26 +89,4 @@ public class AStarFinderPool {
 		return result;
 	}
 
-	static class TaskQueue {
-
-		private SortedList<AStarFinder> queue = new SortedList<AStarFinder>();
-
-		public synchronized AStarFinder contains(AStarFinder element) {
-			for (LIterator<AStarFinder> it = queue.listIterator(); it.hasNext();) {
-				AStarFinder af = it.next();
-				if (af.equals(element)) {
-					return af;
-				}
-			}
-			return null;
-		}
-
-		public synchronized AStarFinder poll() {
-			return queue.poll();
-		}
-
-		public synchronized void add(AStarFinder t) {
-			queue.add(t);
-		}
-	}
 }
@@ -0,0 +1,686 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.Asyn;
+import loon.LGame;
+import loon.LRelease;
+import loon.LSysException;
+import loon.LSystem;
+import loon.geom.Vector2f;
+import loon.utils.MathUtils;
+import loon.utils.ObjectMap;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+import loon.utils.processes.GameProcessType;
+import loon.utils.processes.RealtimeProcess;
+import loon.utils.processes.RealtimeProcessManager;
+import loon.utils.timer.LTimerContext;
+
+/**
+ * 寻径请求服务,支持优先级,同一监听器的请求合并,取消以及每帧时间预算.
+ *
+ * 当前平台支持异步(桌面环境)时,寻径在Asyn.invokeAsync的工作线程上并行执行,工作线程只读取地图的只读快照(地图变化后由主线程重新复制),
+ * 结果经由Asyn.invokeLater回到主线程并在每帧预算内回调;不支持异步的平台(GWT/TeaVM等)则在主线程的RealtimeProcess中按每帧预算逐个寻径.
+ *
+ * 除工作线程外,所有函数都应在主线程调用.
+ */
+public class AStarFinderService implements Field2D.FieldChangedListener, LRelease {
+
+	public final static int DEFAULT_WORKERS = 4;
+
+	public final static long DEFAULT_FRAME_BUDGET = 4;
+
+	public final static int PENDING = 0;
+
+	public final static int RUNNING = 1;
+
+	public final static int DONE = 2;
+
+	public final static int CANCELLED = 3;
+
+	/**
+	 * 一次寻径请求
+	 */
+	public static class PathRequest {
+
+		private final AStarFinderService _service;
+
+		private AStarFinderListener _listener;
+
+		private AStarFindHeuristic _heuristic;
+
+		private int _startX, _startY, _endX, _endY;
+
+		private boolean _flying, _bevel, _diagonal;
+
+		private int _algorithm;
+
+		private int _priority;
+
+		private int _state;
+
+		private TArray<Vector2f> _result;
+
+		PathRequest(AStarFinderService service) {
+			this._service = service;
+		}
+
+		void set(AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY, boolean flying,
+				boolean bevel, boolean diagonal, int algorithm, AStarFinderListener listener) {
+			this._heuristic = heuristic;
+			this._startX = startX;
+			this._startY = startY;
+			this._endX = endX;
+			this._endY = endY;
+			this._flying = flying;
+			this._bevel = bevel;
+			this._diagonal = diagonal;
+			this._algorithm = algorithm;
+			this._listener = listener;
+		}
+
+		TArray<Vector2f> find(Field2D field, AStarFinderContext context, int overflow) {
+			if (_algorithm == AStarFinder.HPASTAR) {
+				return field.getHierarchicalFinder(_diagonal).search(_startX, _startY, _endX, _endY);
+			}
+			return context.search(field, _heuristic, _startX, _startY, _endX, _endY, _flying, _bevel, _diagonal,
+					_algorithm, overflow);
+		}
+
+		/**
+		 * 取消请求,已开始的寻径结果会被丢弃
+		 */
+		public void cancel() {
+			_service.cancel(this);
+		}
+
+		public boolean isCancelled() {
+			return getState() == CANCELLED;
+		}
+
+		public boolean isDone() {
+			return getState() == DONE;
+		}
+
+		public int getState() {
+			synchronized (_service) {
+				return _state;
+			}
+		}
+
+		public int getPriority() {
+			return _priority;
+		}
+
+		public TArray<Vector2f> getResult() {
+			synchronized (_service) {
+				return _result;
+			}
+		}
+
+		public AStarFinderListener getListener() {
+			return _listener;
+		}
+
+		public int getStartX() {
+			return _startX;
+		}
+
+		public int getStartY() {
+			return _startY;
+		}
+
+		public int getEndX() {
+			return _endX;
+		}
+
+		public int getEndY() {
+			return _endY;
+		}
+
+		public int getAlgorithm() {
+			return _algorithm;
+		}
+	}
+
+	private static class ServiceProcess extends RealtimeProcess {
+
+		private final AStarFinderService _service;
+
+		ServiceProcess(AStarFinderService service) {
+			super("AStarServiceProcess", 0);
+			this._service = service;
+			this.setProcessType(GameProcessType.Progress);
+		}
+
+		@Override
+		public void run(LTimerContext time) {
+			_service.update();
+		}
+	}
+
+	private static class Worker implements Runnable {
+
+		private final AStarFinderService _service;
+
+		Worker(AStarFinderService service) {
+			this._service = service;
+		}
+
+		@Override
+		public void run() {
+			_service.work();
+		}
+	}
+
+	private static class DeliverTask implements Runnable {
+
+		private final AStarFinderService _service;
+
+		DeliverTask(AStarFinderService service) {
+			this._service = service;
+		}
+
+		@Override
+		public void run() {
+			_service.deliver();
+		}
+	}
+
+	private final Field2D _field;
+
+	private final Asyn _asyn;
+
+	private final boolean _asyncSupported;
+
+	private boolean _async;
+
+	private Field2D _snapshot;
+
+	private boolean _snapshotDirty;
+
+	// 按优先级由低到高排列,同优先级时先提交的在后,取队尾即可
+	private final TArray<PathRequest> _pending = new TArray<PathRequest>();
+
+	private final TArray<PathRequest> _completed = new TArray<PathRequest>();
+
+	private final ObjectMap<AStarFinderListener, PathRequest> _latest = new ObjectMap<AStarFinderListener, PathRequest>();
+
+	private final TArray<AStarFinderContext> _contexts = new TArray<AStarFinderContext>();
+
+	private final DeliverTask _deliverTask = new DeliverTask(this);
+
+	private boolean _deliverScheduled;
+
+	private ServiceProcess _process;
+
+	private AStarFinderContext _localContext;
+
+	private int _maxWorkers;
+
+	private int _activeWorkers;
+
+	private long _frameBudget;
+
+	private int _overflow;
+
+	private boolean _closed;
+
+	public AStarFinderService(Field2D field) {
+		this(field, DEFAULT_WORKERS);
+	}
+
+	public AStarFinderService(Field2D field, int workers) {
+		if (field == null) {
+			throw new LSysException("Field2D cannot be null !");
+		}
+		final LGame game = LSystem.base();
+		this._field = field;
+		this._asyn = game != null ? game.asyn() : null;
+		this._asyncSupported = _asyn != null && _asyn.isAsyncSupported();
+		this._async = _asyncSupported;
+		this._maxWorkers = MathUtils.max(1, workers);
+		this._frameBudget = DEFAULT_FRAME_BUDGET;
+		this._overflow = 8192;
+		this._snapshotDirty = true;
+		field.addChangedListener(this);
+	}
+
+	@Override
+	public void onTileChanged(Field2D field, int x, int y) {
+		synchronized (this) {
+			_snapshotDirty = true;
+		}
+	}
+
+	public PathRequest search(AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			boolean flying, boolean diagonal, AStarFinderListener listener) {
+		return search(heuristic, startX, startY, endX, endY, flying, false, diagonal, AStarFinder.ASTAR, 0,
+				listener);
+	}
+
+	/**
+	 * 提交寻径请求,同一监听器尚未开始的请求会被新参数覆盖,已开始的则被取消
+	 *
+	 * @param heuristic
+	 * @param startX
+	 * @param startY
+	 * @param endX
+	 * @param endY
+	 * @param flying
+	 * @param bevel
+	 * @param diagonal
+	 * @param algorithm
+	 * @param priority  数值越大越先执行
+	 * @param listener
+	 * @return
+	 */
+	public PathRequest search(AStarFindHeuristic heuristic, int startX, int startY, int endX, int endY,
+			boolean flying, boolean bevel, boolean diagonal, int algorithm, int priority,
+			AStarFinderListener listener) {
+		if (_closed) {
+			throw new LSysException("AStarFinderService is closed !");
+		}
+		PathRequest request = null;
+		synchronized (this) {
+			if (listener != null) {
+				final PathRequest old = _latest.get(listener);
+				if (old != null) {
+					if (old._state == PENDING) {
+						request = old;
+					} else if (old._state == RUNNING) {
+						old._state = CANCELLED;
+					}
+				}
+			}
+			if (request == null) {
+				request = new PathRequest(this);
+				request._priority = priority;
+				request._state = PENDING;
+				insert(request);
+			} else if (priority > request._priority) {
+				// 合并的请求只会提高优先级,否则保留原排队位置
+				_pending.removeValue(request, true);
+				request._priority = priority;
+				insert(request);
+			}
+			request.set(heuristic, startX, startY, endX, endY, flying, bevel, diagonal, algorithm, listener);
+			if (listener != null) {
+				_latest.put(listener, request);
+			}
+		}
+		start();
+		return request;
+	}
+
+	private void insert(PathRequest request) {
+		int low = 0, high = _pending.size;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (_pending.get(mid)._priority < request._priority) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		_pending.insert(low, request);
+	}
+
+	private void start() {
+		if (_process == null || _process.isDead()) {
+			_process = new ServiceProcess(this);
+			RealtimeProcessManager.get().addProcess(_process);
+		}
+		if (_async) {
+			dispatch();
+		}
+	}
+
+	/**
+	 * 补充工作线程(主线程调用)
+	 */
+	private void dispatch() {
+		int count = 0;
+		synchronized (this) {
+			final int waiting = countAsync();
+			if (waiting == 0) {
+				return;
+			}
+			while (_activeWorkers < _maxWorkers && _activeWorkers < waiting) {
+				_activeWorkers++;
+				count++;
+			}
+		}
+		refreshSnapshot();
+		for (int i = 0; i < count; i++) {
+			_asyn.invokeAsync(new Worker(this));
+		}
+	}
+
+	private int countAsync() {
+		int count = 0;
+		for (int i = 0; i < _pending.size; i++) {
+			if (_pending.get(i)._algorithm != AStarFinder.HPASTAR) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void refreshSnapshot() {
+		boolean dirty;
+		synchronized (this) {
+			dirty = _snapshotDirty;
+			_snapshotDirty = false;
+		}
+		if (dirty || _snapshot == null) {
+			final Field2D snapshot = _field.cpy();
+			synchronized (this) {
+				_snapshot = snapshot;
+			}
+		}
+	}
+
+	/**
+	 * 工作线程循环执行队列中的请求,队列为空时退出
+	 */
+	private void work() {
+		AStarFinderContext context;
+		synchronized (this) {
+			context = _contexts.size > 0 ? _contexts.pop() : new AStarFinderContext();
+		}
+		try {
+			for (;;) {
+				PathRequest request = null;
+				Field2D snapshot;
+				int overflow;
+				synchronized (this) {
+					for (int i = _pending.size - 1; i > -1; i--) {
+						final PathRequest req = _pending.get(i);
+						if (req._algorithm != AStarFinder.HPASTAR) {
+							request = _pending.removeIndex(i);
+							break;
+						}
+					}
+					if (request == null || _closed) {
+						_activeWorkers--;
+						_contexts.add(context);
+						return;
+					}
+					request._state = RUNNING;
+					snapshot = _snapshot;
+					overflow = _overflow;
+				}
+				TArray<Vector2f> result = null;
+				try {
+					result = request.find(snapshot, context, overflow);
+				} catch (Throwable ex) {
+					LSystem.error("AStarFinderService search failed", ex);
+				}
+				complete(request, result);
+			}
+		} catch (Throwable ex) {
+			synchronized (this) {
+				_activeWorkers--;
+			}
+			LSystem.error("AStarFinderService worker failed", ex);
+		}
+	}
+
+	private void complete(PathRequest request, TArray<Vector2f> result) {
+		boolean schedule = false;
+		synchronized (this) {
+			if (request._state == CANCELLED) {
+				return;
+			}
+			request._result = result;
+			_completed.add(request);
+			if (!_deliverScheduled) {
+				_deliverScheduled = true;
+				schedule = true;
+			}
+		}
+		if (schedule) {
+			_asyn.invokeLater(_deliverTask);
+		}
+	}
+
+	/**
+	 * 在主线程按时间预算回调已完成的请求
+	 */
+	private void deliver() {
+		final long start = TimeUtils.millis();
+		for (;;) {
+			PathRequest request;
+			synchronized (this) {
+				if (_completed.size == 0 || _closed) {
+					_deliverScheduled = false;
+					return;
+				}
+				request = _completed.removeIndex(0);
+				if (request._state == CANCELLED) {
+					continue;
+				}
+				request._state = DONE;
+				if (request._listener != null && _latest.get(request._listener) == request) {
+					_latest.remove(request._listener);
+				}
+			}
+			if (request._listener != null) {
+				request._listener.pathFound(request._result);
+			}
+			if (_frameBudget > 0 && TimeUtils.millis() - start >= _frameBudget) {
+				break;
+			}
+		}
+		_asyn.invokeLater(_deliverTask);
+	}
+
+	/**
+	 * 每帧执行,异步模式下补充工作线程并处理HPA*请求,否则按时间预算在主线程寻径
+	 */
+	public void update() {
+		if (_closed) {
+			return;
+		}
+		if (_async) {
+			dispatch();
+		}
+		final long start = TimeUtils.millis();
+		for (;;) {
+			PathRequest request = null;
+			synchronized (this) {
+				for (int i = _pending.size - 1; i > -1; i--) {
+					final PathRequest req = _pending.get(i);
+					if (!_async || req._algorithm == AStarFinder.HPASTAR) {
+						request = _pending.removeIndex(i);
+						break;
+					}
+				}
+				if (request == null) {
+					return;
+				}
+				request._state = RUNNING;
+			}
+			if (_localContext == null) {
+				_localContext = new AStarFinderContext();
+			}
+			final TArray<Vector2f> result = request.find(_field, _localContext, _overflow);
+			synchronized (this) {
+				if (request._state == CANCELLED) {
+					continue;
+				}
+				request._state = DONE;
+				request._result = result;
+				if (request._listener != null && _latest.get(request._listener) == request) {
+					_latest.remove(request._listener);
+				}
+			}
+			if (request._listener != null) {
+				request._listener.pathFound(result);
+			}
+			if (_frameBudget > 0 && TimeUtils.millis() - start >= _frameBudget) {
+				return;
+			}
+		}
+	}
+
+	void cancel(PathRequest request) {
+		synchronized (this) {
+			if (request._state == DONE || request._state == CANCELLED) {
+				return;
+			}
+			if (request._state == PENDING) {
+				_pending.removeValue(request, true);
+			}
+			request._state = CANCELLED;
+			if (request._listener != null && _latest.get(request._listener) == request) {
+				_latest.remove(request._listener);
+			}
+		}
+	}
+
+	/**
+	 * 取消指定监听器尚未回调的请求
+	 *
+	 * @param listener
+	 * @return
+	 */
+	public AStarFinderService cancel(AStarFinderListener listener) {
+		PathRequest request;
+		synchronized (this) {
+			request = _latest.get(listener);
+		}
+		if (request != null) {
+			cancel(request);
+		}
+		return this;
+	}
+
+	public AStarFinderService cancelAll() {
+		synchronized (this) {
+			for (int i = 0; i < _pending.size; i++) {
+				_pending.get(i)._state = CANCELLED;
+			}
+			for (int i = 0; i < _completed.size; i++) {
+				_completed.get(i)._state = CANCELLED;
+			}
+			for (PathRequest request : _latest.values()) {
+				request._state = CANCELLED;
+			}
+			_pending.clear();
+			_completed.clear();
+			_latest.clear();
+		}
+		return this;
+	}
+
+	/**
+	 * 是否使用工作线程(仅在平台支持异步时可开启)
+	 *
+	 * @param async
+	 * @return
+	 */
+	public AStarFinderService setAsync(boolean async) {
+		this._async = async && _asyncSupported;
+		return this;
+	}
+
+	public boolean isAsync() {
+		return _async;
+	}
+
+	public boolean isAsyncSupported() {
+		return _asyncSupported;
+	}
+
+	public AStarFinderService setMaxWorkers(int workers) {
+		synchronized (this) {
+			this._maxWorkers = MathUtils.max(1, workers);
+		}
+		return this;
+	}
+
+	public int getMaxWorkers() {
+		return _maxWorkers;
+	}
+
+	/**
+	 * 每帧用于主线程寻径与结果回调的时间(毫秒),小于等于0时不限制
+	 *
+	 * @param ms
+	 * @return
+	 */
+	public AStarFinderService setFrameBudget(long ms) {
+		this._frameBudget = ms;
+		return this;
+	}
+
+	public long getFrameBudget() {
+		return _frameBudget;
+	}
+
+	public AStarFinderService setOverflow(int overflow) {
+		synchronized (this) {
+			this._overflow = overflow;
+		}
+		return this;
+	}
+
+	public int getOverflow() {
+		return _overflow;
+	}
+
+	public int getPendingCount() {
+		synchronized (this) {
+			return _pending.size;
+		}
+	}
+
+	public Field2D getField() {
+		return _field;
+	}
+
+	public boolean isClosed() {
+		return _closed;
+	}
+
+	@Override
+	public void close() {
+		cancelAll();
+		synchronized (this) {
+			_closed = true;
+			_snapshot = null;
+			_contexts.clear();
+		}
+		_field.removeChangedListener(this);
+		if (_process != null) {
+			_process.kill();
+			_process = null;
+		}
+		if (_localContext != null) {
+			_localContext.close();
+			_localContext = null;
+		}
+	}
+
+}
@@ -52,6 +52,15 @@ public class Field2D implements IArray, Config, LRelease {
 
 	}
 
+	/**
+	 * 地图数据变化监听(x与y为-1时表示整张地图都可能变化)
+	 */
+	public static interface FieldChangedListener {
+
+		public void onTileChanged(Field2D field, int x, int y);
+
+	}
+
 	private final static int[][][] NEIGHBORS = { { { 1, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 }, { -1, 1 }, { 0, 1 } },
 			{ { 1, 0 }, { 1, -1 }, { 0, -1 }, { -1, -1 }, { -1, 0 }, { 0, 1 } } };
 
@@ -88,6 +97,14 @@ public class Field2D implements IArray, Config, LRelease {
 
 	private IntMap<Integer> _costMap;
 
+	private AStarFinderContext _finderContext;
+
+	private HPAStarFinder _hierarchicalFinder;
+
+	private FlowFieldCache _flowFields;
+
+	private TArray<FieldChangedListener> _changedListeners;
+
 	public Object Tag;
 
 	public final static RectBox inflateBounds(RectBox rect, float x, float y) {
@@ -803,6 +820,9 @@ public class Field2D implements IArray, Config, LRelease {
 		if (field._allowMove != null) {
 			this._allowMove = new IntArray(field._allowMove);
 		}
+		if (field._costMap != null) {
+			this._costMap = new IntMap<Integer>(field._costMap);
+		}
 		return this;
 	}
 
@@ -1025,6 +1045,7 @@ public class Field2D implements IArray, Config, LRelease {
 			}
 		}
 		this._mapDirty = true;
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
@@ -1042,11 +1063,13 @@ public class Field2D implements IArray, Config, LRelease {
 
 	public Field2D setLimit(int... limit) {
 		this._moveLimited = limit;
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
 	public Field2D setAllowMove(int... args) {
 		this._allowMove.addAll(args);
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
@@ -1066,6 +1089,7 @@ public class Field2D implements IArray, Config, LRelease {
 			}
 		}
 		this._mapDirty = true;
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
@@ -1091,6 +1115,7 @@ public class Field2D implements IArray, Config, LRelease {
 			}
 			this._mapArrays[y][x] = tile;
 			this._mapDirty = true;
+			fireTileChanged(x, y);
 		} catch (Throwable e) {
 		}
 		return this;
@@ -1136,6 +1161,7 @@ public class Field2D implements IArray, Config, LRelease {
 			this._mapArrays = CollectionUtils.copyOf(arrays);
 		}
 		this._mapDirty = true;
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
@@ -1143,6 +1169,45 @@ public class Field2D implements IArray, Config, LRelease {
 		return this._mapDirty;
 	}
 
+	public Field2D addChangedListener(FieldChangedListener listener) {
+		if (listener == null) {
+			return this;
+		}
+		if (_changedListeners == null) {
+			_changedListeners = new TArray<FieldChangedListener>(2);
+		}
+		if (!_changedListeners.contains(listener)) {
+			_changedListeners.add(listener);
+		}
+		return this;
+	}
+
+	public Field2D removeChangedListener(FieldChangedListener listener) {
+		if (_changedListeners != null) {
+			_changedListeners.remove(listener);
+		}
+		return this;
+	}
+
+	/**
+	 * 直接修改地图数组(比如通过getMap以外的途径)后,调用此函数通知寻径缓存等监听者
+	 * 
+	 * @return
+	 */
+	public Field2D notifyChanged() {
+		fireTileChanged(-1, -1);
+		return this;
+	}
+
+	protected void fireTileChanged(int x, int y) {
+		if (_changedListeners == null) {
+			return;
+		}
+		for (int i = 0, size = _changedListeners.size; i < size; i++) {
+			_changedListeners.get(i).onTileChanged(this, x, y);
+		}
+	}
+
 	public Field2D setDirty(boolean d) {
 		this._mapDirty = d;
 		return this;
@@ -1480,6 +1545,7 @@ public class Field2D implements IArray, Config, LRelease {
 			}
 		}
 		this._mapDirty = true;
+		fireTileChanged(-1, -1);
 		return this;
 	}
 
@@ -1754,6 +1820,7 @@ public class Field2D implements IArray, Config, LRelease {
 	public Field2D clearCost() {
 		if (_costMap != null) {
 			_costMap.clear();
+			fireTileChanged(-1, -1);
 		}
 		return this;
 	}
@@ -1767,10 +1834,55 @@ public class Field2D implements IArray, Config, LRelease {
 			hashCode = LSystem.unite(hashCode, x);
 			hashCode = LSystem.unite(hashCode, y);
 			_costMap.put(hashCode, Integer.valueOf(cost));
+			fireTileChanged(x, y);
 		}
 		return this;
 	}
 
+	/**
+	 * 获得此地图专用的寻径上下文(临时数组复用,非线程安全)
+	 * 
+	 * @return
+	 */
+	public AStarFinderContext getFinderContext() {
+		if (_finderContext == null) {
+			_finderContext = new AStarFinderContext();
+		}
+		return _finderContext.ensure(_width, _height);
+	}
+
+	/**
+	 * 获得此地图专用的分层寻径器(首次使用时预计算簇入口,之后随地图变化增量修复)
+	 * 
+	 * @param diagonal
+	 * @return
+	 */
+	public HPAStarFinder getHierarchicalFinder(boolean diagonal) {
+		if (_hierarchicalFinder == null || _hierarchicalFinder.isDiagonal() != diagonal) {
+			if (_hierarchicalFinder != null) {
+				_hierarchicalFinder.close();
+			}
+			_hierarchicalFinder = new HPAStarFinder(this, HPAStarFinder.DEFAULT_CLUSTER_SIZE, diagonal);
+		}
+		return _hierarchicalFinder;
+	}
+
+	/**
+	 * 获得此地图专用的流场缓存(同一目标的流场只构建一次,之后随地图变化增量修复)
+	 * 
+	 * @param diagonal
+	 * @return
+	 */
+	public FlowFieldCache getFlowFields(boolean diagonal) {
+		if (_flowFields == null || _flowFields.isDiagonal() != diagonal) {
+			if (_flowFields != null) {
+				_flowFields.close();
+			}
+			_flowFields = new FlowFieldCache(this, diagonal);
+		}
+		return _flowFields;
+	}
+
 	public int getCost(int x, int y) {
 		if (contains(x, y) && _costMap != null) {
 			int hashCode = 1;
@@ -1847,6 +1959,18 @@ public class Field2D implements IArray, Config, LRelease {
 		if (_costMap != null) {
 			_costMap = null;
 		}
+		if (_finderContext != null) {
+			_finderContext.close();
+			_finderContext = null;
+		}
+		if (_hierarchicalFinder != null) {
+			_hierarchicalFinder.close();
+			_hierarchicalFinder = null;
+		}
+		if (_flowFields != null) {
+			_flowFields.close();
+			_flowFields = null;
+		}
 	}
 
 }
@@ -0,0 +1,707 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.LSysException;
+import loon.action.map.colider.TileImpl;
+import loon.geom.Vector2f;
+import loon.utils.IntArray;
+import loon.utils.TArray;
+
+/**
+ * 流场(Dijkstra地图)寻径用类,以一个目标格为源点计算整张地图到目标的累计代价(integration field)与每格的下一步,
+ * 大量单位前往同一目标时,只需构建一次,之后每个单位查询下一步都是O(1)操作.
+ *
+ * 支持Field2D(4方向或8方向,斜向移动不允许切角,代价为直行10斜行14再加上Field2D的getCost)与HexagonMap(6方向,代价与HexagonMap.findPath一致为格子id).
+ *
+ * Field2D上的流场会自动监听地图变化,HexagonMap则需要调用invalidate(一般通过HexagonMap自身的FlowFieldCache转发).
+ * 变化的格子只会使经过它的下游部分失效,在下一次查询前增量修复,不是线程安全的.
+ *
+ * 目标格本身总是视为可到达(比如目标是一座不可通行的建筑).
+ */
+public class FlowField implements Field2D.FieldChangedListener, LRelease {
+
+	public final static int UNREACHABLE = -1;
+
+	private final static int INFINITY = Integer.MAX_VALUE;
+
+	private final static int ORTHOGONAL_COST = 10;
+
+	private final static int DIAGONAL_COST = 14;
+
+	// 前4个为直行方向
+	private final static int[] DIR_X = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final static int[] DIR_Y = { -1, 0, 1, 0, -1, 1, 1, -1 };
+
+	// 六边形轴坐标的6个相邻方向(与HexagonMap.adjacent顺序相同)
+	private final static int[] HEX_X = { -1, 0, 1, 1, 0, -1 };
+
+	private final static int[] HEX_Y = { 0, -1, -1, 0, 1, 1 };
+
+	private final Field2D _field;
+
+	private final HexagonMap _hexMap;
+
+	private final boolean _diagonal;
+
+	private final int _goalX, _goalY;
+
+	private int _width, _height;
+
+	private int _goal;
+
+	private int[] _costs;
+
+	private int[] _next;
+
+	// 增量修复用的标记
+	private int _generation;
+
+	private int[] _stamps;
+
+	private final IntArray _changed = new IntArray();
+
+	private final IntArray _region = new IntArray();
+
+	private boolean _dirty, _rebuildAll;
+
+	private int _lastUpdated;
+
+	private final int[] _position = new int[2];
+
+	private final int[] _target = new int[2];
+
+	// 带索引的最小堆,优先级即_costs
+	private int[] _heap;
+
+	private int[] _heapIndex;
+
+	private int _heapSize;
+
+	public FlowField(Field2D field, int goalX, int goalY) {
+		this(field, goalX, goalY, true);
+	}
+
+	public FlowField(Field2D field, int goalX, int goalY, boolean diagonal) {
+		if (field == null) {
+			throw new LSysException("Field2D cannot be null !");
+		}
+		this._field = field;
+		this._hexMap = null;
+		this._diagonal = diagonal;
+		this._goalX = goalX;
+		this._goalY = goalY;
+		this._dirty = true;
+		this._rebuildAll = true;
+		field.addChangedListener(this);
+	}
+
+	public FlowField(HexagonMap map, int goalX, int goalY) {
+		if (map == null) {
+			throw new LSysException("HexagonMap cannot be null !");
+		}
+		this._field = null;
+		this._hexMap = map;
+		this._diagonal = false;
+		this._goalX = goalX;
+		this._goalY = goalY;
+		this._dirty = true;
+		this._rebuildAll = true;
+	}
+
+	@Override
+	public void onTileChanged(Field2D field, int x, int y) {
+		invalidate(x, y);
+	}
+
+	/**
+	 * 标记指定格子已变化(x与y为-1时表示整张地图),在下一次查询前修复
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public FlowField invalidate(int x, int y) {
+		_dirty = true;
+		if (_rebuildAll) {
+			return this;
+		}
+		if (x < 0 || y < 0 || _width != getMapWidth() || _height != getMapHeight()) {
+			_rebuildAll = true;
+			_changed.clear();
+			return this;
+		}
+		final int idx = toIndex(x, y);
+		if (idx == -1) {
+			return this;
+		}
+		if (idx == _goal || _changed.length > (_width * _height >> 3)) {
+			_rebuildAll = true;
+			_changed.clear();
+			return this;
+		}
+		_changed.add(idx);
+		return this;
+	}
+
+	/**
+	 * 整张流场失效
+	 *
+	 * @return
+	 */
+	public FlowField invalidate() {
+		return invalidate(-1, -1);
+	}
+
+	/**
+	 * 立即执行待处理的构建或增量修复(查询时会自动调用)
+	 *
+	 * @return
+	 */
+	public FlowField update() {
+		if (!_dirty) {
+			return this;
+		}
+		if (_rebuildAll) {
+			rebuild();
+		} else {
+			repair();
+		}
+		_changed.clear();
+		_dirty = false;
+		_rebuildAll = false;
+		return this;
+	}
+
+	private void rebuild() {
+		_width = getMapWidth();
+		_height = getMapHeight();
+		final int size = _width * _height;
+		if (_costs == null || _costs.length != size) {
+			_costs = new int[size];
+			_next = new int[size];
+			_stamps = new int[size];
+			_heap = new int[size];
+			_heapIndex = new int[size];
+			_generation = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			_costs[i] = INFINITY;
+			_next[i] = -1;
+			_heapIndex[i] = -1;
+		}
+		_heapSize = 0;
+		_goal = toIndex(_goalX, _goalY);
+		_lastUpdated = 0;
+		if (_goal == -1) {
+			return;
+		}
+		_costs[_goal] = 0;
+		push(_goal);
+		propagate();
+	}
+
+	private void repair() {
+		if (++_generation == 0) {
+			for (int i = 0; i < _stamps.length; i++) {
+				_stamps[i] = 0;
+			}
+			_generation = 1;
+		}
+		final int gen = _generation;
+		final IntArray region = _region;
+		region.clear();
+		// 变化格本身,以及以它为拐角的斜向移动都可能失效
+		for (int i = 0; i < _changed.length; i++) {
+			final int cell = _changed.get(i);
+			mark(cell, gen);
+			if (_diagonal && _hexMap == null) {
+				final int cx = cell % _width;
+				final int cy = cell / _width;
+				for (int d = 0; d < 8; d++) {
+					final int nx = cx + DIR_X[d];
+					final int ny = cy + DIR_Y[d];
+					if (nx < 0 || ny < 0 || nx >= _width || ny >= _height) {
+						continue;
+					}
+					final int ni = ny * _width + nx;
+					final int next = _next[ni];
+					if (next == -1) {
+						continue;
+					}
+					final int tx = next % _width;
+					final int ty = next / _width;
+					if (tx != nx && ty != ny && ((nx == cx && ty == cy) || (tx == cx && ny == cy))) {
+						mark(ni, gen);
+					}
+				}
+			}
+		}
+		// 下游(下一步指向失效格的格子)全部失效
+		for (int i = 0; i < region.length; i++) {
+			final int cell = region.get(i);
+			final int count = neighborCount();
+			for (int d = 0; d < count; d++) {
+				final int ni = neighbor(cell, d);
+				if (ni != -1 && _next[ni] == cell && _stamps[ni] != gen) {
+					mark(ni, gen);
+				}
+			}
+		}
+		for (int i = 0; i < region.length; i++) {
+			final int cell = region.get(i);
+			_costs[cell] = INFINITY;
+			_next[cell] = -1;
+		}
+		_lastUpdated = region.length;
+		// 由未失效的相邻格重新估算失效区域
+		for (int i = 0; i < region.length; i++) {
+			final int cell = region.get(i);
+			if (!isPassable(cell)) {
+				continue;
+			}
+			final int count = neighborCount();
+			int best = INFINITY, bestNext = -1;
+			for (int d = 0; d < count; d++) {
+				final int ni = neighbor(cell, d);
+				if (ni == -1 || _stamps[ni] == gen || _costs[ni] == INFINITY || !canStep(cell, ni, d)) {
+					continue;
+				}
+				final int cost = _costs[ni] + stepCost(ni, d);
+				if (cost < best) {
+					best = cost;
+					bestNext = ni;
+				}
+			}
+			if (bestNext != -1) {
+				_costs[cell] = best;
+				_next[cell] = bestNext;
+				pushOrUpdate(cell);
+			}
+		}
+		// 变化格周围的格子可能因此获得更短的路线
+		for (int i = 0; i < _changed.length; i++) {
+			final int cell = _changed.get(i);
+			final int count = neighborCount();
+			for (int d = 0; d < count; d++) {
+				final int ni = neighbor(cell, d);
+				if (ni != -1 && _stamps[ni] != gen && _costs[ni] != INFINITY) {
+					pushOrUpdate(ni);
+				}
+			}
+		}
+		propagate();
+	}
+
+	private void mark(int cell, int gen) {
+		if (_stamps[cell] != gen) {
+			_stamps[cell] = gen;
+			_region.add(cell);
+		}
+	}
+
+	private void propagate() {
+		final int count = neighborCount();
+		while (_heapSize > 0) {
+			final int cell = pop();
+			final int base = _costs[cell];
+			for (int d = 0; d < count; d++) {
+				final int ni = neighbor(cell, d);
+				if (ni == -1 || ni == _goal || !isPassable(ni) || !canStep(ni, cell, d)) {
+					continue;
+				}
+				final int cost = base + stepCost(cell, d);
+				if (cost < _costs[ni]) {
+					_costs[ni] = cost;
+					_next[ni] = cell;
+					pushOrUpdate(ni);
+				}
+			}
+		}
+	}
+
+	private int neighborCount() {
+		if (_hexMap != null) {
+			return 6;
+		}
+		return _diagonal ? 8 : 4;
+	}
+
+	/**
+	 * 获得指定格子在d方向上的相邻格(越界返回-1),方向成对对称,所以相邻关系可以双向使用
+	 */
+	private int neighbor(int cell, int d) {
+		final int row = cell / _width;
+		final int col = cell - row * _width;
+		if (_hexMap != null) {
+			final int q = col - (row >> 1) + HEX_X[d];
+			final int r = row + HEX_Y[d];
+			if (r < 0 || r >= _height) {
+				return -1;
+			}
+			final int m = q + (r >> 1);
+			if (m < 0 || m >= _width) {
+				return -1;
+			}
+			return r * _width + m;
+		}
+		final int nx = col + DIR_X[d];
+		final int ny = row + DIR_Y[d];
+		if (nx < 0 || ny < 0 || nx >= _width || ny >= _height) {
+			return -1;
+		}
+		return ny * _width + nx;
+	}
+
+	/**
+	 * from与to相邻,斜向移动时两侧的直行格都必须可通行
+	 */
+	private boolean canStep(int from, int to, int d) {
+		if (d < 4 || _hexMap != null) {
+			return true;
+		}
+		final int fy = from / _width;
+		final int fx = from - fy * _width;
+		final int ty = to / _width;
+		final int tx = to - ty * _width;
+		return isPassable(fy * _width + tx) && isPassable(ty * _width + fx);
+	}
+
+	/**
+	 * 进入cell的代价
+	 */
+	private int stepCost(int cell, int d) {
+		if (_hexMap != null) {
+			final TileImpl tile = getHexTile(cell);
+			return tile == null ? 0 : Math.max(0, tile.getId());
+		}
+		final int y = cell / _width;
+		final int x = cell - y * _width;
+		return (d < 4 ? ORTHOGONAL_COST : DIAGONAL_COST) + _field.getCost(x, y);
+	}
+
+	private boolean isPassable(int cell) {
+		if (cell == _goal) {
+			return true;
+		}
+		if (_hexMap != null) {
+			final TileImpl tile = getHexTile(cell);
+			if (tile == null) {
+				return false;
+			}
+			final int[] limit = _hexMap.getLimit();
+			if (limit != null) {
+				final int id = tile.getId();
+				for (int i = 0; i < limit.length; i++) {
+					if (limit[i] == id) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		final int y = cell / _width;
+		return _field.isHit(cell - y * _width, y);
+	}
+
+	private TileImpl getHexTile(int cell) {
+		final int r = cell / _width;
+		_position[0] = cell - r * _width - (r >> 1);
+		_position[1] = r;
+		return _hexMap.getTile(_position);
+	}
+
+	private int getMapWidth() {
+		return _hexMap != null ? _hexMap.getCol() : _field.getWidth();
+	}
+
+	private int getMapHeight() {
+		return _hexMap != null ? _hexMap.getRow() : _field.getHeight();
+	}
+
+	private int toIndex(int x, int y) {
+		if (_hexMap != null) {
+			final int m = x + (y >> 1);
+			if (m < 0 || m >= _width || y < 0 || y >= _height) {
+				return -1;
+			}
+			return y * _width + m;
+		}
+		if (x < 0 || y < 0 || x >= _width || y >= _height) {
+			return -1;
+		}
+		return y * _width + x;
+	}
+
+	private int toX(int cell) {
+		final int y = cell / _width;
+		final int x = cell - y * _width;
+		return _hexMap != null ? x - (y >> 1) : x;
+	}
+
+	private int toY(int cell) {
+		return cell / _width;
+	}
+
+	private int nextCell(int x, int y) {
+		update();
+		final int idx = toIndex(x, y);
+		return idx == -1 ? -1 : _next[idx];
+	}
+
+	/**
+	 * 获得指定格到目标的累计代价,不可到达时返回UNREACHABLE
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getCost(int x, int y) {
+		update();
+		final int idx = toIndex(x, y);
+		if (idx == -1 || _costs[idx] == INFINITY) {
+			return UNREACHABLE;
+		}
+		return _costs[idx];
+	}
+
+	public boolean isReachable(int x, int y) {
+		return getCost(x, y) != UNREACHABLE;
+	}
+
+	public boolean isGoal(int x, int y) {
+		return x == _goalX && y == _goalY;
+	}
+
+	/**
+	 * 获得指定格的下一步坐标,已在目标或不可到达时返回null
+	 *
+	 * @param x
+	 * @param y
+	 * @param out
+	 * @return
+	 */
+	public Vector2f getNext(int x, int y, Vector2f out) {
+		final int next = nextCell(x, y);
+		if (next == -1) {
+			return null;
+		}
+		if (out == null) {
+			out = new Vector2f();
+		}
+		return out.set(toX(next), toY(next));
+	}
+
+	public Vector2f getNext(int x, int y) {
+		return getNext(x, y, null);
+	}
+
+	/**
+	 * 获得指定格的下一步移动偏移量(六边形地图为轴坐标偏移),已在目标或不可到达时为(0,0)
+	 *
+	 * @param x
+	 * @param y
+	 * @param out
+	 * @return
+	 */
+	public Vector2f getDirection(int x, int y, Vector2f out) {
+		if (out == null) {
+			out = new Vector2f();
+		}
+		final int next = nextCell(x, y);
+		if (next == -1) {
+			return out.set(0, 0);
+		}
+		return out.set(toX(next) - x, toY(next) - y);
+	}
+
+	/**
+	 * 获得指定格下一步的方向常量(Field2D为Config中的方向,HexagonMap为HexagonMap中的方向)
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getMoveDirection(int x, int y) {
+		final int next = nextCell(x, y);
+		if (next == -1) {
+			return _hexMap != null ? HexagonMap.NONE : Config.EMPTY;
+		}
+		if (_hexMap != null) {
+			_position[0] = x;
+			_position[1] = y;
+			_target[0] = toX(next);
+			_target[1] = toY(next);
+			return _hexMap.orientate(_position, _target);
+		}
+		return Field2D.getDirection(toX(next) - x, toY(next) - y);
+	}
+
+	/**
+	 * 从指定格沿流场走到目标,把途经格的索引写入outPath(包含起点与目标)
+	 *
+	 * @param x
+	 * @param y
+	 * @param outPath
+	 * @return 路径长度,不可到达时返回0
+	 */
+	public int toPath(int x, int y, IntArray outPath) {
+		update();
+		outPath.clear();
+		int idx = toIndex(x, y);
+		if (idx == -1 || _costs[idx] == INFINITY) {
+			return 0;
+		}
+		final int limit = _width * _height;
+		while (idx != -1 && outPath.length <= limit) {
+			outPath.add(idx);
+			idx = _next[idx];
+		}
+		return outPath.length;
+	}
+
+	public TArray<Vector2f> toPath(int x, int y) {
+		final IntArray cells = new IntArray();
+		final int size = toPath(x, y, cells);
+		if (size == 0) {
+			return null;
+		}
+		final TArray<Vector2f> path = new TArray<Vector2f>(size);
+		for (int i = 0; i < size; i++) {
+			final int cell = cells.get(i);
+			path.add(new Vector2f(toX(cell), toY(cell)));
+		}
+		return path;
+	}
+
+	public int getGoalX() {
+		return _goalX;
+	}
+
+	public int getGoalY() {
+		return _goalY;
+	}
+
+	public boolean isDiagonal() {
+		return _diagonal;
+	}
+
+	public boolean isDirty() {
+		return _dirty;
+	}
+
+	/**
+	 * 最近一次构建或修复时重新计算的格子数量(完整构建时为0)
+	 *
+	 * @return
+	 */
+	public int getLastUpdatedCount() {
+		return _lastUpdated;
+	}
+
+	private void push(int cell) {
+		final int idx = _heapSize++;
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+		siftUp(idx);
+	}
+
+	private void pushOrUpdate(int cell) {
+		final int idx = _heapIndex[cell];
+		if (idx == -1) {
+			push(cell);
+		} else {
+			siftUp(idx);
+		}
+	}
+
+	private int pop() {
+		final int top = _heap[0];
+		final int last = _heap[--_heapSize];
+		_heapIndex[top] = -1;
+		if (_heapSize > 0) {
+			_heap[0] = last;
+			_heapIndex[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int idx) {
+		final int cell = _heap[idx];
+		final int p = _costs[cell];
+		while (idx > 0) {
+			final int parent = (idx - 1) >>> 1;
+			final int other = _heap[parent];
+			if (_costs[other] <= p) {
+				break;
+			}
+			_heap[idx] = other;
+			_heapIndex[other] = idx;
+			idx = parent;
+		}
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+	}
+
+	private void siftDown(int idx) {
+		final int cell = _heap[idx];
+		final int p = _costs[cell];
+		final int half = _heapSize >>> 1;
+		while (idx < half) {
+			int child = (idx << 1) + 1;
+			int other = _heap[child];
+			final int right = child + 1;
+			if (right < _heapSize && _costs[_heap[right]] < _costs[other]) {
+				child = right;
+				other = _heap[child];
+			}
+			if (p <= _costs[other]) {
+				break;
+			}
+			_heap[idx] = other;
+			_heapIndex[other] = idx;
+			idx = child;
+		}
+		_heap[idx] = cell;
+		_heapIndex[cell] = idx;
+	}
+
+	@Override
+	public void close() {
+		if (_field != null) {
+			_field.removeChangedListener(this);
+		}
+		_costs = null;
+		_next = null;
+		_stamps = null;
+		_heap = null;
+		_heapIndex = null;
+		_heapSize = 0;
+		_changed.clear();
+		_region.clear();
+		_dirty = true;
+		_rebuildAll = true;
+	}
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+
+/**
+ * 按目标格缓存流场,同一目标只构建一次,超过容量时淘汰最久未使用的流场
+ */
+public class FlowFieldCache implements LRelease {
+
+	public final static int DEFAULT_MAX_FIELDS = 8;
+
+	private final Field2D _field;
+
+	private final HexagonMap _hexMap;
+
+	private final boolean _diagonal;
+
+	private final IntMap<FlowField> _fields = new IntMap<FlowField>();
+
+	// 由旧到新的使用顺序
+	private final IntArray _order = new IntArray();
+
+	private int _maxFields;
+
+	public FlowFieldCache(Field2D field, boolean diagonal) {
+		this(field, null, diagonal);
+	}
+
+	public FlowFieldCache(HexagonMap map) {
+		this(null, map, false);
+	}
+
+	private FlowFieldCache(Field2D field, HexagonMap map, boolean diagonal) {
+		this._field = field;
+		this._hexMap = map;
+		this._diagonal = diagonal;
+		this._maxFields = DEFAULT_MAX_FIELDS;
+	}
+
+	private static int toKey(int x, int y) {
+		return (y << 16) | (x & 0xFFFF);
+	}
+
+	/**
+	 * 获得前往指定目标格的流场,不存在时创建
+	 *
+	 * @param goalX
+	 * @param goalY
+	 * @return
+	 */
+	public FlowField get(int goalX, int goalY) {
+		final int key = toKey(goalX, goalY);
+		FlowField flow = _fields.get(key);
+		if (flow != null) {
+			if (_order.peek() != key) {
+				_order.removeValue(key);
+				_order.add(key);
+			}
+			return flow;
+		}
+		while (_order.length >= _maxFields) {
+			final FlowField old = _fields.remove(_order.removeIndex(0));
+			if (old != null) {
+				old.close();
+			}
+		}
+		if (_hexMap != null) {
+			flow = new FlowField(_hexMap, goalX, goalY);
+		} else {
+			flow = new FlowField(_field, goalX, goalY, _diagonal);
+		}
+		_fields.put(key, flow);
+		_order.add(key);
+		return flow;
+	}
+
+	public boolean contains(int goalX, int goalY) {
+		return _fields.containsKey(toKey(goalX, goalY));
+	}
+
+	public FlowFieldCache remove(int goalX, int goalY) {
+		final int key = toKey(goalX, goalY);
+		final FlowField flow = _fields.remove(key);
+		if (flow != null) {
+			_order.removeValue(key);
+			flow.close();
+		}
+		return this;
+	}
+
+	/**
+	 * 通知所有流场指定格已变化(Field2D上的流场会自动监听,HexagonMap需要调用此函数)
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public FlowFieldCache invalidate(int x, int y) {
+		for (int i = 0; i < _order.length; i++) {
+			final FlowField flow = _fields.get(_order.get(i));
+			if (flow != null) {
+				flow.invalidate(x, y);
+			}
+		}
+		return this;
+	}
+
+	public FlowFieldCache invalidate() {
+		return invalidate(-1, -1);
+	}
+
+	public FlowFieldCache setMaxFields(int max) {
+		this._maxFields = MathUtils.max(1, max);
+		while (_order.length > _maxFields) {
+			final FlowField old = _fields.remove(_order.removeIndex(0));
+			if (old != null) {
+				old.close();
+			}
+		}
+		return this;
+	}
+
+	public int getMaxFields() {
+		return _maxFields;
+	}
+
+	public boolean isDiagonal() {
+		return _diagonal;
+	}
+
+	public int size() {
+		return _order.length;
+	}
+
+	public FlowFieldCache clear() {
+		for (int i = 0; i < _order.length; i++) {
+			final FlowField flow = _fields.get(_order.get(i));
+			if (flow != null) {
+				flow.close();
+			}
+		}
+		_fields.clear();
+		_order.clear();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+}
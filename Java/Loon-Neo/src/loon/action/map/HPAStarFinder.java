@@ -0,0 +1,784 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map;
+
+import loon.LRelease;
+import loon.geom.Vector2f;
+import loon.utils.FloatArray;
+import loon.utils.IntArray;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 分层寻径(HPA*)用类,把Field2D切分为固定大小的簇(cluster),预先计算簇边界上的入口与簇内入口之间的距离,
+ * 长距离寻径只需在入口组成的抽象图上搜索,再逐段细化为逐格路径.
+ *
+ * 地图格子变化时(通过Field2D的变化监听)只标记受影响的簇,在下一次寻径前增量修复这些簇及其相邻边界.
+ *
+ * 适用于统一代价的网格(地图的额外代价getCost不生效),不是线程安全的.
+ */
+public class HPAStarFinder implements Field2D.FieldChangedListener, LRelease {
+
+	public final static int DEFAULT_CLUSTER_SIZE = 16;
+
+	private final static float INFINITY = Float.MAX_VALUE;
+
+	private final static int[] DIR_X = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final static int[] DIR_Y = { -1, 0, 1, 0, -1, 1, 1, -1 };
+
+	private final Field2D _field;
+
+	private final int _clusterSize;
+
+	private final boolean _diagonal;
+
+	private int _width, _height;
+
+	private int _clustersX, _clustersY;
+
+	// 格子对应的入口节点,-1为无
+	private int[] _nodeOfCell;
+
+	private final IntArray _nodeCells = new IntArray();
+
+	private final IntArray _nodeRefs = new IntArray();
+
+	private final IntArray _freeNodes = new IntArray();
+
+	private final TArray<IntArray> _nodePartners = new TArray<IntArray>();
+
+	// 每条边界上的入口对(a0,b0,a1,b1...),竖直边界在前,水平边界在后
+	private IntArray[] _borders;
+
+	// 每个簇内的节点与节点间距离矩阵
+	private IntArray[] _clusterNodes;
+
+	private float[][] _clusterDistances;
+
+	private boolean[] _dirtyClusters;
+
+	private boolean _dirty, _rebuildAll;
+
+	// 局部搜索用临时数据
+	private int _generation;
+
+	private int[] _stamps;
+
+	private float[] _costs;
+
+	private int[] _parents;
+
+	private final BinaryHeap _localHeap = new BinaryHeap();
+
+	// 抽象图搜索用临时数据
+	private int _nodeGeneration;
+
+	private int[] _nodeStamps = new int[0];
+
+	private float[] _nodeCosts = new float[0];
+
+	private int[] _nodeParents = new int[0];
+
+	private boolean[] _nodeClosed = new boolean[0];
+
+	private final BinaryHeap _nodeHeap = new BinaryHeap();
+
+	private final FloatArray _startDistances = new FloatArray();
+
+	private final FloatArray _goalDistances = new FloatArray();
+
+	private final IntArray _abstractPath = new IntArray();
+
+	private final IntArray _segment = new IntArray();
+
+	private int _lastExpanded;
+
+	public HPAStarFinder(Field2D field) {
+		this(field, DEFAULT_CLUSTER_SIZE, true);
+	}
+
+	public HPAStarFinder(Field2D field, int clusterSize, boolean diagonal) {
+		this._field = field;
+		this._clusterSize = MathUtils.max(4, clusterSize);
+		this._diagonal = diagonal;
+		this._rebuildAll = true;
+		this._dirty = true;
+		field.addChangedListener(this);
+	}
+
+	@Override
+	public void onTileChanged(Field2D field, int x, int y) {
+		_dirty = true;
+		if (x < 0 || y < 0 || _dirtyClusters == null || field.getWidth() != _width
+				|| field.getHeight() != _height) {
+			_rebuildAll = true;
+			return;
+		}
+		_dirtyClusters[(y / _clusterSize) * _clustersX + (x / _clusterSize)] = true;
+	}
+
+	/**
+	 * 立即执行待处理的重建或增量修复(寻径时会自动调用)
+	 */
+	public HPAStarFinder update() {
+		if (!_dirty) {
+			return this;
+		}
+		if (_rebuildAll) {
+			rebuild();
+		} else {
+			repair();
+		}
+		_dirty = false;
+		_rebuildAll = false;
+		return this;
+	}
+
+	private void rebuild() {
+		_width = _field.getWidth();
+		_height = _field.getHeight();
+		_clustersX = (_width + _clusterSize - 1) / _clusterSize;
+		_clustersY = (_height + _clusterSize - 1) / _clusterSize;
+		final int cells = _width * _height;
+		final int clusters = _clustersX * _clustersY;
+		_nodeOfCell = new int[cells];
+		for (int i = 0; i < cells; i++) {
+			_nodeOfCell[i] = -1;
+		}
+		_stamps = new int[cells];
+		_costs = new float[cells];
+		_parents = new int[cells];
+		_generation = 0;
+		_localHeap.ensure(cells);
+		_nodeCells.clear();
+		_nodeRefs.clear();
+		_freeNodes.clear();
+		_nodePartners.clear();
+		_borders = new IntArray[clusters * 2];
+		for (int i = 0; i < _borders.length; i++) {
+			_borders[i] = new IntArray();
+		}
+		_clusterNodes = new IntArray[clusters];
+		_clusterDistances = new float[clusters][];
+		for (int i = 0; i < clusters; i++) {
+			_clusterNodes[i] = new IntArray();
+		}
+		_dirtyClusters = new boolean[clusters];
+		for (int cy = 0; cy < _clustersY; cy++) {
+			for (int cx = 0; cx < _clustersX; cx++) {
+				buildBorder(cx, cy, true);
+				buildBorder(cx, cy, false);
+			}
+		}
+		for (int i = 0; i < clusters; i++) {
+			buildCluster(i);
+		}
+	}
+
+	private void repair() {
+		final int clusters = _clustersX * _clustersY;
+		final boolean[] affected = new boolean[clusters];
+		for (int i = 0; i < clusters; i++) {
+			if (!_dirtyClusters[i]) {
+				continue;
+			}
+			_dirtyClusters[i] = false;
+			final int cx = i % _clustersX;
+			final int cy = i / _clustersX;
+			// 簇的四条边界:右与下属于自身,左与上属于相邻簇
+			buildBorder(cx, cy, true);
+			buildBorder(cx, cy, false);
+			if (cx > 0) {
+				buildBorder(cx - 1, cy, true);
+			}
+			if (cy > 0) {
+				buildBorder(cx, cy - 1, false);
+			}
+			affected[i] = true;
+			if (cx > 0) {
+				affected[i - 1] = true;
+			}
+			if (cx < _clustersX - 1) {
+				affected[i + 1] = true;
+			}
+			if (cy > 0) {
+				affected[i - _clustersX] = true;
+			}
+			if (cy < _clustersY - 1) {
+				affected[i + _clustersX] = true;
+			}
+		}
+		for (int i = 0; i < clusters; i++) {
+			if (affected[i]) {
+				buildCluster(i);
+			}
+		}
+	}
+
+	private boolean walkable(int x, int y) {
+		return _field.contains(x, y) && _field.isHit(x, y);
+	}
+
+	/**
+	 * 重建簇(cx,cy)右侧(vertical为true)或下方的边界入口
+	 */
+	private void buildBorder(int cx, int cy, boolean vertical) {
+		final int borderIndex = (cy * _clustersX + cx) * 2 + (vertical ? 0 : 1);
+		final IntArray pairs = _borders[borderIndex];
+		for (int i = 0; i < pairs.length; i += 2) {
+			final int a = pairs.get(i);
+			final int b = pairs.get(i + 1);
+			_nodePartners.get(a).removeValue(b);
+			_nodePartners.get(b).removeValue(a);
+			releaseNode(a);
+			releaseNode(b);
+		}
+		pairs.clear();
+		if ((vertical && cx >= _clustersX - 1) || (!vertical && cy >= _clustersY - 1)) {
+			return;
+		}
+		final int size = _clusterSize;
+		final int begin = vertical ? cy * size : cx * size;
+		final int end = vertical ? MathUtils.min(_height, begin + size) : MathUtils.min(_width, begin + size);
+		final int fixed = vertical ? (cx + 1) * size - 1 : (cy + 1) * size - 1;
+		int runStart = -1;
+		for (int i = begin; i <= end; i++) {
+			final boolean open;
+			if (i < end) {
+				open = vertical ? (walkable(fixed, i) && walkable(fixed + 1, i))
+						: (walkable(i, fixed) && walkable(i, fixed + 1));
+			} else {
+				open = false;
+			}
+			if (open && runStart == -1) {
+				runStart = i;
+			} else if (!open && runStart != -1) {
+				final int runEnd = i - 1;
+				if (runEnd - runStart + 1 < 6) {
+					addEntrance(pairs, vertical, fixed, (runStart + runEnd) / 2);
+				} else {
+					addEntrance(pairs, vertical, fixed, runStart);
+					addEntrance(pairs, vertical, fixed, runEnd);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addEntrance(IntArray pairs, boolean vertical, int fixed, int pos) {
+		final int a = vertical ? acquireNode(pos * _width + fixed) : acquireNode(fixed * _width + pos);
+		final int b = vertical ? acquireNode(pos * _width + fixed + 1) : acquireNode((fixed + 1) * _width + pos);
+		_nodePartners.get(a).add(b);
+		_nodePartners.get(b).add(a);
+		pairs.add(a);
+		pairs.add(b);
+	}
+
+	private int acquireNode(int cell) {
+		int node = _nodeOfCell[cell];
+		if (node != -1) {
+			_nodeRefs.incr(node, 1);
+			return node;
+		}
+		if (_freeNodes.length > 0) {
+			node = _freeNodes.pop();
+			_nodeCells.set(node, cell);
+			_nodeRefs.set(node, 1);
+			_nodePartners.get(node).clear();
+		} else {
+			node = _nodeCells.length;
+			_nodeCells.add(cell);
+			_nodeRefs.add(1);
+			_nodePartners.add(new IntArray(4));
+		}
+		_nodeOfCell[cell] = node;
+		return node;
+	}
+
+	private void releaseNode(int node) {
+		_nodeRefs.incr(node, -1);
+		if (_nodeRefs.get(node) <= 0) {
+			_nodeOfCell[_nodeCells.get(node)] = -1;
+			_nodeCells.set(node, -1);
+			_nodePartners.get(node).clear();
+			_freeNodes.add(node);
+		}
+	}
+
+	/**
+	 * 收集簇边缘上的节点,并计算它们之间的簇内距离
+	 */
+	private void buildCluster(int cluster) {
+		final IntArray nodes = _clusterNodes[cluster];
+		nodes.clear();
+		final int minX = (cluster % _clustersX) * _clusterSize;
+		final int minY = (cluster / _clustersX) * _clusterSize;
+		final int maxX = MathUtils.min(_width, minX + _clusterSize) - 1;
+		final int maxY = MathUtils.min(_height, minY + _clusterSize) - 1;
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				if (y != minY && y != maxY && x != minX && x != maxX) {
+					continue;
+				}
+				final int node = _nodeOfCell[y * _width + x];
+				if (node != -1) {
+					nodes.add(node);
+				}
+			}
+		}
+		final int count = nodes.length;
+		final float[] distances = new float[count * count];
+		for (int i = 0; i < count; i++) {
+			final int cell = _nodeCells.get(nodes.get(i));
+			localSearch(cell, -1, minX, minY, maxX, maxY);
+			for (int j = 0; j < count; j++) {
+				final int other = _nodeCells.get(nodes.get(j));
+				distances[i * count + j] = _stamps[other] == _generation ? _costs[other] : INFINITY;
+			}
+		}
+		_clusterDistances[cluster] = distances;
+	}
+
+	private int clusterOf(int x, int y) {
+		return (y / _clusterSize) * _clustersX + (x / _clusterSize);
+	}
+
+	private static float octile(int dx, int dy) {
+		final int ax = dx < 0 ? -dx : dx;
+		final int ay = dy < 0 ? -dy : dy;
+		return ax < ay ? (MathUtils.SQRT2 - 1f) * ax + ay : (MathUtils.SQRT2 - 1f) * ay + ax;
+	}
+
+	/**
+	 * 在指定矩形内由from出发搜索,target为-1时计算到矩形内全部格子的距离(Dijkstra),否则为到target的A*
+	 */
+	private boolean localSearch(int from, int target, int minX, int minY, int maxX, int maxY) {
+		_generation++;
+		if (_generation == Integer.MAX_VALUE) {
+			for (int i = 0; i < _stamps.length; i++) {
+				_stamps[i] = 0;
+			}
+			_generation = 1;
+		}
+		final int width = _width;
+		final int tx = target == -1 ? 0 : target % width;
+		final int ty = target == -1 ? 0 : target / width;
+		final int dirs = _diagonal ? 8 : 4;
+		final BinaryHeap heap = _localHeap;
+		heap.clear();
+		_stamps[from] = _generation;
+		_costs[from] = 0f;
+		_parents[from] = -1;
+		heap.push(from, 0f);
+		while (heap.size > 0) {
+			final int current = heap.pop();
+			if (current == target) {
+				return true;
+			}
+			final int cx = current % width;
+			final int cy = current / width;
+			final float cost = _costs[current];
+			for (int i = 0; i < dirs; i++) {
+				final int nx = cx + DIR_X[i];
+				final int ny = cy + DIR_Y[i];
+				if (nx < minX || ny < minY || nx > maxX || ny > maxY || !walkable(nx, ny)) {
+					continue;
+				}
+				if (i >= 4 && (!walkable(cx, ny) || !walkable(nx, cy))) {
+					continue;
+				}
+				final int next = ny * width + nx;
+				final float nextCost = cost + (i >= 4 ? MathUtils.SQRT2 : 1f);
+				if (_stamps[next] != _generation || nextCost < _costs[next]) {
+					_stamps[next] = _generation;
+					_costs[next] = nextCost;
+					_parents[next] = current;
+					final float priority = target == -1 ? nextCost : nextCost + octile(tx - nx, ty - ny);
+					heap.pushOrUpdate(next, priority);
+				}
+			}
+		}
+		return target == -1;
+	}
+
+	/**
+	 * 寻径并把逐格路径(格子索引)写入outPath
+	 *
+	 * @return 路径长度,无路径时返回-1
+	 */
+	public int search(int startX, int startY, int endX, int endY, IntArray outPath) {
+		outPath.clear();
+		update();
+		_lastExpanded = 0;
+		if (!walkable(startX, startY) || !walkable(endX, endY)) {
+			return -1;
+		}
+		final int width = _width;
+		final int start = startY * width + startX;
+		final int goal = endY * width + endX;
+		if (start == goal) {
+			outPath.add(start);
+			return 1;
+		}
+		final int startCluster = clusterOf(startX, startY);
+		final int goalCluster = clusterOf(endX, endY);
+		if (startCluster == goalCluster) {
+			final int minX = (startCluster % _clustersX) * _clusterSize;
+			final int minY = (startCluster / _clustersX) * _clusterSize;
+			if (localSearch(start, goal, minX, minY, MathUtils.min(_width, minX + _clusterSize) - 1,
+					MathUtils.min(_height, minY + _clusterSize) - 1)) {
+				appendLocal(goal, outPath, false);
+				outPath.reverse();
+				return outPath.length;
+			}
+		}
+		distancesToCluster(start, startCluster, _startDistances);
+		distancesToCluster(goal, goalCluster, _goalDistances);
+		if (!searchAbstract(startCluster, goalCluster, endX, endY)) {
+			return -1;
+		}
+		// 逐段细化抽象路径
+		int from = start;
+		outPath.add(start);
+		for (int i = 0; i <= _abstractPath.length; i++) {
+			final int to = i < _abstractPath.length ? _nodeCells.get(_abstractPath.get(i)) : goal;
+			if (to == from) {
+				continue;
+			}
+			if (!refine(from, to, outPath)) {
+				outPath.clear();
+				return -1;
+			}
+			from = to;
+		}
+		return outPath.length;
+	}
+
+	public TArray<Vector2f> search(int startX, int startY, int endX, int endY) {
+		final IntArray path = new IntArray();
+		if (search(startX, startY, endX, endY, path) == -1) {
+			return null;
+		}
+		final TArray<Vector2f> result = new TArray<Vector2f>(path.length);
+		for (int i = 0; i < path.length; i++) {
+			final int idx = path.get(i);
+			result.add(new Vector2f(idx % _width, idx / _width));
+		}
+		return result;
+	}
+
+	private void distancesToCluster(int cell, int cluster, FloatArray out) {
+		out.clear();
+		final IntArray nodes = _clusterNodes[cluster];
+		final int minX = (cluster % _clustersX) * _clusterSize;
+		final int minY = (cluster / _clustersX) * _clusterSize;
+		localSearch(cell, -1, minX, minY, MathUtils.min(_width, minX + _clusterSize) - 1,
+				MathUtils.min(_height, minY + _clusterSize) - 1);
+		for (int i = 0; i < nodes.length; i++) {
+			final int other = _nodeCells.get(nodes.get(i));
+			out.add(_stamps[other] == _generation ? _costs[other] : INFINITY);
+		}
+	}
+
+	/**
+	 * 在入口节点组成的抽象图上做A*,起点与终点作为临时节点(编号为节点总数与节点总数+1)
+	 */
+	private boolean searchAbstract(int startCluster, int goalCluster, int endX, int endY) {
+		final int nodeCount = _nodeCells.length;
+		final int startNode = nodeCount;
+		final int goalNode = nodeCount + 1;
+		final int total = nodeCount + 2;
+		if (_nodeStamps.length < total) {
+			final int size = total + (total >> 1);
+			_nodeStamps = new int[size];
+			_nodeCosts = new float[size];
+			_nodeParents = new int[size];
+			_nodeClosed = new boolean[size];
+			_nodeGeneration = 0;
+		}
+		_nodeGeneration++;
+		_nodeHeap.ensure(total);
+		_nodeHeap.clear();
+		_abstractPath.clear();
+		touchNode(startNode, 0f, -1);
+		_nodeHeap.push(startNode, 0f);
+		while (_nodeHeap.size > 0) {
+			final int current = _nodeHeap.pop();
+			_nodeClosed[current] = true;
+			_lastExpanded++;
+			if (current == goalNode) {
+				int node = _nodeParents[goalNode];
+				while (node != startNode && node != -1) {
+					_abstractPath.add(node);
+					node = _nodeParents[node];
+				}
+				_abstractPath.reverse();
+				return true;
+			}
+			final float cost = _nodeCosts[current];
+			if (current == startNode) {
+				final IntArray nodes = _clusterNodes[startCluster];
+				for (int i = 0; i < nodes.length; i++) {
+					relaxNode(current, nodes.get(i), cost + _startDistances.get(i), endX, endY);
+				}
+				continue;
+			}
+			final int cell = _nodeCells.get(current);
+			final int cluster = clusterOf(cell % _width, cell / _width);
+			final IntArray nodes = _clusterNodes[cluster];
+			final float[] distances = _clusterDistances[cluster];
+			final int count = nodes.length;
+			final int index = nodes.indexOf(current);
+			if (index != -1) {
+				for (int i = 0; i < count; i++) {
+					final float d = distances[index * count + i];
+					if (i != index && d != INFINITY) {
+						relaxNode(current, nodes.get(i), cost + d, endX, endY);
+					}
+				}
+			}
+			if (cluster == goalCluster && index != -1) {
+				final float d = _goalDistances.get(index);
+				if (d != INFINITY) {
+					relaxNode(current, goalNode, cost + d, endX, endY);
+				}
+			}
+			final IntArray partners = _nodePartners.get(current);
+			for (int i = 0; i < partners.length; i++) {
+				relaxNode(current, partners.get(i), cost + 1f, endX, endY);
+			}
+		}
+		return false;
+	}
+
+	private void touchNode(int node, float cost, int parent) {
+		_nodeStamps[node] = _nodeGeneration;
+		_nodeCosts[node] = cost;
+		_nodeParents[node] = parent;
+		_nodeClosed[node] = false;
+	}
+
+	private void relaxNode(int from, int node, float cost, int endX, int endY) {
+		if (cost == INFINITY) {
+			return;
+		}
+		final boolean seen = _nodeStamps[node] == _nodeGeneration;
+		if (seen && (_nodeClosed[node] || cost >= _nodeCosts[node])) {
+			return;
+		}
+		touchNode(node, cost, from);
+		float h = 0f;
+		if (node < _nodeCells.length) {
+			final int cell = _nodeCells.get(node);
+			h = octile(endX - cell % _width, endY - cell / _width);
+		}
+		_nodeHeap.pushOrUpdate(node, cost + h);
+	}
+
+	/**
+	 * 细化两个格子间的路径(簇内或相邻边界两侧),结果追加到outPath(不含from)
+	 */
+	private boolean refine(int from, int to, IntArray outPath) {
+		final int fx = from % _width;
+		final int fy = from / _width;
+		final int tx = to % _width;
+		final int ty = to / _width;
+		if (MathUtils.abs(fx - tx) + MathUtils.abs(fy - ty) == 1) {
+			outPath.add(to);
+			return true;
+		}
+		final int cluster = clusterOf(fx, fy);
+		final int minX = (cluster % _clustersX) * _clusterSize;
+		final int minY = (cluster / _clustersX) * _clusterSize;
+		if (!localSearch(from, to, minX, minY, MathUtils.min(_width, minX + _clusterSize) - 1,
+				MathUtils.min(_height, minY + _clusterSize) - 1)) {
+			return false;
+		}
+		appendLocal(to, outPath, true);
+		return true;
+	}
+
+	private void appendLocal(int to, IntArray outPath, boolean skipFirst) {
+		_segment.clear();
+		int node = to;
+		while (node != -1) {
+			_segment.add(node);
+			node = _parents[node];
+		}
+		if (skipFirst) {
+			for (int i = _segment.length - 2; i >= 0; i--) {
+				outPath.add(_segment.get(i));
+			}
+		} else {
+			for (int i = 0; i < _segment.length; i++) {
+				outPath.add(_segment.get(i));
+			}
+		}
+	}
+
+	public int getClusterSize() {
+		return _clusterSize;
+	}
+
+	public boolean isDiagonal() {
+		return _diagonal;
+	}
+
+	/**
+	 * 当前抽象图的入口节点数量
+	 */
+	public int getNodeCount() {
+		update();
+		return _nodeCells.length - _freeNodes.length;
+	}
+
+	/**
+	 * 最近一次寻径在抽象图上展开的节点数
+	 */
+	public int getLastExpandedCount() {
+		return _lastExpanded;
+	}
+
+	public Field2D getField() {
+		return _field;
+	}
+
+	@Override
+	public void close() {
+		_field.removeChangedListener(this);
+		_nodeOfCell = null;
+		_borders = null;
+		_clusterNodes = null;
+		_clusterDistances = null;
+		_dirtyClusters = null;
+		_stamps = null;
+		_costs = null;
+		_parents = null;
+		_nodeCells.clear();
+		_nodeRefs.clear();
+		_freeNodes.clear();
+		_nodePartners.clear();
+		_dirty = true;
+		_rebuildAll = true;
+	}
+
+	/**
+	 * 带索引的最小二叉堆(键为int编号,值为float优先级)
+	 */
+	private static class BinaryHeap {
+
+		int size;
+
+		int[] items = new int[0];
+
+		float[] priorities = new float[0];
+
+		int[] index = new int[0];
+
+		void ensure(int capacity) {
+			if (index.length < capacity) {
+				items = new int[capacity];
+				priorities = new float[capacity];
+				index = new int[capacity];
+				for (int i = 0; i < capacity; i++) {
+					index[i] = -1;
+				}
+				size = 0;
+			}
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				index[items[i]] = -1;
+			}
+			size = 0;
+		}
+
+		void push(int item, float priority) {
+			final int idx = size++;
+			items[idx] = item;
+			priorities[item] = priority;
+			index[item] = idx;
+			siftUp(idx);
+		}
+
+		void pushOrUpdate(int item, float priority) {
+			final int idx = index[item];
+			if (idx == -1) {
+				push(item, priority);
+			} else {
+				priorities[item] = priority;
+				siftUp(idx);
+			}
+		}
+
+		int pop() {
+			final int top = items[0];
+			final int last = items[--size];
+			index[top] = -1;
+			if (size > 0) {
+				items[0] = last;
+				index[last] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		private void siftUp(int idx) {
+			final int item = items[idx];
+			final float p = priorities[item];
+			while (idx > 0) {
+				final int parent = (idx - 1) >>> 1;
+				final int other = items[parent];
+				if (priorities[other] <= p) {
+					break;
+				}
+				items[idx] = other;
+				index[other] = idx;
+				idx = parent;
+			}
+			items[idx] = item;
+			index[item] = idx;
+		}
+
+		private void siftDown(int idx) {
+			final int item = items[idx];
+			final float p = priorities[item];
+			final int half = size >>> 1;
+			while (idx < half) {
+				int child = (idx << 1) + 1;
+				if (child + 1 < size && priorities[items[child + 1]] < priorities[items[child]]) {
+					child++;
+				}
+				final int other = items[child];
+				if (priorities[other] >= p) {
+					break;
+				}
+				items[idx] = other;
+				index[other] = idx;
+				idx = child;
+			}
+			items[idx] = item;
+			index[item] = idx;
+		}
+	}
+}
@@ -117,6 +117,8 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 
 	private Field2D field2d;
 
+	private FlowFieldCache flowFields;
+
 	private final PointF _scrollDrag = new PointF();
 
 	private final Vector2f _backgroundOffset = new Vector2f();
@@ -449,6 +451,7 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 			}
 		}
 		setFieldMap(maps);
+		invalidateFlowFields(-1, -1);
 		return this;
 	}
 
@@ -461,6 +464,7 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 			}
 		}
 		setFieldMap(maps);
+		invalidateFlowFields(-1, -1);
 		return this;
 	}
 
@@ -494,6 +498,7 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 		this.tiles = new TileImpl[cols][rows];
 		this.hexagons = new Hexagon[cols][rows];
 		this.setFieldMap(new int[cols][rows]);
+		this.invalidateFlowFields(-1, -1);
 		return this;
 	}
 
@@ -534,6 +539,7 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 		if (field2d != null) {
 			field2d.setLimit(limitTypes);
 		}
+		invalidateFlowFields(-1, -1);
 	}
 
 	public TileImpl getTile(float x, float y) {
@@ -547,7 +553,7 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 	public TileImpl getTile(int[] position) {
 		int x = position[0] + (position[1] >> 1);
 		int y = position[1];
-		if (y > -1 && y < cols && x > -1 && x < rows) {
+		if (x > -1 && x < cols && y > -1 && y < rows) {
 			return tiles[x][y];
 		}
 		return null;
@@ -567,6 +573,33 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 
 	public HexagonMap setTile(int[] position, TileImpl tile) {
 		tiles[position[0] + (position[1] >> 1)][position[1]] = tile;
+		invalidateFlowFields(position[0], position[1]);
+		return this;
+	}
+
+	/**
+	 * 获得此地图专用的流场缓存(大量单位前往同一目标时使用,通过setTile修改地图时自动增量修复)
+	 * 
+	 * @return
+	 */
+	public FlowFieldCache getFlowFields() {
+		if (flowFields == null) {
+			flowFields = new FlowFieldCache(this);
+		}
+		return flowFields;
+	}
+
+	/**
+	 * 通知流场指定格子已变化(直接修改TileImpl的id后需要调用,x与y为-1时表示整张地图)
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public HexagonMap invalidateFlowFields(int x, int y) {
+		if (flowFields != null) {
+			flowFields.invalidate(x, y);
+		}
 		return this;
 	}
 
@@ -1583,9 +1616,26 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 		}
 	}
 
+	/**
+	 * 按存储坐标(与getTileID相同)修改格子id,同时更新寻径与流场使用的TileImpl
+	 * 
+	 * @param x
+	 * @param y
+	 * @param id
+	 * @return
+	 */
 	public HexagonMap setTileID(int x, int y, int id) {
 		if (x >= 0 && x < field2d.getWidth() && y >= 0 && y < field2d.getHeight()) {
 			field2d.setTileType(x, y, id);
+			if (x < cols && y < rows) {
+				if (tiles[x][y] == null) {
+					tiles[x][y] = new TileImpl(id, x, y);
+				} else {
+					tiles[x][y].setId(id);
+				}
+			}
+			// 流场使用轴坐标
+			invalidateFlowFields(x - (y >> 1), y);
 		}
 		return this;
 	}
@@ -2430,6 +2480,10 @@ public class HexagonMap extends LObject<ISprite> implements FontSet<HexagonMap>,
 			_background.close();
 			_background = null;
 		}
+		if (flowFields != null) {
+			flowFields.close();
+			flowFields = null;
+		}
 		_resizeListener = null;
 		_collSpriteListener = null;
 		removeActionEvents(this);
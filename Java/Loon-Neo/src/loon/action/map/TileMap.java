@@ -25,12 +25,14 @@ import loon.LRelease;
 import loon.LSysException;
 import loon.LSystem;
 import loon.LTexture;
+import loon.LTextureBatch;
 import loon.LTexture.Format;
 import loon.LTextures;
 import loon.PlayerUtils;
 import loon.Screen;
 import loon.action.ActionBind;
 import loon.action.ActionTween;
+import loon.action.map.Field2D.FieldChangedListener;
 import loon.action.map.Field2D.MapSwitchMaker;
 import loon.action.map.colider.TileImpl;
 import loon.action.map.items.Attribute;
@@ -53,6 +55,8 @@ import loon.geom.XY;
 import loon.opengl.GLEx;
 import loon.opengl.LTexturePack;
 import loon.opengl.LTexturePackClip;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
 import loon.utils.MathUtils;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
@@ -62,6 +66,75 @@ import loon.utils.TArray;
  */
 public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized, ISprite {
 
+	// 分块缓存的边长(瓦片数)
+	public final static int CHUNK_SIZE = 16;
+
+	// 连续多少次绘制未进入可见范围的分块会被释放
+	private final static int CHUNK_EVICT_FRAMES = 60;
+
+	/**
+	 * 地图分块,静态瓦片的顶点被预先生成为一个缓存,动画瓦片单独记录,每帧另行绘制
+	 */
+	private static class TileChunk implements LRelease {
+
+		final int cx, cy;
+
+		// 块内动画瓦片的位置(x | y << 16)
+		final IntArray animations = new IntArray();
+
+		LTextureBatch.Cache cache;
+
+		float scaleX, scaleY;
+
+		boolean dirty = true;
+
+		int staticCount;
+
+		int stamp;
+
+		TileChunk(int cx, int cy) {
+			this.cx = cx;
+			this.cy = cy;
+		}
+
+		boolean needRebuild(float sx, float sy) {
+			return dirty || scaleX != sx || scaleY != sy || (staticCount > 0 && (cache == null || cache.isClosed()));
+		}
+
+		@Override
+		public void close() {
+			if (cache != null) {
+				cache.close();
+				cache = null;
+			}
+			animations.clear();
+			staticCount = 0;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * 监听Field2D中瓦片的变化,只标记受影响的分块
+	 */
+	private static class ChunkChangedListener implements FieldChangedListener {
+
+		private final TileMap _map;
+
+		ChunkChangedListener(TileMap map) {
+			this._map = map;
+		}
+
+		@Override
+		public void onTileChanged(Field2D field, int x, int y) {
+			if (x < 0 || y < 0) {
+				// 整张地图被替换时尺寸可能改变,直接丢弃全部分块
+				_map.clearChunks();
+			} else {
+				_map.invalidateChunk(x / CHUNK_SIZE, y / CHUNK_SIZE);
+			}
+		}
+	}
+
 	private int lastOffsetX, lastOffsetY;
 
 	private int firstTileX;
@@ -96,6 +169,17 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 
 	private TArray<Animation> _animations = new TArray<Animation>();
 
+	// 瓦片id到瓦片的索引,同一id以最后加入的为准
+	private final IntMap<TileImpl> _tileIndex = new IntMap<TileImpl>();
+
+	private final IntMap<TileChunk> _chunks = new IntMap<TileChunk>();
+
+	private final TArray<TileChunk> _chunkList = new TArray<TileChunk>();
+
+	private ChunkChangedListener _chunkListener;
+
+	private int _chunkStamp;
+
 	private final Vector2f _backgroundOffset = new Vector2f();
 
 	private final Vector2f _backgroundSize = new Vector2f();
@@ -227,6 +311,10 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 		this._mapSprites = new Sprites("TileMapSprites", screen == null ? LSystem.getProcess().getScreen() : screen,
 				_pixelInWidth, _pixelInHeight);
 		this._texturePack.setFormat(format);
+		if (field2d != null) {
+			this._chunkListener = new ChunkChangedListener(this);
+			field2d.addChangedListener(_chunkListener);
+		}
 	}
 
 	public static TileMap loadCharsMap(String resName, int tileWidth, int tileHeight) {
@@ -238,6 +326,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			_texturePack.close();
 			_texturePack = null;
 		}
+		this._dirty = true;
 		_texturePack = new LTexturePack(fileName, LTexturePackClip.getTextureSplit(fileName, tileWidth, tileHeight));
 		_texturePack.packed(_format);
 		return this;
@@ -291,6 +380,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			}
 		}
 		this._arrays = tiles;
+		this._tileIndex.remove(id);
 		if (_animations.size == 0) {
 			_playAnimation = false;
 		}
@@ -308,8 +398,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 				_playAnimation = true;
 			}
 			_animations.add(animation);
-			_arrays.add(tile);
-			_dirty = true;
+			addTile(tile);
 			return tile.getImgId();
 		} else {
 			throw new LSysException("Map is no longer active, you can not add new tiles !");
@@ -329,8 +418,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			TileImpl tile = new TileImpl(id);
 			tile.setImgId(_texturePack.putImage(img));
 			tile.setAttribute(attribute);
-			_arrays.add(tile);
-			_dirty = true;
+			addTile(tile);
 			return tile.getImgId();
 		} else {
 			throw new LSysException("Map is no longer active, you can not add new tiles !");
@@ -346,8 +434,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			TileImpl tile = new TileImpl(id);
 			tile.setImgId(_texturePack.putImage(img));
 			tile.setAttribute(attribute);
-			_arrays.add(tile);
-			_dirty = true;
+			addTile(tile);
 			return tile.getImgId();
 		} else {
 			throw new LSysException("Map is no longer active, you can not add new tiles !");
@@ -363,8 +450,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			TileImpl tile = new TileImpl(id);
 			tile.setImgId(_texturePack.putImage(res));
 			tile.setAttribute(attribute);
-			_arrays.add(tile);
-			_dirty = true;
+			addTile(tile);
 			return tile.getImgId();
 		} else {
 			throw new LSysException("Map is no longer active, you can not add new tiles !");
@@ -380,8 +466,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 			TileImpl tile = new TileImpl(id);
 			tile.setImgId(imgId);
 			tile.setAttribute(attribute);
-			_arrays.add(tile);
-			_dirty = true;
+			addTile(tile);
 		} else {
 			throw new LSysException("Map is no longer active, you can not add new tiles !");
 		}
@@ -392,16 +477,14 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 		return putTile(id, imgId, null);
 	}
 
+	private void addTile(TileImpl tile) {
+		_arrays.add(tile);
+		_tileIndex.put(tile.getId(), tile);
+		_dirty = true;
+	}
+
 	public TileImpl getTile(int id) {
-		final int size = _arrays.size;
-		final TArray<TileImpl> tiles = _arrays;
-		for (int i = size - 1; i > -1; i--) {
-			TileImpl tile = tiles.get(i);
-			if (tile != null && tile.getId() == id) {
-				return tile;
-			}
-		}
-		return null;
+		return _tileIndex.get(id);
 	}
 
 	@Override
@@ -519,96 +602,74 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 
 		if (_texturePack.size() > 0) {
 
-			this._dirty = this._dirty || !_texturePack.existCache();
-
-			if (!_dirty && lastOffsetX == offsetX && lastOffsetY == offsetY && lastTileScaleX == _scaleX
-					&& lastTileScaleY == _scaleY) {
+			if (_tileIndex.size == 0) {
+				throw new LSysException("Not to add any tiles !");
+			}
 
-				_texturePack.postCache();
+			if (_dirty) {
+				invalidateChunks();
+				_dirty = false;
+			}
 
-				if (_playAnimation) {
-					final int tileWidth = _field2d.getTileWidth();
-					final int tileHeight = _field2d.getTileHeight();
-					final int[][] maps = _field2d.getThisMap();
-					for (int i = firstTileX; i < lastTileX; i++) {
-						for (int j = firstTileY; j < lastTileY; j++) {
-							if (i > -1 && j > -1 && i < _field2d.getWidth() && j < _field2d.getHeight()) {
-								int id = maps[j][i];
-								final float posX = _field2d.tilesToWidthPixels(i) + offsetX;
-								final float posY = _field2d.tilesToHeightPixels(j) + offsetY;
-								final TArray<TileImpl> tiles = _arrays;
-								final int size = tiles.size;
-								for (int n = 0; n < size; n++) {
-									TileImpl tile = tiles.get(n);
-									if (tile.isAnimation() && tile.getId() == id) {
-										g.draw(tile.getAnimation().getSpriteImage(), posX * _scaleX, posY * _scaleY,
-												tileWidth * _scaleX, tileHeight * _scaleY, _baseColor);
-									}
-								}
-							}
-						}
+			firstTileX = _field2d.pixelsToTilesWidth(-offsetX * _scaleX);
+			firstTileY = _field2d.pixelsToTilesHeight(-offsetY * _scaleY);
+
+			lastTileX = firstTileX + _field2d.pixelsToTilesWidth(_pixelInWidth * _scaleX) + 4;
+			lastTileX = MathUtils.min(lastTileX, _field2d.getWidth());
+			lastTileY = firstTileY + _field2d.pixelsToTilesHeight(_pixelInHeight * _scaleY) + 4;
+			lastTileY = MathUtils.min(lastTileY, _field2d.getHeight());
+
+			final int firstChunkX = MathUtils.max(0, firstTileX) / CHUNK_SIZE;
+			final int firstChunkY = MathUtils.max(0, firstTileY) / CHUNK_SIZE;
+			final int lastChunkX = (lastTileX - 1) / CHUNK_SIZE;
+			final int lastChunkY = (lastTileY - 1) / CHUNK_SIZE;
+
+			_chunkStamp++;
+			// 静态瓦片按块绘制,未变化的块直接平移提交缓存的顶点
+			for (int cy = firstChunkY; cy <= lastChunkY; cy++) {
+				for (int cx = firstChunkX; cx <= lastChunkX; cx++) {
+					final TileChunk chunk = obtainChunk(cx, cy);
+					chunk.stamp = _chunkStamp;
+					final float originX = (_field2d.tilesToWidthPixels(cx * CHUNK_SIZE) + offsetX) * _scaleX;
+					final float originY = (_field2d.tilesToHeightPixels(cy * CHUNK_SIZE) + offsetY) * _scaleY;
+					if (chunk.needRebuild(_scaleX, _scaleY)) {
+						buildChunk(chunk, offsetX, offsetY, originX, originY);
+					} else if (chunk.staticCount > 0) {
+						_texturePack.getTextureBatch().postCache(chunk.cache, null, originX, originY);
 					}
 				}
-			} else {
-				if (_arrays.size == 0) {
-					throw new LSysException("Not to add any tiles !");
-				}
-
-				_texturePack.glBegin();
-
-				firstTileX = _field2d.pixelsToTilesWidth(-offsetX * _scaleX);
-				firstTileY = _field2d.pixelsToTilesHeight(-offsetY * _scaleY);
+			}
 
-				lastTileX = firstTileX + _field2d.pixelsToTilesWidth(_pixelInWidth * _scaleX) + 4;
-				lastTileX = MathUtils.min(lastTileX, _field2d.getWidth());
-				lastTileY = firstTileY + _field2d.pixelsToTilesHeight(_pixelInHeight * _scaleY) + 4;
-				lastTileY = MathUtils.min(lastTileY, _field2d.getHeight());
-				final int width = _field2d.getWidth();
-				final int height = _field2d.getHeight();
+			// 动画瓦片每帧都会变化,只绘制可见块中记录的少量位置
+			if (_playAnimation) {
 				final int tileWidth = _field2d.getTileWidth();
 				final int tileHeight = _field2d.getTileHeight();
 				final int[][] maps = _field2d.getThisMap();
-				for (int i = firstTileX; i < lastTileX; i++) {
-					for (int j = firstTileY; j < lastTileY; j++) {
-						if (i > -1 && j > -1 && i < width && j < height) {
-							int id = maps[j][i];
-							final float posX = _field2d.tilesToWidthPixels(i) + offsetX;
-							final float posY = _field2d.tilesToHeightPixels(j) + offsetY;
-							final TArray<TileImpl> tiles = _arrays;
-							final int size = tiles.size;
-							final float newPosX = posX * _scaleX;
-							final float newPosY = posY * _scaleY;
-							for (int n = 0; n < size; n++) {
-								TileImpl tile = tiles.get(n);
-								if (_playAnimation) {
-									if (tile.getId() == id) {
-										if (tile.isAnimation()) {
-											g.draw(tile.getAnimation().getSpriteImage(), newPosX, newPosY,
-													tileWidth * _scaleX, tileHeight * _scaleY, _baseColor);
-										} else {
-											_texturePack.draw(tile.getImgId(), newPosX, newPosY, tileWidth * _scaleX,
-													tileHeight * _scaleY, _baseColor);
-										}
-									}
-								} else if (tile.getId() == id) {
-									_texturePack.draw(tile.getImgId(), newPosX, newPosY, tileWidth * _scaleX,
-											tileHeight * _scaleY);
-								}
+				for (int cy = firstChunkY; cy <= lastChunkY; cy++) {
+					for (int cx = firstChunkX; cx <= lastChunkX; cx++) {
+						final IntArray cells = obtainChunk(cx, cy).animations;
+						for (int n = 0; n < cells.length; n++) {
+							final int cell = cells.get(n);
+							final int i = cell & 0xFFFF;
+							final int j = cell >>> 16;
+							final TileImpl tile = _tileIndex.get(maps[j][i]);
+							if (tile != null && tile.isAnimation()) {
+								final float posX = _field2d.tilesToWidthPixels(i) + offsetX;
+								final float posY = _field2d.tilesToHeightPixels(j) + offsetY;
+								g.draw(tile.getAnimation().getSpriteImage(), posX * _scaleX, posY * _scaleY,
+										tileWidth * _scaleX, tileHeight * _scaleY, _baseColor);
 							}
 						}
 					}
 				}
+			}
 
-				_texturePack.glEnd();
-				_texturePack.saveCache();
-
-				lastOffsetX = offsetX;
-				lastOffsetY = offsetY;
-				lastTileScaleX = _scaleX;
-				lastTileScaleY = _scaleY;
+			evictChunks();
 
-				_dirty = false;
-			}
+			lastOffsetX = offsetX;
+			lastOffsetY = offsetY;
+			lastTileScaleX = _scaleX;
+			lastTileScaleY = _scaleY;
 		}
 
 		if (_drawListener != null) {
@@ -616,6 +677,114 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 		}
 	}
 
+	private TileChunk obtainChunk(int cx, int cy) {
+		final int key = cy * chunkColumns() + cx;
+		TileChunk chunk = _chunks.get(key);
+		if (chunk == null) {
+			chunk = new TileChunk(cx, cy);
+			_chunks.put(key, chunk);
+			_chunkList.add(chunk);
+		}
+		return chunk;
+	}
+
+	private int chunkColumns() {
+		return (_field2d.getWidth() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+	/**
+	 * 重建一个分块,静态瓦片按当前位置绘制并保存为缓存,之后以块的原点平移提交
+	 */
+	private void buildChunk(TileChunk chunk, int offsetX, int offsetY, float originX, float originY) {
+		if (chunk.cache != null) {
+			chunk.cache.close();
+			chunk.cache = null;
+		}
+		chunk.animations.clear();
+		chunk.staticCount = 0;
+		chunk.scaleX = _scaleX;
+		chunk.scaleY = _scaleY;
+		final int startX = chunk.cx * CHUNK_SIZE;
+		final int startY = chunk.cy * CHUNK_SIZE;
+		final int endX = MathUtils.min(startX + CHUNK_SIZE, _field2d.getWidth());
+		final int endY = MathUtils.min(startY + CHUNK_SIZE, _field2d.getHeight());
+		final int tileWidth = _field2d.getTileWidth();
+		final int tileHeight = _field2d.getTileHeight();
+		final int[][] maps = _field2d.getThisMap();
+		boolean begin = false;
+		for (int i = startX; i < endX; i++) {
+			for (int j = startY; j < endY; j++) {
+				final TileImpl tile = _tileIndex.get(maps[j][i]);
+				if (tile == null) {
+					continue;
+				}
+				if (tile.isAnimation()) {
+					chunk.animations.add(i | (j << 16));
+					continue;
+				}
+				if (!begin) {
+					_texturePack.glBegin();
+					begin = true;
+				}
+				final float posX = _field2d.tilesToWidthPixels(i) + offsetX;
+				final float posY = _field2d.tilesToHeightPixels(j) + offsetY;
+				_texturePack.draw(tile.getImgId(), posX * _scaleX, posY * _scaleY, tileWidth * _scaleX,
+						tileHeight * _scaleY, _baseColor);
+				chunk.staticCount++;
+			}
+		}
+		if (begin) {
+			_texturePack.glEnd();
+			if (_texturePack.isBatch()) {
+				chunk.cache = _texturePack.getTextureBatch().newCache();
+				if (chunk.cache != null) {
+					chunk.cache.x = -originX;
+					chunk.cache.y = -originY;
+				}
+			}
+		}
+		chunk.dirty = false;
+	}
+
+	/**
+	 * 释放长时间未进入可见范围的分块
+	 */
+	private void evictChunks() {
+		for (int i = _chunkList.size - 1; i > -1; i--) {
+			final TileChunk chunk = _chunkList.get(i);
+			if (_chunkStamp - chunk.stamp > CHUNK_EVICT_FRAMES) {
+				_chunks.remove(chunk.cy * chunkColumns() + chunk.cx);
+				_chunkList.removeIndex(i);
+				chunk.close();
+			}
+		}
+	}
+
+	private void invalidateChunk(int cx, int cy) {
+		final TileChunk chunk = _chunks.get(cy * chunkColumns() + cx);
+		if (chunk != null) {
+			chunk.dirty = true;
+		}
+	}
+
+	private void invalidateChunks() {
+		for (int i = 0; i < _chunkList.size; i++) {
+			_chunkList.get(i).dirty = true;
+		}
+	}
+
+	private void clearChunks() {
+		for (int i = 0; i < _chunkList.size; i++) {
+			_chunkList.get(i).close();
+		}
+		_chunkList.clear();
+		_chunks.clear();
+	}
+
+	public int getChunkCount() {
+		return _chunkList.size;
+	}
+
 	public float getTileScale() {
 		return MathUtils.max(_scaleX, _scaleY);
 	}
@@ -1493,6 +1662,7 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 
 	public TileMap clearAllTiles() {
 		_arrays.clear();
+		_tileIndex.clear();
 		_animations.clear();
 		_playAnimation = false;
 		_dirty = true;
@@ -1820,6 +1990,12 @@ public class TileMap extends LObject<ISprite> implements TileMapCollision, Sized
 		_playAnimation = false;
 		_roll = false;
 		_animations.clear();
+		_tileIndex.clear();
+		clearChunks();
+		if (_chunkListener != null && _field2d != null) {
+			_field2d.removeChangedListener(_chunkListener);
+			_chunkListener = null;
+		}
 		if (_texturePack != null) {
 			_texturePack.close();
 			_texturePack = null;
@@ -80,6 +80,8 @@ public class BattleAI {
 	public static boolean ENABLE_FORMATION_AI = true;
 	public static boolean ENABLE_ULTIMATE_AI = true;
 	public static boolean ENABLE_FOCUS_FIRE = true;
+	// 使用地图势力图查询范围内单位与威胁(关闭时逐个遍历地图单位)
+	public static boolean ENABLE_INFLUENCE_MAP = true;
 
 	public AIStyle currentStyle = AIStyle.NORMAL;
 
@@ -145,6 +147,10 @@ public class BattleAI {
 	private float hatredDecayRate = 0.8f;
 	// 阵型保持距离
 	private static final int FORMATION_DISTANCE = 2;
+	// 势力图及本次更新时按敌我分好的存活单位
+	private BattleInfluenceMap influenceMap;
+	private final TArray<BattleMapObject> enemyUnits = new TArray<BattleMapObject>();
+	private final TArray<BattleMapObject> allyUnits = new TArray<BattleMapObject>();
 
 	public BattleAI(BattleMap map, BattleMapObject controlledUnit) {
 		this.battleMap = map;
@@ -206,6 +212,7 @@ public class BattleAI {
 		if (controlledUnit.isDisabled() || isUnitControlled) {
 			return;
 		}
+		updateInfluence();
 
 		cachedEnergy = controlledUnit.getMana();
 		cachedHpRate = controlledUnit.getHpRate();
@@ -227,6 +234,42 @@ public class BattleAI {
 		makeDecision();
 	}
 
+	/**
+	 * 更新势力图,并取出本单位的敌方与友方单位
+	 */
+	protected void updateInfluence() {
+		enemyUnits.clear();
+		allyUnits.clear();
+		if (!ENABLE_INFLUENCE_MAP || battleMap == null) {
+			influenceMap = null;
+			return;
+		}
+		influenceMap = battleMap.getInfluenceMap().update();
+		final int team = controlledUnit.getTeam();
+		final TArray<BattleInfluenceMap.Layer> layers = influenceMap.getLayers();
+		for (int i = 0; i < layers.size; i++) {
+			final BattleInfluenceMap.Layer layer = layers.get(i);
+			if (BattleInfluenceMap.isEnemyTeam(team, layer.getTeam())) {
+				enemyUnits.addAll(layer.getUnits());
+			}
+			if (BattleInfluenceMap.isAllyTeam(team, layer.getTeam())) {
+				allyUnits.addAll(layer.getUnits());
+			}
+		}
+	}
+
+	private TArray<BattleMapObject> enemies() {
+		return influenceMap == null ? battleMap.getObjects() : enemyUnits;
+	}
+
+	private TArray<BattleMapObject> allies() {
+		return influenceMap == null ? battleMap.getObjects() : allyUnits;
+	}
+
+	public BattleInfluenceMap getInfluenceMap() {
+		return influenceMap;
+	}
+
 	protected void decayHatredOver() {
 		ObjectMap.Entries<BattleMapObject, Float> entries = hatredMap.entries();
 		for (ObjectMap.Entries<BattleMapObject, Float> it = entries.iterator(); it.hasNext();) {
@@ -241,6 +284,9 @@ public class BattleAI {
 	}
 
 	protected BattleMapObject getTauntTarget() {
+		if (influenceMap != null) {
+			return influenceMap.getEnemyTaunt(controlledUnit);
+		}
 		TArray<BattleMapObject> units = battleMap.getObjects();
 		for (BattleMapObject u : units) {
 			if (u.isTaunting() && u.isEnemyOf(controlledUnit)) {
@@ -536,7 +582,7 @@ public class BattleAI {
 		if (battleMap == null) {
 			return;
 		}
-		for (BattleMapObject ally : battleMap.getObjects()) {
+		for (BattleMapObject ally : allies()) {
 			if (ally == null || !ally.isAllyOf(controlledUnit) || ally.isDead()) {
 				continue;
 			}
@@ -651,19 +697,12 @@ public class BattleAI {
 					continue;
 				}
 				int hit = countEnemiesInRange(cx, cy, d);
-				int allyHit = countAlliesInRange(cx, cy, d);
-				if (AOE_SKILL_NEED_FRIENDLY_CHECK) {
-					if (AOE_HIT_FRIENDLY || allyHit == 0) {
-						if (hit > maxHit) {
-							maxHit = hit;
-							best = new PointI(cx, cy);
-						}
-					}
-				} else {
-					if (hit > maxHit) {
-						maxHit = hit;
-						best = new PointI(cx, cy);
-					}
+				if (hit <= maxHit) {
+					continue;
+				}
+				if (!AOE_SKILL_NEED_FRIENDLY_CHECK || AOE_HIT_FRIENDLY || countAlliesInRange(cx, cy, d) == 0) {
+					maxHit = hit;
+					best = new PointI(cx, cy);
 				}
 			}
 		}
@@ -690,7 +729,7 @@ public class BattleAI {
 	}
 
 	protected BattleMapObject findRandomEnemy() {
-		TArray<BattleMapObject> units = battleMap.getObjects();
+		TArray<BattleMapObject> units = enemies();
 		for (BattleMapObject u : units) {
 			if (u.isEnemyOf(controlledUnit) && !u.isDead()) {
 				return u;
@@ -701,7 +740,7 @@ public class BattleAI {
 
 	protected BattleMapObject findBestEnemyTarget(float max) {
 		BattleMapObject best = null;
-		TArray<BattleMapObject> units = battleMap.getObjects();
+		TArray<BattleMapObject> units = enemies();
 		for (BattleMapObject u : units) {
 			if (!u.isEnemyOf(controlledUnit) || u.isDead()) {
 				continue;
@@ -765,6 +804,9 @@ public class BattleAI {
 	}
 
 	protected int countAlliesInRange(int cx, int cy, int d) {
+		if (influenceMap != null) {
+			return influenceMap.countAllies(controlledUnit, cx, cy, d);
+		}
 		int c = 0;
 		PointI p = new PointI(cx, cy);
 		for (BattleMapObject u : battleMap.getObjects()) {
@@ -814,7 +856,7 @@ public class BattleAI {
 		}
 		BattleMapObject nearest = null;
 		int minDist = bestMax;
-		for (BattleMapObject u : battleMap.getObjects()) {
+		for (BattleMapObject u : allies()) {
 			if (u == null || !u.isAllyOf(controlledUnit) || u.isDead()) {
 				continue;
 			}
@@ -1002,6 +1044,9 @@ public class BattleAI {
 	}
 
 	protected int countEnemiesInRange(int cx, int cy, int d) {
+		if (influenceMap != null) {
+			return influenceMap.countEnemies(controlledUnit, cx, cy, d);
+		}
 		int c = 0;
 		final PointI p = new PointI();
 		final TArray<BattleMapObject> units = battleMap.getObjects();
@@ -1018,7 +1063,7 @@ public class BattleAI {
 
 	protected BattleMapObject findWoundedTeammate(float min) {
 		BattleMapObject worst = null;
-		final TArray<BattleMapObject> units = battleMap.getObjects();
+		final TArray<BattleMapObject> units = allies();
 		for (BattleMapObject u : units) {
 			if (u.isAllyOf(controlledUnit) && !u.isDead()) {
 				float r = u.getHpRate();
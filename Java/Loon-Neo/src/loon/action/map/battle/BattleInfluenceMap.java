@@ -0,0 +1,666 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.map.battle;
+
+import loon.LRelease;
+import loon.action.map.items.RoleValue;
+import loon.action.map.items.Team;
+import loon.geom.PointI;
+import loon.utils.IntArray;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 战斗地图的势力图(按队伍统计的单位密度,威胁值与可达距离),供BattleAI查询.
+ *
+ * 每个队伍一层,单位移动,死亡或离开地图时只修改其所在格子(以及威胁覆盖的格子),不会重建整张图.
+ * 密度层为每行维护前缀和,查询与BattleAI相同的圆形范围(floor(距离) <= d)内的单位数只需O(d),
+ * 威胁层与单格密度为O(1),可达距离(以可通行格子计算的步数)在对应队伍变化后首次查询时重建.
+ *
+ * 敌友关系与RoleValue.isEnemyOf/isAllyOf一致,由各队伍层相加减得到.
+ */
+public class BattleInfluenceMap implements LRelease {
+
+	/**
+	 * 单个队伍的势力层
+	 */
+	public static class Layer {
+
+		private final int _team;
+
+		private final int _width, _height;
+
+		// 每格单位数
+		private final int[] _counts;
+
+		// 每行前缀和,每行width+1个
+		private final int[] _rowSums;
+
+		// 每格受到的威胁值
+		private final float[] _threats;
+
+		// 到本队最近单位的步数
+		private int[] _distances;
+
+		private boolean _distanceDirty = true;
+
+		private final TArray<BattleMapObject> _units = new TArray<BattleMapObject>();
+
+		private final TArray<BattleMapObject> _taunts = new TArray<BattleMapObject>();
+
+		private int _size;
+
+		Layer(int team, int w, int h) {
+			this._team = team;
+			this._width = w;
+			this._height = h;
+			this._counts = new int[w * h];
+			this._rowSums = new int[(w + 1) * h];
+			this._threats = new float[w * h];
+		}
+
+		void add(int x, int y, int v) {
+			_counts[y * _width + x] += v;
+			final int row = y * (_width + 1);
+			for (int i = x + 1; i <= _width; i++) {
+				_rowSums[row + i] += v;
+			}
+			_size += v;
+			_distanceDirty = true;
+		}
+
+		void addThreat(int x, int y, int reach, float v, int[] spans) {
+			final int top = MathUtils.max(0, y - reach);
+			final int bottom = MathUtils.min(_height - 1, y + reach);
+			for (int ty = top; ty <= bottom; ty++) {
+				final int span = spans[MathUtils.abs(ty - y)];
+				final int left = MathUtils.max(0, x - span);
+				final int right = MathUtils.min(_width - 1, x + span);
+				final int row = ty * _width;
+				for (int tx = left; tx <= right; tx++) {
+					_threats[row + tx] += v;
+				}
+			}
+		}
+
+		int count(int cx, int cy, int d, int[] spans) {
+			final int top = MathUtils.max(0, cy - d);
+			final int bottom = MathUtils.min(_height - 1, cy + d);
+			int c = 0;
+			for (int y = top; y <= bottom; y++) {
+				final int span = spans[MathUtils.abs(y - cy)];
+				final int left = MathUtils.max(0, cx - span);
+				final int right = MathUtils.min(_width - 1, cx + span);
+				if (left <= right) {
+					final int row = y * (_width + 1);
+					c += _rowSums[row + right + 1] - _rowSums[row + left];
+				}
+			}
+			return c;
+		}
+
+		int countRect(int x1, int y1, int x2, int y2) {
+			final int left = MathUtils.max(0, x1);
+			final int right = MathUtils.min(_width - 1, x2);
+			final int top = MathUtils.max(0, y1);
+			final int bottom = MathUtils.min(_height - 1, y2);
+			if (left > right) {
+				return 0;
+			}
+			int c = 0;
+			for (int y = top; y <= bottom; y++) {
+				final int row = y * (_width + 1);
+				c += _rowSums[row + right + 1] - _rowSums[row + left];
+			}
+			return c;
+		}
+
+		void buildDistances(BattleMap map, IntArray queue) {
+			if (_distances == null) {
+				_distances = new int[_width * _height];
+			}
+			final int[] dist = _distances;
+			for (int i = 0; i < dist.length; i++) {
+				dist[i] = -1;
+			}
+			queue.clear();
+			for (int i = 0; i < _counts.length; i++) {
+				if (_counts[i] > 0) {
+					dist[i] = 0;
+					queue.add(i);
+				}
+			}
+			final BattleTile[][] tiles = map.getTileMap();
+			for (int head = 0; head < queue.length; head++) {
+				final int idx = queue.get(head);
+				final int x = idx % _width;
+				final int y = idx / _width;
+				final int next = dist[idx] + 1;
+				for (int dir = 0; dir < 4; dir++) {
+					final int nx = x + (dir == 0 ? 1 : dir == 1 ? -1 : 0);
+					final int ny = y + (dir == 2 ? 1 : dir == 3 ? -1 : 0);
+					if (nx < 0 || ny < 0 || nx >= _width || ny >= _height) {
+						continue;
+					}
+					final int nidx = ny * _width + nx;
+					if (dist[nidx] != -1) {
+						continue;
+					}
+					final BattleTile tile = tiles[nx][ny];
+					if (tile == null || !tile.isPassable()) {
+						continue;
+					}
+					dist[nidx] = next;
+					queue.add(nidx);
+				}
+			}
+			_distanceDirty = false;
+		}
+
+		public int getTeam() {
+			return _team;
+		}
+
+		/**
+		 * 本队存活的单位(按地图中的顺序)
+		 *
+		 * @return
+		 */
+		public TArray<BattleMapObject> getUnits() {
+			return _units;
+		}
+
+		/**
+		 * 本队正在嘲讽的单位
+		 *
+		 * @return
+		 */
+		public TArray<BattleMapObject> getTauntUnits() {
+			return _taunts;
+		}
+
+		public int size() {
+			return _size;
+		}
+	}
+
+	/**
+	 * 单位在势力图中的记录(直接挂在单位上,不依赖Role的equals)
+	 */
+	static class Record {
+
+		final BattleInfluenceMap owner;
+
+		final BattleMapObject unit;
+
+		boolean placed;
+
+		int x, y, team;
+
+		int reach;
+
+		float threat;
+
+		int stamp;
+
+		Record(BattleInfluenceMap owner, BattleMapObject unit) {
+			this.owner = owner;
+			this.unit = unit;
+		}
+	}
+
+	private final BattleMap _battleMap;
+
+	private final TArray<Record> _records = new TArray<Record>();
+
+	private final IntMap<Layer> _teamLayers = new IntMap<Layer>();
+
+	private final TArray<Layer> _layers = new TArray<Layer>();
+
+	private final TArray<int[]> _spans = new TArray<int[]>();
+
+	private final IntArray _queue = new IntArray();
+
+	private Layer _total;
+
+	private int _width, _height;
+
+	private int _stamp;
+
+	public BattleInfluenceMap(BattleMap map) {
+		this._battleMap = map;
+	}
+
+	/**
+	 * 以地图当前的单位状态更新势力图,只有位置,队伍或存活状态变化的单位会修改对应格子(威胁值只对这些单位重新计算)
+	 */
+	public BattleInfluenceMap update() {
+		return update(false);
+	}
+
+	/**
+	 * 更新势力图,并重新计算所有单位的威胁值(用于回合开始时攻击力,技能发生变化)
+	 */
+	public BattleInfluenceMap refresh() {
+		return update(true);
+	}
+
+	private BattleInfluenceMap update(boolean full) {
+		final BattleTile[][] tiles = _battleMap.getTileMap();
+		final int w = tiles == null ? 0 : tiles.length;
+		final int h = w == 0 ? 0 : tiles[0].length;
+		if (w != _width || h != _height || _total == null) {
+			reset(w, h);
+		}
+		final int stamp = ++_stamp;
+		for (int i = 0; i < _layers.size; i++) {
+			final Layer layer = _layers.get(i);
+			layer._units.clear();
+			layer._taunts.clear();
+		}
+		final TArray<BattleMapObject> objects = _battleMap.getObjects();
+		for (int i = 0; i < objects.size; i++) {
+			final BattleMapObject o = objects.get(i);
+			if (o == null) {
+				continue;
+			}
+			Record rec = o._influenceRecord;
+			if (rec == null || rec.owner != this) {
+				rec = new Record(this, o);
+				o._influenceRecord = rec;
+				_records.add(rec);
+			}
+			rec.stamp = stamp;
+			final boolean alive = !o.isDead();
+			final PointI pos = o.currentMapTile;
+			final int team = o.getTeam();
+			final boolean inside = pos.x >= 0 && pos.y >= 0 && pos.x < _width && pos.y < _height;
+			final int reach = alive ? o.getMovePoints() + o.getBaseAttackRange() : 0;
+			final boolean changed = !rec.placed || !alive || !inside || rec.x != pos.x || rec.y != pos.y
+					|| rec.team != team || rec.reach != reach;
+			final float threat = alive ? ((full || changed) ? getUnitThreat(o) : rec.threat) : 0f;
+			if (rec.placed && (changed || rec.threat != threat)) {
+				unplace(rec);
+			}
+			if (alive && inside && !rec.placed) {
+				place(rec, pos.x, pos.y, team, reach, threat);
+			}
+			if (alive) {
+				final Layer layer = layer(team);
+				layer._units.add(o);
+				if (o.isTaunting()) {
+					layer._taunts.add(o);
+				}
+			}
+		}
+		for (int i = _records.size - 1; i > -1; i--) {
+			final Record rec = _records.get(i);
+			if (rec.stamp != stamp) {
+				if (rec.placed) {
+					unplace(rec);
+				}
+				if (rec.unit._influenceRecord == rec) {
+					rec.unit._influenceRecord = null;
+				}
+				_records.removeIndex(i);
+			}
+		}
+		return this;
+	}
+
+	private void reset(int w, int h) {
+		_width = w;
+		_height = h;
+		_teamLayers.clear();
+		_layers.clear();
+		_total = new Layer(Team.Unknown, w, h);
+		for (int i = 0; i < _records.size; i++) {
+			_records.get(i).placed = false;
+		}
+	}
+
+	private Layer layer(int team) {
+		Layer layer = _teamLayers.get(team);
+		if (layer == null) {
+			layer = new Layer(team, _width, _height);
+			_teamLayers.put(team, layer);
+			_layers.add(layer);
+		}
+		return layer;
+	}
+
+	private void place(Record rec, int x, int y, int team, int reach, float threat) {
+		rec.placed = true;
+		rec.x = x;
+		rec.y = y;
+		rec.team = team;
+		rec.reach = reach;
+		rec.threat = threat;
+		final Layer layer = layer(team);
+		layer.add(x, y, 1);
+		_total.add(x, y, 1);
+		if (threat != 0f) {
+			final int[] spans = spans(reach);
+			layer.addThreat(x, y, reach, threat, spans);
+			_total.addThreat(x, y, reach, threat, spans);
+		}
+	}
+
+	private void unplace(Record rec) {
+		rec.placed = false;
+		final Layer layer = layer(rec.team);
+		layer.add(rec.x, rec.y, -1);
+		_total.add(rec.x, rec.y, -1);
+		if (rec.threat != 0f) {
+			final int[] spans = spans(rec.reach);
+			layer.addThreat(rec.x, rec.y, rec.reach, -rec.threat, spans);
+			_total.addThreat(rec.x, rec.y, rec.reach, -rec.threat, spans);
+		}
+	}
+
+	/**
+	 * 半径d的圆形范围内,与中心纵向相差dy的一行向左右各延伸的格数(与PointI.distanceTo取整后的判定一致)
+	 */
+	private int[] spans(int d) {
+		for (int i = _spans.size; i <= d; i++) {
+			final int[] span = new int[i + 1];
+			final int limit = (i + 1) * (i + 1) - 1;
+			for (int dy = 0; dy <= i; dy++) {
+				final int rest = limit - dy * dy;
+				int dx = (int) MathUtils.sqrt(rest);
+				for (; dx * dx > rest;) {
+					dx--;
+				}
+				for (; (dx + 1) * (dx + 1) <= rest;) {
+					dx++;
+				}
+				span[dy] = dx;
+			}
+			_spans.add(span);
+		}
+		return _spans.get(d);
+	}
+
+	/**
+	 * 单位的威胁值(与BattleAI的评估方式相同)
+	 *
+	 * @param unit
+	 * @return
+	 */
+	protected float getUnitThreat(BattleMapObject unit) {
+		final float controlBonus = unit.hasControlSkill() ? 1.5f : 1f;
+		return (unit.getAttack() + unit.getMaxSkillDamage() * 0.7f) * 0.1f * controlBonus;
+	}
+
+	public static boolean isEnemyTeam(int observer, int team) {
+		return team != observer && team != Team.Ally;
+	}
+
+	public static boolean isAllyTeam(int observer, int team) {
+		return team == observer || observer == Team.Ally;
+	}
+
+	private boolean inside(int x, int y) {
+		return x >= 0 && y >= 0 && x < _width && y < _height;
+	}
+
+	/**
+	 * 以(cx,cy)为中心,距离d以内(floor(距离) <= d)与observer敌对的存活单位数
+	 *
+	 * @param observer
+	 * @param cx
+	 * @param cy
+	 * @param d
+	 * @return
+	 */
+	public int countEnemies(RoleValue observer, int cx, int cy, int d) {
+		if (_total == null || d < 0) {
+			return 0;
+		}
+		final int[] spans = spans(d);
+		final int team = observer.getTeam();
+		int c = _total.count(cx, cy, d, spans);
+		final Layer own = _teamLayers.get(team);
+		if (own != null) {
+			c -= own.count(cx, cy, d, spans);
+		}
+		if (team != Team.Ally) {
+			final Layer ally = _teamLayers.get(Team.Ally);
+			if (ally != null) {
+				c -= ally.count(cx, cy, d, spans);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * 以(cx,cy)为中心,距离d以内(floor(距离) <= d)与observer友好的存活单位数(包含observer自身)
+	 *
+	 * @param observer
+	 * @param cx
+	 * @param cy
+	 * @param d
+	 * @return
+	 */
+	public int countAllies(RoleValue observer, int cx, int cy, int d) {
+		if (_total == null || d < 0) {
+			return 0;
+		}
+		final int[] spans = spans(d);
+		final int team = observer.getTeam();
+		if (team == Team.Ally) {
+			return _total.count(cx, cy, d, spans);
+		}
+		final Layer own = _teamLayers.get(team);
+		return own == null ? 0 : own.count(cx, cy, d, spans);
+	}
+
+	/**
+	 * 指定矩形内与observer敌对的存活单位数
+	 *
+	 * @return
+	 */
+	public int countEnemiesInRect(RoleValue observer, int x1, int y1, int x2, int y2) {
+		if (_total == null) {
+			return 0;
+		}
+		final int team = observer.getTeam();
+		int c = _total.countRect(x1, y1, x2, y2);
+		final Layer own = _teamLayers.get(team);
+		if (own != null) {
+			c -= own.countRect(x1, y1, x2, y2);
+		}
+		if (team != Team.Ally) {
+			final Layer ally = _teamLayers.get(Team.Ally);
+			if (ally != null) {
+				c -= ally.countRect(x1, y1, x2, y2);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * 格子上与observer敌对的存活单位数
+	 *
+	 * @return
+	 */
+	public int getEnemyDensity(RoleValue observer, int x, int y) {
+		if (_total == null || !inside(x, y)) {
+			return 0;
+		}
+		final int idx = y * _width + x;
+		final int team = observer.getTeam();
+		int c = _total._counts[idx];
+		final Layer own = _teamLayers.get(team);
+		if (own != null) {
+			c -= own._counts[idx];
+		}
+		if (team != Team.Ally) {
+			final Layer ally = _teamLayers.get(Team.Ally);
+			if (ally != null) {
+				c -= ally._counts[idx];
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * 格子上与observer友好的存活单位数
+	 *
+	 * @return
+	 */
+	public int getAllyDensity(RoleValue observer, int x, int y) {
+		if (_total == null || !inside(x, y)) {
+			return 0;
+		}
+		final int idx = y * _width + x;
+		final int team = observer.getTeam();
+		if (team == Team.Ally) {
+			return _total._counts[idx];
+		}
+		final Layer own = _teamLayers.get(team);
+		return own == null ? 0 : own._counts[idx];
+	}
+
+	/**
+	 * 格子受到observer敌方的威胁值合计(敌方单位移动力加攻击距离覆盖的格子都计入)
+	 *
+	 * @return
+	 */
+	public float getThreat(RoleValue observer, int x, int y) {
+		if (_total == null || !inside(x, y)) {
+			return 0f;
+		}
+		final int idx = y * _width + x;
+		final int team = observer.getTeam();
+		float v = _total._threats[idx];
+		final Layer own = _teamLayers.get(team);
+		if (own != null) {
+			v -= own._threats[idx];
+		}
+		if (team != Team.Ally) {
+			final Layer ally = _teamLayers.get(Team.Ally);
+			if (ally != null) {
+				v -= ally._threats[idx];
+			}
+		}
+		return MathUtils.max(v, 0f);
+	}
+
+	/**
+	 * 从格子出发经可通行格子到达指定队伍最近单位的步数,无法到达时返回-1
+	 *
+	 * @return
+	 */
+	public int getTeamDistance(int team, int x, int y) {
+		final Layer layer = _teamLayers.get(team);
+		if (layer == null || layer._size == 0 || !inside(x, y)) {
+			return -1;
+		}
+		if (layer._distanceDirty) {
+			layer.buildDistances(_battleMap, _queue);
+		}
+		return layer._distances[y * _width + x];
+	}
+
+	/**
+	 * 从格子出发经可通行格子到达最近的observer敌方单位的步数,无法到达时返回-1
+	 *
+	 * @return
+	 */
+	public int getEnemyDistance(RoleValue observer, int x, int y) {
+		final int team = observer.getTeam();
+		int min = -1;
+		for (int i = 0; i < _layers.size; i++) {
+			final Layer layer = _layers.get(i);
+			if (!isEnemyTeam(team, layer._team)) {
+				continue;
+			}
+			final int d = getTeamDistance(layer._team, x, y);
+			if (d != -1 && (min == -1 || d < min)) {
+				min = d;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * 正在嘲讽的observer敌方单位(按队伍顺序的第一个)
+	 *
+	 * @param observer
+	 * @return
+	 */
+	public BattleMapObject getEnemyTaunt(RoleValue observer) {
+		final int team = observer.getTeam();
+		for (int i = 0; i < _layers.size; i++) {
+			final Layer layer = _layers.get(i);
+			if (layer._taunts.size > 0 && isEnemyTeam(team, layer._team)) {
+				return layer._taunts.get(0);
+			}
+		}
+		return null;
+	}
+
+	public Layer getLayer(int team) {
+		return _teamLayers.get(team);
+	}
+
+	/**
+	 * 所有队伍层(按队伍首次出现的顺序)
+	 *
+	 * @return
+	 */
+	public TArray<Layer> getLayers() {
+		return _layers;
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	public BattleMap getBattleMap() {
+		return _battleMap;
+	}
+
+	public void clear() {
+		for (int i = 0; i < _records.size; i++) {
+			final Record rec = _records.get(i);
+			if (rec.unit._influenceRecord == rec) {
+				rec.unit._influenceRecord = null;
+			}
+		}
+		_records.clear();
+		_teamLayers.clear();
+		_layers.clear();
+		_total = null;
+		_width = _height = 0;
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+}
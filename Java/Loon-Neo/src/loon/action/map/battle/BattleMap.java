@@ -141,6 +141,8 @@ public class BattleMap extends LObject<ISprite> implements TileMapCollision, Siz
 
 	private final TArray<PointI> _strategicPoint = new TArray<PointI>();
 
+	private BattleInfluenceMap _influenceMap;
+
 	protected final TArray<BattleMapObject> _mapObjects = new TArray<BattleMapObject>();
 
 	private BattleMapObject _cameraTarget = null;
@@ -666,6 +668,9 @@ public class BattleMap extends LObject<ISprite> implements TileMapCollision, Siz
 				o.onTurnBegin();
 			}
 		}
+		if (_influenceMap != null) {
+			_influenceMap.refresh();
+		}
 	}
 
 	public void onTurnEnd() {
@@ -1105,6 +1110,19 @@ public class BattleMap extends LObject<ISprite> implements TileMapCollision, Siz
 		return this;
 	}
 
+	/**
+	 * 获得当前地图的势力图(首次调用时创建,回合开始时自动刷新,单位移动后调用其update获得最新数据)
+	 *
+	 * @return
+	 */
+	public BattleInfluenceMap getInfluenceMap() {
+		if (_influenceMap == null) {
+			_influenceMap = new BattleInfluenceMap(this);
+			_influenceMap.refresh();
+		}
+		return _influenceMap;
+	}
+
 	public BattleTile findNearestStrategicPoint(PointI point) {
 		for (int i = _strategicPoint.size - 1; i > -1; i--) {
 			PointI result = _strategicPoint.get(i);
@@ -2184,6 +2202,10 @@ public class BattleMap extends LObject<ISprite> implements TileMapCollision, Siz
 		}
 		_mapObjects.clear();
 		_strategicPoint.clear();
+		if (_influenceMap != null) {
+			_influenceMap.close();
+			_influenceMap = null;
+		}
 		_defaultGlobalSkill.close();
 		_resizeListener = null;
 		_collSpriteListener = null;
@@ -239,6 +239,9 @@ public class BattleMapObject extends Role implements LRelease {
 	// 地图引用
 	private BattleMap battleMap;
 
+	// 势力图中的记录
+	BattleInfluenceMap.Record _influenceRecord;
+
 	// 移动管理器
 	private final BattleMovementManager moveManager;
 
@@ -811,7 +811,18 @@ public class Entity extends SpriteBase<IEntity> implements IEntity {
 					|| _flipX || _flipY) && _deform;
 			final float nx = drawX(offsetX);
 			final float ny = drawY(offsetY);
-			if (update) {
+			final RetainedTransform retained = update ? _retainedTransform : null;
+			if (retained != null) {
+				g.saveBrush();
+				retained.local(_objectRotation, _scaleX, _scaleY, _skewX, _skewY, _flipX, _flipY,
+						_rotationCenterX == -1 ? _origin.ox(_width) : _rotationCenterX,
+						_rotationCenterY == -1 ? _origin.oy(_height) : _rotationCenterY,
+						_scaleCenterX == -1 ? _origin.ox(_width) : _scaleCenterX,
+						_scaleCenterY == -1 ? _origin.oy(_height) : _scaleCenterY,
+						_skewCenterX == -1 ? _origin.ox(_width) : _skewCenterX,
+						_skewCenterY == -1 ? _origin.oy(_height) : _skewCenterY);
+				retained.begin(g, nx, ny);
+			} else if (update) {
 				g.saveTx();
 				g.saveBrush();
 				Affine2f tx = g.tx();
@@ -891,6 +902,10 @@ public class Entity extends SpriteBase<IEntity> implements IEntity {
 					g.fillRect(nx, ny, _width, _height, _baseColor);
 				}
 			}
+			// repaint或图像绘制中的saveTx与restoreTx会把GLEx还原为上层矩阵
+			if (retained != null) {
+				retained.resume(g);
+			}
 			DrawListener<Entity> drawing = this._drawListener;
 			if (drawing != null) {
 				if (_repaintAutoOffset) {
@@ -900,10 +915,16 @@ public class Entity extends SpriteBase<IEntity> implements IEntity {
 				}
 			}
 			if (_debugDraw) {
+				if (retained != null) {
+					retained.resume(g);
+				}
 				g.drawRect(nx, ny, _width, _height, _debugDrawColor);
 			}
 
-			if (update) {
+			if (retained != null) {
+				g.restoreBrush();
+				retained.end(g);
+			} else if (update) {
 				g.restoreBrush();
 				g.restoreTx();
 			}
@@ -911,6 +932,17 @@ public class Entity extends SpriteBase<IEntity> implements IEntity {
 		}
 	}
 
+	/**
+	 * 是否缓存旋转,缩放,翻转与斜切的变换矩阵,开启后属性不变时不再逐帧重建矩阵
+	 * 
+	 * @param retained
+	 * @return
+	 */
+	public IEntity setRetainedTransform(boolean retained) {
+		this.setRetainedTransformImpl(retained);
+		return this;
+	}
+
 	public IEntity setRepaint(boolean r) {
 		this._repaintDraw = r;
 		return this;
@@ -942,19 +974,27 @@ public class Entity extends SpriteBase<IEntity> implements IEntity {
 			final int childCount = children.size;
 			this.prePaint(g);
 			this.paint(g, offsetX, offsetY);
+			// 父级链的坐标对直接子对象都相同,只计算一次
+			float selfX = 0, selfY = 0;
+			for (ISprite parent = this; parent != null; parent = parent.getParent()) {
+				selfX += parent.getX() + parent.getOffsetX();
+				selfY += parent.getY() + parent.getOffsetY();
+			}
 			for (int i = 0; i < childCount; i++) {
 				final IEntity child = children.get(i);
 				if (child != null) {
 					float px = 0, py = 0;
 					ISprite parent = child.getParent();
-					if (parent == null) {
-						parent = this;
-					}
-					px += parent.getX() + parent.getOffsetX();
-					py += parent.getY() + parent.getOffsetY();
-					for (; (parent = parent.getParent()) != null;) {
+					if (parent == null || parent == this) {
+						px = selfX;
+						py = selfY;
+					} else {
 						px += parent.getX() + parent.getOffsetX();
 						py += parent.getY() + parent.getOffsetY();
+						for (; (parent = parent.getParent()) != null;) {
+							px += parent.getX() + parent.getOffsetX();
+							py += parent.getY() + parent.getOffsetY();
+						}
 					}
 					child.createUI(g, px + offsetX + child.getOffsetX(), py + offsetY + child.getOffsetY());
 				}
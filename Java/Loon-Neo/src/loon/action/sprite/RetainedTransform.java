@@ -0,0 +1,199 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.action.sprite;
+
+import loon.geom.Affine2f;
+import loon.opengl.GLEx;
+
+/**
+ * 精灵的保留变换(retained transform),缓存本地与世界两个矩阵,只有在自身属性或上层矩阵变化时才重新计算.
+ *
+ * 本地矩阵以精灵左上角为原点,包含旋转,翻转,缩放与斜切,以属性快照判断是否变化(子类直接修改字段也能发现),
+ * 世界矩阵为GLEx当前矩阵与本地矩阵在绘制位置上的组合,以上层矩阵的值作为键,因此父级矩阵变化时子级会自动重算.
+ */
+public class RetainedTransform {
+
+	private final Affine2f _local = new Affine2f();
+
+	private final Affine2f _world = new Affine2f();
+
+	// 交给GLEx的矩阵,绘制中被修改也不影响缓存
+	private final Affine2f _draw = new Affine2f();
+
+	private float _rotation, _scaleX = 1f, _scaleY = 1f, _skewX, _skewY;
+
+	private float _rotationCenterX, _rotationCenterY, _scaleCenterX, _scaleCenterY, _skewCenterX, _skewCenterY;
+
+	private boolean _flipX, _flipY;
+
+	private boolean _localDirty = true;
+
+	private int _localVersion;
+
+	private float _parentM00, _parentM01, _parentM10, _parentM11, _parentTx, _parentTy;
+
+	private float _drawX, _drawY;
+
+	private int _worldVersion = -1;
+
+	private int _localBuilds, _worldBuilds;
+
+	private Affine2f _previous;
+
+	/**
+	 * 更新本地矩阵,中心点均相对于精灵左上角
+	 */
+	public Affine2f local(float rotation, float scaleX, float scaleY, float skewX, float skewY, boolean flipX,
+			boolean flipY, float rotationCenterX, float rotationCenterY, float scaleCenterX, float scaleCenterY,
+			float skewCenterX, float skewCenterY) {
+		if (_localDirty || rotation != _rotation || scaleX != _scaleX || scaleY != _scaleY || skewX != _skewX
+				|| skewY != _skewY || flipX != _flipX || flipY != _flipY || rotationCenterX != _rotationCenterX
+				|| rotationCenterY != _rotationCenterY || scaleCenterX != _scaleCenterX
+				|| scaleCenterY != _scaleCenterY || skewCenterX != _skewCenterX || skewCenterY != _skewCenterY) {
+			_rotation = rotation;
+			_scaleX = scaleX;
+			_scaleY = scaleY;
+			_skewX = skewX;
+			_skewY = skewY;
+			_flipX = flipX;
+			_flipY = flipY;
+			_rotationCenterX = rotationCenterX;
+			_rotationCenterY = rotationCenterY;
+			_scaleCenterX = scaleCenterX;
+			_scaleCenterY = scaleCenterY;
+			_skewCenterX = skewCenterX;
+			_skewCenterY = skewCenterY;
+			buildLocal();
+			_localDirty = false;
+			_localVersion++;
+			_localBuilds++;
+		}
+		return _local;
+	}
+
+	private void buildLocal() {
+		final Affine2f tx = _local.idt();
+		if (_rotation != 0) {
+			tx.translate(_rotationCenterX, _rotationCenterY);
+			tx.preRotate(_rotation);
+			tx.translate(-_rotationCenterX, -_rotationCenterY);
+		}
+		if (_flipX && _flipY) {
+			Affine2f.transform(tx, _rotationCenterX, _rotationCenterY, Affine2f.TRANS_ROT180);
+		} else if (_flipX) {
+			Affine2f.transform(tx, _rotationCenterX, _rotationCenterY, Affine2f.TRANS_MIRROR);
+		} else if (_flipY) {
+			Affine2f.transform(tx, _rotationCenterX, _rotationCenterY, Affine2f.TRANS_MIRROR_ROT180);
+		}
+		if ((_scaleX != 1) || (_scaleY != 1)) {
+			tx.translate(_scaleCenterX, _scaleCenterY);
+			tx.preScale(_scaleX, _scaleY);
+			tx.translate(-_scaleCenterX, -_scaleCenterY);
+		}
+		if ((_skewX != 0) || (_skewY != 0)) {
+			tx.translate(_skewCenterX, _skewCenterY);
+			tx.preShear(_skewX, _skewY);
+			tx.translate(-_skewCenterX, -_skewCenterY);
+		}
+	}
+
+	/**
+	 * 以上层矩阵与绘制位置计算世界矩阵(需要先调用local)
+	 *
+	 * @param parent
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public Affine2f world(Affine2f parent, float x, float y) {
+		if (_worldVersion != _localVersion || x != _drawX || y != _drawY || parent.m00 != _parentM00
+				|| parent.m01 != _parentM01 || parent.m10 != _parentM10 || parent.m11 != _parentM11
+				|| parent.tx != _parentTx || parent.ty != _parentTy) {
+			_parentM00 = parent.m00;
+			_parentM01 = parent.m01;
+			_parentM10 = parent.m10;
+			_parentM11 = parent.m11;
+			_parentTx = parent.tx;
+			_parentTy = parent.ty;
+			_drawX = x;
+			_drawY = y;
+			_worldVersion = _localVersion;
+			// parent * T(x,y) * local * T(-x,-y),与逐帧在GLEx上依次平移旋转的结果相同
+			final Affine2f l = _local;
+			final float ltx = l.tx + x - (l.m00 * x + l.m10 * y);
+			final float lty = l.ty + y - (l.m01 * x + l.m11 * y);
+			Affine2f.multiply(parent, l.m00, l.m01, l.m10, l.m11, ltx, lty, _world);
+			_worldBuilds++;
+		}
+		return _world;
+	}
+
+	/**
+	 * 以世界矩阵替换GLEx的当前矩阵,不复制也不压入矩阵堆栈
+	 *
+	 * @param g
+	 * @param x
+	 * @param y
+	 */
+	public void begin(GLEx g, float x, float y) {
+		_previous = g.tx();
+		g.setAffine(_draw.set(world(_previous, x, y)));
+	}
+
+	/**
+	 * 绘制子对象后调用,子对象的saveTx与restoreTx会把GLEx还原为上层矩阵
+	 *
+	 * @param g
+	 */
+	public void resume(GLEx g) {
+		if (g.tx() != _draw) {
+			g.setAffine(_draw.set(_world));
+		}
+	}
+
+	public void end(GLEx g) {
+		if (_previous != null) {
+			g.setAffine(_previous);
+			_previous = null;
+		}
+	}
+
+	public RetainedTransform markDirty() {
+		_localDirty = true;
+		return this;
+	}
+
+	public Affine2f getLocal() {
+		return _local;
+	}
+
+	public Affine2f getWorld() {
+		return _world;
+	}
+
+	public int getLocalBuildCount() {
+		return _localBuilds;
+	}
+
+	public int getWorldBuildCount() {
+		return _worldBuilds;
+	}
+}
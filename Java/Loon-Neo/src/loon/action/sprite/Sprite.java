@@ -552,6 +552,7 @@ public class Sprite extends SpriteBase<ISprite> implements Flip<Sprite>, ISprite
 
 		final boolean update = (_objectRotation != 0) || !(MathUtils.equal(_scaleX, 1f) && MathUtils.equal(_scaleY, 1f))
 				|| _flipX || _flipY;
+		final RetainedTransform retained = update ? _retainedTransform : null;
 		final int tmp = g.color();
 		final int blend = g.getBlendMode();
 		try {
@@ -561,7 +562,13 @@ public class Sprite extends SpriteBase<ISprite> implements Flip<Sprite>, ISprite
 			if (_elastic) {
 				g.setClip(nx, ny, width, height);
 			}
-			if (update) {
+			if (retained != null) {
+				final float centerX = _scaleCenterX == -1 ? _origin.ox(width) : _scaleCenterX;
+				final float centerY = _scaleCenterY == -1 ? _origin.oy(height) : _scaleCenterY;
+				retained.local(notImg ? _objectRotation : 0f, notImg ? _scaleX : 1f, notImg ? _scaleY : 1f, 0f, 0f,
+						_flipX, _flipY, centerX, centerY, centerX, centerY, 0f, 0f);
+				retained.begin(g, nx, ny);
+			} else if (update) {
 				g.saveTx();
 				Affine2f tx = g.tx();
 				final float centerX = _scaleCenterX == -1 ? (nx + _origin.ox(width)) : nx + _scaleCenterX;
@@ -601,21 +608,32 @@ public class Sprite extends SpriteBase<ISprite> implements Flip<Sprite>, ISprite
 			if (_childrenVisible && _childrens != null && _childrens.size > 0) {
 				final TArray<ISprite> childs = this._childrens;
 				final int count = childs.size;
+				// 父级链的坐标对直接子对象都相同,只计算一次
+				float selfX = 0, selfY = 0;
+				for (ISprite parent = this; parent != null; parent = parent.getParent()) {
+					selfX += parent.getX() + parent.getOffsetX();
+					selfY += parent.getY() + parent.getOffsetY();
+				}
 				for (int i = 0; i < count; i++) {
 					ISprite spr = childs.get(i);
 					if (spr != null) {
 						float px = 0, py = 0;
 						ISprite parent = spr.getParent();
-						if (parent == null) {
-							parent = this;
-						}
-						px += parent.getX() + parent.getOffsetX();
-						py += parent.getY() + parent.getOffsetY();
-						for (; (parent = parent.getParent()) != null;) {
+						if (parent == null || parent == this) {
+							px = selfX;
+							py = selfY;
+						} else {
 							px += parent.getX() + parent.getOffsetX();
 							py += parent.getY() + parent.getOffsetY();
+							for (; (parent = parent.getParent()) != null;) {
+								px += parent.getX() + parent.getOffsetX();
+								py += parent.getY() + parent.getOffsetY();
+							}
 						}
 						spr.createUI(g, px + offsetX + spr.getOffsetX(), py + offsetY + spr.getOffsetY());
+						if (retained != null) {
+							retained.resume(g);
+						}
 					}
 				}
 			}
@@ -624,7 +642,9 @@ public class Sprite extends SpriteBase<ISprite> implements Flip<Sprite>, ISprite
 			}
 		} finally {
 			g.setColor(tmp);
-			if (update) {
+			if (retained != null) {
+				retained.end(g);
+			} else if (update) {
 				g.restoreTx();
 			}
 			if (_elastic) {
@@ -922,6 +942,17 @@ public class Sprite extends SpriteBase<ISprite> implements Flip<Sprite>, ISprite
 		return this;
 	}
 
+	/**
+	 * 是否缓存翻转与缩放的变换矩阵,开启后属性不变时不再逐帧重建矩阵
+	 * 
+	 * @param retained
+	 * @return
+	 */
+	public ISprite setRetainedTransform(boolean retained) {
+		this.setRetainedTransformImpl(retained);
+		return this;
+	}
+
 	public ISprite setDebugDraw(boolean debugDraw) {
 		this._debugDraw = debugDraw;
 		return this;
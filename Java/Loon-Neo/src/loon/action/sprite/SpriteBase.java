@@ -118,6 +118,8 @@ public abstract class SpriteBase<T extends ISprite> extends LObject<T> implement
 
 	protected TArray<TComponent<T>> _components = null;
 
+	protected RetainedTransform _retainedTransform = null;
+
 	public abstract float getAniWidth();
 
 	public abstract float getAniHeight();
@@ -917,6 +919,24 @@ public abstract class SpriteBase<T extends ISprite> extends LObject<T> implement
 		return this._objectRotation != 0f;
 	}
 
+	protected void setRetainedTransformImpl(boolean retained) {
+		if (retained) {
+			if (_retainedTransform == null) {
+				_retainedTransform = new RetainedTransform();
+			}
+		} else {
+			_retainedTransform = null;
+		}
+	}
+
+	public boolean isRetainedTransform() {
+		return _retainedTransform != null;
+	}
+
+	public RetainedTransform getRetainedTransform() {
+		return _retainedTransform;
+	}
+
 	public boolean isDebugDraw() {
 		return _debugDraw;
 	}
@@ -35,6 +35,8 @@ import loon.ZIndex;
 import loon.action.ActionBind;
 import loon.action.ActionControl;
 import loon.action.PlaceActions;
+import loon.action.collision.BroadPhase;
+import loon.action.collision.BroadPhaseTree;
 import loon.action.collision.CollisionAction;
 import loon.action.map.Side;
 import loon.component.layout.Margin;
@@ -65,6 +67,7 @@ import loon.utils.IArray;
 import loon.utils.IntArray;
 import loon.utils.IntMap;
 import loon.utils.LayerSorter;
+import loon.utils.LongArray;
 import loon.utils.MathUtils;
 import loon.utils.ObjectMap;
 import loon.utils.ObjectSet;
@@ -164,6 +167,9 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 	private final ObjectMap<ISprite, RectBox> _collisionBoxCache = new ObjectMap<ISprite, RectBox>();
 	// 碰撞对象，避免同一对精灵重复触发碰撞
 	private final IntMap<Boolean> _collisionDebounceCache = new IntMap<Boolean>();
+	// 碰撞粗检测,为null时逐对比较
+	private BroadPhase<ISprite> _broadPhase = new BroadPhaseTree<ISprite>();
+	private final LongArray _collisionPairs = new LongArray();
 	private ObjectMap<String, TArray<ISprite>> _nameCache;
 	// 标记缓存是否需要重建
 	private boolean _cacheDirty = true;
@@ -1377,6 +1383,21 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 			return;
 		}
 		clearCollisionCache();
+		if (_broadPhase != null) {
+			if (_collisionObjects == null) {
+				_collisionObjects = new TArray<ISprite>();
+			} else {
+				_collisionObjects.clear();
+			}
+			for (int i = 0; i < _size; i++) {
+				ISprite spr = _sprites[i];
+				if (getCachedCollisionBox(spr) != null) {
+					_collisionObjects.add(spr);
+				}
+			}
+			checkBroadPhaseCollision();
+			return;
+		}
 		for (int i = 0; i < _size; i++) {
 			ISprite src = _sprites[i];
 			RectBox srcBox = getCachedCollisionBox(src);
@@ -1440,6 +1461,10 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 				}
 			}
 		}
+		if (_broadPhase != null) {
+			checkBroadPhaseCollision();
+			return;
+		}
 		int collSize = _collisionObjects.size;
 		for (int i = 0; i < collSize; i++) {
 			ISprite src = (ISprite) _collisionObjects.get(i);
@@ -1469,6 +1494,35 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 		}
 	}
 
+	/**
+	 * 通过粗检测找出包围盒相交的精灵,再按原有两两比较的顺序逐对判定碰撞
+	 */
+	private void checkBroadPhaseCollision() {
+		final TArray<ISprite> objects = _collisionObjects;
+		final BroadPhase<ISprite> broadPhase = _broadPhase;
+		broadPhase.begin();
+		for (int i = 0; i < objects.size; i++) {
+			ISprite spr = objects.get(i);
+			RectBox box = getCachedCollisionBox(spr);
+			broadPhase.update(spr, box.getX(), box.getY(), box.getWidth(), box.getHeight());
+		}
+		broadPhase.end();
+		final LongArray pairs = broadPhase.findPairs(_collisionPairs);
+		// 编号即精灵在objects中的索引,排序后与逐对比较时的触发顺序一致
+		pairs.sort();
+		for (int i = 0; i < pairs.length; i++) {
+			final long pair = pairs.get(i);
+			ISprite src = objects.get(BroadPhase.getFirst(pair));
+			ISprite dst = objects.get(BroadPhase.getSecond(pair));
+			RectBox srcBox = getCachedCollisionBox(src);
+			RectBox dstBox = getCachedCollisionBox(dst);
+			if (srcBox != null && dstBox != null && srcBox.collided(dstBox)) {
+				correctSpritePosition(src, dst);
+				onTriggerCollision(src, dst);
+			}
+		}
+	}
+
 	/**
 	 * 圆形碰撞检测
 	 * 
@@ -1633,6 +1687,24 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 		return this;
 	}
 
+	public BroadPhase<ISprite> getBroadPhase() {
+		return _broadPhase;
+	}
+
+	/**
+	 * 设置碰撞粗检测方式(BroadPhaseGrid,BroadPhaseSweep或BroadPhaseTree),为null时所有精灵两两比较
+	 * 
+	 * @param broadPhase
+	 * @return
+	 */
+	public Sprites setBroadPhase(BroadPhase<ISprite> broadPhase) {
+		if (_broadPhase != null && _broadPhase != broadPhase) {
+			_broadPhase.close();
+		}
+		this._broadPhase = broadPhase;
+		return this;
+	}
+
 	public IntArray getCollisionIgnoreTypes() {
 		return _collisionIgnoreTypes == null ? new IntArray() : _collisionIgnoreTypes.cpy();
 	}
@@ -3474,6 +3546,9 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 		_dirtyChildren = true;
 		invalidateCache();
 		clearCollisionCache();
+		if (_broadPhase != null) {
+			_broadPhase.clear();
+		}
 	}
 
 	public boolean isClosed() {
@@ -3513,6 +3588,10 @@ public final class Sprites extends PlaceActions implements Visible, ZIndex, IArr
 		freeFBOShaderMask();
 		clearListerner();
 		clearCollisionCache();
+		if (_broadPhase != null) {
+			_broadPhase.close();
+			_broadPhase = null;
+		}
 		LSystem.popSpritesPool(this);
 	}
 
@@ -40,6 +40,7 @@ import loon.utils.ArrayByte;
 import loon.utils.BufferUtils;
 import loon.utils.CRC32;
 import loon.utils.CollectionUtils;
+import loon.utils.Deflate;
 import loon.utils.MathUtils;
 import loon.utils.Scale;
 import loon.utils.SortedList;
@@ -53,9 +54,33 @@ import loon.utils.TArray;
 public final class Pixmap extends PixmapComposite implements Canvas.ColorPixel, LRelease {
 
 	public final static byte[] toPNG(Pixmap pixmap) {
+		return toPNG(pixmap, Deflate.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * 以指定压缩级别(0-9,0为不压缩)生成png数据
+	 * 
+	 * @param pixmap
+	 * @param level
+	 * @return
+	 */
+	public final static byte[] toPNG(Pixmap pixmap, int level) {
+		return toPNG(pixmap.getWidth(), pixmap.getHeight(),
+				ArrayByte.toZLIB(createScanlines(pixmap, level > Deflate.NO_COMPRESSION), level));
+	}
+
+	/**
+	 * 使用已经压缩好的zlib扫描线数据生成png
+	 * 
+	 * @param width
+	 * @param height
+	 * @param zlib
+	 * @return
+	 */
+	public final static byte[] toPNG(int width, int height, byte[] zlib) {
 		final byte[] signature = { -119, 80, 78, 71, 13, 10, 26, 10 };
-		final byte[] header = createHeaderChunk(pixmap.getWidth(), pixmap.getHeight());
-		final byte[] data = createDataChunk(pixmap);
+		final byte[] header = createHeaderChunk(width, height);
+		final byte[] data = toChunk("IDAT", zlib);
 		final byte[] trailer = createTrailerChunk();
 		final ArrayByte png = new ArrayByte(signature.length + header.length + data.length + trailer.length);
 		png.write(signature);
@@ -78,29 +103,113 @@ public final class Pixmap extends PixmapComposite implements Canvas.ColorPixel,
 	}
 
 	public final static byte[] createDataChunk(Pixmap pixmap) {
+		return createDataChunk(pixmap, Deflate.DEFAULT_COMPRESSION);
+	}
+
+	public final static byte[] createDataChunk(Pixmap pixmap, int level) {
+		return toChunk("IDAT", ArrayByte.toZLIB(createScanlines(pixmap, level > Deflate.NO_COMPRESSION), level));
+	}
+
+	/**
+	 * 生成未压缩的png扫描线数据(RGBA,每行以滤波类型开头),filter为true时逐行选择差值最小的滤波器(None/Sub/Up/Average/Paeth)
+	 * 
+	 * @param pixmap
+	 * @param filter
+	 * @return
+	 */
+	public final static byte[] createScanlines(Pixmap pixmap, boolean filter) {
 		final int width = pixmap.getWidth();
 		final int height = pixmap.getHeight();
-		int dest = 0;
-		final byte[] raw = new byte[4 * width * height + height];
-		for (int y = 0; y < height; y++) {
-			raw[dest++] = 0;
-			for (int x = 0; x < width; x++) {
-				int pixel = pixmap.getPixel(x, y);
-				int mask = pixel & 0xFFFFFFFF;
-				int rr = mask >> 24 & 0xFF;
-				int gg = mask >> 16 & 0xFF;
-				int bb = mask >> 8 & 0xFF;
-				int aa = mask & 0xFF;
-				if ((rr < 0 || rr > 255 || gg < 0 || gg > 255 || bb < 0 || bb > 255)) {
-					throw new LSysException(String.valueOf(rr) + "," + gg + "," + bb);
+		final int[] pixels = pixmap.getData();
+		final int stride = width * 4;
+		final byte[] raw = new byte[(stride + 1) * height];
+		byte[] prevRow = new byte[stride];
+		byte[] curRow = new byte[stride];
+		final byte[] bestRow = new byte[stride];
+		final byte[] tryRow = new byte[stride];
+		for (int y = 0, idx = 0; y < height; y++) {
+			for (int x = 0, src = y * width, i = 0; x < width; x++) {
+				final int pixel = pixels[src++];
+				curRow[i++] = (byte) (pixel >> 16);
+				curRow[i++] = (byte) (pixel >> 8);
+				curRow[i++] = (byte) pixel;
+				curRow[i++] = (byte) (pixel >>> 24);
+			}
+			int bestType = PNG_FILTER_NONE;
+			if (filter) {
+				long bestSum = filterRow(PNG_FILTER_NONE, curRow, prevRow, y == 0, bestRow, Long.MAX_VALUE);
+				for (int type = PNG_FILTER_SUB; type <= PNG_FILTER_PAETH; type++) {
+					final long sum = filterRow(type, curRow, prevRow, y == 0, tryRow, bestSum);
+					if (sum < bestSum) {
+						bestSum = sum;
+						bestType = type;
+						System.arraycopy(tryRow, 0, bestRow, 0, stride);
+					}
 				}
-				raw[dest++] = (byte) rr;
-				raw[dest++] = (byte) gg;
-				raw[dest++] = (byte) bb;
-				raw[dest++] = (byte) aa;
+			} else {
+				System.arraycopy(curRow, 0, bestRow, 0, stride);
+			}
+			raw[idx++] = (byte) bestType;
+			System.arraycopy(bestRow, 0, raw, idx, stride);
+			idx += stride;
+			final byte[] tmp = prevRow;
+			prevRow = curRow;
+			curRow = tmp;
+		}
+		return raw;
+	}
+
+	private final static int PNG_FILTER_NONE = 0;
+
+	private final static int PNG_FILTER_SUB = 1;
+
+	private final static int PNG_FILTER_UP = 2;
+
+	private final static int PNG_FILTER_AVERAGE = 3;
+
+	private final static int PNG_FILTER_PAETH = 4;
+
+	/**
+	 * 按指定滤波类型处理一行像素(每像素4字节),返回结果的绝对值和(超过limit时提前返回)
+	 */
+	private final static long filterRow(int type, byte[] cur, byte[] prev, boolean firstRow, byte[] out, long limit) {
+		final int stride = cur.length;
+		long sum = 0;
+		for (int i = 0; i < stride; i++) {
+			final int x = cur[i] & 0xFF;
+			final int a = i >= 4 ? cur[i - 4] & 0xFF : 0;
+			final int b = firstRow ? 0 : prev[i] & 0xFF;
+			final int c = (i >= 4 && !firstRow) ? prev[i - 4] & 0xFF : 0;
+			final int v;
+			switch (type) {
+			case PNG_FILTER_SUB:
+				v = x - a;
+				break;
+			case PNG_FILTER_UP:
+				v = x - b;
+				break;
+			case PNG_FILTER_AVERAGE:
+				v = x - ((a + b) >> 1);
+				break;
+			case PNG_FILTER_PAETH:
+				final int p = a + b - c;
+				final int pa = MathUtils.abs(p - a);
+				final int pb = MathUtils.abs(p - b);
+				final int pc = MathUtils.abs(p - c);
+				v = x - ((pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c));
+				break;
+			default:
+				v = x;
+				break;
+			}
+			final byte r = (byte) v;
+			out[i] = r;
+			sum += r < 0 ? -r : r;
+			if (sum >= limit) {
+				return sum;
 			}
 		}
-		return toChunk("IDAT", ArrayByte.toZLIB(raw));
+		return sum;
 	}
 
 	public final static byte[] createTrailerChunk() {
@@ -20,12 +20,26 @@
  */
 package loon.events;
 
+/**
+ * 游戏事件,由GameEventBus分发.
+ * 
+ * ps:通过GameEventBus.post提交的事件来自事件池,分发结束后会被回收,监听器不应保存其引用.
+ */
 public class GameEvent<T> {
 
-	public final GameEventType evetype;
-	public final Object source;
-	public final Object target;
-	public final T data;
+	public GameEventType evetype;
+	public Object source;
+	public Object target;
+	public T data;
+
+	// 进入队列的时间(纳秒),用于统计分发延迟
+	long queuedTime;
+
+	// 是否来自GameEventBus的事件池
+	boolean pooled;
+
+	GameEvent() {
+	}
 
 	public GameEvent(GameEventType t, Object s, Object o, T d) {
 		this.evetype = t;
@@ -37,4 +51,12 @@ public class GameEvent<T> {
 	public GameEvent(GameEventType t, Object s, Object o) {
 		this(t, s, o, null);
 	}
+
+	GameEvent<T> set(GameEventType t, Object s, Object o, T d) {
+		this.evetype = t;
+		this.source = s;
+		this.target = o;
+		this.data = d;
+		return this;
+	}
 }
@@ -23,19 +23,139 @@ package loon.events;
 import loon.LRelease;
 import loon.LSystem;
 import loon.utils.ObjectMap;
-import loon.utils.SortedList;
 import loon.utils.TArray;
+import loon.utils.TimeUtils;
 
+/**
+ * 游戏事件总线
+ * 
+ * 默认为即时模式,publish时立即在当前线程中分发(分发中再次publish的事件会排队,在当前事件结束后依次分发).
+ * 
+ * 调用setQueued(true)后为队列模式,任意线程publish或post时只把事件加入队列(仅持有队列锁完成一次追加,不会与分发争用),
+ * 由游戏线程每帧(或需要时)调用drain统一分发,分发期间新加入的事件留到下一次drain.队列模式下可以限制队列长度(超出时丢弃),
+ * 也可以按事件类型合并同一次drain中重复的事件(类型,来源,目标相同且数据相等).
+ * 
+ * <pre>
+ * GameEventBus&lt;Object&gt; bus = new GameEventBus&lt;Object&gt;();
+ * bus.setQueued(true);
+ * bus.setCoalesce(GameEventType.STATE_CHANGED, true);
+ * // 任意线程
+ * bus.post(GameEventType.ATTACK_HIT, attacker, target, damage);
+ * // 游戏线程每帧
+ * bus.drain();
+ * </pre>
+ */
 public class GameEventBus<T> implements LRelease {
 
+	private final static GameEventType[] TYPES = GameEventType.values();
+
+	/**
+	 * 合并重复事件时使用的键
+	 */
+	private static class EventKey {
+
+		GameEventType type;
+
+		Object source;
+
+		Object target;
+
+		Object data;
+
+		EventKey set(GameEvent<?> e) {
+			this.type = e.evetype;
+			this.source = e.source;
+			this.target = e.target;
+			this.data = e.data;
+			return this;
+		}
+
+		void clear() {
+			this.type = null;
+			this.source = null;
+			this.target = null;
+			this.data = null;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = (type == null ? 0 : type.ordinal());
+			hash = hash * 31 + (source == null ? 0 : System.identityHashCode(source));
+			hash = hash * 31 + (target == null ? 0 : System.identityHashCode(target));
+			hash = hash * 31 + (data == null ? 0 : data.hashCode());
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof EventKey)) {
+				return false;
+			}
+			final EventKey k = (EventKey) o;
+			return type == k.type && source == k.source && target == k.target
+					&& (data == k.data || (data != null && data.equals(k.data)));
+		}
+	}
+
 	private final ObjectMap<GameEventType, TArray<GameEventListener<T>>> listeners = new ObjectMap<GameEventType, TArray<GameEventListener<T>>>();
 
-	private final SortedList<GameEvent<T>> eventQueue = new SortedList<GameEvent<T>>();
+	// 按事件类型序号预先生成的监听器数组,订阅变化时整体替换,分发时不查表也不复制
+	private Object[][] _tables = new Object[TYPES.length][];
+
+	// 即时模式下重入publish的事件
+	private final TArray<GameEvent<T>> eventQueue = new TArray<GameEvent<T>>();
+
+	private int _queueIndex = 0;
 
 	private boolean isProcessing = false;
 
 	private boolean loggingEnabled = false;
 
+	// 队列模式
+	private final Object _queueLock = new Object();
+
+	private TArray<GameEvent<T>> _inbox = new TArray<GameEvent<T>>();
+
+	private TArray<GameEvent<T>> _outbox = new TArray<GameEvent<T>>();
+
+	private final TArray<GameEvent<T>> _freeEvents = new TArray<GameEvent<T>>();
+
+	private final boolean[] _coalesce = new boolean[TYPES.length];
+
+	private final ObjectMap<EventKey, Boolean> _coalesceKeys = new ObjectMap<EventKey, Boolean>();
+
+	private final TArray<EventKey> _keys = new TArray<EventKey>();
+
+	private final EventKey _probe = new EventKey();
+
+	// 只在_queueLock内修改,入队前也在锁内再次确认
+	private volatile boolean _queued = false;
+
+	private boolean _draining = false;
+
+	private int _coalesceCount = 0;
+
+	private int _capacity = -1;
+
+	private int _maxPooled = 256;
+
+	// 统计
+	private int _peakDepth;
+
+	private long _dispatched;
+
+	private long _dropped;
+
+	private long _coalesced;
+
+	private long _lastLatency;
+
+	private long _maxLatency;
+
+	private long _totalLatency;
+
+	private long _latencyCount;
+
 	public synchronized void subscribe(GameEventType type, GameEventListener<T> listener) {
 		TArray<GameEventListener<T>> typeListeners = listeners.get(type);
 		if (typeListeners == null) {
@@ -43,6 +163,7 @@ public class GameEventBus<T> implements LRelease {
 			listeners.put(type, typeListeners);
 		}
 		typeListeners.add(listener);
+		rebuild(type, typeListeners);
 	}
 
 	public synchronized void unsubscribe(GameEventType type, GameEventListener<T> listener) {
@@ -52,48 +173,385 @@ public class GameEventBus<T> implements LRelease {
 			if (typeListeners.isEmpty()) {
 				listeners.remove(type);
 			}
+			rebuild(type, typeListeners);
 		}
 	}
 
-	public synchronized void publish(GameEvent<T> event) {
-		if (isProcessing) {
-			eventQueue.add(event);
+	private void rebuild(GameEventType type, TArray<GameEventListener<T>> typeListeners) {
+		if (type == null) {
 			return;
 		}
-		isProcessing = true;
-		TArray<GameEventListener<T>> typeListeners = listeners.get(event.evetype);
-		if (typeListeners != null) {
-			for (GameEventListener<T> listener : typeListeners) {
-				((GameEventListener<T>) listener).onEvent(event);
+		if (typeListeners == null || typeListeners.size == 0) {
+			_tables[type.ordinal()] = null;
+			return;
+		}
+		final Object[] table = new Object[typeListeners.size];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = typeListeners.get(i);
+		}
+		_tables[type.ordinal()] = table;
+	}
+
+	public void publish(GameEvent<T> event) {
+		if (event == null) {
+			return;
+		}
+		if (_queued && enqueue(event)) {
+			return;
+		}
+		synchronized (this) {
+			if (isProcessing) {
+				eventQueue.add(event);
+				return;
+			}
+			isProcessing = true;
+			try {
+				dispatch(event);
+				recycle(event);
+				// 处理分发中加入的事件
+				for (; _queueIndex < eventQueue.size;) {
+					final GameEvent<T> queued = eventQueue.get(_queueIndex++);
+					dispatch(queued);
+					recycle(queued);
+				}
+			} finally {
+				eventQueue.clear();
+				_queueIndex = 0;
+				isProcessing = false;
 			}
 		}
-		isProcessing = false;
-		// 处理队列中的事件
-		if (!eventQueue.isEmpty()) {
-			SortedList<GameEvent<T>> queueCopy = new SortedList<GameEvent<T>>(eventQueue);
-			eventQueue.clear();
-			for (GameEvent<T> queuedEvent : queueCopy) {
-				publish((GameEvent<T>) queuedEvent);
+	}
+
+	/**
+	 * 从事件池中取出事件并提交,分发结束后事件会被回收
+	 * 
+	 * @param type
+	 * @param source
+	 * @param target
+	 * @param data
+	 */
+	public void post(GameEventType type, Object source, Object target, T data) {
+		if (_queued) {
+			// 取出与入队在同一次加锁中完成
+			final long now = TimeUtils.nanoTime();
+			synchronized (_queueLock) {
+				if (_queued) {
+					if (_capacity > -1 && _inbox.size >= _capacity) {
+						_dropped++;
+						return;
+					}
+					GameEvent<T> event = (_freeEvents.size > 0) ? _freeEvents.pop() : null;
+					if (event == null) {
+						event = new GameEvent<T>();
+						event.pooled = true;
+					}
+					event.set(type, source, target, data);
+					event.queuedTime = now;
+					_inbox.add(event);
+					if (_inbox.size > _peakDepth) {
+						_peakDepth = _inbox.size;
+					}
+					return;
+				}
+			}
+		}
+		publish(obtain(type, source, target, data));
+	}
+
+	public void post(GameEventType type, Object source, Object target) {
+		post(type, source, target, null);
+	}
+
+	private GameEvent<T> obtain(GameEventType type, Object source, Object target, T data) {
+		GameEvent<T> event = null;
+		synchronized (_queueLock) {
+			if (_freeEvents.size > 0) {
+				event = _freeEvents.pop();
+			}
+		}
+		if (event == null) {
+			event = new GameEvent<T>();
+			event.pooled = true;
+		}
+		return event.set(type, source, target, data);
+	}
+
+	private void free(GameEvent<T> event) {
+		if (event.pooled && _freeEvents.size < _maxPooled) {
+			event.set(null, null, null, null);
+			_freeEvents.add(event);
+		}
+	}
+
+	/**
+	 * 事件入队,队列模式已关闭时返回false(由调用者直接分发)
+	 */
+	private boolean enqueue(GameEvent<T> event) {
+		event.queuedTime = TimeUtils.nanoTime();
+		synchronized (_queueLock) {
+			if (!_queued) {
+				return false;
+			}
+			if (_capacity > -1 && _inbox.size >= _capacity) {
+				_dropped++;
+				free(event);
+				return true;
+			}
+			_inbox.add(event);
+			if (_inbox.size > _peakDepth) {
+				_peakDepth = _inbox.size;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 分发队列中的所有事件(队列模式下应由游戏线程每帧调用,分发时与publish使用同一个锁)
+	 * 
+	 * @return 本次分发的事件数量
+	 */
+	public synchronized int drain() {
+		if (_draining) {
+			return 0;
+		}
+		final TArray<GameEvent<T>> batch;
+		synchronized (_queueLock) {
+			if (_inbox.size == 0) {
+				return 0;
+			}
+			batch = _inbox;
+			_inbox = _outbox;
+			_outbox = batch;
+		}
+		_draining = true;
+		int count = 0;
+		int keyIndex = 0;
+		try {
+			final boolean coalesce = _coalesceCount > 0;
+			for (int i = 0; i < batch.size; i++) {
+				final GameEvent<T> event = batch.get(i);
+				if (coalesce && event.evetype != null && _coalesce[event.evetype.ordinal()]) {
+					if (_coalesceKeys.containsKey(_probe.set(event))) {
+						_coalesced++;
+						continue;
+					}
+					final EventKey key;
+					if (keyIndex < _keys.size) {
+						key = _keys.get(keyIndex);
+					} else {
+						key = new EventKey();
+						_keys.add(key);
+					}
+					_coalesceKeys.put(key.set(event), Boolean.TRUE);
+					keyIndex++;
+				}
+				final long latency = TimeUtils.nanoTime() - event.queuedTime;
+				_lastLatency = latency;
+				if (latency > _maxLatency) {
+					_maxLatency = latency;
+				}
+				_totalLatency += latency;
+				_latencyCount++;
+				dispatch(event);
+				count++;
+			}
+		} finally {
+			if (_coalesceKeys.size > 0) {
+				_coalesceKeys.clear();
+				for (int i = 0; i < keyIndex; i++) {
+					_keys.get(i).clear();
+				}
+				_probe.clear();
+			}
+			synchronized (_queueLock) {
+				for (int i = 0; i < batch.size; i++) {
+					free(batch.get(i));
+				}
+			}
+			batch.clear();
+			_draining = false;
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void dispatch(GameEvent<T> event) {
+		if (event.evetype != null) {
+			final Object[] table = _tables[event.evetype.ordinal()];
+			if (table != null) {
+				for (int i = 0; i < table.length; i++) {
+					((GameEventListener<T>) table[i]).onEvent(event);
+				}
 			}
 		}
+		_dispatched++;
 		if (loggingEnabled) {
 			LSystem.debug("[Event] [{0}] Source: {1}, Target: {2}", event.evetype,
-					event.source.getClass().getSimpleName(),
+					event.source != null ? event.source.getClass().getSimpleName() : "null",
 					event.target != null ? event.target.getClass().getSimpleName() : "null");
+		}
+	}
 
+	/**
+	 * 即时模式分发后回收事件(队列中的事件由drain统一回收)
+	 */
+	private void recycle(GameEvent<T> event) {
+		if (event.pooled) {
+			synchronized (_queueLock) {
+				free(event);
+			}
 		}
 	}
 
-	public synchronized void publishAll(TArray<GameEvent<T>> events) {
+	public void publishAll(TArray<GameEvent<T>> events) {
 		for (GameEvent<T> event : events) {
 			publish(event);
 		}
 	}
 
-	public synchronized void publishBatch(TArray<GameEvent<T>> events) {
-		for (GameEvent<T> event : events) {
-			publish(event);
+	public void publishBatch(TArray<GameEvent<T>> events) {
+		if (_queued) {
+			final long now = TimeUtils.nanoTime();
+			synchronized (_queueLock) {
+				if (_queued) {
+					for (int i = 0; i < events.size; i++) {
+						final GameEvent<T> event = events.get(i);
+						if (event == null) {
+							continue;
+						}
+						if (_capacity > -1 && _inbox.size >= _capacity) {
+							_dropped++;
+							free(event);
+							continue;
+						}
+						event.queuedTime = now;
+						_inbox.add(event);
+					}
+					if (_inbox.size > _peakDepth) {
+						_peakDepth = _inbox.size;
+					}
+					return;
+				}
+			}
 		}
+		synchronized (this) {
+			for (int i = 0; i < events.size; i++) {
+				publish(events.get(i));
+			}
+		}
+	}
+
+	/**
+	 * 切换队列模式,关闭时立即分发队列中剩余的事件
+	 * 
+	 * @param queued
+	 * @return
+	 */
+	public GameEventBus<T> setQueued(boolean queued) {
+		final boolean flush;
+		synchronized (_queueLock) {
+			flush = this._queued && !queued;
+			this._queued = queued;
+		}
+		// 先关闭队列再分发,之后提交的事件都会直接分发,不会遗留在队列中
+		if (flush) {
+			drain();
+		}
+		return this;
+	}
+
+	public boolean isQueued() {
+		return _queued;
+	}
+
+	/**
+	 * 设置队列的最大长度,超出时丢弃新事件(-1为不限制)
+	 * 
+	 * @param capacity
+	 * @return
+	 */
+	public GameEventBus<T> setQueueCapacity(int capacity) {
+		this._capacity = capacity < 0 ? -1 : capacity;
+		return this;
+	}
+
+	public int getQueueCapacity() {
+		return _capacity;
+	}
+
+	/**
+	 * 设置指定类型的事件在同一次drain中是否合并重复项(类型,来源,目标相同且数据相等时只分发第一个)
+	 * 
+	 * @param type
+	 * @param coalesce
+	 * @return
+	 */
+	public GameEventBus<T> setCoalesce(GameEventType type, boolean coalesce) {
+		if (type != null && _coalesce[type.ordinal()] != coalesce) {
+			_coalesce[type.ordinal()] = coalesce;
+			_coalesceCount += coalesce ? 1 : -1;
+		}
+		return this;
+	}
+
+	public boolean isCoalesce(GameEventType type) {
+		return type != null && _coalesce[type.ordinal()];
+	}
+
+	public GameEventBus<T> setMaxPooled(int max) {
+		this._maxPooled = max < 0 ? 0 : max;
+		return this;
+	}
+
+	public int getQueueDepth() {
+		synchronized (_queueLock) {
+			return _inbox.size;
+		}
+	}
+
+	public int getPeakQueueDepth() {
+		return _peakDepth;
+	}
+
+	public long getDispatchedCount() {
+		return _dispatched;
+	}
+
+	public long getDroppedCount() {
+		return _dropped;
+	}
+
+	public long getCoalescedCount() {
+		return _coalesced;
+	}
+
+	/**
+	 * 最近一个事件从入队到分发的延迟(纳秒)
+	 * 
+	 * @return
+	 */
+	public long getLastLatency() {
+		return _lastLatency;
+	}
+
+	public long getMaxLatency() {
+		return _maxLatency;
+	}
+
+	public long getAverageLatency() {
+		return _latencyCount == 0 ? 0 : _totalLatency / _latencyCount;
+	}
+
+	public GameEventBus<T> resetCounters() {
+		_peakDepth = 0;
+		_dispatched = 0;
+		_dropped = 0;
+		_coalesced = 0;
+		_lastLatency = 0;
+		_maxLatency = 0;
+		_totalLatency = 0;
+		_latencyCount = 0;
+		return this;
 	}
 
 	public void setLoggingEnabled(boolean enabled) {
@@ -102,8 +560,16 @@ public class GameEventBus<T> implements LRelease {
 
 	@Override
 	public void close() {
-		listeners.clear();
-		eventQueue.clear();
+		synchronized (this) {
+			listeners.clear();
+			_tables = new Object[TYPES.length][];
+			eventQueue.clear();
+		}
+		synchronized (_queueLock) {
+			_inbox.clear();
+			_outbox.clear();
+			_freeEvents.clear();
+		}
 	}
 
 }
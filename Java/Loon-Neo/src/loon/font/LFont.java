@@ -29,6 +29,7 @@ import loon.geom.Vector2f;
 import loon.opengl.GLEx;
 import loon.opengl.LSTRDictionary;
 import loon.opengl.LSTRFont;
+import loon.opengl.LSTRGlyphCache;
 import loon.opengl.LSTRDictionary.Dict;
 import loon.utils.IntMap;
 import loon.utils.MathUtils;
@@ -161,6 +162,10 @@ public final class LFont extends FontTrans implements IFont {
 			return;
 		}
 		final String newMessage = toMessage(msg);
+		if (g != null && LSTRDictionary.get().isGlyphCache()) {
+			LSTRGlyphCache.get().drawString(g, this, newMessage, _offset.x + tx, _offset.y + ty, angle, c);
+			return;
+		}
 		final Dict fontDict = getDict(newMessage);
 		if (fontDict == null || fontDict.isClosed()) {
 			return;
@@ -189,6 +194,11 @@ public final class LFont extends FontTrans implements IFont {
 			return;
 		}
 		final String newMessage = toMessage(msg);
+		if (g != null && LSTRDictionary.get().isGlyphCache()) {
+			LSTRGlyphCache.get().drawString(g, this, newMessage, _offset.x + tx, _offset.y + ty, sx, sy, ax, ay, angle,
+					c);
+			return;
+		}
 		final Dict fontDict = getDict(newMessage);
 		if (fontDict == null || fontDict.isClosed()) {
 			return;
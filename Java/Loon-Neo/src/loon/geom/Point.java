@@ -97,7 +97,7 @@ public class Point extends Shape {
 
 	@Override
 	protected void createPoints() {
-		if (points == null) {
+		if (points == null || points.length < 2) {
 			points = new float[2];
 		}
 		points[0] = this.x;
@@ -114,7 +114,7 @@ public class Point extends Shape {
 
 	@Override
 	protected void findCenter() {
-		if (center == null) {
+		if (center == null || center.length < 2) {
 			center = new float[2];
 		}
 		center[0] = points[0];
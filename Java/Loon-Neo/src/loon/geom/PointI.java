@@ -133,13 +133,13 @@ public class PointI implements XY, SetXY {
 	public final int distanceTo(PointI p) {
 		final int tx = this.x - p.x;
 		final int ty = this.y - p.y;
-		return (int) MathUtils.sqrt(MathUtils.mul(tx, tx) + MathUtils.mul(ty, ty));
+		return (int) MathUtils.sqrt(tx * tx + ty * ty);
 	}
 
 	public final int distanceTo(int x, int y) {
 		final int tx = this.x - x;
 		final int ty = this.y - y;
-		return (int) MathUtils.sqrt(MathUtils.mul(tx, tx) + MathUtils.mul(ty, ty));
+		return (int) MathUtils.sqrt(tx * tx + ty * ty);
 	}
 
 	public final int distanceTo(PointI p1, PointI p2) {
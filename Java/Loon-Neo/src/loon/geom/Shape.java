@@ -25,6 +25,9 @@ import java.io.Serializable;
 
 import loon.LSystem;
 import loon.action.collision.CollisionHelper;
+import loon.action.collision.CollisionManifold;
+import loon.action.collision.NarrowPhase;
+import loon.action.collision.ShapeConvexCache;
 import loon.action.sprite.ISprite;
 import loon.action.sprite.ShapeEntity;
 import loon.canvas.LColor;
@@ -99,6 +102,9 @@ public abstract class Shape implements Serializable, IArray, XY, SetXY {
 	protected float minX, minY;
 	protected float boundingCircleRadius;
 	protected boolean pointsDirty;
+	// 顶点每次重新计算后递增,供缓存判断图形是否变化
+	protected int pointsVersion;
+	protected transient ShapeConvexCache convexCache;
 	protected transient Triangle triangle;
 	protected boolean trianglesDirty;
 	protected AABB aabb;
@@ -1143,6 +1149,39 @@ public abstract class Shape implements Serializable, IArray, XY, SetXY {
 		return collideSAT(this, s);
 	}
 
+	/**
+	 * 使用缓存的凸分解精确检测碰撞,并输出接触法线,穿透深度与接触点
+	 *
+	 * @param s
+	 * @param manifold
+	 * @return
+	 */
+	public boolean collide(Shape s, CollisionManifold manifold) {
+		return NarrowPhase.collide(this, s, manifold);
+	}
+
+	/**
+	 * 使用缓存的凸分解精确判断是否重叠(包括一方完全在另一方内部)
+	 *
+	 * @param s
+	 * @return
+	 */
+	public boolean overlaps(Shape s) {
+		return NarrowPhase.overlaps(this, s);
+	}
+
+	public int getPointsVersion() {
+		checkPoints();
+		return pointsVersion;
+	}
+
+	public ShapeConvexCache getConvexCache() {
+		if (convexCache == null) {
+			convexCache = new ShapeConvexCache(this);
+		}
+		return convexCache.validate();
+	}
+
 	public boolean contains(XY xy) {
 		return xy != null && contains(xy.getX(), xy.getY());
 	}
@@ -1520,6 +1559,7 @@ public abstract class Shape implements Serializable, IArray, XY, SetXY {
 		updatePoints();
 		pointsDirty = false;
 		trianglesDirty = true;
+		pointsVersion++;
 	}
 
 	public Shape reverse() {
@@ -21,6 +21,7 @@
 package loon.opengl;
 
 import loon.Graphics;
+import loon.LGame;
 import loon.LRelease;
 import loon.LSysException;
 import loon.LSystem;
@@ -498,7 +499,12 @@ public class GLEx extends BatchEx<GLEx> implements LRelease {
 	}
 
 	public static BaseBatch createDefaultBatch(GL20 gl) {
-		return new TrilateralBatch(gl);
+		final TrilateralBatch batch = new TrilateralBatch(gl);
+		final LGame game = LSystem.base();
+		if (game != null && game.setting != null) {
+			batch.setTextureSlots(game.setting.textureSlots);
+		}
+		return batch;
 	}
 
 	/**
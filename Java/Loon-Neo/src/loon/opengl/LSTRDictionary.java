@@ -48,6 +48,7 @@ public final class LSTRDictionary implements LRelease {
 			instance.dispose();
 		}
 		instance = null;
+		LSTRGlyphCache.freeStatic();
 	}
 
 	public final static LSTRDictionary make() {
@@ -114,6 +115,8 @@ public final class LSTRDictionary implements LRelease {
 
 	private boolean _allowCacheBind = true;
 
+	private boolean _glyphCache = false;
+
 	private final IntMap<Dict> _fontList = new IntMap<Dict>(_CACHE_SIZE);
 
 	private final ArrayMap _cacheList = new ArrayMap(_CACHE_SIZE);
@@ -661,6 +664,25 @@ public final class LSTRDictionary implements LRelease {
 		return this;
 	}
 
+	/**
+	 * 为true时LFont绘制文字改用LSTRGlyphCache逐字缓存,出现新字符时只光栅化并上传该字,不再重建整张纹理
+	 *
+	 * @param g
+	 * @return
+	 */
+	public LSTRDictionary setGlyphCache(boolean g) {
+		this._glyphCache = g;
+		return this;
+	}
+
+	public boolean isGlyphCache() {
+		return _glyphCache;
+	}
+
+	public LSTRGlyphCache getGlyphCache() {
+		return LSTRGlyphCache.get();
+	}
+
 	public final void dispose() {
 		try {
 			_cacheList.clear();
@@ -0,0 +1,628 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.opengl;
+
+import loon.LRelease;
+import loon.LSystem;
+import loon.LTexture;
+import loon.canvas.Canvas;
+import loon.canvas.LColor;
+import loon.canvas.Pixmap;
+import loon.font.LFont;
+import loon.font.TextLayout;
+import loon.geom.Affine2f;
+import loon.utils.IntMap;
+import loon.utils.MathUtils;
+import loon.utils.StringUtils;
+import loon.utils.TArray;
+
+/**
+ * 所有LFont共用的动态字形缓存.
+ *
+ * 与LSTRFont一次把整个字符集画到一张纹理不同,此类只在字符第一次绘制时单独光栅化该字,放入固定大小的纹理页中(按行货架式排列),
+ * 并且只上传有变化的区域,因此出现新的中文字符时不会重建整张纹理.页数达到上限后,淘汰最久没有使用过的一页.
+ * 字形按(字体名,样式,大小,字符的码点)区分,代理对组成的字符(比如emoji)作为一个字形缓存.
+ *
+ * <pre>
+ * LSTRDictionary.get().setGlyphCache(true); // LFont绘制时改用此缓存
+ * LSTRGlyphCache cache = LSTRGlyphCache.get();
+ * cache.getHitRate(); // 命中率
+ * </pre>
+ */
+public final class LSTRGlyphCache implements LRelease {
+
+	private static LSTRGlyphCache instance;
+
+	public static void freeStatic() {
+		if (instance != null) {
+			instance.close();
+		}
+		instance = null;
+	}
+
+	public final static LSTRGlyphCache get() {
+		if (instance == null) {
+			synchronized (LSTRGlyphCache.class) {
+				if (instance == null) {
+					instance = new LSTRGlyphCache();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * 单个字形在纹理页中的位置
+	 */
+	public final static class Glyph {
+
+		private final FontGlyphs owner;
+
+		private final int codePoint;
+
+		private final Page page;
+
+		private final int x, y, width, height, advance;
+
+		private Glyph(FontGlyphs owner, int codePoint, Page page, int x, int y, int w, int h, int advance) {
+			this.owner = owner;
+			this.codePoint = codePoint;
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = w;
+			this.height = h;
+			this.advance = advance;
+		}
+
+		public LTexture getTexture() {
+			return page.texture;
+		}
+
+		public int getCodePoint() {
+			return codePoint;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int getAdvance() {
+			return advance;
+		}
+	}
+
+	private final static class FontGlyphs {
+
+		final LFont font;
+
+		final IntMap<Glyph> glyphs = new IntMap<Glyph>();
+
+		FontGlyphs(LFont font) {
+			this.font = font;
+		}
+	}
+
+	private final static class Shelf {
+
+		final int y, height;
+
+		int x;
+
+		Shelf(int y, int h) {
+			this.y = y;
+			this.height = h;
+		}
+	}
+
+	private final static class Page {
+
+		final int index;
+
+		final Canvas canvas;
+
+		final TArray<Shelf> shelves = new TArray<Shelf>();
+
+		final TArray<Glyph> glyphs = new TArray<Glyph>();
+
+		LTexture texture;
+
+		int bottom;
+
+		long usedArea;
+
+		long lastUse;
+
+		// 本页需要重新上传的区域
+		int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
+		boolean dirty, reset;
+
+		Page(int index, int size) {
+			this.index = index;
+			this.canvas = LSystem.base().graphics().createCanvas(size, size);
+		}
+
+		void mark(int x, int y, int w, int h) {
+			if (!dirty) {
+				dirtyLeft = x;
+				dirtyTop = y;
+				dirtyRight = x + w;
+				dirtyBottom = y + h;
+				dirty = true;
+			} else {
+				dirtyLeft = MathUtils.min(dirtyLeft, x);
+				dirtyTop = MathUtils.min(dirtyTop, y);
+				dirtyRight = MathUtils.max(dirtyRight, x + w);
+				dirtyBottom = MathUtils.max(dirtyBottom, y + h);
+			}
+		}
+	}
+
+	// 字形之间的间距,避免线性过滤时采样到相邻的字
+	private final static int PADDING = 1;
+
+	private final IntMap<FontGlyphs> _fonts = new IntMap<FontGlyphs>();
+
+	private final TArray<Page> _pages = new TArray<Page>();
+
+	private final int _pageSize;
+
+	private final int _maxPages;
+
+	private int _pixelColor = LColor.DEF_COLOR;
+
+	private long _clock;
+
+	private long _lookups, _hits, _misses, _evictions, _uploads, _uploadPixels;
+
+	private boolean _closed;
+
+	public LSTRGlyphCache() {
+		this(512, 8);
+	}
+
+	public LSTRGlyphCache(int pageSize, int maxPages) {
+		this._pageSize = MathUtils.max(64, pageSize);
+		this._maxPages = MathUtils.max(1, maxPages);
+	}
+
+	private static int toFontKey(LFont font) {
+		int hashCode = 132;
+		hashCode = LSystem.unite(hashCode, font.getFontName());
+		hashCode = LSystem.unite(hashCode, LSystem.UNDERLINE);
+		hashCode = LSystem.unite(hashCode, font.getStyle());
+		hashCode = LSystem.unite(hashCode, LSystem.UNDERLINE);
+		hashCode = LSystem.unite(hashCode, font.getSize());
+		return hashCode;
+	}
+
+	/**
+	 * 获得指定字体的字形,不存在时立即光栅化(需要调用flush后才会上传到纹理)
+	 *
+	 * @param font
+	 * @param codePoint 字符的码点
+	 * @return 缓存已满且全部页都在当前绘制中使用时返回null
+	 */
+	public Glyph getGlyph(LFont font, int codePoint) {
+		if (_closed || font == null) {
+			return null;
+		}
+		_lookups++;
+		final int key = toFontKey(font);
+		FontGlyphs fg = _fonts.get(key);
+		if (fg == null) {
+			fg = new FontGlyphs(font);
+			_fonts.put(key, fg);
+		}
+		Glyph glyph = fg.glyphs.get(codePoint);
+		if (glyph != null) {
+			_hits++;
+			glyph.page.lastUse = _clock;
+			return glyph;
+		}
+		_misses++;
+		glyph = rasterize(fg, codePoint);
+		if (glyph != null) {
+			fg.glyphs.put(codePoint, glyph);
+		}
+		return glyph;
+	}
+
+	private Glyph rasterize(FontGlyphs fg, int codePoint) {
+		final LFont font = fg.font;
+		final TextLayout layout = font.getLayoutText(new String(Character.toChars(codePoint)), false);
+		// charWidth只接受单个char,代理对直接使用整体的宽度
+		int w = Character.isSupplementaryCodePoint(codePoint) ? 0 : layout.charWidth((char) codePoint);
+		if (w <= 0) {
+			w = MathUtils.max(1, layout.bounds.width);
+		}
+		final int h = MathUtils.max(1, MathUtils.max(layout.getHeight(), font.getHeight()));
+		if (w + PADDING > _pageSize || h + PADDING > _pageSize) {
+			return null;
+		}
+		final int cellW = w + PADDING;
+		final int cellH = h + PADDING;
+		Page page = null;
+		Shelf shelf = null;
+		for (int i = 0; i < _pages.size && shelf == null; i++) {
+			page = _pages.get(i);
+			shelf = allocate(page, cellW, cellH);
+		}
+		if (shelf == null) {
+			page = null;
+			if (_pages.size < _maxPages) {
+				page = new Page(_pages.size, _pageSize);
+				_pages.add(page);
+			} else {
+				page = evict();
+			}
+			if (page == null) {
+				return null;
+			}
+			shelf = allocate(page, cellW, cellH);
+			if (shelf == null) {
+				return null;
+			}
+		}
+		final int x = shelf.x;
+		final int y = shelf.y;
+		shelf.x += cellW;
+		final Canvas canvas = page.canvas;
+		canvas.clearRect(x, y, cellW, cellH);
+		canvas.setFillColor(_pixelColor);
+		canvas.setFont(font);
+		canvas.fillText(layout, x, y);
+		page.mark(x, y, cellW, cellH);
+		page.usedArea += cellW * cellH;
+		page.lastUse = _clock;
+		final Glyph glyph = new Glyph(fg, codePoint, page, x, y, w, h, w);
+		page.glyphs.add(glyph);
+		return glyph;
+	}
+
+	/**
+	 * 在页中找到可以放下w*h的行,高度相近的行优先,不存在时在底部开新行
+	 */
+	private Shelf allocate(Page page, int w, int h) {
+		Shelf best = null;
+		for (int i = 0; i < page.shelves.size; i++) {
+			final Shelf s = page.shelves.get(i);
+			if (s.height >= h && s.x + w <= _pageSize && (best == null || s.height < best.height)) {
+				best = s;
+			}
+		}
+		// 行高比需要的高出太多时宁可开新行,减少浪费
+		if (best != null && best.height <= h + (h >> 2)) {
+			return best;
+		}
+		if (page.bottom + h <= _pageSize) {
+			final Shelf s = new Shelf(page.bottom, h);
+			page.bottom += h;
+			page.shelves.add(s);
+			return s;
+		}
+		return best;
+	}
+
+	/**
+	 * 清空最久没有使用过的一页(当前绘制中使用过的页不会被淘汰)
+	 */
+	private Page evict() {
+		Page oldest = null;
+		for (int i = 0; i < _pages.size; i++) {
+			final Page p = _pages.get(i);
+			if (p.lastUse < _clock && (oldest == null || p.lastUse < oldest.lastUse)) {
+				oldest = p;
+			}
+		}
+		if (oldest == null) {
+			return null;
+		}
+		for (int i = 0; i < oldest.glyphs.size; i++) {
+			final Glyph g = oldest.glyphs.get(i);
+			g.owner.glyphs.remove(g.codePoint);
+		}
+		oldest.glyphs.clear();
+		oldest.shelves.clear();
+		oldest.bottom = 0;
+		oldest.usedArea = 0;
+		oldest.reset = true;
+		_evictions++;
+		return oldest;
+	}
+
+	/**
+	 * 上传所有页中有变化的区域
+	 *
+	 * @param g
+	 */
+	public void flush(GLEx g) {
+		if (_closed) {
+			return;
+		}
+		for (int i = 0; i < _pages.size; i++) {
+			final Page page = _pages.get(i);
+			if (page.texture == null || page.texture.isClosed()) {
+				page.texture = page.canvas.image.createTexture(LTexture.Format.LINEAR);
+				page.dirty = page.reset = false;
+				_uploads++;
+				_uploadPixels += _pageSize * _pageSize;
+				continue;
+			}
+			if (!page.dirty) {
+				continue;
+			}
+			if (g != null) {
+				final BaseBatch batch = g.batch();
+				// 页被淘汰重用时,先画出之前提交的旧字形
+				if (page.reset) {
+					g.flush();
+				}
+				batch.setTexture(page.texture);
+			}
+			final int w = page.dirtyRight - page.dirtyLeft;
+			final int h = page.dirtyBottom - page.dirtyTop;
+			final int[] pixels = page.canvas.image.getPixels(page.dirtyLeft, page.dirtyTop, w, h);
+			final Pixmap pix = new Pixmap(pixels, w, h, true);
+			final GL20 gl = LSystem.base().graphics().gl;
+			page.texture.bind();
+			gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, page.dirtyLeft, page.dirtyTop, w, h, GL20.GL_RGBA,
+					GL20.GL_UNSIGNED_BYTE, pix.convertPixmapToByteBuffer());
+			pix.close();
+			page.dirty = page.reset = false;
+			_uploads++;
+			_uploadPixels += w * h;
+		}
+	}
+
+	public void drawString(GLEx g, LFont font, String msg, float x, float y, float rotation, LColor c) {
+		drawString(g, font, msg, x, y, 1f, 1f, 0f, 0f, rotation, c);
+	}
+
+	/**
+	 * 使用缓存的字形绘制字符串
+	 */
+	public void drawString(GLEx g, LFont font, String msg, float x, float y, float sx, float sy, float ax, float ay,
+			float rotation, LColor c) {
+		if (_closed || g == null || font == null || StringUtils.isNullOrEmpty(msg)) {
+			return;
+		}
+		_clock++;
+		final int size = msg.length();
+		// 先光栅化全部缺少的字,一次上传后再绘制
+		for (int i = 0; i < size;) {
+			final int codePoint = Character.codePointAt(msg, i);
+			i += Character.charCount(codePoint);
+			if (!StringUtils.isWhitespace(codePoint)) {
+				getGlyph(font, codePoint);
+			}
+		}
+		flush(g);
+		final int fontKey = toFontKey(font);
+		final FontGlyphs fg = _fonts.get(fontKey);
+		if (fg == null) {
+			return;
+		}
+		final int lineHeight = font.getSize();
+		final int advanceSpace = MathUtils.max(1, lineHeight / 2);
+		final boolean anchor = ax != 0 || ay != 0;
+		final boolean angle = rotation != 0;
+		final boolean update = angle || anchor;
+		final int blend = g.getBlendMode();
+		try {
+			g.setBlendMode(BlendMethod.MODE_NORMAL);
+			if (update) {
+				g.saveTx();
+				final Affine2f xf = g.tx();
+				if (angle) {
+					final float centerX = x + font.stringWidth(msg) / 2;
+					final float centerY = y + font.stringHeight(msg) / 2;
+					xf.translate(centerX, centerY);
+					xf.preRotate(rotation);
+					xf.translate(-centerX, -centerY);
+				}
+				if (anchor) {
+					xf.translate(ax, ay);
+				}
+			}
+			int penX = 0, penY = 0;
+			for (int i = 0; i < size;) {
+				final int ch = Character.codePointAt(msg, i);
+				i += Character.charCount(ch);
+				if (ch == LSystem.CR) {
+					continue;
+				}
+				if (ch == LSystem.LF) {
+					penY += lineHeight;
+					penX = 0;
+					continue;
+				}
+				if (ch == LSystem.SPACE) {
+					penX += advanceSpace;
+					continue;
+				}
+				if (ch == LSystem.TAB) {
+					penX += advanceSpace * 3;
+					continue;
+				}
+				if (StringUtils.isWhitespace(ch)) {
+					continue;
+				}
+				final Glyph glyph = fg.glyphs.get(ch);
+				if (glyph == null) {
+					continue;
+				}
+				g.draw(glyph.page.texture, x + penX * sx, y + penY * sy, glyph.width * sx, glyph.height * sy, glyph.x,
+						glyph.y, glyph.width, glyph.height, c);
+				penX += glyph.advance;
+			}
+		} finally {
+			g.setBlendMode(blend);
+			if (update) {
+				g.restoreTx();
+			}
+		}
+	}
+
+	/**
+	 * 字形的填充色(绘制时再乘以指定颜色),默认为白色
+	 *
+	 * @param pixel
+	 * @return
+	 */
+	public LSTRGlyphCache setPixelColor(int pixel) {
+		this._pixelColor = pixel;
+		return this;
+	}
+
+	public int getPixelColor() {
+		return _pixelColor;
+	}
+
+	public int getPageSize() {
+		return _pageSize;
+	}
+
+	public int getMaxPages() {
+		return _maxPages;
+	}
+
+	public int getPageCount() {
+		return _pages.size;
+	}
+
+	/**
+	 * 指定页中字形占用面积的比例
+	 *
+	 * @param index
+	 * @return
+	 */
+	public float getPageUsage(int index) {
+		if (index < 0 || index >= _pages.size) {
+			return 0f;
+		}
+		return (float) _pages.get(index).usedArea / ((long) _pageSize * _pageSize);
+	}
+
+	public int getPageGlyphCount(int index) {
+		if (index < 0 || index >= _pages.size) {
+			return 0;
+		}
+		return _pages.get(index).glyphs.size;
+	}
+
+	public LTexture getPageTexture(int index) {
+		if (index < 0 || index >= _pages.size) {
+			return null;
+		}
+		return _pages.get(index).texture;
+	}
+
+	public int getGlyphCount() {
+		int count = 0;
+		for (int i = 0; i < _pages.size; i++) {
+			count += _pages.get(i).glyphs.size;
+		}
+		return count;
+	}
+
+	public long getLookupCount() {
+		return _lookups;
+	}
+
+	public long getHitCount() {
+		return _hits;
+	}
+
+	public long getMissCount() {
+		return _misses;
+	}
+
+	public long getEvictionCount() {
+		return _evictions;
+	}
+
+	public long getUploadCount() {
+		return _uploads;
+	}
+
+	public long getUploadPixels() {
+		return _uploadPixels;
+	}
+
+	public float getHitRate() {
+		return _lookups == 0 ? 0f : (float) _hits / _lookups;
+	}
+
+	public LSTRGlyphCache resetStats() {
+		_lookups = _hits = _misses = _evictions = _uploads = _uploadPixels = 0;
+		return this;
+	}
+
+	/**
+	 * 清空全部字形与纹理页
+	 */
+	public void clear() {
+		for (int i = 0; i < _pages.size; i++) {
+			final Page page = _pages.get(i);
+			if (page.texture != null) {
+				page.texture.close(true);
+				page.texture = null;
+			}
+			if (page.canvas.image != null) {
+				page.canvas.image.close();
+			}
+			page.canvas.close();
+		}
+		_pages.clear();
+		_fonts.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "LSTRGlyphCache [pages=" + _pages.size + "/" + _maxPages + ", glyphs=" + getGlyphCount()
+				+ ", hitRate=" + getHitRate() + ", evictions=" + _evictions + "]";
+	}
+
+	public boolean isClosed() {
+		return _closed;
+	}
+
+	@Override
+	public void close() {
+		clear();
+		_closed = true;
+	}
+
+}
@@ -36,6 +36,7 @@ import loon.geom.RectBox;
 import loon.geom.RectI;
 import loon.utils.ArrayMap;
 import loon.utils.IntArray;
+import loon.utils.MathUtils;
 import loon.utils.PathUtils;
 import loon.utils.StrBuilder;
 import loon.utils.StringUtils;
@@ -70,6 +71,14 @@ public final class LTexturePack implements LRelease {
 
 	private Format _format = Format.DEFAULT;
 
+	private int _padding, _extrude;
+
+	private int _maxPageSize = 8192;
+
+	private boolean _powerOfTwo = true;
+
+	private MaxRectsPacker.Heuristic _heuristic = MaxRectsPacker.Heuristic.BestShortSideFit;
+
 	public LTexture getTexture(String name) {
 		return getTexture(name, 0f, 0f, 0f, 0f);
 	}
@@ -383,6 +392,15 @@ public final class LTexturePack implements LRelease {
 				entry.bounds.top = e.getIntAttribute("top", 0);
 				entry.bounds.right = e.getIntAttribute("right", 0);
 				entry.bounds.bottom = e.getIntAttribute("bottom", 0);
+				// 裁剪过透明边缘的图片记录了原始尺寸与偏移
+				entry.offsetX = e.getIntAttribute("offsetX", 0);
+				entry.offsetY = e.getIntAttribute("offsetY", 0);
+				entry.width = e.getIntAttribute("width", entry.bounds.width());
+				entry.height = e.getIntAttribute("height", entry.bounds.height());
+				// 旋转放置的图片无法按原样绘制,不予支持
+				if (e.getBoolAttribute("rotate", false)) {
+					throw new LSysException("LTexturePack does not support rotated block : " + entry.fileName);
+				}
 				if (entry.fileName != null) {
 					_packedMap.put(entry.fileName, entry);
 				} else {
@@ -492,52 +510,34 @@ public final class LTexturePack implements LRelease {
 		return _count;
 	}
 
+	/**
+	 * 运行时打包,只生成单页纹理(放不下时抛出异常),且不裁剪透明边缘(裁剪与多页输出由离线打包工具完成)
+	 */
 	private synchronized Image packImage() {
 		checkPacked();
 		if (_packing) {
 			if (_packedMap.isEmpty()) {
 				throw new LSysException("Nothing to Pack !");
 			}
-			int maxWidth = 0;
-			int maxHeight = 0;
-			int totalArea = 0;
-
+			final TArray<MaxRectsPacker.Rect> rects = new TArray<MaxRectsPacker.Rect>(_packedMap.size());
 			for (int i = 0; i < _packedMap.size(); i++) {
 				PackEntry entry = (PackEntry) _packedMap.get(i);
-				int width = (int) entry.image.width();
-				int height = (int) entry.image.height();
-				if (width > maxWidth) {
-					maxWidth = width;
-				}
-				if (height > maxHeight) {
-					maxHeight = height;
-				}
-				totalArea += width * height;
+				rects.add(new MaxRectsPacker.Rect(entry.fileName, (int) entry.image.width(),
+						(int) entry.image.height(), entry));
 			}
-
-			PointI size = new PointI(closeTwoPower(maxWidth), closeTwoPower(maxHeight));
-			boolean fitAll = false;
-			loop: while (!fitAll) {
-				int area = size.x * size.y;
-				if (area < totalArea) {
-					nextSize(size);
-					continue;
+			final MaxRectsPacker packer = new MaxRectsPacker(_maxPageSize, _maxPageSize);
+			packer.setPadding(_padding).setExtrude(_extrude).setPowerOfTwo(_powerOfTwo).setHeuristic(_heuristic)
+					.setMultiPage(false);
+			final MaxRectsPacker.Page page = packer.pack(rects).get(0);
+			Canvas canvas = LSystem.base().graphics().createCanvas(page.width, page.height);
+			for (int i = 0; i < rects.size; i++) {
+				final MaxRectsPacker.Rect rect = rects.get(i);
+				final PackEntry entry = (PackEntry) rect.data;
+				entry.bounds.set(rect.x, rect.y, rect.x + rect.width, rect.y + rect.height);
+				canvas.draw(entry.image, rect.x, rect.y);
+				if (_extrude > 0) {
+					extrude(canvas, entry.image, rect.x, rect.y, rect.width, rect.height);
 				}
-				Node root = new Node(size.x, size.y);
-				for (int i = 0; i < _packedMap.size(); i++) {
-					PackEntry entry = (PackEntry) _packedMap.get(i);
-					Node inserted = root.insert(entry);
-					if (inserted == null) {
-						nextSize(size);
-						continue loop;
-					}
-				}
-				fitAll = true;
-			}
-			Canvas canvas = LSystem.base().graphics().createCanvas(size.x, size.y);
-			for (int i = 0; i < _packedMap.size(); i++) {
-				PackEntry entry = (PackEntry) _packedMap.get(i);
-				canvas.draw(entry.image, entry.bounds.left, entry.bounds.top);
 			}
 			_packing = false;
 			return canvas.image;
@@ -545,6 +545,21 @@ public final class LTexturePack implements LRelease {
 		return null;
 	}
 
+	/**
+	 * 把图片边缘的像素向外复制_extrude像素,避免线性过滤时采样到相邻图片
+	 */
+	private void extrude(Canvas canvas, Image image, int x, int y, int w, int h) {
+		final int e = _extrude;
+		canvas.draw(image, x - e, y, e, h, 0, 0, 1, h);
+		canvas.draw(image, x + w, y, e, h, w - 1, 0, 1, h);
+		canvas.draw(image, x, y - e, w, e, 0, 0, w, 1);
+		canvas.draw(image, x, y + h, w, e, 0, h - 1, w, 1);
+		canvas.draw(image, x - e, y - e, e, e, 0, 0, 1, 1);
+		canvas.draw(image, x + w, y - e, e, e, w - 1, 0, 1, 1);
+		canvas.draw(image, x - e, y + h, e, e, 0, h - 1, 1, 1);
+		canvas.draw(image, x + w, y + h, e, e, w - 1, h - 1, 1, 1);
+	}
+
 	public synchronized LTexture pack() {
 		return pack(_format);
 	}
@@ -683,13 +698,14 @@ public final class LTexturePack implements LRelease {
 			return null;
 		}
 		if (_texture.isBatch()) {
-			_texture.draw(x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-					entry.bounds.right, entry.bounds.bottom, rotation, color);
+			_texture.draw(x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+					entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom, rotation, color);
 		} else {
-			_glex.draw(_texture, x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-					entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
+			_glex.draw(_texture, x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+					entry.bounds.left, entry.bounds.top, entry.bounds.right - entry.bounds.left,
+					entry.bounds.bottom - entry.bounds.top, color, rotation);
 		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
+		_blittedSize.set(entry.width, entry.height);
 		return _blittedSize;
 	}
 
@@ -707,15 +723,7 @@ public final class LTexturePack implements LRelease {
 		if (entry == null) {
 			return null;
 		}
-		if (_texture.isBatch()) {
-			_texture.draw(x, y, w, h, entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom,
-					rotation, color);
-		} else {
-			_glex.draw(_texture, x, y, w, h, entry.bounds.left, entry.bounds.top,
-					entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
-		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
-		return _blittedSize;
+		return drawScaled(entry, x, y, w, h, rotation, color);
 	}
 
 	public PointI draw(int id, float dx1, float dy1, float dx2, float dy2, float sx1, float sy1, float sx2, float sy2) {
@@ -739,15 +747,29 @@ public final class LTexturePack implements LRelease {
 		if (entry == null) {
 			return null;
 		}
+		drawRegion(entry, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, color);
+		_blittedSize.set(entry.width, entry.height);
+		return _blittedSize;
+	}
+
+	/**
+	 * 以原图尺寸为准缩放绘制,裁剪过透明边缘的图片按比例放到原来的位置
+	 */
+	private PointI drawScaled(PackEntry entry, float x, float y, float w, float h, float rotation, LColor color) {
+		final float scaleX = entry.width == 0 ? 1f : w / entry.width;
+		final float scaleY = entry.height == 0 ? 1f : h / entry.height;
+		final float dx = x + entry.offsetX * scaleX;
+		final float dy = y + entry.offsetY * scaleY;
+		final float dw = entry.bounds.width() * scaleX;
+		final float dh = entry.bounds.height() * scaleY;
 		if (_texture.isBatch()) {
-			_texture.draw(dx1, dy1, dx2, dy2, sx1 + entry.bounds.left, sy1 + entry.bounds.top, sx2 + entry.bounds.left,
-					sy2 + entry.bounds.top, rotation, color);
+			_texture.draw(dx, dy, dw, dh, entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom,
+					rotation, color);
 		} else {
-			_glex.draw(_texture, dx1, dy1, dx2, dy2, sx1 + entry.bounds.left, sy1 + entry.bounds.top,
-					sx2 + entry.bounds.right - entry.bounds.left, sy2 + entry.bounds.bottom - entry.bounds.top, color,
-					rotation);
+			_glex.draw(_texture, dx, dy, dw, dh, entry.bounds.left, entry.bounds.top,
+					entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
 		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
+		_blittedSize.set(entry.width, entry.height);
 		return _blittedSize;
 	}
 
@@ -763,15 +785,16 @@ public final class LTexturePack implements LRelease {
 		this.pack();
 		PackEntry entry = getEntry(name);
 		if (_texture.isBatch()) {
-			_texture.draw(x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-					entry.bounds.right, entry.bounds.bottom, c);
+			_texture.draw(x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+					entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom, c);
 		}
 	}
 
 	public void draw(PackEntry entry, GLEx gl, float x, float y, float rotation, LColor color) {
 		this.pack();
-		gl.draw(_texture, x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-				entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
+		gl.draw(_texture, x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+				entry.bounds.left, entry.bounds.top, entry.bounds.right - entry.bounds.left,
+				entry.bounds.bottom - entry.bounds.top, color, rotation);
 	}
 
 	public PointI draw(String name, float x, float y, float rotation, LColor color) {
@@ -781,13 +804,14 @@ public final class LTexturePack implements LRelease {
 			return null;
 		}
 		if (_texture.isBatch()) {
-			_texture.draw(x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-					entry.bounds.right, entry.bounds.bottom, rotation, color);
+			_texture.draw(x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+					entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom, rotation, color);
 		} else {
-			_glex.draw(_texture, x, y, entry.bounds.width(), entry.bounds.height(), entry.bounds.left, entry.bounds.top,
-					entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
+			_glex.draw(_texture, x + entry.offsetX, y + entry.offsetY, entry.bounds.width(), entry.bounds.height(),
+					entry.bounds.left, entry.bounds.top, entry.bounds.right - entry.bounds.left,
+					entry.bounds.bottom - entry.bounds.top, color, rotation);
 		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
+		_blittedSize.set(entry.width, entry.height);
 		return _blittedSize;
 	}
 
@@ -805,15 +829,7 @@ public final class LTexturePack implements LRelease {
 		if (entry == null) {
 			return null;
 		}
-		if (_texture.isBatch()) {
-			_texture.draw(x, y, w, h, entry.bounds.left, entry.bounds.top, entry.bounds.right, entry.bounds.bottom,
-					rotation, color);
-		} else {
-			_glex.draw(_texture, x, y, w, h, entry.bounds.left, entry.bounds.top,
-					entry.bounds.right - entry.bounds.left, entry.bounds.bottom - entry.bounds.top, color, rotation);
-		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
-		return _blittedSize;
+		return drawScaled(entry, x, y, w, h, rotation, color);
 	}
 
 	public PointI draw(String name, float dx1, float dy1, float dx2, float dy2, float sx1, float sy1, float sx2,
@@ -823,7 +839,7 @@ public final class LTexturePack implements LRelease {
 
 	public PointI draw(String name, float dx1, float dy1, float dx2, float dy2, float sx1, float sy1, float sx2,
 			float sy2, float rotation) {
-		return draw(name, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, 0, null);
+		return draw(name, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, null);
 	}
 
 	public PointI draw(String name, float dx1, float dy1, float dx2, float dy2, float sx1, float sy1, float sx2,
@@ -839,10 +855,10 @@ public final class LTexturePack implements LRelease {
 			return this;
 		}
 		if (_texture.isBatch()) {
-			_texture.draw(dx1, dy1, dx2, dy2, sx1 + entry.bounds.left, sy1 + entry.bounds.top,
-					sx2 + entry.bounds.right - entry.bounds.left, sy2 + entry.bounds.bottom - entry.bounds.top, color);
+			_texture.draw(dx1, dy1, dx2, dy2, srcX(entry, sx1), srcY(entry, sy1), srcX(entry, sx2), srcY(entry, sy2),
+					color);
 		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
+		_blittedSize.set(entry.width, entry.height);
 		return this;
 	}
 
@@ -853,16 +869,39 @@ public final class LTexturePack implements LRelease {
 		if (entry == null) {
 			return null;
 		}
+		drawRegion(entry, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, rotation, color);
+		_blittedSize.set(entry.width, entry.height);
+		return _blittedSize;
+	}
+
+	/**
+	 * 把原图(裁剪透明边缘之前)中的横坐标换算为打包纹理中的横坐标
+	 */
+	private float srcX(PackEntry entry, float x) {
+		return x - entry.offsetX + entry.bounds.left;
+	}
+
+	/**
+	 * 把原图(裁剪透明边缘之前)中的纵坐标换算为打包纹理中的纵坐标
+	 */
+	private float srcY(PackEntry entry, float y) {
+		return y - entry.offsetY + entry.bounds.top;
+	}
+
+	/**
+	 * 按原图坐标(sx1,sy1)-(sx2,sy2)绘制图片的一部分,起点与终点使用同一换算
+	 */
+	private void drawRegion(PackEntry entry, float dx1, float dy1, float dx2, float dy2, float sx1, float sy1,
+			float sx2, float sy2, float rotation, LColor color) {
+		final float srcX1 = srcX(entry, sx1);
+		final float srcY1 = srcY(entry, sy1);
+		final float srcX2 = srcX(entry, sx2);
+		final float srcY2 = srcY(entry, sy2);
 		if (_texture.isBatch()) {
-			_texture.draw(dx1, dy1, dx2, dy2, sx1 + entry.bounds.left, sy1 + entry.bounds.top, sx2 + entry.bounds.right,
-					sy2 + entry.bounds.bottom, rotation, color);
+			_texture.draw(dx1, dy1, dx2, dy2, srcX1, srcY1, srcX2, srcY2, rotation, color);
 		} else {
-			_glex.draw(_texture, dx1, dy1, dx2, dy2, sx1 + entry.bounds.left, sy1 + entry.bounds.top,
-					sx2 + entry.bounds.right - entry.bounds.left, sy2 + entry.bounds.bottom - entry.bounds.top, color,
-					rotation);
+			_glex.draw(_texture, dx1, dy1, dx2, dy2, srcX1, srcY1, srcX2 - srcX1, srcY2 - srcY1, color, rotation);
 		}
-		_blittedSize.set(entry.bounds.width(), entry.bounds.height());
-		return _blittedSize;
 	}
 
 	public RectBox getImageRect(int id) {
@@ -897,26 +936,10 @@ public final class LTexturePack implements LRelease {
 		return entry.bounds;
 	}
 
-	private void nextSize(PointI size) {
-		if (size.x > size.y) {
-			size.y <<= 1;
-		} else {
-			size.x <<= 1;
-		}
-	}
-
 	public String getFileName() {
 		return _fileName;
 	}
 
-	private int closeTwoPower(int i) {
-		int power = 1;
-		while (power < i) {
-			power <<= 1;
-		}
-		return power;
-	}
-
 	private void checkPacked() {
 		if (_packed) {
 			throw new LSysException("the packed !");
@@ -950,6 +973,8 @@ public final class LTexturePack implements LRelease {
 
 		private int width, height;
 
+		private int offsetX, offsetY;
+
 		private PackEntry(Image image) {
 			this.image = image;
 			if (image != null) {
@@ -971,75 +996,44 @@ public final class LTexturePack implements LRelease {
 			return bounds;
 		}
 
+		/**
+		 * 图片的宽(裁剪过透明边缘时为原图的宽)
+		 *
+		 * @return
+		 */
 		public int width() {
-			return bounds.width();
+			return width;
 		}
 
 		public int height() {
-			return bounds.height();
+			return height;
 		}
-	}
-
-	private static class Node {
-
-		private final Node[] child = new Node[2];
 
-		private final RectI.Range bounds = new RectI.Range();
-
-		private PackEntry entry;
-
-		private Node() {
+		/**
+		 * 裁剪掉透明边缘后,图片左上角相对原图的偏移
+		 *
+		 * @return
+		 */
+		public int getOffsetX() {
+			return offsetX;
 		}
 
-		private Node(int width, int height) {
-			bounds.set(0, 0, width, height);
+		public int getOffsetY() {
+			return offsetY;
 		}
 
-		private boolean isLeaf() {
-			return (child[0] == null) && (child[1] == null);
+		/**
+		 * 原图(未裁剪)的宽
+		 *
+		 * @return
+		 */
+		public int getSourceWidth() {
+			return width;
 		}
 
-		private Node insert(PackEntry entry) {
-			if (isLeaf()) {
-				if (this.entry != null) {
-					return null;
-				}
-				int width = (int) entry.image.width();
-				int height = (int) entry.image.height();
-
-				if ((width > bounds.width()) || (height > bounds.height())) {
-					return null;
-				}
-
-				if ((width == bounds.width()) && (height == bounds.height())) {
-					this.entry = entry;
-					this.entry.bounds.set(this.bounds);
-					return this;
-				}
-
-				child[0] = new Node();
-				child[1] = new Node();
-
-				int dw = bounds.width() - width;
-				int dh = bounds.height() - height;
-
-				if (dw > dh) {
-					child[0].bounds.set(bounds.left, bounds.top, bounds.left + width, bounds.bottom);
-					child[1].bounds.set(bounds.left + width, bounds.top, bounds.right, bounds.bottom);
-				} else {
-					child[0].bounds.set(bounds.left, bounds.top, bounds.right, bounds.top + height);
-					child[1].bounds.set(bounds.left, bounds.top + height, bounds.right, bounds.bottom);
-				}
-				return child[0].insert(entry);
-			} else {
-				Node newNode = child[0].insert(entry);
-				if (newNode != null) {
-					return newNode;
-				}
-				return child[1].insert(entry);
-			}
+		public int getSourceHeight() {
+			return height;
 		}
-
 	}
 
 	public String getName() {
@@ -1084,13 +1078,86 @@ public final class LTexturePack implements LRelease {
 			PackEntry e = (PackEntry) _packedMap.get(i);
 			if (e != null && e.bounds != null) {
 				sbr.append("<block id=\"" + i + "\" name=\"" + e.fileName + "\" left=\"" + e.bounds.left + "\" top=\""
-						+ e.bounds.top + "\" right=\"" + e.bounds.right + "\" bottom=\"" + e.bounds.bottom + "\"/>\n");
+						+ e.bounds.top + "\" right=\"" + e.bounds.right + "\" bottom=\"" + e.bounds.bottom + "\"");
+				if (e.offsetX != 0 || e.offsetY != 0 || e.width != e.bounds.width()
+						|| e.height != e.bounds.height()) {
+					sbr.append(" offsetX=\"" + e.offsetX + "\" offsetY=\"" + e.offsetY + "\" width=\"" + e.width
+							+ "\" height=\"" + e.height + "\"");
+				}
+				sbr.append("/>\n");
 			}
 		}
 		sbr.append("</pack>");
 		return sbr.toString();
 	}
 
+	/**
+	 * 图片之间的间距
+	 *
+	 * @param padding
+	 * @return
+	 */
+	public LTexturePack setPadding(int padding) {
+		this._padding = MathUtils.max(0, padding);
+		this._packing = _packedMap.size() > 0 && !_packed;
+		return this;
+	}
+
+	public int getPadding() {
+		return _padding;
+	}
+
+	/**
+	 * 图片四周复制边缘像素的宽度(缩放或线性过滤时避免出现相邻图片的颜色)
+	 *
+	 * @param extrude
+	 * @return
+	 */
+	public LTexturePack setExtrude(int extrude) {
+		this._extrude = MathUtils.max(0, extrude);
+		this._packing = _packedMap.size() > 0 && !_packed;
+		return this;
+	}
+
+	public int getExtrude() {
+		return _extrude;
+	}
+
+	public LTexturePack setPowerOfTwo(boolean p) {
+		this._powerOfTwo = p;
+		this._packing = _packedMap.size() > 0 && !_packed;
+		return this;
+	}
+
+	public boolean isPowerOfTwo() {
+		return _powerOfTwo;
+	}
+
+	public LTexturePack setHeuristic(MaxRectsPacker.Heuristic h) {
+		this._heuristic = h == null ? MaxRectsPacker.Heuristic.BestShortSideFit : h;
+		this._packing = _packedMap.size() > 0 && !_packed;
+		return this;
+	}
+
+	public MaxRectsPacker.Heuristic getHeuristic() {
+		return _heuristic;
+	}
+
+	/**
+	 * 打包后纹理的最大边长
+	 *
+	 * @param size
+	 * @return
+	 */
+	public LTexturePack setMaxPageSize(int size) {
+		this._maxPageSize = MathUtils.max(1, size);
+		return this;
+	}
+
+	public int getMaxPageSize() {
+		return _maxPageSize;
+	}
+
 	public Format getFormat() {
 		return _format;
 	}
@@ -0,0 +1,562 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.opengl;
+
+import java.util.Comparator;
+
+import loon.LSysException;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * MaxRects矩形装箱,用于把多个小图排列到尽量少且尽量小的纹理页中.
+ *
+ * 每页维护所有最大空闲矩形,放入一个矩形后切分与之相交的空闲矩形并去掉被包含的部分,比二叉树切分浪费的空间少得多.
+ * 支持间距(padding),边缘扩展(extrude,放置时在四周预留的像素)与多页输出,超过单页最大尺寸时自动开新页.
+ * 矩形总是按原方向放置(LTexturePack的绘制不支持旋转后的图片).
+ *
+ * <pre>
+ * MaxRectsPacker packer = new MaxRectsPacker(2048, 2048);
+ * packer.setPadding(2);
+ * TArray&lt;MaxRectsPacker.Rect&gt; rects = ...;
+ * TArray&lt;MaxRectsPacker.Page&gt; pages = packer.pack(rects);
+ * </pre>
+ */
+public class MaxRectsPacker {
+
+	/**
+	 * 选择放置位置的方式
+	 */
+	public static enum Heuristic {
+		// 短边剩余最少
+		BestShortSideFit,
+		// 长边剩余最少
+		BestLongSideFit,
+		// 面积剩余最少
+		BestAreaFit,
+		// 尽量靠左上
+		BottomLeft,
+		// 与已放置矩形及边缘接触最多
+		ContactPoint
+	}
+
+	/**
+	 * 待放置的矩形,pack后x,y为内容(不含extrude与padding)在页中的位置
+	 */
+	public static class Rect {
+
+		public final String name;
+
+		public final int width, height;
+
+		public int x, y;
+
+		public int page = -1;
+
+		public Object data;
+
+		public Rect(String name, int width, int height) {
+			this(name, width, height, null);
+		}
+
+		public Rect(String name, int width, int height, Object data) {
+			this.name = name;
+			this.width = width;
+			this.height = height;
+			this.data = data;
+		}
+
+		@Override
+		public String toString() {
+			return name + " [" + x + "," + y + "," + width + "," + height + "] page " + page;
+		}
+	}
+
+	/**
+	 * 一个纹理页
+	 */
+	public static class Page {
+
+		public int width, height;
+
+		public final TArray<Rect> rects = new TArray<Rect>();
+
+		/**
+		 * 矩形面积占页面积的比例
+		 *
+		 * @return
+		 */
+		public float getOccupancy() {
+			if (width == 0 || height == 0) {
+				return 0f;
+			}
+			long used = 0;
+			for (int i = 0; i < rects.size; i++) {
+				final Rect r = rects.get(i);
+				used += (long) r.width * r.height;
+			}
+			return (float) used / ((long) width * height);
+		}
+	}
+
+	private static class Free {
+
+		int x, y, w, h;
+
+		Free(int x, int y, int w, int h) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+
+		boolean contains(Free o) {
+			return o.x >= x && o.y >= y && o.x + o.w <= x + w && o.y + o.h <= y + h;
+		}
+	}
+
+	private static class Bin {
+
+		final int width, height;
+
+		final TArray<Free> free = new TArray<Free>();
+
+		final TArray<Free> used = new TArray<Free>();
+
+		final TArray<Free> split = new TArray<Free>();
+
+		int usedRight, usedBottom;
+
+		// 本次查找到的位置
+		int bestX, bestY, bestW, bestH, score1, score2;
+
+		Bin(int w, int h) {
+			this.width = w;
+			this.height = h;
+			free.add(new Free(0, 0, w, h));
+		}
+	}
+
+	private final static Comparator<Rect> SORT_COMPARATOR = new Comparator<Rect>() {
+
+		@Override
+		public int compare(Rect a, Rect b) {
+			final int ma = MathUtils.max(a.width, a.height);
+			final int mb = MathUtils.max(b.width, b.height);
+			if (ma != mb) {
+				return mb - ma;
+			}
+			final int aa = a.width * a.height;
+			final int ab = b.width * b.height;
+			return ab - aa;
+		}
+	};
+
+	private final TArray<Rect> _placed = new TArray<Rect>();
+
+	private int _maxWidth, _maxHeight;
+
+	private int _padding;
+
+	private int _extrude;
+
+	private boolean _powerOfTwo = true;
+
+	private boolean _square;
+
+	private boolean _multiPage = true;
+
+	private Heuristic _heuristic = Heuristic.BestShortSideFit;
+
+	public MaxRectsPacker() {
+		this(2048, 2048);
+	}
+
+	public MaxRectsPacker(int maxWidth, int maxHeight) {
+		setMaxSize(maxWidth, maxHeight);
+	}
+
+	/**
+	 * 排列所有矩形,返回使用的纹理页(结果同时写回每个Rect)
+	 *
+	 * @param input
+	 * @return
+	 */
+	public TArray<Page> pack(TArray<Rect> input) {
+		final TArray<Rect> pending = new TArray<Rect>(input.size);
+		for (int i = 0; i < input.size; i++) {
+			final Rect r = input.get(i);
+			r.page = -1;
+			if (r.width <= 0 || r.height <= 0) {
+				continue;
+			}
+			if (!fitsEmpty(r)) {
+				throw new LSysException("The image " + r.name + " (" + r.width + "x" + r.height
+						+ ") is larger than the max page size " + _maxWidth + "x" + _maxHeight + " !");
+			}
+			pending.add(r);
+		}
+		pending.sort(SORT_COMPARATOR);
+		final TArray<Page> pages = new TArray<Page>();
+		for (; pending.size > 0;) {
+			final Page page = packPage(pending, pages.size);
+			if (page.rects.size == 0) {
+				break;
+			}
+			pages.add(page);
+			if (!_multiPage && pending.size > 0) {
+				throw new LSysException(
+						"The images do not fit in a single " + _maxWidth + "x" + _maxHeight + " page !");
+			}
+		}
+		return pages;
+	}
+
+	private boolean fitsEmpty(Rect r) {
+		final int w = r.width + _extrude * 2 + _padding;
+		final int h = r.height + _extrude * 2 + _padding;
+		return w <= _maxWidth + _padding && h <= _maxHeight + _padding;
+	}
+
+	private Page packPage(TArray<Rect> pending, int index) {
+		int maxItemW = 0, maxItemH = 0;
+		long area = 0;
+		for (int i = 0; i < pending.size; i++) {
+			final Rect r = pending.get(i);
+			final int w = r.width + _extrude * 2 + _padding;
+			final int h = r.height + _extrude * 2 + _padding;
+			maxItemW = MathUtils.max(maxItemW, w);
+			maxItemH = MathUtils.max(maxItemH, h);
+			area += (long) w * h;
+		}
+		// 从能容纳最大矩形的尺寸开始逐步放大,找到能放下全部矩形的最小页
+		int w = MathUtils.min(pot(maxItemW), _maxWidth + _padding);
+		int h = MathUtils.min(pot(maxItemH), _maxHeight + _padding);
+		if (_square) {
+			w = h = MathUtils.max(w, h);
+		}
+		final int limitW = _maxWidth + _padding;
+		final int limitH = _maxHeight + _padding;
+		Bin bin = null;
+		for (;;) {
+			if ((long) w * h >= area) {
+				bin = tryPack(pending, w, h, false);
+				if (bin != null) {
+					break;
+				}
+			}
+			final int lastW = w, lastH = h;
+			if (_square) {
+				w = h = MathUtils.min(MathUtils.max(w, h) * 2, MathUtils.min(limitW, limitH));
+			} else if ((w <= h && w < limitW) || h >= limitH) {
+				w = MathUtils.min(w * 2, limitW);
+			} else {
+				h = MathUtils.min(h * 2, limitH);
+			}
+			if (w == lastW && h == lastH) {
+				break;
+			}
+		}
+		if (bin == null) {
+			// 单页放不下全部,按最大尺寸尽量多放
+			bin = tryPack(pending, limitW, limitH, true);
+		}
+		final Page page = new Page();
+		for (int i = 0; i < _placed.size; i++) {
+			final Rect r = _placed.get(i);
+			r.page = index;
+			page.rects.add(r);
+		}
+		for (int i = pending.size - 1; i > -1; i--) {
+			final Rect r = pending.get(i);
+			if (r.page == index) {
+				pending.removeIndex(i);
+			}
+		}
+		_placed.clear();
+		page.width = bin.usedRight - _padding;
+		page.height = bin.usedBottom - _padding;
+		if (_powerOfTwo) {
+			page.width = pot(page.width);
+			page.height = pot(page.height);
+		}
+		if (_square) {
+			page.width = page.height = MathUtils.max(page.width, page.height);
+		}
+		return page;
+	}
+
+	/**
+	 * 尝试把pending按顺序放入w*h的页,放入的矩形记录在_placed中,partial为false时任一矩形放不下即失败
+	 */
+	private Bin tryPack(TArray<Rect> pending, int w, int h, boolean partial) {
+		final Bin bin = new Bin(w, h);
+		_placed.clear();
+		for (int i = 0; i < pending.size; i++) {
+			final Rect r = pending.get(i);
+			final int rw = r.width + _extrude * 2 + _padding;
+			final int rh = r.height + _extrude * 2 + _padding;
+			if (!find(bin, rw, rh)) {
+				if (partial) {
+					continue;
+				}
+				return null;
+			}
+			place(bin);
+			r.x = bin.bestX + _extrude;
+			r.y = bin.bestY + _extrude;
+			_placed.add(r);
+		}
+		return bin;
+	}
+
+	private boolean find(Bin bin, int w, int h) {
+		bin.score1 = Integer.MAX_VALUE;
+		bin.score2 = Integer.MAX_VALUE;
+		boolean found = false;
+		for (int i = 0; i < bin.free.size; i++) {
+			final Free f = bin.free.get(i);
+			if (f.w >= w && f.h >= h) {
+				found |= score(bin, f, w, h);
+			}
+		}
+		return found;
+	}
+
+	private boolean score(Bin bin, Free f, int w, int h) {
+		int s1, s2;
+		switch (_heuristic) {
+		case BestLongSideFit: {
+			final int lw = f.w - w;
+			final int lh = f.h - h;
+			s1 = MathUtils.max(lw, lh);
+			s2 = MathUtils.min(lw, lh);
+			break;
+		}
+		case BestAreaFit: {
+			s1 = f.w * f.h - w * h;
+			s2 = MathUtils.min(f.w - w, f.h - h);
+			break;
+		}
+		case BottomLeft: {
+			s1 = f.y + h;
+			s2 = f.x;
+			break;
+		}
+		case ContactPoint: {
+			// 接触越多越好,取负数以统一为越小越好
+			s1 = -contact(bin, f.x, f.y, w, h);
+			s2 = f.y + h;
+			break;
+		}
+		default: {
+			final int lw = f.w - w;
+			final int lh = f.h - h;
+			s1 = MathUtils.min(lw, lh);
+			s2 = MathUtils.max(lw, lh);
+			break;
+		}
+		}
+		if (s1 < bin.score1 || (s1 == bin.score1 && s2 < bin.score2)) {
+			bin.score1 = s1;
+			bin.score2 = s2;
+			bin.bestX = f.x;
+			bin.bestY = f.y;
+			bin.bestW = w;
+			bin.bestH = h;
+			return true;
+		}
+		return false;
+	}
+
+	private int contact(Bin bin, int x, int y, int w, int h) {
+		int score = 0;
+		if (x == 0 || x + w == bin.width) {
+			score += h;
+		}
+		if (y == 0 || y + h == bin.height) {
+			score += w;
+		}
+		for (int i = 0; i < bin.used.size; i++) {
+			final Free u = bin.used.get(i);
+			if (u.x == x + w || u.x + u.w == x) {
+				score += overlap(u.y, u.y + u.h, y, y + h);
+			}
+			if (u.y == y + h || u.y + u.h == y) {
+				score += overlap(u.x, u.x + u.w, x, x + w);
+			}
+		}
+		return score;
+	}
+
+	private static int overlap(int s1, int e1, int s2, int e2) {
+		if (e1 < s2 || e2 < s1) {
+			return 0;
+		}
+		return MathUtils.min(e1, e2) - MathUtils.max(s1, s2);
+	}
+
+	private void place(Bin bin) {
+		final Free node = new Free(bin.bestX, bin.bestY, bin.bestW, bin.bestH);
+		final TArray<Free> free = bin.free;
+		final TArray<Free> split = bin.split;
+		split.clear();
+		for (int i = free.size - 1; i > -1; i--) {
+			final Free f = free.get(i);
+			if (node.x >= f.x + f.w || node.x + node.w <= f.x || node.y >= f.y + f.h || node.y + node.h <= f.y) {
+				continue;
+			}
+			// 与放入的矩形相交,切分为最多四个新空闲矩形
+			if (node.x > f.x) {
+				split.add(new Free(f.x, f.y, node.x - f.x, f.h));
+			}
+			if (node.x + node.w < f.x + f.w) {
+				split.add(new Free(node.x + node.w, f.y, f.x + f.w - node.x - node.w, f.h));
+			}
+			if (node.y > f.y) {
+				split.add(new Free(f.x, f.y, f.w, node.y - f.y));
+			}
+			if (node.y + node.h < f.y + f.h) {
+				split.add(new Free(f.x, node.y + node.h, f.w, f.y + f.h - node.y - node.h));
+			}
+			free.removeIndex(i);
+		}
+		// 去掉被其它空闲矩形包含的新矩形,再去掉被新矩形包含的旧矩形
+		for (int i = 0; i < split.size; i++) {
+			final Free s = split.get(i);
+			boolean contained = false;
+			for (int j = 0; j < split.size && !contained; j++) {
+				if (i != j) {
+					final Free o = split.get(j);
+					contained = o.contains(s) && (!s.contains(o) || j < i);
+				}
+			}
+			for (int j = 0; j < free.size && !contained; j++) {
+				contained = free.get(j).contains(s);
+			}
+			if (!contained) {
+				for (int j = free.size - 1; j > -1; j--) {
+					if (s.contains(free.get(j))) {
+						free.removeIndex(j);
+					}
+				}
+				free.add(s);
+			}
+		}
+		bin.used.add(node);
+		bin.usedRight = MathUtils.max(bin.usedRight, node.x + node.w);
+		bin.usedBottom = MathUtils.max(bin.usedBottom, node.y + node.h);
+	}
+
+	private static int pot(int v) {
+		int power = 1;
+		while (power < v) {
+			power <<= 1;
+		}
+		return power;
+	}
+
+	public MaxRectsPacker setMaxSize(int w, int h) {
+		this._maxWidth = MathUtils.max(1, w);
+		this._maxHeight = MathUtils.max(1, h);
+		return this;
+	}
+
+	public int getMaxWidth() {
+		return _maxWidth;
+	}
+
+	public int getMaxHeight() {
+		return _maxHeight;
+	}
+
+	/**
+	 * 矩形之间的间距
+	 *
+	 * @param p
+	 * @return
+	 */
+	public MaxRectsPacker setPadding(int p) {
+		this._padding = MathUtils.max(0, p);
+		return this;
+	}
+
+	public int getPadding() {
+		return _padding;
+	}
+
+	/**
+	 * 每个矩形四周预留的边缘扩展像素(用于复制边缘像素,避免线性过滤时采样到相邻图片)
+	 *
+	 * @param e
+	 * @return
+	 */
+	public MaxRectsPacker setExtrude(int e) {
+		this._extrude = MathUtils.max(0, e);
+		return this;
+	}
+
+	public int getExtrude() {
+		return _extrude;
+	}
+
+	public MaxRectsPacker setPowerOfTwo(boolean p) {
+		this._powerOfTwo = p;
+		return this;
+	}
+
+	public boolean isPowerOfTwo() {
+		return _powerOfTwo;
+	}
+
+	public MaxRectsPacker setSquare(boolean s) {
+		this._square = s;
+		return this;
+	}
+
+	public boolean isSquare() {
+		return _square;
+	}
+
+	/**
+	 * 是否允许输出多个页(为false时放不下即抛出异常)
+	 *
+	 * @param m
+	 * @return
+	 */
+	public MaxRectsPacker setMultiPage(boolean m) {
+		this._multiPage = m;
+		return this;
+	}
+
+	public boolean isMultiPage() {
+		return _multiPage;
+	}
+
+	public MaxRectsPacker setHeuristic(Heuristic h) {
+		this._heuristic = h == null ? Heuristic.BestShortSideFit : h;
+		return this;
+	}
+
+	public Heuristic getHeuristic() {
+		return _heuristic;
+	}
+}
@@ -56,6 +56,8 @@ public final class ShaderProgram extends BaseBufferSupport implements LRelease {
 
 	public static final String BONEWEIGHT_ATTRIBUTE = "a_boneWeight";
 
+	public static final String TEXINDEX_ATTRIBUTE = "a_texIndex";
+
 	public static boolean pedantic = true;
 
 	private String log = LSystem.EMPTY;
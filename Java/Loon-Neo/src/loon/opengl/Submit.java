@@ -112,6 +112,11 @@ public final class Submit implements LRelease {
 
 	public void post(final String name, final int size, final ShaderProgram shader, final float[] vertices,
 			final int vertexIdx, int count) {
+		post(getMesh(name, size), shader, vertices, vertexIdx, count);
+	}
+
+	public void post(final Mesh mesh, final ShaderProgram shader, final float[] vertices, final int vertexIdx,
+			int count) {
 		// 防止与主画面渲染器GLEx冲突
 		this.main_draw_running = LSystem.mainDrawRunning();
 		if (!main_draw_running) {
@@ -119,7 +124,6 @@ public final class Submit implements LRelease {
 		} else {
 			need_stop_main_readering = true;
 		}
-		final Mesh mesh = getMesh(name, size);
 		if (mesh == null) {
 			if (!main_draw_running) {
 				shader.glUseProgramUnBind();
@@ -20,19 +20,42 @@
  */
 package loon.opengl;
 
+import loon.LTexture;
 import loon.canvas.LColor;
 import loon.geom.Affine2f;
 import loon.geom.Matrix4;
+import loon.utils.CollectionUtils;
 import loon.utils.GLUtils;
 import loon.utils.IntFloatMap;
 import loon.utils.MathUtils;
 import loon.utils.NumberUtils;
 import loon.LSystem;
 
+/**
+ * 默认的四边形批处理,纹理切换时提交一次绘制.
+ * 
+ * 使用setTextureSlots(n)开启多纹理模式后,同一批次最多同时绑定n张纹理,顶点增加纹理槽序号,只有纹理槽用完,混合模式或着色器改变时才提交,
+ * 多纹理模式只在默认着色器下生效(自定义着色器不认识纹理槽属性,自动回到单纹理).每帧的绘制次数与提交原因可用getLastFlushCount查询.
+ */
 public final class TrilateralBatch extends BaseBatch {
 
 	private final static String BATCHNAME = "trilbatch";
 
+	// GLES2保证片段着色器至少可用8个纹理单元
+	public final static int MAX_TEXTURE_SLOTS = 8;
+
+	public final static int FLUSH_EXPLICIT = 0;
+
+	public final static int FLUSH_TEXTURE = 1;
+
+	public final static int FLUSH_BLEND = 2;
+
+	public final static int FLUSH_SHADER = 3;
+
+	public final static int FLUSH_END = 4;
+
+	private final static int FLUSH_REASONS = 5;
+
 	private final Matrix4 _viewMatrix;
 	private final ExpandVertices _expandVertices;
 
@@ -54,6 +77,7 @@ public final class TrilateralBatch extends BaseBatch {
 
 	private final static int COORD_SIZE = 8;
 	private final static int VERT_SIZE = 20;
+	private final static int MULTI_VERT_SIZE = 24;
 
 	private final float[] _coordCache = new float[COORD_SIZE];
 	private final float[] _vertCache = new float[VERT_SIZE];
@@ -61,6 +85,21 @@ public final class TrilateralBatch extends BaseBatch {
 	private final Affine2f _affineCache = new Affine2f();
 	private final IntFloatMap colorCache = new IntFloatMap(256);
 
+	private final int[] _flushCounts = new int[FLUSH_REASONS];
+	private final int[] _lastFlushCounts = new int[FLUSH_REASONS];
+	private int _flushReason = FLUSH_EXPLICIT;
+	private int _lastDrawCallCount;
+
+	private final int[] _slotTextures = new int[MAX_TEXTURE_SLOTS];
+	private int _textureSlots = 1;
+	private int _slotCount;
+	private float _currentSlot;
+	private boolean _multiActive;
+	private float[] _slotVertices;
+	private Mesh _slotMesh;
+	private int _slotMeshSize;
+	private final int _maxSize;
+
 	public TrilateralBatch(GL20 gl) {
 		this(gl, LSystem.DEF_SOURCE);
 	}
@@ -72,6 +111,7 @@ public final class TrilateralBatch extends BaseBatch {
 	public TrilateralBatch(GL20 gl, int maxSize, ShaderSource src) {
 		super(gl);
 		this._expandVertices = ExpandVertices.getVerticeCache(maxSize);
+		this._maxSize = maxSize;
 		this._shader_source = src;
 		this._viewMatrix = new Matrix4();
 		this.init();
@@ -154,9 +194,6 @@ public final class TrilateralBatch extends BaseBatch {
 		_coordCache[6] = m00 * x4 + m10 * y4 + tx;
 		_coordCache[7] = m01 * x4 + m11 * y4 + ty;
 
-		final int index = _currentIndexCount;
-		_expandVertices.expand(index);
-
 		_vertCache[0] = _coordCache[0];
 		_vertCache[1] = _coordCache[1];
 		_vertCache[2] = colorFloat;
@@ -178,8 +215,7 @@ public final class TrilateralBatch extends BaseBatch {
 		_vertCache[18] = sx3;
 		_vertCache[19] = sy3;
 
-		_expandVertices.setBatch(index, _vertCache);
-		_currentIndexCount = index + VERT_SIZE;
+		commitVertices();
 	}
 
 	@Override
@@ -202,9 +238,6 @@ public final class TrilateralBatch extends BaseBatch {
 		_coordCache[6] = m00 * x4 + m10 * y4 + tx;
 		_coordCache[7] = m01 * x4 + m11 * y4 + ty;
 
-		final int index = _currentIndexCount;
-		_expandVertices.expand(index);
-
 		_vertCache[0] = _coordCache[0];
 		_vertCache[1] = _coordCache[1];
 		_vertCache[2] = c1;
@@ -226,8 +259,133 @@ public final class TrilateralBatch extends BaseBatch {
 		_vertCache[18] = u2;
 		_vertCache[19] = v;
 
-		_expandVertices.setBatch(index, _vertCache);
-		_currentIndexCount = index + VERT_SIZE;
+		commitVertices();
+	}
+
+	private void commitVertices() {
+		final int index = _currentIndexCount;
+		if (_multiActive) {
+			if (_slotVertices == null) {
+				_slotVertices = new float[MULTI_VERT_SIZE * _maxSize];
+			}
+			if (index + MULTI_VERT_SIZE > _slotVertices.length) {
+				_slotVertices = CollectionUtils.expand(_slotVertices, MULTI_VERT_SIZE * _maxSize);
+			}
+			final float[] dst = _slotVertices;
+			final float[] src = _vertCache;
+			final float slot = _currentSlot;
+			for (int i = 0, j = index; i < VERT_SIZE; i += 5, j += 6) {
+				dst[j] = src[i];
+				dst[j + 1] = src[i + 1];
+				dst[j + 2] = src[i + 2];
+				dst[j + 3] = src[i + 3];
+				dst[j + 4] = src[i + 4];
+				dst[j + 5] = slot;
+			}
+			_currentIndexCount = index + MULTI_VERT_SIZE;
+		} else {
+			_expandVertices.expand(index);
+			_expandVertices.setBatch(index, _vertCache);
+			_currentIndexCount = index + VERT_SIZE;
+		}
+	}
+
+	@Override
+	public void setTexture(final LTexture texture) {
+		if (!_multiActive) {
+			_flushReason = FLUSH_TEXTURE;
+			super.setTexture(texture);
+			_flushReason = FLUSH_EXPLICIT;
+			return;
+		}
+		if (!texture.isLoaded()) {
+			texture.loadTexture();
+		}
+		final int id = texture.getID();
+		if (_locked) {
+			// 锁定期间不能改变已有顶点使用的纹理槽,只记录纹理,解锁时再分配
+			this.curTexId = id;
+			return;
+		}
+		useSlot(id);
+	}
+
+	private void useSlot(int id) {
+		int slot = -1;
+		for (int i = 0; i < _slotCount; i++) {
+			if (_slotTextures[i] == id) {
+				slot = i;
+				break;
+			}
+		}
+		if (slot == -1) {
+			if (_slotCount >= _textureSlots) {
+				flush(FLUSH_TEXTURE);
+				_slotCount = 0;
+			}
+			slot = _slotCount++;
+			_slotTextures[slot] = id;
+		}
+		this._currentSlot = slot;
+		this.lastTexId = id;
+		this.curTexId = id;
+	}
+
+	@Override
+	protected void updateTexture() {
+		_flushReason = FLUSH_TEXTURE;
+		super.updateTexture();
+		_flushReason = FLUSH_EXPLICIT;
+	}
+
+	/**
+	 * 设置同一批次可同时使用的纹理数量,1为单纹理(默认),最大为MAX_TEXTURE_SLOTS
+	 * 
+	 * @param slots
+	 * @return
+	 */
+	public TrilateralBatch setTextureSlots(int slots) {
+		slots = MathUtils.clamp(slots, 1, MAX_TEXTURE_SLOTS);
+		if (slots == _textureSlots) {
+			return this;
+		}
+		if (begun) {
+			flush(FLUSH_SHADER);
+		}
+		this._textureSlots = slots;
+		setShaderDirty(true);
+		if (begun) {
+			applyShader();
+		}
+		return this;
+	}
+
+	public int getTextureSlots() {
+		return _textureSlots;
+	}
+
+	/**
+	 * 多纹理模式是否生效(需要开启纹理槽并使用默认着色器)
+	 * 
+	 * @return
+	 */
+	public boolean isMultiTexture() {
+		return _multiActive;
+	}
+
+	@Override
+	public BaseBatch setShaderSource(ShaderSource source) {
+		if (source == null || source.equals(_shader_source)) {
+			return this;
+		}
+		if (begun) {
+			flush(FLUSH_SHADER);
+		}
+		super.setShaderSource(source);
+		if (begun) {
+			applyShader();
+		}
+		return this;
 	}
 
 	@Override
@@ -259,6 +417,14 @@ public final class TrilateralBatch extends BaseBatch {
 				this._viewMatrix.mul(_affineCache);
 			}
 		}
+		this.drawCallCount = 0;
+		for (int i = 0; i < FLUSH_REASONS; i++) {
+			_flushCounts[i] = 0;
+		}
+		this.applyShader();
+	}
+
+	private void applyShader() {
 		final boolean dirty = isShaderDirty();
 		if (!_loaded || dirty) {
 			if (_currentBatchShader == null || dirty) {
@@ -266,18 +432,29 @@ public final class TrilateralBatch extends BaseBatch {
 					_currentBatchShader.close();
 					_currentBatchShader = null;
 				}
+				_multiActive = _textureSlots > 1 && LSystem.DEF_SOURCE.equals(_shader_source);
+				_slotCount = 0;
+				if (_multiActive && curTexId != -1) {
+					// 切换前设置的纹理仍然有效,放入槽0
+					_slotTextures[0] = curTexId;
+					_slotCount = 1;
+				}
+				_currentSlot = 0;
 				_currentBatchShader = createShaderProgram();
 				setShaderDirty(false);
 			}
 			_loaded = true;
 		}
 		this._currentBatchShader.begin();
-		this.drawCallCount = 0;
 		this.setupMatrices();
 	}
 
 	@Override
 	protected ShaderProgram createShaderProgram() {
+		if (_multiActive) {
+			return GLUtils.createShaderProgram(LSystem.getGLExMultiTextureVertexShader(),
+					LSystem.getGLExMultiTextureFragmentShader(_textureSlots));
+		}
 		return GLUtils.createShaderProgram(_shader_source.vertexShader(), _shader_source.fragmentShader());
 	}
 
@@ -298,15 +475,30 @@ public final class TrilateralBatch extends BaseBatch {
 
 	@Override
 	public void end() {
+		flush(FLUSH_END);
+		this._lastDrawCallCount = drawCallCount;
+		for (int i = 0; i < FLUSH_REASONS; i++) {
+			_lastFlushCounts[i] = _flushCounts[i];
+			_flushCounts[i] = 0;
+		}
 		super.end();
 		reset();
+		this._slotCount = 0;
+	}
+
+	private void flush(int reason) {
+		this._flushReason = reason;
+		flush();
 	}
 
 	@Override
 	public void flush() {
+		final int reason = _flushReason;
+		this._flushReason = FLUSH_EXPLICIT;
 		if (_currentIndexCount == 0) {
 			return;
 		}
+		_flushCounts[reason]++;
 		super.flush();
 		submit();
 		if (_currentBatchShader != null) {
@@ -318,6 +510,35 @@ public final class TrilateralBatch extends BaseBatch {
 		return _expandVertices.getSize();
 	}
 
+	/**
+	 * 当前帧中指定原因的提交次数
+	 * 
+	 * @param reason
+	 * @return
+	 */
+	public int getFlushCount(int reason) {
+		return _flushCounts[reason];
+	}
+
+	/**
+	 * 上一帧(上次end)中指定原因的提交次数
+	 * 
+	 * @param reason
+	 * @return
+	 */
+	public int getLastFlushCount(int reason) {
+		return _lastFlushCounts[reason];
+	}
+
+	/**
+	 * 上一帧(上次end)的绘制次数
+	 * 
+	 * @return
+	 */
+	public int getLastDrawCallCount() {
+		return _lastDrawCallCount;
+	}
+
 	public TrilateralBatch setShaderUniformf(String name, LColor color) {
 		if (_currentBatchShader != null) {
 			_currentBatchShader.setUniformf(name, color);
@@ -336,8 +557,25 @@ public final class TrilateralBatch extends BaseBatch {
 		return _locked;
 	}
 
+	/**
+	 * 锁定提交,锁定期间不再加入新的顶点,每次提交都重复绘制锁定前的顶点.
+	 * 
+	 * 多纹理模式下锁定期间纹理槽保持不变(重复绘制的顶点仍使用原来的纹理),期间设置的纹理在解锁时才分配纹理槽
+	 * 
+	 * @param locked
+	 * @return
+	 */
 	public TrilateralBatch setLockSubmit(boolean locked) {
+		if (this._locked == locked) {
+			return this;
+		}
 		this._locked = locked;
+		if (!locked && _multiActive && curTexId != -1) {
+			final int slot = (int) _currentSlot;
+			if (slot >= _slotCount || _slotTextures[slot] != curTexId) {
+				useSlot(curTexId);
+			}
+		}
 		return this;
 	}
 
@@ -345,6 +583,10 @@ public final class TrilateralBatch extends BaseBatch {
 		if (_currentIndexCount == 0) {
 			return;
 		}
+		if (_multiActive) {
+			submitSlots();
+			return;
+		}
 		try {
 			final int vertCount = _currentIndexCount / _expandVertices.vertexSize();
 			if (vertCount > _maxVertsInBatch) {
@@ -378,16 +620,74 @@ public final class TrilateralBatch extends BaseBatch {
 		}
 	}
 
+	private void bindSlotTextures() {
+		// 纹理单元0由GLUtils记录,其余单元直接绑定后切回单元0
+		for (int i = 1; i < _slotCount; i++) {
+			gl.glActiveTexture(GL20.GL_TEXTURE0 + i);
+			gl.glBindTexture(GL20.GL_TEXTURE_2D, _slotTextures[i]);
+		}
+		if (_slotCount > 1) {
+			gl.glActiveTexture(GL20.GL_TEXTURE0);
+		}
+		GLUtils.bindTexture(gl, _slotTextures[0]);
+	}
+
+	private void submitSlots() {
+		try {
+			final int vertCount = _currentIndexCount / MULTI_VERT_SIZE;
+			if (vertCount > _maxVertsInBatch) {
+				_maxVertsInBatch = vertCount;
+			}
+			if (_slotMesh == null || _slotMesh.isClosed() || vertCount > _slotMeshSize) {
+				if (_slotMesh != null) {
+					_slotMesh.close();
+				}
+				_slotMeshSize = MathUtils.max(_maxSize, _slotVertices.length / MULTI_VERT_SIZE);
+				_slotMesh = Mesh.createMultiTexture(false, _slotMeshSize);
+				LSystem.resetIndices(_slotMeshSize, _slotMesh);
+			}
+			bindSlotTextures();
+			final GL20 gl = LSystem.base().graphics().gl;
+			final int blend = GLUtils.getBlendMode();
+			if (_currentBlendMode == -1) {
+				if (_currentAlpha >= 240) {
+					GLUtils.setBlendMode(gl, BlendMethod.MODE_NORMAL);
+				} else {
+					GLUtils.setBlendMode(gl, BlendMethod.MODE_SPEED);
+				}
+			} else {
+				GLUtils.setBlendMode(gl, _currentBlendMode);
+			}
+			_currentSubmit.post(_slotMesh, _currentBatchShader, _slotVertices, _currentIndexCount, vertCount * 6);
+			GLUtils.setBlendMode(gl, blend);
+		} catch (Throwable ex) {
+			LSystem.error("Batch submit() error", ex);
+		} finally {
+			if (!_locked) {
+				_currentIndexCount = 0;
+				_slotCount = 0;
+			}
+		}
+	}
+
 	private void setupMatrices() {
 		if (_currentBatchShader != null) {
 			_currentBatchShader.setUniformMatrix("u_projTrans", _viewMatrix);
 			_currentBatchShader.setUniformi("u_texture", 0);
+			if (_multiActive) {
+				for (int i = 1; i < _textureSlots; i++) {
+					_currentBatchShader.setUniformi("u_texture" + i, i);
+				}
+			}
 			_shader_source.setupShader(_currentBatchShader);
 		}
 	}
 
 	@Override
 	public BaseBatch setBlendMode(int b) {
+		if (b != _currentBlendMode && _currentIndexCount > 0) {
+			flush(FLUSH_BLEND);
+		}
 		this._currentBlendMode = b;
 		return this;
 	}
@@ -403,6 +703,10 @@ public final class TrilateralBatch extends BaseBatch {
 		if (_currentBatchShader != null) {
 			_currentBatchShader.close();
 		}
+		if (_slotMesh != null) {
+			_slotMesh.close();
+			_slotMesh = null;
+		}
 		this._currentBlendMode = -1;
 	}
 
@@ -166,6 +166,55 @@ public class ArrayByte implements IArray, LRelease {
 	}
 
 	public static byte[] toZLIB(int order, byte[] raw) {
+		return toZLIB(order, raw, Deflate.DEFAULT_COMPRESSION);
+	}
+
+	public static byte[] toZLIB(byte[] raw, int level) {
+		return toZLIB(BIG_ENDIAN, raw, level);
+	}
+
+	/**
+	 * 以指定压缩级别(0-9)生成zlib数据,0级时仅写入存储块
+	 * 
+	 * @param order
+	 * @param raw
+	 * @param level
+	 * @return
+	 */
+	public static byte[] toZLIB(int order, byte[] raw, int level) {
+		if (level <= Deflate.NO_COMPRESSION) {
+			return toStoredZLIB(order, raw);
+		}
+		return toZLIB(order, level, new byte[][] { Deflate.deflate(raw, level) }, Deflate.adler32(raw));
+	}
+
+	/**
+	 * 把已压缩的若干段deflate数据(除最后一段外须以同步块结束,见{@link Deflate#deflate(byte[], int, int, int, boolean)})拼接为zlib数据
+	 * 
+	 * @param order
+	 * @param level
+	 * @param chunks
+	 * @param adler  原始数据的Adler32校验值
+	 * @return
+	 */
+	public static byte[] toZLIB(int order, int level, byte[][] chunks, int adler) {
+		int size = 6;
+		for (int i = 0; i < chunks.length; i++) {
+			size += chunks[i].length;
+		}
+		final int header = Deflate.zlibHeader(level);
+		final ArrayByte zlib = new ArrayByte(size);
+		zlib.setOrder(order);
+		zlib.writeByte(header >> 8);
+		zlib.writeByte(header & 0xFF);
+		for (int i = 0; i < chunks.length; i++) {
+			zlib.write(chunks[i]);
+		}
+		zlib.writeInt(adler);
+		return zlib.getBytes();
+	}
+
+	private static byte[] toStoredZLIB(int order, byte[] raw) {
 		ArrayByte zlib = new ArrayByte(raw.length + 6 + raw.length / 32000 * 5);
 		zlib.setOrder(order);
 		byte tmp = 8;
@@ -177,7 +226,7 @@ public class ArrayByte implements IArray, LRelease {
 			pos += 32000;
 		}
 		writeUncompressedDeflateBlock(zlib, true, raw, pos, (char) (raw.length - pos));
-		zlib.writeInt(calcADLER32(raw));
+		zlib.writeInt(Deflate.adler32(raw));
 		return zlib.getBytes();
 	}
 
@@ -190,17 +239,6 @@ public class ArrayByte implements IArray, LRelease {
 		zlib.write(raw, off, len);
 	}
 
-	private static int calcADLER32(byte[] raw) {
-		int s1 = 1;
-		int s2 = 0;
-		for (int i = 0; i < raw.length; i++) {
-			int abs = (raw[i] >= 0) ? raw[i] : (raw[i] + 256);
-			s1 = (s1 + abs) % 65521;
-			s2 = (s2 + s1) % 65521;
-		}
-		return (s2 << 16) + s1;
-	}
-
 	/**
 	 * 返回指定字符串符合UTF8编码的子符长度
 	 * 
@@ -0,0 +1,788 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils;
+
+import loon.LSysException;
+
+/**
+ * 纯Java实现的Deflate(RFC1951)压缩器,不依赖java.util.zip,所以在GWT,TeaVM等平台一样可用.
+ * 
+ * 使用哈希链查找LZ77匹配(4级以上使用惰性匹配),每个数据块会在存储,固定Huffman与动态Huffman三种编码中选择最短的一种输出.
+ * 
+ * 压缩数组中的一段数据时,该段之前最多32K字节会作为字典参与匹配,而非最后一段的输出以同步块(sync flush)结束,
+ * 所以一个大数组可以被切成若干段分别(或并行)压缩,再把结果直接拼接为一个完整的deflate流.
+ */
+public final class Deflate {
+
+	public static final int NO_COMPRESSION = 0;
+
+	public static final int BEST_SPEED = 1;
+
+	public static final int DEFAULT_COMPRESSION = 6;
+
+	public static final int BEST_COMPRESSION = 9;
+
+	private static final int WINDOW_SIZE = 1 << 15;
+
+	private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+	private static final int HASH_BITS = 15;
+
+	private static final int HASH_SIZE = 1 << HASH_BITS;
+
+	private static final int HASH_MASK = HASH_SIZE - 1;
+
+	private static final int MIN_MATCH = 3;
+
+	private static final int MAX_MATCH = 258;
+
+	private static final int TOO_FAR = 4096;
+
+	private static final int MAX_STORED = 65535;
+
+	private static final int BLOCK_SYMBOLS = 16384;
+
+	private static final int MAX_BITS = 15;
+
+	private static final int MAX_CODE_LENGTH_BITS = 7;
+
+	private static final int LITERAL_CODES = 286;
+
+	private static final int DISTANCE_CODES = 30;
+
+	private static final int END_BLOCK = 256;
+
+	private static final int[] MAX_CHAIN = { 0, 4, 8, 32, 16, 32, 128, 256, 1024, 4096 };
+
+	private static final int[] NICE_LENGTH = { 0, 8, 16, 32, 16, 32, 128, 128, 258, 258 };
+
+	private static final int[] LAZY_LENGTH = { 0, 0, 0, 0, 4, 16, 16, 32, 128, 258 };
+
+	private static final int[] GOOD_LENGTH = { 0, 4, 4, 4, 4, 8, 8, 8, 32, 32 };
+
+	private static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+			59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+
+	private static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+			4, 5, 5, 5, 5, 0 };
+
+	private static final int[] DIST_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+			769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+
+	private static final int[] DIST_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+			10, 11, 11, 12, 12, 13, 13 };
+
+	private static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1,
+			15 };
+
+	private static final int[] LENGTH_CODE = new int[MAX_MATCH + 1];
+
+	private static final int[] FIXED_LITERAL_LENGTHS = new int[288];
+
+	private static final int[] FIXED_DISTANCE_LENGTHS = new int[DISTANCE_CODES];
+
+	private static final int[] FIXED_LITERAL_CODES;
+
+	private static final int[] FIXED_DISTANCE_CODES;
+
+	static {
+		for (int code = 0; code < LENGTH_BASE.length; code++) {
+			final int base = LENGTH_BASE[code];
+			final int count = 1 << LENGTH_EXTRA[code];
+			for (int i = 0; i < count && base + i <= MAX_MATCH; i++) {
+				LENGTH_CODE[base + i] = code;
+			}
+		}
+		LENGTH_CODE[MAX_MATCH] = 28;
+		for (int i = 0; i < 288; i++) {
+			FIXED_LITERAL_LENGTHS[i] = i < 144 ? 8 : (i < 256 ? 9 : (i < 280 ? 7 : 8));
+		}
+		for (int i = 0; i < DISTANCE_CODES; i++) {
+			FIXED_DISTANCE_LENGTHS[i] = 5;
+		}
+		FIXED_LITERAL_CODES = canonicalCodes(FIXED_LITERAL_LENGTHS, 288);
+		FIXED_DISTANCE_CODES = canonicalCodes(FIXED_DISTANCE_LENGTHS, DISTANCE_CODES);
+	}
+
+	/**
+	 * 完整压缩一个数组为raw deflate流
+	 * 
+	 * @param data
+	 * @param level 0-9
+	 * @return
+	 */
+	public static byte[] deflate(byte[] data, int level) {
+		return deflate(data, 0, data.length, level, true);
+	}
+
+	/**
+	 * 压缩数组中指定范围的数据,该范围之前最多32K字节会作为字典使用,last为false时输出以同步块结束,可以直接与后续段落拼接.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param level  0-9
+	 * @param last   是否为deflate流中的最后一段
+	 * @return
+	 */
+	public static byte[] deflate(byte[] data, int offset, int length, int level, boolean last) {
+		return new Deflate(level).compress(data, offset, length, last);
+	}
+
+	/**
+	 * 计算Adler32校验值
+	 * 
+	 * @param adler 初始值(新数据为1)
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static int adler32(int adler, byte[] data, int offset, int length) {
+		int s1 = adler & 0xFFFF;
+		int s2 = (adler >>> 16) & 0xFFFF;
+		int idx = offset;
+		int remaining = length;
+		while (remaining > 0) {
+			// 3800为保证s2在有符号int范围内不溢出的最大批量长度
+			int n = remaining < 3800 ? remaining : 3800;
+			remaining -= n;
+			while (n-- > 0) {
+				s1 += data[idx++] & 0xFF;
+				s2 += s1;
+			}
+			s1 %= 65521;
+			s2 %= 65521;
+		}
+		return (s2 << 16) | s1;
+	}
+
+	public static int adler32(byte[] data) {
+		return adler32(1, data, 0, data.length);
+	}
+
+	/**
+	 * 返回对应压缩级别的zlib头(CMF与FLG)
+	 * 
+	 * @param level
+	 * @return
+	 */
+	public static int zlibHeader(int level) {
+		final int cmf = 0x78;
+		final int flevel = level < 2 ? 0 : (level < 6 ? 1 : (level == 6 ? 2 : 3));
+		int flg = flevel << 6;
+		flg += 31 - ((cmf << 8) + flg) % 31;
+		return (cmf << 8) | flg;
+	}
+
+	private final int _level;
+
+	private final int _maxChain;
+
+	private final int _niceLength;
+
+	private final int _lazyLength;
+
+	private final int _goodLength;
+
+	private final int[] _head;
+
+	private final int[] _prev;
+
+	private final int[] _symbols;
+
+	private final int[] _literalFreqs;
+
+	private final int[] _distanceFreqs;
+
+	private byte[] _data;
+
+	private int _end;
+
+	private int _symbolCount;
+
+	private int _blockStart;
+
+	private int _matchLength;
+
+	private int _matchDistance;
+
+	private byte[] _out;
+
+	private int _outPos;
+
+	private long _bitBuffer;
+
+	private int _bitCount;
+
+	public Deflate(int level) {
+		if (level < NO_COMPRESSION || level > BEST_COMPRESSION) {
+			throw new LSysException("Deflate level must be between 0 and 9 !");
+		}
+		this._level = level;
+		this._maxChain = MAX_CHAIN[level];
+		this._niceLength = NICE_LENGTH[level];
+		this._lazyLength = LAZY_LENGTH[level];
+		this._goodLength = GOOD_LENGTH[level];
+		if (level > NO_COMPRESSION) {
+			this._head = new int[HASH_SIZE];
+			this._prev = new int[WINDOW_SIZE];
+			this._symbols = new int[BLOCK_SYMBOLS];
+			this._literalFreqs = new int[LITERAL_CODES];
+			this._distanceFreqs = new int[DISTANCE_CODES];
+		} else {
+			this._head = null;
+			this._prev = null;
+			this._symbols = null;
+			this._literalFreqs = null;
+			this._distanceFreqs = null;
+		}
+	}
+
+	public int getLevel() {
+		return _level;
+	}
+
+	/**
+	 * 压缩数组中指定范围的数据(同一Deflate对象可重复调用,但不可多线程共享)
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param last
+	 * @return
+	 */
+	public byte[] compress(byte[] data, int offset, int length, boolean last) {
+		if (data == null) {
+			throw new LSysException("Deflate data is null !");
+		}
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new LSysException("Deflate range out of bounds !");
+		}
+		this._data = data;
+		this._end = offset + length;
+		this._out = new byte[MathUtils.max(64, _level == NO_COMPRESSION ? length + length / 8000 + 64 : length / 2)];
+		this._outPos = 0;
+		this._bitBuffer = 0;
+		this._bitCount = 0;
+		this._blockStart = offset;
+		if (_level == NO_COMPRESSION) {
+			writeStored(offset, _end, last);
+		} else {
+			compressRange(offset);
+			flushBlock(last);
+		}
+		if (!last) {
+			// 空存储块,使输出按字节对齐
+			writeStored(_end, _end, false);
+		}
+		flushBits();
+		final byte[] result = new byte[_outPos];
+		System.arraycopy(_out, 0, result, 0, _outPos);
+		this._data = null;
+		this._out = null;
+		return result;
+	}
+
+	private void compressRange(int start) {
+		for (int i = 0; i < HASH_SIZE; i++) {
+			_head[i] = 0;
+		}
+		final int history = MathUtils.max(0, start - WINDOW_SIZE);
+		for (int p = history; p < start; p++) {
+			insert(p);
+		}
+		int pos = start;
+		boolean pending = false;
+		int curLength = 0;
+		int curDistance = 0;
+		while (pos < _end) {
+			// 每轮最多产生两个符号,提前分块以免越界
+			if (_symbolCount >= BLOCK_SYMBOLS - 2) {
+				flushBlock(pos, false);
+			}
+			if (!pending) {
+				findMatch(pos, 0);
+				insert(pos);
+				curLength = _matchLength;
+				curDistance = _matchDistance;
+			}
+			pending = false;
+			if (curLength >= MIN_MATCH) {
+				if (_lazyLength > 0 && curLength < _lazyLength && pos + 1 < _end) {
+					findMatch(pos + 1, curLength);
+					insert(pos + 1);
+					if (_matchLength > curLength) {
+						emitLiteral(pos);
+						pos++;
+						curLength = _matchLength;
+						curDistance = _matchDistance;
+						pending = true;
+						continue;
+					}
+					emitMatch(curLength, curDistance);
+					for (int p = pos + 2, n = pos + curLength; p < n; p++) {
+						insert(p);
+					}
+				} else {
+					emitMatch(curLength, curDistance);
+					for (int p = pos + 1, n = pos + curLength; p < n; p++) {
+						insert(p);
+					}
+				}
+				pos += curLength;
+			} else {
+				emitLiteral(pos);
+				pos++;
+			}
+		}
+	}
+
+	private int hash(int pos) {
+		return (((_data[pos] & 0xFF) << 10) ^ ((_data[pos + 1] & 0xFF) << 5) ^ (_data[pos + 2] & 0xFF)) & HASH_MASK;
+	}
+
+	private void insert(int pos) {
+		if (pos + MIN_MATCH > _end) {
+			return;
+		}
+		final int h = hash(pos);
+		_prev[pos & WINDOW_MASK] = _head[h];
+		_head[h] = pos + 1;
+	}
+
+	private void findMatch(int pos, int prevLength) {
+		_matchLength = 0;
+		_matchDistance = 0;
+		final int maxLength = MathUtils.min(MAX_MATCH, _end - pos);
+		if (maxLength < MIN_MATCH) {
+			return;
+		}
+		final byte[] data = _data;
+		final int limit = pos - WINDOW_SIZE;
+		int candidate = _head[hash(pos)] - 1;
+		// 前一位置已有足够好的匹配时,缩短本次查找的链长
+		int chain = prevLength >= _goodLength ? _maxChain >> 2 : _maxChain;
+		int best = MIN_MATCH - 1;
+		int bestDistance = 0;
+		while (candidate > limit && candidate >= 0 && chain-- > 0) {
+			if (data[candidate + best] == data[pos + best] && data[candidate] == data[pos]
+					&& data[candidate + 1] == data[pos + 1]) {
+				int len = 2;
+				while (len < maxLength && data[candidate + len] == data[pos + len]) {
+					len++;
+				}
+				if (len > best) {
+					best = len;
+					bestDistance = pos - candidate;
+					if (len >= _niceLength || len >= maxLength) {
+						break;
+					}
+				}
+			}
+			final int next = _prev[candidate & WINDOW_MASK] - 1;
+			if (next >= candidate) {
+				break;
+			}
+			candidate = next;
+		}
+		if (best >= MIN_MATCH && !(best == MIN_MATCH && bestDistance > TOO_FAR)) {
+			_matchLength = best;
+			_matchDistance = bestDistance;
+		}
+	}
+
+	private void emitLiteral(int pos) {
+		final int v = _data[pos] & 0xFF;
+		_symbols[_symbolCount++] = v;
+		_literalFreqs[v]++;
+	}
+
+	private void emitMatch(int length, int distance) {
+		_symbols[_symbolCount++] = (distance << 9) | length;
+		_literalFreqs[257 + LENGTH_CODE[length]]++;
+		_distanceFreqs[distanceCode(distance)]++;
+	}
+
+	private static int distanceCode(int distance) {
+		int code = 0;
+		while (code < DISTANCE_CODES - 1 && DIST_BASE[code + 1] <= distance) {
+			code++;
+		}
+		return code;
+	}
+
+	private void flushBlock(boolean last) {
+		flushBlock(_end, last);
+	}
+
+	private void flushBlock(int blockEnd, boolean last) {
+		_literalFreqs[END_BLOCK]++;
+		final int[] litLengths = buildLengths(_literalFreqs, LITERAL_CODES, MAX_BITS);
+		final int[] distLengths = buildLengths(_distanceFreqs, DISTANCE_CODES, MAX_BITS);
+		int hlit = LITERAL_CODES;
+		while (hlit > 257 && litLengths[hlit - 1] == 0) {
+			hlit--;
+		}
+		int hdist = DISTANCE_CODES;
+		while (hdist > 1 && distLengths[hdist - 1] == 0) {
+			hdist--;
+		}
+		final int[] all = new int[hlit + hdist];
+		System.arraycopy(litLengths, 0, all, 0, hlit);
+		System.arraycopy(distLengths, 0, all, hlit, hdist);
+		final IntArray runs = runLengths(all);
+		final int[] clFreqs = new int[19];
+		for (int i = 0; i < runs.length; i++) {
+			clFreqs[runs.get(i) & 0xFF]++;
+		}
+		final int[] clLengths = buildLengths(clFreqs, 19, MAX_CODE_LENGTH_BITS);
+		int hclen = 19;
+		while (hclen > 4 && clLengths[CODE_LENGTH_ORDER[hclen - 1]] == 0) {
+			hclen--;
+		}
+		long dynamicBits = 3 + 5 + 5 + 4 + hclen * 3;
+		for (int i = 0; i < runs.length; i++) {
+			final int sym = runs.get(i) & 0xFF;
+			dynamicBits += clLengths[sym] + (sym == 16 ? 2 : (sym == 17 ? 3 : (sym == 18 ? 7 : 0)));
+		}
+		long fixedBits = 3;
+		for (int i = 0; i < LITERAL_CODES; i++) {
+			final int freq = _literalFreqs[i];
+			if (freq > 0) {
+				final int extra = i > 264 && i < 285 ? LENGTH_EXTRA[i - 257] : 0;
+				dynamicBits += (long) freq * (litLengths[i] + extra);
+				fixedBits += (long) freq * (FIXED_LITERAL_LENGTHS[i] + extra);
+			}
+		}
+		for (int i = 0; i < DISTANCE_CODES; i++) {
+			final int freq = _distanceFreqs[i];
+			if (freq > 0) {
+				dynamicBits += (long) freq * (distLengths[i] + DIST_EXTRA[i]);
+				fixedBits += (long) freq * (5 + DIST_EXTRA[i]);
+			}
+		}
+		final int storedLength = blockEnd - _blockStart;
+		final long storedBits = 3 + 7 + (long) (storedLength + 4 * (storedLength / MAX_STORED + 1)) * 8;
+		if (storedBits <= fixedBits && storedBits <= dynamicBits) {
+			writeStored(_blockStart, blockEnd, last);
+		} else if (fixedBits <= dynamicBits) {
+			writeBits(last ? 1 : 0, 1);
+			writeBits(1, 2);
+			writeSymbols(FIXED_LITERAL_CODES, FIXED_LITERAL_LENGTHS, FIXED_DISTANCE_CODES, FIXED_DISTANCE_LENGTHS);
+		} else {
+			writeBits(last ? 1 : 0, 1);
+			writeBits(2, 2);
+			writeBits(hlit - 257, 5);
+			writeBits(hdist - 1, 5);
+			writeBits(hclen - 4, 4);
+			for (int i = 0; i < hclen; i++) {
+				writeBits(clLengths[CODE_LENGTH_ORDER[i]], 3);
+			}
+			final int[] clCodes = canonicalCodes(clLengths, 19);
+			for (int i = 0; i < runs.length; i++) {
+				final int run = runs.get(i);
+				final int sym = run & 0xFF;
+				writeBits(clCodes[sym], clLengths[sym]);
+				if (sym == 16) {
+					writeBits(run >>> 8, 2);
+				} else if (sym == 17) {
+					writeBits(run >>> 8, 3);
+				} else if (sym == 18) {
+					writeBits(run >>> 8, 7);
+				}
+			}
+			writeSymbols(canonicalCodes(litLengths, LITERAL_CODES), litLengths,
+					canonicalCodes(distLengths, DISTANCE_CODES), distLengths);
+		}
+		for (int i = 0; i < LITERAL_CODES; i++) {
+			_literalFreqs[i] = 0;
+		}
+		for (int i = 0; i < DISTANCE_CODES; i++) {
+			_distanceFreqs[i] = 0;
+		}
+		_symbolCount = 0;
+		_blockStart = blockEnd;
+	}
+
+	private void writeSymbols(int[] litCodes, int[] litLengths, int[] distCodes, int[] distLengths) {
+		for (int i = 0; i < _symbolCount; i++) {
+			final int sym = _symbols[i];
+			if (sym < 256) {
+				writeBits(litCodes[sym], litLengths[sym]);
+			} else {
+				final int length = sym & 0x1FF;
+				final int distance = sym >>> 9;
+				final int lcode = LENGTH_CODE[length];
+				writeBits(litCodes[257 + lcode], litLengths[257 + lcode]);
+				writeBits(length - LENGTH_BASE[lcode], LENGTH_EXTRA[lcode]);
+				final int dcode = distanceCode(distance);
+				writeBits(distCodes[dcode], distLengths[dcode]);
+				writeBits(distance - DIST_BASE[dcode], DIST_EXTRA[dcode]);
+			}
+		}
+		writeBits(litCodes[END_BLOCK], litLengths[END_BLOCK]);
+	}
+
+	private void writeStored(int start, int end, boolean last) {
+		int pos = start;
+		do {
+			final int len = MathUtils.min(MAX_STORED, end - pos);
+			final boolean finalBlock = last && pos + len == end;
+			writeBits(finalBlock ? 1 : 0, 1);
+			writeBits(0, 2);
+			flushBits();
+			ensureCapacity(4 + len);
+			_out[_outPos++] = (byte) (len & 0xFF);
+			_out[_outPos++] = (byte) ((len >>> 8) & 0xFF);
+			_out[_outPos++] = (byte) (~len & 0xFF);
+			_out[_outPos++] = (byte) ((~len >>> 8) & 0xFF);
+			System.arraycopy(_data, pos, _out, _outPos, len);
+			_outPos += len;
+			pos += len;
+		} while (pos < end);
+	}
+
+	/**
+	 * 把码长序列转为(0-18)的游程编码,低8位为符号,高位为附加值
+	 */
+	private static IntArray runLengths(int[] lengths) {
+		final IntArray runs = new IntArray(lengths.length);
+		int i = 0;
+		final int n = lengths.length;
+		while (i < n) {
+			final int len = lengths[i];
+			int run = 1;
+			while (i + run < n && lengths[i + run] == len) {
+				run++;
+			}
+			i += run;
+			if (len == 0) {
+				while (run >= 11) {
+					final int r = MathUtils.min(run, 138);
+					runs.add(18 | ((r - 11) << 8));
+					run -= r;
+				}
+				if (run >= 3) {
+					runs.add(17 | ((run - 3) << 8));
+					run = 0;
+				}
+			} else {
+				runs.add(len);
+				run--;
+				while (run >= 3) {
+					final int r = MathUtils.min(run, 6);
+					runs.add(16 | ((r - 3) << 8));
+					run -= r;
+				}
+			}
+			while (run-- > 0) {
+				runs.add(len);
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * 根据符号频率生成最大长度受限的Huffman码长
+	 */
+	private static int[] buildLengths(int[] freqs, int count, int maxBits) {
+		final int[] lengths = new int[count];
+		final int[] work = new int[count];
+		int used = 0;
+		int lastUsed = 0;
+		for (int i = 0; i < count; i++) {
+			work[i] = freqs[i];
+			if (work[i] > 0) {
+				used++;
+				lastUsed = i;
+			}
+		}
+		if (used == 0) {
+			lengths[0] = 1;
+			lengths[1] = 1;
+			return lengths;
+		}
+		if (used == 1) {
+			lengths[lastUsed] = 1;
+			lengths[lastUsed == 0 ? 1 : 0] = 1;
+			return lengths;
+		}
+		final int[] weight = new int[count * 2];
+		final int[] parent = new int[count * 2];
+		final int[] heap = new int[count];
+		for (;;) {
+			int heapSize = 0;
+			for (int i = 0; i < count; i++) {
+				if (work[i] > 0) {
+					weight[i] = work[i];
+					heap[heapSize] = i;
+					siftUp(heap, heapSize++, weight);
+				}
+			}
+			int next = count;
+			while (heapSize > 1) {
+				final int a = heap[0];
+				heap[0] = heap[--heapSize];
+				siftDown(heap, heapSize, weight);
+				final int b = heap[0];
+				weight[next] = weight[a] + weight[b];
+				parent[a] = next;
+				parent[b] = next;
+				heap[0] = next;
+				siftDown(heap, heapSize, weight);
+				next++;
+			}
+			final int root = next - 1;
+			final int[] depth = new int[next];
+			depth[root] = 0;
+			for (int node = root - 1; node >= count; node--) {
+				depth[node] = depth[parent[node]] + 1;
+			}
+			int maxDepth = 0;
+			for (int i = 0; i < count; i++) {
+				if (work[i] > 0) {
+					lengths[i] = depth[parent[i]] + 1;
+					if (lengths[i] > maxDepth) {
+						maxDepth = lengths[i];
+					}
+				} else {
+					lengths[i] = 0;
+				}
+			}
+			if (maxDepth <= maxBits) {
+				return lengths;
+			}
+			// 码长超限时压平频率分布再重建
+			for (int i = 0; i < count; i++) {
+				if (work[i] > 0) {
+					work[i] = (work[i] >>> 1) | 1;
+				}
+			}
+		}
+	}
+
+	private static void siftUp(int[] heap, int idx, int[] weight) {
+		final int node = heap[idx];
+		while (idx > 0) {
+			final int p = (idx - 1) >>> 1;
+			if (weight[heap[p]] <= weight[node]) {
+				break;
+			}
+			heap[idx] = heap[p];
+			idx = p;
+		}
+		heap[idx] = node;
+	}
+
+	private static void siftDown(int[] heap, int size, int[] weight) {
+		if (size == 0) {
+			return;
+		}
+		final int node = heap[0];
+		int idx = 0;
+		for (;;) {
+			int child = idx * 2 + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && weight[heap[child + 1]] < weight[heap[child]]) {
+				child++;
+			}
+			if (weight[heap[child]] >= weight[node]) {
+				break;
+			}
+			heap[idx] = heap[child];
+			idx = child;
+		}
+		heap[idx] = node;
+	}
+
+	/**
+	 * 由码长生成规范Huffman编码(已按deflate要求反转位序)
+	 */
+	private static int[] canonicalCodes(int[] lengths, int count) {
+		final int[] blCount = new int[MAX_BITS + 1];
+		for (int i = 0; i < count; i++) {
+			blCount[lengths[i]]++;
+		}
+		blCount[0] = 0;
+		final int[] nextCode = new int[MAX_BITS + 1];
+		int code = 0;
+		for (int bits = 1; bits <= MAX_BITS; bits++) {
+			code = (code + blCount[bits - 1]) << 1;
+			nextCode[bits] = code;
+		}
+		final int[] codes = new int[count];
+		for (int i = 0; i < count; i++) {
+			final int len = lengths[i];
+			if (len != 0) {
+				codes[i] = reverse(nextCode[len]++, len);
+			}
+		}
+		return codes;
+	}
+
+	private static int reverse(int code, int len) {
+		int result = 0;
+		for (int i = 0; i < len; i++) {
+			result = (result << 1) | (code & 1);
+			code >>>= 1;
+		}
+		return result;
+	}
+
+	private void writeBits(int value, int count) {
+		if (count == 0) {
+			return;
+		}
+		_bitBuffer |= ((long) value & ((1L << count) - 1)) << _bitCount;
+		_bitCount += count;
+		if (_bitCount >= 32) {
+			ensureCapacity(4);
+			_out[_outPos++] = (byte) _bitBuffer;
+			_out[_outPos++] = (byte) (_bitBuffer >>> 8);
+			_out[_outPos++] = (byte) (_bitBuffer >>> 16);
+			_out[_outPos++] = (byte) (_bitBuffer >>> 24);
+			_bitBuffer >>>= 32;
+			_bitCount -= 32;
+		}
+	}
+
+	private void flushBits() {
+		ensureCapacity(8);
+		while (_bitCount > 0) {
+			_out[_outPos++] = (byte) _bitBuffer;
+			_bitBuffer >>>= 8;
+			_bitCount -= 8;
+		}
+		_bitBuffer = 0;
+		_bitCount = 0;
+	}
+
+	private void ensureCapacity(int size) {
+		if (_outPos + size > _out.length) {
+			final byte[] tmp = new byte[MathUtils.max(_out.length * 2, _outPos + size)];
+			System.arraycopy(_out, 0, tmp, 0, _outPos);
+			_out = tmp;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils;
+
+/**
+ * 以对象引用(==与System.identityHashCode)为键的哈希表.
+ *
+ * 用于键对象的hashCode会随状态变化的场合(比如ActionObject的hashCode包含坐标),ObjectMap在对象移动后就找不到原来的值了.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class IdentityMap<K, V> implements IArray {
+
+	private Object[] _keys;
+
+	private Object[] _values;
+
+	private int _size;
+
+	private int _mask;
+
+	private int _threshold;
+
+	public IdentityMap() {
+		this(CollectionUtils.INITIAL_CAPACITY);
+	}
+
+	public IdentityMap(int capacity) {
+		final int cap = MathUtils.nextPowerOfTwo(MathUtils.max(capacity, 4) * 2);
+		this._keys = new Object[cap];
+		this._values = new Object[cap];
+		this._mask = cap - 1;
+		this._threshold = cap / 2;
+	}
+
+	private int slot(Object key) {
+		final int h = System.identityHashCode(key);
+		return (h ^ (h >>> 16)) & _mask;
+	}
+
+	private int indexOf(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		final Object[] keys = _keys;
+		for (int i = slot(key);; i = (i + 1) & _mask) {
+			final Object k = keys[i];
+			if (k == null) {
+				return -1;
+			}
+			if (k == key) {
+				return i;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		final int idx = indexOf(key);
+		return idx == -1 ? null : (V) _values[idx];
+	}
+
+	public boolean containsKey(K key) {
+		return indexOf(key) != -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("key cannot be null.");
+		}
+		final Object[] keys = _keys;
+		int i = slot(key);
+		for (;; i = (i + 1) & _mask) {
+			final Object k = keys[i];
+			if (k == null) {
+				break;
+			}
+			if (k == key) {
+				final V old = (V) _values[i];
+				_values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		_values[i] = value;
+		if (++_size > _threshold) {
+			resize(_keys.length << 1);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(K key) {
+		int idx = indexOf(key);
+		if (idx == -1) {
+			return null;
+		}
+		final Object[] keys = _keys;
+		final Object[] values = _values;
+		final V old = (V) values[idx];
+		// 后移删除,保持线性探测链连续
+		for (int next = (idx + 1) & _mask; keys[next] != null; next = (next + 1) & _mask) {
+			final int home = slot(keys[next]);
+			if (((next - home) & _mask) >= ((next - idx) & _mask)) {
+				keys[idx] = keys[next];
+				values[idx] = values[next];
+				idx = next;
+			}
+		}
+		keys[idx] = null;
+		values[idx] = null;
+		_size--;
+		return old;
+	}
+
+	/**
+	 * 把全部值放入out(不清空out),用于不分配迭代器的遍历
+	 *
+	 * @param out
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public TArray<V> values(TArray<V> out) {
+		if (out == null) {
+			out = new TArray<V>(_size);
+		}
+		for (int i = 0; i < _keys.length; i++) {
+			if (_keys[i] != null) {
+				out.add((V) _values[i]);
+			}
+		}
+		return out;
+	}
+
+	private void resize(int cap) {
+		final Object[] oldKeys = _keys;
+		final Object[] oldValues = _values;
+		_keys = new Object[cap];
+		_values = new Object[cap];
+		_mask = cap - 1;
+		_threshold = cap / 2;
+		for (int i = 0; i < oldKeys.length; i++) {
+			final Object k = oldKeys[i];
+			if (k != null) {
+				int j = slot(k);
+				while (_keys[j] != null) {
+					j = (j + 1) & _mask;
+				}
+				_keys[j] = k;
+				_values[j] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	@Override
+	public void clear() {
+		if (_size == 0) {
+			return;
+		}
+		for (int i = 0; i < _keys.length; i++) {
+			_keys[i] = null;
+			_values[i] = null;
+		}
+		_size = 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	@Override
+	public boolean isNotEmpty() {
+		return _size != 0;
+	}
+}
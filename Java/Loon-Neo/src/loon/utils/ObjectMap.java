@@ -147,6 +147,18 @@ public class ObjectMap<K, V> implements Iterable<ObjectMap.Entry<K, V>>, IArray,
 		return keys2;
 	}
 
+	/**
+	 * 返回新的键迭代器(keys函数返回的迭代器为复用对象,多个线程同时读取时需使用此函数)
+	 * 
+	 * @return
+	 */
+	public Keys<K> newKeys() {
+		final Keys<K> keys = new Keys<K>(this);
+		keys.reset();
+		keys._valid = true;
+		return keys;
+	}
+
 	public static final class Keys<K> implements Iterable<K>, LIterator<K> {
 
 		public boolean _valid;
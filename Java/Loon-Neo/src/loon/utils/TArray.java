@@ -582,10 +582,15 @@ public class TArray<T> implements Iterable<T>, IArray, LRelease {
 		if (list == null) {
 			return;
 		}
+		// 链表按序号取值为O(n),此处顺序遍历
+		final LIterator<T> it = list.newListIterator();
+		for (int i = 0; i < idx && it.hasNext(); i++) {
+			it.next();
+		}
 		int len = list.size;
 		T[] items = this.items;
 		for (int i = idx, n = size; i < n && i < len; i++)
-			items[i] = list.get(i);
+			items[i] = it.next();
 
 	}
 
@@ -31,6 +31,7 @@ import loon.utils.StringKeyValue;
 import loon.utils.timer.Duration;
 import loon.utils.timer.LTimer;
 import loon.utils.timer.LTimerContext;
+import loon.utils.timer.TimingWheel;
 
 public abstract class RealtimeProcess implements GameProcess, LRelease {
 
@@ -58,6 +59,11 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 
 	private LRelease _released;
 
+	// 时间轮模式下所在的节点,以及上次执行tick时时间轮的时间
+	TimingWheel.Node<GameProcess> _wheelNode;
+
+	long _wheelTime;
+
 	final static String getProcessName() {
 		return "Process" + (GLOBAL_ID++);
 	}
@@ -144,6 +150,18 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 		return _timer.getCurrentTick();
 	}
 
+	/**
+	 * 时间轮模式下距离下一次需要执行tick的毫秒数,返回0表示需要每帧执行
+	 * 
+	 * @return
+	 */
+	protected long getWakeDelay() {
+		if (isDead || _timeOutDelay != -1) {
+			return 0L;
+		}
+		return _timer.getActionDelay();
+	}
+
 	public boolean isTimeOut() {
 		if (_timeOutDelay == -1) {
 			return false;
@@ -277,6 +295,10 @@ public abstract class RealtimeProcess implements GameProcess, LRelease {
 	@Override
 	public void kill() {
 		this.isDead = true;
+		// 在时间轮中等待的进程立即到期,以便下一帧结束
+		if (_wheelNode != null && _wheelNode.isScheduled()) {
+			_wheelNode.reschedule(0);
+		}
 	}
 
 	@Override
@@ -30,13 +30,18 @@ import loon.events.EventAction;
 import loon.utils.HelperUtils;
 import loon.utils.IArray;
 import loon.utils.LIterator;
+import loon.utils.ObjectSet;
 import loon.utils.SortedList;
 import loon.utils.StrBuilder;
 import loon.utils.TArray;
 import loon.utils.timer.LTimerContext;
+import loon.utils.timer.TimingWheel;
 
 /**
  * loon围绕时间帧提供的进程管理用类(无关单独线程,纯依附于主渲染线程中循环实现)
+ * 
+ * 默认每帧对所有进程执行tick,当存在大量长延迟进程时(如buff到期,技能冷却,定时刷怪等),可以调用setTimingWheel(true)切换为时间轮模式,
+ * 此时有延迟的进程被放入时间轮,只在到期时才会被执行,加入与删除均为O(1),需要每帧执行的进程则依旧逐帧执行.
  */
 public final class RealtimeProcessManager implements RealtimeProcessEvent, IArray, LRelease {
 
@@ -106,6 +111,14 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	private final TArray<GameProcess> toBeUpdated = new TArray<GameProcess>();
 
+	private final ObjectSet<GameProcess> deadPolled = new ObjectSet<GameProcess>();
+
+	private final TArray<GameProcess> wheelExpired = new TArray<GameProcess>();
+
+	private final LTimerContext wheelContext = new LTimerContext();
+
+	private TimingWheel<GameProcess> _wheel;
+
 	private static RealtimeProcessManager _instance;
 
 	private GameProcess _currentProcess;
@@ -137,23 +150,105 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 		return new RealtimeProcessManager();
 	}
 
+	/**
+	 * 是否使用时间轮管理有延迟的进程
+	 * 
+	 * ps:时间轮中的进程只在到期时执行tick,传入的LTimerContext为距其上次执行经过的时间.关闭时间轮时,尚未到期的进程会回到逐帧执行.
+	 * 
+	 * @param wheel
+	 * @return
+	 */
+	public RealtimeProcessManager setTimingWheel(boolean wheel) {
+		synchronized (this._processes) {
+			if (wheel && _wheel == null) {
+				_wheel = new TimingWheel<GameProcess>();
+				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				_processes.clear();
+				for (int i = 0; i < ps.size; i++) {
+					schedule(ps.get(i));
+				}
+			} else if (!wheel && _wheel != null) {
+				final TArray<GameProcess> ps = _wheel.values(new TArray<GameProcess>());
+				_wheel.clear();
+				_wheel = null;
+				for (int i = 0; i < ps.size; i++) {
+					_processes.add(ps.get(i));
+				}
+			}
+		}
+		return this;
+	}
+
+	public boolean isTimingWheel() {
+		return _wheel != null;
+	}
+
 	@Override
 	public void addProcess(GameProcess realtimeProcess) {
 		synchronized (this._processes) {
-			this._processes.add(realtimeProcess);
+			schedule(realtimeProcess);
 		}
 	}
 
+	private void schedule(GameProcess process) {
+		if (_wheel != null && process instanceof RealtimeProcess) {
+			final RealtimeProcess realtimeProcess = (RealtimeProcess) process;
+			final long delay = realtimeProcess.getWakeDelay();
+			if (delay > 0) {
+				realtimeProcess._wheelTime = _wheel.now();
+				final TimingWheel.Node<GameProcess> node = realtimeProcess._wheelNode;
+				if (node == null || node.getWheel() != _wheel) {
+					realtimeProcess._wheelNode = _wheel.schedule(process, delay);
+				} else {
+					_wheel.schedule(node, delay);
+				}
+				return;
+			}
+		}
+		this._processes.add(process);
+	}
+
+	private boolean inWheel(GameProcess process) {
+		if (_wheel != null && process instanceof RealtimeProcess) {
+			final TimingWheel.Node<GameProcess> node = ((RealtimeProcess) process)._wheelNode;
+			return node != null && node.getWheel() == _wheel && node.isScheduled();
+		}
+		return false;
+	}
+
+	private void detach(GameProcess process) {
+		if (inWheel(process)) {
+			((RealtimeProcess) process)._wheelNode.cancel();
+		} else {
+			_processes.remove(process);
+		}
+	}
+
+	private TArray<GameProcess> all() {
+		final TArray<GameProcess> list = new TArray<GameProcess>(_processes);
+		if (_wheel != null) {
+			_wheel.values(list);
+		}
+		return list;
+	}
+
+	private Iterator<GameProcess> processes() {
+		if (_wheel == null || _wheel.isEmpty()) {
+			return _processes.listIterator();
+		}
+		return all().iterator();
+	}
+
 	@Override
 	public boolean containsProcess(GameProcess realtimeProcess) {
 		synchronized (this._processes) {
-			return this._processes.contains(realtimeProcess);
+			return inWheel(realtimeProcess) || this._processes.contains(realtimeProcess);
 		}
 	}
 
 	@Override
 	public void tick(LTimerContext time) {
-		if (_processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
 				if (toBeUpdated.size == _processes.size) {
 					toBeUpdated.fill(this._processes);
@@ -161,8 +256,12 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 					toBeUpdated.clear();
 					toBeUpdated.addAll(this._processes);
 				}
+				if (_wheel != null) {
+					_wheel.advance(time.timeSinceLastUpdate, wheelExpired);
+				}
 			}
 			deadProcesses.clear();
+			deadPolled.clear();
 			try {
 				for (Iterator<GameProcess> it = toBeUpdated.iterator(); it.hasNext();) {
 					GameProcess realtimeProcess = it.next();
@@ -171,9 +270,13 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 						realtimeProcess.tick(time);
 						if (realtimeProcess.isDead()) {
 							deadProcesses.add(realtimeProcess);
+							deadPolled.add(realtimeProcess);
 						}
 					}
 				}
+				if (wheelExpired.size > 0) {
+					tickWheel(time);
+				}
 				if (deadProcesses.size > 0) {
 					for (Iterator<GameProcess> it = deadProcesses.iterator(); it.hasNext();) {
 						GameProcess realtimeProcess = it.next();
@@ -181,8 +284,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 							realtimeProcess.finish();
 						}
 					}
-					synchronized (this._processes) {
-						this._processes.removeAll(deadProcesses);
+					// 一次遍历删除所有结束的进程,时间轮中的进程到期时已离开时间轮,无需删除
+					if (deadPolled.size() > 0) {
+						synchronized (this._processes) {
+							for (LIterator<GameProcess> it = _processes.newListIterator(); it.hasNext();) {
+								if (deadPolled.contains(it.next())) {
+									it.remove();
+								}
+							}
+						}
 					}
 				}
 			} catch (Throwable cause) {
@@ -191,15 +301,57 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 		}
 	}
 
+	private void tickWheel(LTimerContext time) {
+		final int size = wheelExpired.size;
+		if (size > 1) {
+			wheelExpired.sort(_processComparator);
+		}
+		final long now = _wheel.now();
+		wheelContext.tick = time.tick;
+		wheelContext.alpha = time.alpha;
+		int i = 0;
+		try {
+			for (; i < size; i++) {
+				final RealtimeProcess realtimeProcess = (RealtimeProcess) wheelExpired.get(i);
+				final long elapsed = now - realtimeProcess._wheelTime;
+				realtimeProcess._wheelTime = now;
+				wheelContext.timeSinceLastUpdate = elapsed;
+				wheelContext.unscaledTimeSinceLastUpdate = elapsed;
+				_currentProcess = realtimeProcess;
+				realtimeProcess.tick(wheelContext);
+				if (realtimeProcess.isDead()) {
+					deadProcesses.add(realtimeProcess);
+				} else {
+					synchronized (this._processes) {
+						schedule(realtimeProcess);
+					}
+				}
+			}
+		} finally {
+			// 执行出错时,把尚未执行的进程放回时间轮,下一帧再执行
+			if (i < size) {
+				synchronized (this._processes) {
+					for (int j = i; j < size; j++) {
+						final RealtimeProcess realtimeProcess = (RealtimeProcess) wheelExpired.get(j);
+						if (_wheel != null && realtimeProcess._wheelNode != null) {
+							_wheel.schedule(realtimeProcess._wheelNode, 0);
+						}
+					}
+				}
+			}
+			wheelExpired.clear();
+		}
+	}
+
 	public GameProcess currentProcess() {
 		return _currentProcess;
 	}
 
 	public TArray<GameProcess> find(String id) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null && (p.getId() == id || p.getId().equals(id))) {
 						list.add(p);
@@ -212,9 +364,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> find(GameProcessType pt) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null && p.getProcessType() == pt) {
 						list.add(p);
@@ -227,9 +379,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public int findCount(GameProcessType pt) {
 		int count = 0;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null && p.getProcessType() == pt) {
 						count++;
@@ -242,9 +394,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> findIndex(String id) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p.getId().equals(id) || p.getId().indexOf(id) != -1) {
 						list.add(p);
@@ -257,15 +409,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public int remove(GameProcess process) {
 		int count = 0;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (process == p || process.getId() == p.getId() || process.getId().equals(p.getId())) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							count++;
 						}
 					}
@@ -277,15 +429,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public int remove(String id) {
 		int count = 0;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getId() == id || p.getId().equals(id)) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							count++;
 						}
 					}
@@ -297,15 +449,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public int remove(GameProcessType processType) {
 		int count = 0;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getProcessType() == processType) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							count++;
 						}
 					}
@@ -317,15 +469,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public int removeIndex(String id) {
 		int count = 0;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getId().equals(id) || p.getId().indexOf(id) != -1) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							count++;
 						}
 					}
@@ -340,15 +492,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 		if (pt == null) {
 			return list;
 		}
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getProcessType() == pt) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -363,15 +515,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 		if (process == null) {
 			return list;
 		}
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (process == p || process.getId() == p.getId() || process.getId().equals(p.getId())) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -383,15 +535,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> delete(String id) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getId() == id || p.getId().equals(id)) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -403,15 +555,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> deleteType(GameProcessType processType) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getProcessType() == processType) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -423,15 +575,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> deleteIndex(String id) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getId().equals(id) || p.getId().indexOf(id) != -1) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -449,15 +601,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 	 */
 	public TArray<GameProcess> deleteAllWithMinPriority(int minPriority) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getPriority() < minPriority) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -475,15 +627,15 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 	 */
 	public TArray<GameProcess> deleteAllWithMaxPriority(int maxPriority) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
 						if (p.getPriority() > maxPriority) {
 							p.kill();
-							_processes.remove(p);
+							detach(p);
 							list.add(p);
 						}
 					}
@@ -495,9 +647,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> pause(GameProcessType pt) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null && p.getProcessType() == pt) {
 						list.add(p.pause());
@@ -510,9 +662,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> resume(GameProcessType pt) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null && p.getProcessType() == pt) {
 						list.add(p.resume());
@@ -525,9 +677,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> pause() {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null) {
 						list.add(p.pause());
@@ -540,9 +692,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> resume() {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null) {
 						list.add(p.resume());
@@ -555,9 +707,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> pauseWithMinPriority(int min, int max) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null) {
 						int pindex = p.getPriority();
@@ -573,9 +725,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	public TArray<GameProcess> resumeWithMinPriority(int min, int max) {
 		TArray<GameProcess> list = new TArray<GameProcess>();
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+				for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 					GameProcess p = it.next();
 					if (p != null) {
 						int pindex = p.getPriority();
@@ -602,18 +754,23 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 
 	@Override
 	public int size() {
-		return _processes.size;
+		return _processes.size + (_wheel == null ? 0 : _wheel.size());
 	}
 
 	@Override
 	public void clear() {
-		_processes.clear();
+		synchronized (this._processes) {
+			_processes.clear();
+			if (_wheel != null) {
+				_wheel.clear();
+			}
+		}
 		_currentProcess = null;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return _processes.size == 0;
+		return size() == 0;
 	}
 
 	@Override
@@ -631,12 +788,12 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 	}
 
 	public String toString(char separator) {
-		if (_processes.size == 0) {
+		if (isEmpty()) {
 			return "[]";
 		}
 		StrBuilder buffer = new StrBuilder(32);
 		buffer.append(LSystem.BRACKET_START);
-		for (LIterator<GameProcess> it = _processes.listIterator(); it.hasNext();) {
+		for (Iterator<GameProcess> it = processes(); it.hasNext();) {
 			GameProcess p = it.next();
 			if (p != null) {
 				buffer.append(p.toString());
@@ -650,9 +807,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 	@Override
 	public void close() {
 		_currentProcess = null;
-		if (_processes != null && _processes.size > 0) {
+		if (size() > 0) {
 			synchronized (this._processes) {
-				final TArray<GameProcess> ps = new TArray<GameProcess>(_processes);
+				final TArray<GameProcess> ps = all();
 				for (int i = 0; i < ps.size; i++) {
 					GameProcess p = ps.get(i);
 					if (p != null) {
@@ -660,6 +817,9 @@ public final class RealtimeProcessManager implements RealtimeProcessEvent, IArra
 					}
 				}
 				_processes.clear();
+				if (_wheel != null) {
+					_wheel.clear();
+				}
 			}
 		}
 	}
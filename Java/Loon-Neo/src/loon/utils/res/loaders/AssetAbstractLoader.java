@@ -32,6 +32,9 @@ public abstract class AssetAbstractLoader<T> implements AssetLoader {
 
 	protected boolean _runThrowException;
 
+	// 工作线程加载状态,0未提交,1已提交,2已完成
+	private int _asyncState;
+
 	protected void set(String path, String nickname) {
 		if (StringUtils.isEmpty(path)) {
 			throw new LSysException("The path name cannot be empty !");
@@ -88,4 +91,24 @@ public abstract class AssetAbstractLoader<T> implements AssetLoader {
 		return _nickname;
 	}
 
+	public synchronized boolean startAsync() {
+		if (_asyncState != 0) {
+			return false;
+		}
+		_asyncState = 1;
+		return true;
+	}
+
+	public synchronized boolean isAsyncLoaded() {
+		return _asyncState == 2;
+	}
+
+	protected synchronized void finishAsync() {
+		_asyncState = 2;
+	}
+
+	protected synchronized void resetAsync() {
+		_asyncState = 0;
+	}
+
 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils.res.loaders;
+
+/**
+ * 可以把读取文件与解码图片等工作放到工作线程中执行的资源加载器.
+ *
+ * PreloadAssets在平台支持异步时,先在工作线程中并行调用loadAsync,完成后再在游戏线程中调用load创建纹理等GL对象.
+ */
+public interface AssetAsyncLoader extends AssetLoader {
+
+	/**
+	 * 标记为已提交到工作线程,已提交过时返回false
+	 * 
+	 * @return
+	 */
+	boolean startAsync();
+
+	/**
+	 * 在工作线程中执行,只允许读取与解码数据,不能调用任何GL函数
+	 */
+	void loadAsync();
+
+	/**
+	 * 工作线程中的部分是否已经完成
+	 * 
+	 * @return
+	 */
+	boolean isAsyncLoaded();
+
+}
@@ -23,10 +23,12 @@ package loon.utils.res.loaders;
 import loon.BaseIO;
 import loon.utils.ArrayByte;
 
-public class BytesAssetLoader extends AssetAbstractLoader<ArrayByte> {
+public class BytesAssetLoader extends AssetAbstractLoader<ArrayByte> implements AssetAsyncLoader {
 
 	private ArrayByte _bytes;
 
+	private ArrayByte _decoded;
+
 	public BytesAssetLoader(String path, String nickname) {
 		set(path, nickname);
 	}
@@ -41,10 +43,24 @@ public class BytesAssetLoader extends AssetAbstractLoader<ArrayByte> {
 		return _bytes;
 	}
 
+	@Override
+	public void loadAsync() {
+		try {
+			_decoded = BaseIO.loadArrayByte(_path);
+		} catch (Throwable e) {
+			_decoded = null;
+		} finally {
+			finishAsync();
+		}
+	}
+
 	@Override
 	public void loadData() {
 		close();
-		_bytes = BaseIO.loadArrayByte(_path);
+		final ArrayByte bytes = _decoded;
+		_decoded = null;
+		resetAsync();
+		_bytes = (bytes != null) ? bytes : BaseIO.loadArrayByte(_path);
 	}
 
 	@Override
@@ -23,10 +23,12 @@ package loon.utils.res.loaders;
 import loon.BaseIO;
 import loon.canvas.Image;
 
-public class ImageAssetLoader extends AssetAbstractLoader<Image> {
+public class ImageAssetLoader extends AssetAbstractLoader<Image> implements AssetAsyncLoader {
 
 	private Image _image;
 
+	private Image _decoded;
+
 	public ImageAssetLoader(String path, String nickname) {
 		this.set(path, nickname);
 	}
@@ -36,10 +38,24 @@ public class ImageAssetLoader extends AssetAbstractLoader<Image> {
 		return _image != null && !_image.isClosed();
 	}
 
+	@Override
+	public void loadAsync() {
+		try {
+			_decoded = BaseIO.loadImage(_path, true);
+		} catch (Throwable e) {
+			_decoded = null;
+		} finally {
+			finishAsync();
+		}
+	}
+
 	@Override
 	public void loadData() {
 		close();
-		_image = BaseIO.loadImage(_path);
+		final Image image = _decoded;
+		_decoded = null;
+		resetAsync();
+		_image = (image != null) ? image : BaseIO.loadImage(_path);
 	}
 
 	@Override
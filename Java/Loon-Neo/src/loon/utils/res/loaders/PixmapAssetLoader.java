@@ -24,10 +24,12 @@ import loon.BaseIO;
 import loon.canvas.Image;
 import loon.canvas.Pixmap;
 
-public class PixmapAssetLoader extends AssetAbstractLoader<Pixmap> {
+public class PixmapAssetLoader extends AssetAbstractLoader<Pixmap> implements AssetAsyncLoader {
 
 	private Pixmap _image;
 
+	private Pixmap _decoded;
+
 	public PixmapAssetLoader(String path, String nickname) {
 		this.set(path, nickname);
 	}
@@ -37,9 +39,30 @@ public class PixmapAssetLoader extends AssetAbstractLoader<Pixmap> {
 		return _image != null && !_image.isClosed();
 	}
 
+	@Override
+	public void loadAsync() {
+		try {
+			Image img = BaseIO.loadImage(_path, true);
+			if (img != null) {
+				_decoded = img.getPixmap();
+			}
+		} catch (Throwable e) {
+			_decoded = null;
+		} finally {
+			finishAsync();
+		}
+	}
+
 	@Override
 	public void loadData() {
 		close();
+		final Pixmap pixmap = _decoded;
+		_decoded = null;
+		resetAsync();
+		if (pixmap != null) {
+			_image = pixmap;
+			return;
+		}
 		Image img = BaseIO.loadImage(_path);
 		if (img == null) {
 			return;
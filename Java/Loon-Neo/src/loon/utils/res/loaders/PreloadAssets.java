@@ -20,6 +20,7 @@
  */
 package loon.utils.res.loaders;
 
+import loon.Asyn;
 import loon.LRelease;
 import loon.LSysException;
 import loon.LSystem;
@@ -30,12 +31,40 @@ import loon.utils.ObjectMap.Values;
 import loon.utils.PathUtils;
 import loon.utils.StringUtils;
 import loon.utils.TArray;
+import loon.utils.TimeUtils;
 import loon.utils.xml.XMLListener;
 
 public class PreloadAssets implements LRelease {
 
+	// 每次检测时在游戏线程中创建纹理等对象的默认耗时上限(毫秒)
+	public final static float DEFAULT_FRAME_BUDGET = 8f;
+
+	// 最多提前解码的资源数量,避免大量解码后的图片同时占用内存
+	public final static int MAX_DECODE_AHEAD = 32;
+
+	/**
+	 * 在工作线程中执行加载器的读取与解码部分
+	 */
+	private static class AsyncLoadRunnable implements Runnable {
+
+		private final AssetAsyncLoader _loader;
+
+		AsyncLoadRunnable(AssetAsyncLoader loader) {
+			this._loader = loader;
+		}
+
+		@Override
+		public void run() {
+			_loader.loadAsync();
+		}
+	}
+
 	private TArray<AssetLoader> _loads;
 
+	private boolean _parallel = true;
+
+	private float _frameBudget = DEFAULT_FRAME_BUDGET;
+
 	private ObjectMap<PreloadItem, TArray<AssetLoader>> _preloadMap;
 
 	private boolean _runThrowException;
@@ -70,6 +99,36 @@ public class PreloadAssets implements LRelease {
 		return _runThrowException;
 	}
 
+	/**
+	 * 平台支持异步时,是否在工作线程中并行读取与解码资源(不支持时始终逐个加载)
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public PreloadAssets setParallel(boolean p) {
+		this._parallel = p;
+		return this;
+	}
+
+	public boolean isParallel() {
+		return _parallel;
+	}
+
+	/**
+	 * 设置每次检测时在游戏线程中处理已解码资源的耗时上限(毫秒)
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	public PreloadAssets setFrameBudget(float millis) {
+		this._frameBudget = millis;
+		return this;
+	}
+
+	public float getFrameBudget() {
+		return _frameBudget;
+	}
+
 	private boolean checkPathRedundancy(PreloadItem item, String path) {
 		if (path == null) {
 			throw new LSysException("The Path cannot be empty");
@@ -532,25 +591,74 @@ public class PreloadAssets implements LRelease {
 		return _loads.first();
 	}
 
+	private Asyn getAsyn() {
+		if (!_parallel || LSystem.base() == null) {
+			return null;
+		}
+		final Asyn asyn = LSystem.base().asyn();
+		return (asyn != null && asyn.isAsyncSupported()) ? asyn : null;
+	}
+
 	public boolean detection() {
 		if (_loads.size == 0) {
 			return false;
 		}
-		final AssetLoader loader = this._loads.first();
-		if (loader != null && loader.load()) {
-			final PreloadItem item = loader.item();
-			TArray<AssetLoader> list = _preloadMap.get(item);
-			if (list == null) {
-				list = new TArray<AssetLoader>();
+		final Asyn asyn = getAsyn();
+		if (asyn == null) {
+			final AssetLoader loader = this._loads.first();
+			if (loader != null && loader.load()) {
+				putLoaded(loader);
+				_loads.removeFirst();
+				return true;
+			}
+			return false;
+		}
+		// 读取与解码按队列顺序提交到工作线程并行执行
+		int ahead = 0;
+		for (int i = 0; i < _loads.size && ahead < MAX_DECODE_AHEAD; i++) {
+			final AssetLoader loader = _loads.get(i);
+			if (loader instanceof AssetAsyncLoader) {
+				final AssetAsyncLoader async = (AssetAsyncLoader) loader;
+				if (async.startAsync()) {
+					asyn.invokeAsync(new AsyncLoadRunnable(async));
+				}
+				ahead++;
+			}
+		}
+		// 游戏线程中只处理已解码完成的资源,超出耗时上限后留到下次检测
+		final long budget = (long) (_frameBudget * 1000000L);
+		final long start = TimeUtils.nanoTime();
+		boolean result = false;
+		for (int i = 0; i < _loads.size;) {
+			final AssetLoader loader = _loads.get(i);
+			if (loader instanceof AssetAsyncLoader && !((AssetAsyncLoader) loader).isAsyncLoaded()) {
+				i++;
+				continue;
 			}
-			if (!list.contains(loader)) {
-				list.add(loader);
+			if (loader != null && loader.load()) {
+				putLoaded(loader);
+				_loads.removeIndex(i);
+				result = true;
+			} else {
+				i++;
+			}
+			if (TimeUtils.nanoTime() - start >= budget) {
+				break;
 			}
-			_preloadMap.put(item, list);
-			_loads.removeFirst();
-			return true;
 		}
-		return false;
+		return result;
+	}
+
+	private void putLoaded(AssetLoader loader) {
+		final PreloadItem item = loader.item();
+		TArray<AssetLoader> list = _preloadMap.get(item);
+		if (list == null) {
+			list = new TArray<AssetLoader>();
+		}
+		if (!list.contains(loader)) {
+			list.add(loader);
+		}
+		_preloadMap.put(item, list);
 	}
 
 	public boolean completed() {
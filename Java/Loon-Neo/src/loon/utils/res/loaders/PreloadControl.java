@@ -92,6 +92,10 @@ public class PreloadControl implements LRelease {
 
 	private long _preloadInterval;
 
+	private boolean _parallel = true;
+
+	private float _frameBudget = PreloadAssets.DEFAULT_FRAME_BUDGET;
+
 	private PreloadLoader _loader;
 
 	public PreloadControl(PreloadLoader loader) {
@@ -117,6 +121,8 @@ public class PreloadControl implements LRelease {
 			this._preAssets = null;
 		}
 		this._preAssets = new PreloadAssets(_runThrowException);
+		this._preAssets.setParallel(_parallel);
+		this._preAssets.setFrameBudget(_frameBudget);
 		this._assetsLoading = true;
 		this._assetsFailure = false;
 	}
@@ -130,6 +136,42 @@ public class PreloadControl implements LRelease {
 		return _runThrowException;
 	}
 
+	/**
+	 * 平台支持异步时,是否在工作线程中并行读取与解码资源
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public PreloadControl setParallel(boolean p) {
+		this._parallel = p;
+		if (_preAssets != null) {
+			_preAssets.setParallel(p);
+		}
+		return this;
+	}
+
+	public boolean isParallel() {
+		return _parallel;
+	}
+
+	/**
+	 * 设置每帧在游戏线程中创建纹理等对象的耗时上限(毫秒)
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	public PreloadControl setFrameBudget(float millis) {
+		this._frameBudget = millis;
+		if (_preAssets != null) {
+			_preAssets.setFrameBudget(millis);
+		}
+		return this;
+	}
+
+	public float getFrameBudget() {
+		return _frameBudget;
+	}
+
 	public PreloadControl loadAssets(String... others) {
 		if (others == null || others.length == 0) {
 			return this;
@@ -20,13 +20,18 @@
  */
 package loon.utils.res.loaders;
 
+import loon.BaseIO;
 import loon.LTexture;
 import loon.LTextures;
+import loon.canvas.Image;
 
-public class TextureAssetLoader extends AssetAbstractLoader<LTexture> {
+public class TextureAssetLoader extends AssetAbstractLoader<LTexture> implements AssetAsyncLoader {
 
 	private LTexture _texture;
 
+	// 工作线程中解码好的图片,在游戏线程中转为纹理
+	private Image _decoded;
+
 	private LTexture.Format _textureFormat;
 
 	public TextureAssetLoader(String path, String nickname, LTexture.Format f) {
@@ -39,10 +44,33 @@ public class TextureAssetLoader extends AssetAbstractLoader<LTexture> {
 		return _texture != null && !_texture.isClosed() && _texture.isLoaded();
 	}
 
+	@Override
+	public void loadAsync() {
+		try {
+			if (LTextures.getRegistry() == null || !LTextures.getRegistry().contains(_path)) {
+				final Image image = BaseIO.loadImage(_path, true);
+				if (image != null && image.isLoaded()) {
+					_decoded = image;
+				}
+			}
+		} catch (Throwable e) {
+			_decoded = null;
+		} finally {
+			finishAsync();
+		}
+	}
+
 	@Override
 	public void loadData() {
 		close();
-		_texture = LTextures.loadTexture(_path, _textureFormat);
+		final Image image = _decoded;
+		_decoded = null;
+		resetAsync();
+		if (image != null) {
+			_texture = LTextures.loadTexture(_path, image, _textureFormat);
+		} else {
+			_texture = LTextures.loadTexture(_path, _textureFormat);
+		}
 		_texture.loadTexture();
 	}
 
@@ -44,6 +44,11 @@ public abstract class Interval implements ActionUpdate, LRelease {
 
 	private Interval _waitInterval;
 
+	// Scheduler使用时间轮时所在的节点,以及上次执行时时间轮的时间
+	TimingWheel.Node<Interval> _wheelNode;
+
+	long _wheelTime;
+
 	public Interval() {
 		this(0L);
 	}
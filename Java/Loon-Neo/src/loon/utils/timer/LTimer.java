@@ -76,6 +76,14 @@ public class LTimer implements LTimerListener, LRelease {
 			}
 		}
 
+		@Override
+		protected long getWakeDelay() {
+			if (timer == null || getTimeOut() != -1) {
+				return 0L;
+			}
+			return timer.getActionDelay();
+		}
+
 	}
 
 	private static LTimer _instance = null;
@@ -547,6 +555,32 @@ public class LTimer implements LTimerListener, LRelease {
 		return this._delay - this._currentTick;
 	}
 
+	/**
+	 * 按当前的速度计算距离下一次action生效还需经过的毫秒数(已完成,关闭或即将完成时返回0)
+	 * 
+	 * @return
+	 */
+	public long getActionDelay() {
+		if (this._closed || this._completed) {
+			return 0L;
+		}
+		if (this._maxNumberOfRepeats > -1 && this._numberOfTicks >= this._maxNumberOfRepeats) {
+			return 0L;
+		}
+		final long remaining = this._delay - this._currentTick;
+		if (remaining <= 0) {
+			return 0L;
+		}
+		float speed = this._speedFactor;
+		if (this._syncFpsScaled) {
+			speed /= LSystem.getScaleFPS();
+		}
+		if (speed <= 0f) {
+			return remaining;
+		}
+		return (long) (remaining / speed);
+	}
+
 	public float getTickTowardNextS() {
 		return Duration.toS(getTickTowardNext());
 	}
@@ -69,6 +69,7 @@ import loon.utils.processes.RealtimeProcessManager;
  * s.start();
  * </pre>
  * 
+ * 非顺序执行(sequence为false)且事务数量很多时,可以调用setTimingWheel(true),此时事务按各自的延迟放入时间轮,每次只执行到期的事务.
  *
  */
 public class Scheduler implements LRelease {
@@ -100,6 +101,12 @@ public class Scheduler implements LRelease {
 
 	private final TArray<Interval> _removed;
 
+	private final TArray<Interval> _expired;
+
+	private TimingWheel<Interval> _wheel;
+
+	private boolean _wheelDirty = false;
+
 	private SchedulerProcess _processScheduler;
 
 	private int _childIndex = 0;
@@ -154,6 +161,7 @@ public class Scheduler implements LRelease {
 		this._loop_timer = new LTimer(name, delay);
 		this._scheduled = new TArray<Interval>(32);
 		this._removed = new TArray<Interval>();
+		this._expired = new TArray<Interval>();
 		this._removeSequenceTask = removeTask;
 		this._forceWaitSequence = sequence;
 		this._closed = false;
@@ -240,25 +248,79 @@ public class Scheduler implements LRelease {
 		return !isActive();
 	}
 
+	/**
+	 * 是否使用时间轮调度非顺序执行的事务,开启后每次只执行到期的事务,不再逐个检查全部事务的延迟
+	 * 
+	 * @param wheel
+	 * @return
+	 */
+	public Scheduler setTimingWheel(boolean wheel) {
+		if (wheel && _wheel == null) {
+			_wheel = new TimingWheel<Interval>();
+			_wheelDirty = true;
+		} else if (!wheel && _wheel != null) {
+			_wheel.clear();
+			_wheel = null;
+			for (int i = _scheduled.size - 1; i > -1; i--) {
+				Interval u = _scheduled.get(i);
+				if (u != null) {
+					u._wheelNode = null;
+				}
+			}
+		}
+		return this;
+	}
+
+	public boolean isTimingWheel() {
+		return _wheel != null;
+	}
+
 	public boolean add(Interval sched) {
+		_wheelDirty = true;
 		return _scheduled.add(sched);
 	}
 
 	public Scheduler addAll(Interval... s) {
+		_wheelDirty = true;
 		_scheduled.addAll(s);
 		return this;
 	}
 
 	public boolean remove(Interval sched) {
+		unlink(sched);
 		return _scheduled.remove(sched);
 	}
 
 	public boolean removeAll(Interval... s) {
+		if (s != null) {
+			for (int i = 0; i < s.length; i++) {
+				unlink(s[i]);
+			}
+		}
 		return _scheduled.removeAll(new TArray<Interval>(s));
 	}
 
 	public Interval removeIndex(int idx) {
-		return _scheduled.removeIndex(idx);
+		Interval u = _scheduled.removeIndex(idx);
+		unlink(u);
+		return u;
+	}
+
+	private void unlink(Interval u) {
+		if (_wheel != null && u != null && u._wheelNode != null) {
+			_wheel.cancel(u._wheelNode);
+			u._wheelNode = null;
+		}
+	}
+
+	private void link(Interval u) {
+		final long delay = u._loop_timer.getActionDelay();
+		u._wheelTime = _wheel.now();
+		if (u._wheelNode == null || u._wheelNode.getWheel() != _wheel) {
+			u._wheelNode = _wheel.schedule(u, delay);
+		} else {
+			_wheel.schedule(u._wheelNode, delay);
+		}
 	}
 
 	public Interval getIndex(int idx) {
@@ -281,12 +343,18 @@ public class Scheduler implements LRelease {
 			Interval u = _scheduled.get(i);
 			if (u != null && name.equals(u.getName())) {
 				_scheduled.removeIndex(i);
+				unlink(u);
 			}
 		}
 		return this;
 	}
 
 	public Scheduler clear() {
+		if (_wheel != null) {
+			for (int i = _scheduled.size - 1; i > -1; i--) {
+				unlink(_scheduled.get(i));
+			}
+		}
 		_scheduled.clear();
 		return this;
 	}
@@ -336,6 +404,8 @@ public class Scheduler implements LRelease {
 					if (_childIndex >= _scheduled.size) {
 						_childIndex = 0;
 					}
+				} else if (_wheel != null) {
+					updateWheel(context);
 				} else {
 					_removed.clear();
 					for (int i = 0; i < size; i++) {
@@ -358,8 +428,65 @@ public class Scheduler implements LRelease {
 		}
 	}
 
+	private void updateWheel(LTimerContext context) {
+		// 事务有增减或被重置时,按各自剩余的延迟重新放入时间轮
+		if (_wheelDirty) {
+			for (int i = 0; i < _scheduled.size; i++) {
+				Interval u = _scheduled.get(i);
+				if (u != null && !u.completed() && !u.isClosed()) {
+					link(u);
+				}
+			}
+			_wheelDirty = false;
+		}
+		_wheel.advance(context.timeSinceLastUpdate, _expired);
+		final int size = _expired.size;
+		if (size == 0) {
+			return;
+		}
+		final long now = _wheel.now();
+		_removed.clear();
+		for (int i = 0; i < size; i++) {
+			Interval interval = _expired.get(i);
+			// 已在本次执行中被移出调度器
+			if (interval._wheelNode == null || interval._wheelNode.isScheduled()) {
+				continue;
+			}
+			final long elapsed = now - interval._wheelTime;
+			interval._wheelTime = now;
+			interval.call(elapsed);
+			if (interval.completed() || interval.isClosed()) {
+				if (_removeSequenceTask && !interval.looping()) {
+					interval._wheelNode = null;
+					interval._wheelTime = -1;
+					_removed.add(interval);
+				}
+			} else if (interval._wheelNode != null) {
+				link(interval);
+			}
+		}
+		_expired.clear();
+		if (_removed.size > 0) {
+			// 一次遍历删除所有已完成的事务
+			final Object[] items = _scheduled.items;
+			int count = 0;
+			for (int i = 0, n = _scheduled.size; i < n; i++) {
+				final Object u = items[i];
+				if (u == null || ((Interval) u)._wheelTime != -1) {
+					items[count++] = u;
+				}
+			}
+			_scheduled.truncate(count);
+			for (int i = 0; i < _removed.size; i++) {
+				_removed.get(i)._wheelTime = 0;
+			}
+			_removed.clear();
+		}
+	}
+
 	public Scheduler reset() {
 		_childIndex = 0;
+		_wheelDirty = true;
 		_loop_timer.reset();
 		for (int i = _scheduled.size - 1; i > -1; i--) {
 			Interval u = _scheduled.get(i);
@@ -0,0 +1,339 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package loon.utils.timer;
+
+import loon.LRelease;
+import loon.LSysException;
+import loon.utils.MathUtils;
+import loon.utils.TArray;
+
+/**
+ * 分层时间轮,用于管理大量延迟触发的对象.
+ *
+ * 时间轮共四层,第一层256格,其余每层64格,每格为一个双向链表,加入与取消均为O(1),推进时间时只处理到期的格子,
+ * 未到期的对象不会被访问(远期对象在所在层轮转到时再逐层下放).以默认的1毫秒精度计算,可直接容纳约18小时内的延迟,
+ * 更远的延迟会在最高层反复下放,不影响正确性.
+ *
+ * <pre>
+ * TimingWheel&lt;String&gt; wheel = new TimingWheel&lt;String&gt;();
+ * TimingWheel.Node&lt;String&gt; node = wheel.schedule("buff", 3000);
+ * TArray&lt;String&gt; expired = new TArray&lt;String&gt;();
+ * // 每帧推进
+ * wheel.advance(elapsedTime, expired);
+ * // 取消
+ * node.cancel();
+ * </pre>
+ */
+public class TimingWheel<T> implements LRelease {
+
+	/**
+	 * 时间轮中的节点,可以反复加入同一个时间轮
+	 */
+	public static class Node<T> {
+
+		private final TimingWheel<T> _wheel;
+
+		private final T _value;
+
+		private Node<T> _prev, _next;
+
+		private long _deadline;
+
+		Node(TimingWheel<T> wheel, T value) {
+			this._wheel = wheel;
+			this._value = value;
+		}
+
+		public T get() {
+			return _value;
+		}
+
+		public long getDeadline() {
+			return _deadline;
+		}
+
+		public TimingWheel<T> getWheel() {
+			return _wheel;
+		}
+
+		public boolean isScheduled() {
+			return _prev != null;
+		}
+
+		public boolean cancel() {
+			return _wheel != null && _wheel.cancel(this);
+		}
+
+		public Node<T> reschedule(long delay) {
+			if (_wheel != null) {
+				_wheel.schedule(this, delay);
+			}
+			return this;
+		}
+	}
+
+	private final static int ROOT_BITS = 8;
+
+	private final static int LEVEL_BITS = 6;
+
+	private final static int LEVELS = 4;
+
+	private final static int ROOT_SIZE = 1 << ROOT_BITS;
+
+	private final static int LEVEL_SIZE = 1 << LEVEL_BITS;
+
+	private final static int ROOT_MASK = ROOT_SIZE - 1;
+
+	private final static int LEVEL_MASK = LEVEL_SIZE - 1;
+
+	private final static long MAX_SPAN = 1L << (ROOT_BITS + (LEVELS - 1) * LEVEL_BITS);
+
+	private final Node<T>[][] _slots;
+
+	private final long _tick;
+
+	// 已经过的毫秒数
+	private long _time;
+
+	// 下一个待处理的刻度
+	private long _current;
+
+	private int _size;
+
+	public TimingWheel() {
+		this(1L);
+	}
+
+	/**
+	 * 构建时间轮
+	 *
+	 * @param tick 每格代表的毫秒数(精度)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TimingWheel(long tick) {
+		this._tick = MathUtils.max(tick, 1L);
+		this._slots = new Node[LEVELS][];
+		for (int i = 0; i < LEVELS; i++) {
+			final int size = (i == 0) ? ROOT_SIZE : LEVEL_SIZE;
+			final Node<T>[] level = new Node[size];
+			for (int j = 0; j < size; j++) {
+				final Node<T> head = new Node<T>(null, null);
+				head._prev = head._next = head;
+				level[j] = head;
+			}
+			_slots[i] = level;
+		}
+	}
+
+	/**
+	 * 加入一个在指定毫秒后到期的对象
+	 *
+	 * @param value
+	 * @param delay
+	 * @return
+	 */
+	public Node<T> schedule(T value, long delay) {
+		final Node<T> node = new Node<T>(this, value);
+		schedule(node, delay);
+		return node;
+	}
+
+	/**
+	 * 重新安排节点的到期时间(若节点已在时间轮中则先取出)
+	 *
+	 * @param node
+	 * @param delay
+	 * @return
+	 */
+	public Node<T> schedule(Node<T> node, long delay) {
+		if (node == null) {
+			return null;
+		}
+		if (node._wheel != this) {
+			throw new LSysException("The node does not belong to this TimingWheel !");
+		}
+		if (node._prev != null) {
+			unlink(node);
+		}
+		node._deadline = _time + MathUtils.max(delay, 0L);
+		link(node);
+		return node;
+	}
+
+	public boolean cancel(Node<T> node) {
+		if (node == null || node._wheel != this || node._prev == null) {
+			return false;
+		}
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * 推进时间,把所有到期的对象按到期顺序放入expired中(放入的节点已离开时间轮)
+	 *
+	 * @param elapsed 经过的毫秒数
+	 * @param expired
+	 * @return 本次到期的数量
+	 */
+	public int advance(long elapsed, TArray<T> expired) {
+		if (elapsed > 0) {
+			_time += elapsed;
+		}
+		final long target = _time / _tick;
+		if (_size == 0) {
+			_current = target + 1;
+			return 0;
+		}
+		int count = 0;
+		for (; _current <= target;) {
+			final int index = (int) (_current & ROOT_MASK);
+			if (index == 0 && cascade(1, 0) == 0 && cascade(2, LEVEL_BITS) == 0) {
+				cascade(3, 2 * LEVEL_BITS);
+			}
+			final Node<T> head = _slots[0][index];
+			for (; head._next != head;) {
+				final Node<T> node = head._next;
+				unlink(node);
+				expired.add(node._value);
+				count++;
+			}
+			_current++;
+			if (_size == 0) {
+				_current = target + 1;
+				break;
+			}
+		}
+		return count;
+	}
+
+	private int cascade(int level, int shift) {
+		final int index = (int) ((_current >> (ROOT_BITS + shift)) & LEVEL_MASK);
+		final Node<T> head = _slots[level][index];
+		Node<T> node = head._next;
+		head._prev = head._next = head;
+		for (; node != head;) {
+			final Node<T> next = node._next;
+			node._prev = node._next = null;
+			_size--;
+			link(node);
+			node = next;
+		}
+		return index;
+	}
+
+	private void link(Node<T> node) {
+		long expires = (node._deadline + _tick - 1) / _tick;
+		final long idx = expires - _current;
+		final Node<T> head;
+		if (idx < 0) {
+			head = _slots[0][(int) (_current & ROOT_MASK)];
+		} else if (idx < ROOT_SIZE) {
+			head = _slots[0][(int) (expires & ROOT_MASK)];
+		} else if (idx < 1L << (ROOT_BITS + LEVEL_BITS)) {
+			head = _slots[1][(int) ((expires >> ROOT_BITS) & LEVEL_MASK)];
+		} else if (idx < 1L << (ROOT_BITS + 2 * LEVEL_BITS)) {
+			head = _slots[2][(int) ((expires >> (ROOT_BITS + LEVEL_BITS)) & LEVEL_MASK)];
+		} else {
+			if (idx >= MAX_SPAN) {
+				expires = _current + MAX_SPAN - 1;
+			}
+			head = _slots[3][(int) ((expires >> (ROOT_BITS + 2 * LEVEL_BITS)) & LEVEL_MASK)];
+		}
+		node._next = head;
+		node._prev = head._prev;
+		head._prev._next = node;
+		head._prev = node;
+		_size++;
+	}
+
+	private void unlink(Node<T> node) {
+		node._prev._next = node._next;
+		node._next._prev = node._prev;
+		node._prev = node._next = null;
+		_size--;
+	}
+
+	/**
+	 * 把时间轮中所有对象放入list中
+	 *
+	 * @param list
+	 * @return
+	 */
+	public TArray<T> values(TArray<T> list) {
+		if (_size == 0) {
+			return list;
+		}
+		for (int i = 0; i < LEVELS; i++) {
+			final Node<T>[] level = _slots[i];
+			for (int j = 0; j < level.length; j++) {
+				final Node<T> head = level[j];
+				for (Node<T> node = head._next; node != head; node = node._next) {
+					list.add(node._value);
+				}
+			}
+		}
+		return list;
+	}
+
+	public TimingWheel<T> clear() {
+		for (int i = 0; i < LEVELS; i++) {
+			final Node<T>[] level = _slots[i];
+			for (int j = 0; j < level.length; j++) {
+				final Node<T> head = level[j];
+				for (Node<T> node = head._next; node != head;) {
+					final Node<T> next = node._next;
+					node._prev = node._next = null;
+					node = next;
+				}
+				head._prev = head._next = head;
+			}
+		}
+		_size = 0;
+		return this;
+	}
+
+	/**
+	 * 时间轮已经过的毫秒数
+	 *
+	 * @return
+	 */
+	public long now() {
+		return _time;
+	}
+
+	public long getTick() {
+		return _tick;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import loon.Stage;
+import loon.action.map.AStarFinder;
+import loon.action.map.Field2D;
+import loon.geom.Vector2f;
+import loon.utils.IntArray;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+
+/**
+ * 随机障碍与迷宫地图上,原有A*(SortedList与Vector2f)与整数索引寻径(AStarFinderContext)的耗时对比,
+ * 检查两者路径长度是否一致,并统计预热后每次寻径分配的字节数.
+ *
+ * 分配统计需要HotSpot的com.sun.management.ThreadMXBean,不支持时显示为-1.可直接运行main在命令行中测试.
+ */
+public class AStarBenchTest extends Stage {
+
+	private final static int SIZE = 128;
+
+	// 每张地图的寻径次数
+	private final static int QUERIES = 200;
+
+	private final static int WALL = 1;
+
+	private static int _seed = 20190101;
+
+	private static int random(int n) {
+		_seed = _seed * 1103515245 + 12345;
+		return ((_seed >>> 8) & 0x7FFFFF) % n;
+	}
+
+	/**
+	 * 约四分之一格子为障碍
+	 */
+	private static int[][] randomMap() {
+		final int[][] map = new int[SIZE][SIZE];
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				map[y][x] = random(4) == 0 ? WALL : 0;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * 深度优先生成的迷宫,路径长而曲折
+	 */
+	private static int[][] mazeMap() {
+		final int[][] map = new int[SIZE][SIZE];
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				map[y][x] = WALL;
+			}
+		}
+		final IntArray stack = new IntArray();
+		map[1][1] = 0;
+		stack.add(1 * SIZE + 1);
+		final int[] dx = { 2, -2, 0, 0 };
+		final int[] dy = { 0, 0, 2, -2 };
+		final int[] dirs = new int[4];
+		while (stack.length > 0) {
+			final int cell = stack.get(stack.length - 1);
+			final int cx = cell % SIZE, cy = cell / SIZE;
+			int count = 0;
+			for (int d = 0; d < 4; d++) {
+				final int nx = cx + dx[d], ny = cy + dy[d];
+				if (nx > 0 && ny > 0 && nx < SIZE - 1 && ny < SIZE - 1 && map[ny][nx] == WALL) {
+					dirs[count++] = d;
+				}
+			}
+			if (count == 0) {
+				stack.pop();
+				continue;
+			}
+			final int d = dirs[random(count)];
+			map[cy + dy[d] / 2][cx + dx[d] / 2] = 0;
+			map[cy + dy[d]][cx + dx[d]] = 0;
+			stack.add((cy + dy[d]) * SIZE + cx + dx[d]);
+		}
+		return map;
+	}
+
+	private static int[] queries(Field2D field) {
+		final int[] list = new int[QUERIES * 4];
+		for (int i = 0; i < list.length; i += 2) {
+			int x, y;
+			do {
+				x = random(SIZE);
+				y = random(SIZE);
+			} while (!field.isHit(x, y));
+			list[i] = x;
+			list[i + 1] = y;
+		}
+		return list;
+	}
+
+	private static long allocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static int[] oldPath(Field2D field, int[] q, boolean indexed) {
+		final int[] lengths = new int[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			final AStarFinder finder = new AStarFinder(AStarFinder.ASTAR_MANHATTAN, field, q[i * 4], q[i * 4 + 1],
+					q[i * 4 + 2], q[i * 4 + 3], false, false, AStarFinder.ASTAR);
+			finder.setIndexed(indexed);
+			final TArray<Vector2f> path = finder.findPath();
+			lengths[i] = path == null ? -1 : path.size;
+			finder.close();
+		}
+		return lengths;
+	}
+
+	private static int indexedPath(Field2D field, int[] q, IntArray out, int[] lengths) {
+		int total = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			final int len = AStarFinder.find(AStarFinder.ASTAR_MANHATTAN, field, q[i * 4], q[i * 4 + 1], q[i * 4 + 2],
+					q[i * 4 + 3], false, false, out);
+			if (lengths != null) {
+				lengths[i] = len == -1 ? -1 : out.length;
+			}
+			total += len;
+		}
+		return total;
+	}
+
+	private static String bench(String name, int[][] maps) {
+		final Field2D field = new Field2D(maps);
+		field.setLimit(WALL);
+		final int[] q = queries(field);
+		final IntArray out = new IntArray(SIZE * SIZE);
+		// 预热
+		oldPath(field, q, false);
+		oldPath(field, q, true);
+		indexedPath(field, q, out, null);
+
+		long start = TimeUtils.nanoTime();
+		final int[] oldLengths = oldPath(field, q, false);
+		final long oldTime = TimeUtils.nanoTime() - start;
+
+		start = TimeUtils.nanoTime();
+		oldPath(field, q, true);
+		final long finderTime = TimeUtils.nanoTime() - start;
+
+		final int[] lengths = new int[QUERIES];
+		indexedPath(field, q, out, lengths);
+		start = TimeUtils.nanoTime();
+		final long before = allocatedBytes();
+		indexedPath(field, q, out, null);
+		final long after = allocatedBytes();
+		final long indexedTime = TimeUtils.nanoTime() - start;
+
+		int mismatches = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			if (oldLengths[i] != lengths[i]) {
+				mismatches++;
+			}
+		}
+		final long bytes = before < 0 || after < 0 ? -1 : (after - before) / QUERIES;
+		field.close();
+		return name + " " + SIZE + "x" + SIZE + ", " + QUERIES + " queries, old : " + toMillis(oldTime)
+				+ " ms, finder indexed : " + toMillis(finderTime) + " ms, core indexed : " + toMillis(indexedTime)
+				+ " ms, bytes/query : " + bytes + ", mismatches : " + mismatches;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+	private static String[] bench() {
+		return new String[] { bench("random", randomMap()), bench("maze", mazeMap()) };
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	public static void main(String[] args) {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			System.out.println(lines[i]);
+		}
+	}
+
+}
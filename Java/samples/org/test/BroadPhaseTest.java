@@ -0,0 +1,175 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.Stage;
+import loon.action.collision.BroadPhase;
+import loon.action.collision.BroadPhaseGrid;
+import loon.action.collision.BroadPhaseSweep;
+import loon.action.collision.BroadPhaseTree;
+import loon.action.map.TileMap;
+import loon.action.sprite.ActionObject;
+import loon.action.sprite.TextureObject;
+import loon.utils.LongArray;
+import loon.utils.MathUtils;
+import loon.utils.TimeUtils;
+
+/**
+ * 大量精灵移动时,逐对比较与三种碰撞粗检测每帧耗时的对比
+ */
+public class BroadPhaseTest extends Stage {
+
+	// 精灵数量
+	private final static int[] COUNTS = { 1000, 5000, 20000 };
+
+	// 逐对比较超过该数量时耗时过长,不再测试
+	private final static int BRUTE_LIMIT = 5000;
+
+	// 测试帧数
+	private final static int FRAMES = 30;
+
+	// 精灵大小
+	private final static float SIZE = 16f;
+
+	// 碰撞次数,避免比较被优化掉
+	private static int _hits;
+
+	@Override
+	public void create() {
+		int y = 20;
+		for (int c = 0; c < COUNTS.length; c++) {
+			final int count = COUNTS[c];
+			// 保持密度不变,场景随数量扩大
+			final float world = MathUtils.sqrt(count) * SIZE * 4f;
+			final float[] xs = new float[count];
+			final float[] ys = new float[count];
+			final Object[] objs = new Object[count];
+			for (int i = 0; i < count; i++) {
+				xs[i] = MathUtils.random(0f, world);
+				ys[i] = MathUtils.random(0f, world);
+				objs[i] = new Object();
+			}
+			String brute = "-";
+			if (count <= BRUTE_LIMIT) {
+				brute = toMillis(bruteForce(xs, ys)) + " ms";
+			}
+			long grid = run(new BroadPhaseGrid<Object>(SIZE * 2f), objs, xs, ys);
+			long sweep = run(new BroadPhaseSweep<Object>(), objs, xs, ys);
+			long tree = run(new BroadPhaseTree<Object>(), objs, xs, ys);
+			addLabel("sprites " + count + " all-pairs : " + brute, 20, y);
+			addLabel("grid : " + toMillis(grid) + " ms, sweep : " + toMillis(sweep) + " ms, tree : " + toMillis(tree)
+					+ " ms", 20, y + 25);
+			y += 70;
+		}
+		addLabel("ActionObject move check, grid : " + moveCheck(new BroadPhaseGrid<ActionObject>(SIZE * 2f))
+				+ ", sweep : " + moveCheck(new BroadPhaseSweep<ActionObject>()) + ", tree : "
+				+ moveCheck(new BroadPhaseTree<ActionObject>()), 20, y);
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	/**
+	 * 原有的逐对比较,返回每帧平均耗时
+	 */
+	private static long bruteForce(float[] xs, float[] ys) {
+		final int count = xs.length;
+		long start = TimeUtils.nanoTime();
+		for (int f = 0; f < FRAMES; f++) {
+			move(xs, ys);
+			for (int i = 0; i < count; i++) {
+				for (int j = i + 1; j < count; j++) {
+					if (xs[i] < xs[j] + SIZE && xs[i] + SIZE > xs[j] && ys[i] < ys[j] + SIZE && ys[i] + SIZE > ys[j]) {
+						_hits++;
+					}
+				}
+			}
+		}
+		return (TimeUtils.nanoTime() - start) / FRAMES;
+	}
+
+	/**
+	 * 粗检测后再精确比较候选组合,返回每帧平均耗时
+	 */
+	private static long run(BroadPhase<Object> broadPhase, Object[] objs, float[] xs, float[] ys) {
+		final int count = objs.length;
+		final LongArray pairs = new LongArray();
+		long start = TimeUtils.nanoTime();
+		for (int f = 0; f < FRAMES; f++) {
+			move(xs, ys);
+			broadPhase.begin();
+			for (int i = 0; i < count; i++) {
+				broadPhase.update(objs[i], xs[i], ys[i], SIZE, SIZE);
+			}
+			broadPhase.end();
+			broadPhase.findPairs(pairs);
+			pairs.sort();
+			for (int k = 0; k < pairs.length; k++) {
+				final int i = BroadPhase.getFirst(pairs.get(k));
+				final int j = BroadPhase.getSecond(pairs.get(k));
+				if (xs[i] < xs[j] + SIZE && xs[i] + SIZE > xs[j] && ys[i] < ys[j] + SIZE && ys[i] + SIZE > ys[j]) {
+					_hits++;
+				}
+			}
+		}
+		long time = (TimeUtils.nanoTime() - start) / FRAMES;
+		broadPhase.close();
+		return time;
+	}
+
+	/**
+	 * 绑定地图的ActionObject,hashCode包含所在瓦片坐标,逐帧移动后检查代理不重复,相交组合不重复
+	 */
+	private static String moveCheck(BroadPhase<ActionObject> broadPhase) {
+		final TileMap map = new TileMap(new int[32][32], 32, 32);
+		final ActionObject a = new TextureObject(0, 0, 32, 32, "ball.png", map);
+		final ActionObject b = new TextureObject(16, 16, 32, 32, "ball.png", map);
+		final LongArray pairs = new LongArray();
+		String result = "ok";
+		for (int f = 0; f < FRAMES; f++) {
+			broadPhase.begin();
+			broadPhase.update(a, a.x(), a.y(), a.getWidth(), a.getHeight());
+			broadPhase.update(b, b.x(), b.y(), b.getWidth(), b.getHeight());
+			broadPhase.end();
+			broadPhase.findPairs(pairs);
+			if (broadPhase.size() != 2 || pairs.length != 1 || broadPhase.getProxy(a) == null
+					|| !broadPhase.contains(b)) {
+				result = "failed at frame " + f;
+				break;
+			}
+			// 每帧移动超过一个瓦片,hashCode随之改变
+			a.setLocation(a.x() + 40f, a.y() + 40f);
+			b.setLocation(b.x() + 40f, b.y() + 40f);
+		}
+		broadPhase.close();
+		return result;
+	}
+
+	private static void move(float[] xs, float[] ys) {
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] += MathUtils.random(-2f, 2f);
+			ys[i] += MathUtils.random(-2f, 2f);
+		}
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.Stage;
+import loon.action.map.AStarFinder;
+import loon.action.map.Field2D;
+import loon.action.map.FlowField;
+import loon.action.map.HexagonMap;
+import loon.utils.IntArray;
+import loon.utils.MathUtils;
+import loon.utils.TimeUtils;
+
+/**
+ * 大量单位前往同一目标时,逐个A*寻径与构建一次流场的耗时对比
+ */
+public class FlowFieldTest extends Stage {
+
+	// 地图大小
+	private final static int SIZE = 256;
+
+	// 单位数量
+	private final static int UNITS = 500;
+
+	@Override
+	public void create() {
+		// 随机生成一张有25%障碍的地图
+		int[][] maps = new int[SIZE][SIZE];
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				maps[y][x] = MathUtils.random(99) < 25 ? 1 : 0;
+			}
+		}
+		final int goalX = SIZE / 2;
+		final int goalY = SIZE / 2;
+		maps[goalY][goalX] = 0;
+		Field2D field = new Field2D(maps);
+		// 1为不可移动
+		field.setLimit(1);
+
+		// 随机放置单位
+		int[][] units = new int[UNITS][2];
+		for (int i = 0; i < UNITS; i++) {
+			int x, y;
+			do {
+				x = MathUtils.random(SIZE - 1);
+				y = MathUtils.random(SIZE - 1);
+			} while (maps[y][x] == 1);
+			units[i][0] = x;
+			units[i][1] = y;
+		}
+
+		// 每个单位单独寻径
+		IntArray path = new IntArray();
+		long start = TimeUtils.nanoTime();
+		int found = 0;
+		for (int i = 0; i < UNITS; i++) {
+			if (AStarFinder.find(AStarFinder.ASTAR_OCTILE, field, units[i][0], units[i][1], goalX, goalY, false, true,
+					path) > 0) {
+				found++;
+			}
+		}
+		long astarTime = TimeUtils.nanoTime() - start;
+
+		// 构建一次流场,之后每个单位只查询下一步
+		start = TimeUtils.nanoTime();
+		FlowField flow = field.getFlowFields(true).get(goalX, goalY).update();
+		long buildTime = TimeUtils.nanoTime() - start;
+		start = TimeUtils.nanoTime();
+		int reachable = 0;
+		for (int i = 0; i < UNITS; i++) {
+			if (flow.getMoveDirection(units[i][0], units[i][1]) != 0) {
+				reachable++;
+			}
+		}
+		long lookupTime = TimeUtils.nanoTime() - start;
+
+		// 修改一个格子后增量修复
+		field.setTileType(goalX + 3, goalY + 3, 1);
+		start = TimeUtils.nanoTime();
+		flow.update();
+		long repairTime = TimeUtils.nanoTime() - start;
+
+		addLabel("map " + SIZE + "x" + SIZE + ", units " + UNITS, 20, 20);
+		addLabel("A* x " + UNITS + " : " + toMillis(astarTime) + " ms, found " + found, 20, 50);
+		addLabel("flow field build : " + toMillis(buildTime) + " ms", 20, 80);
+		addLabel("flow field lookups : " + toMillis(lookupTime) + " ms, reachable " + reachable, 20, 110);
+		addLabel("repair one tile : " + toMillis(repairTime) + " ms, cells " + flow.getLastUpdatedCount(), 20, 140);
+		addLabel("hex setTileID blocker avoided : " + checkHexBlocker(), 20, 170);
+
+		// 关闭Stage时释放地图
+		putRelease(field);
+
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	/**
+	 * 六边形地图上用setTileID把流场路径中间的格子改为障碍,重建后的路径应绕开该格且仍能到达目标
+	 */
+	static boolean checkHexBlocker() {
+		final int size = 12;
+		HexagonMap map = new HexagonMap();
+		map.createMap(32, 32, 16, size, size);
+		map.fillTiles(1);
+		// 2为不可移动
+		map.setLimit(new int[] { 2 });
+		// 轴坐标,存储坐标为(x + (y >> 1), y)
+		final int goalX = 2;
+		final int goalY = 10;
+		FlowField flow = map.getFlowFields().get(goalX, goalY);
+		IntArray path = new IntArray();
+		final int startX = 1;
+		final int startY = 1;
+		if (flow.toPath(startX, startY, path) < 3) {
+			return false;
+		}
+		// 路径中的格子索引为y * 列数 + 存储x
+		final int blocked = path.get(path.length / 2);
+		map.setTileID(blocked % map.getCol(), blocked / map.getCol(), 2);
+		if (flow.toPath(startX, startY, path) == 0) {
+			return false;
+		}
+		return !path.contains(blocked) && path.get(path.length - 1) == (goalY * map.getCol() + goalX + (goalY >> 1));
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+}
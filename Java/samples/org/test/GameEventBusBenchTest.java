@@ -0,0 +1,173 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.Stage;
+import loon.events.GameEvent;
+import loon.events.GameEventBus;
+import loon.events.GameEventListener;
+import loon.events.GameEventType;
+import loon.utils.TimeUtils;
+
+/**
+ * GameEventBus即时模式与队列模式在多线程提交大量战斗事件时的耗时对比.
+ *
+ * 不依赖图形环境,可直接运行main在命令行中测试.
+ */
+public class GameEventBusBenchTest extends Stage {
+
+	// 提交事件的线程数
+	private final static int THREADS = 4;
+
+	// 每个线程提交的事件数
+	private final static int EVENTS = 100000;
+
+	private static class Counter implements GameEventListener<Object> {
+
+		long count;
+
+		long sum;
+
+		long work;
+
+		@Override
+		public void onEvent(GameEvent<Object> event) {
+			count++;
+			sum += ((Integer) event.data).intValue();
+			// 模拟事件处理的开销
+			for (int i = 0; i < 200; i++) {
+				work = work * 31 + i;
+			}
+		}
+	}
+
+	private static class Producer implements Runnable {
+
+		private final GameEventBus<Object> bus;
+
+		private final boolean pooled;
+
+		private final int id;
+
+		Producer(GameEventBus<Object> bus, boolean pooled, int id) {
+			this.bus = bus;
+			this.pooled = pooled;
+			this.id = id;
+		}
+
+		@Override
+		public void run() {
+			final Integer damage = Integer.valueOf(id + 1);
+			for (int i = 0; i < EVENTS; i++) {
+				if (pooled) {
+					bus.post(GameEventType.ATTACK_HIT, this, null, damage);
+				} else {
+					bus.publish(new GameEvent<Object>(GameEventType.ATTACK_HIT, this, null, damage));
+				}
+			}
+		}
+	}
+
+	private static String run(boolean queued) throws InterruptedException {
+		final GameEventBus<Object> bus = new GameEventBus<Object>();
+		final Counter counter = new Counter();
+		bus.subscribe(GameEventType.ATTACK_HIT, counter);
+		bus.setQueued(queued);
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread(new Producer(bus, queued, i));
+		}
+		long start = TimeUtils.nanoTime();
+		for (int i = 0; i < THREADS; i++) {
+			threads[i].start();
+		}
+		boolean alive = true;
+		for (; alive;) {
+			// 模拟游戏线程每帧分发一次
+			bus.drain();
+			alive = false;
+			for (int i = 0; i < THREADS; i++) {
+				alive |= threads[i].isAlive();
+			}
+		}
+		long produced = TimeUtils.nanoTime() - start;
+		bus.drain();
+		long time = TimeUtils.nanoTime() - start;
+		String result = (queued ? "queued" : "immediate") + " : producers " + (produced / 1000 / 1000f)
+				+ " ms, total " + (time / 1000 / 1000f) + " ms, events " + counter.count + ", sum " + counter.sum;
+		if (queued) {
+			result += ", peak depth " + bus.getPeakQueueDepth() + ", avg latency "
+					+ (bus.getAverageLatency() / 1000 / 1000f) + " ms";
+		}
+		return result;
+	}
+
+	private static String coalesce() {
+		final GameEventBus<Object> bus = new GameEventBus<Object>();
+		final Counter counter = new Counter();
+		bus.subscribe(GameEventType.STATE_CHANGED, counter);
+		bus.setQueued(true);
+		bus.setCoalesce(GameEventType.STATE_CHANGED, true);
+		bus.setQueueCapacity(5000);
+		final Object[] units = new Object[100];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = new Object();
+		}
+		for (int i = 0; i < 10000; i++) {
+			bus.post(GameEventType.STATE_CHANGED, units[i % units.length], null, Integer.valueOf(1));
+		}
+		bus.drain();
+		return "coalesce : posted 10000, dispatched " + counter.count + ", coalesced " + bus.getCoalescedCount()
+				+ ", dropped " + bus.getDroppedCount();
+	}
+
+	private static String[] bench() {
+		final String[] lines = new String[3];
+		try {
+			// 预热一次,避免首个模式包含JIT编译时间
+			run(false);
+			run(true);
+			lines[0] = run(false);
+			lines[1] = run(true);
+		} catch (InterruptedException e) {
+			lines[0] = lines[1] = "interrupted";
+		}
+		lines[2] = coalesce();
+		return lines;
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 1));
+	}
+
+	public static void main(String[] args) {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			System.out.println(lines[i]);
+		}
+	}
+
+}
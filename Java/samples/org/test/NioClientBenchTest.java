@@ -0,0 +1,197 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import loon.NetworkMessageHandler;
+import loon.Stage;
+import loon.javase.JavaSENioClient;
+import loon.utils.TimeUtils;
+
+/**
+ * JavaSENioClient连接本机回显服务器时的吞吐量(消息/秒)与往返延迟测试.
+ *
+ * 回显服务器原样返回收到的字节,所以帧格式不变.需要JavaSE后端,可直接运行main在命令行中测试.
+ */
+public class NioClientBenchTest extends Stage {
+
+	// 吞吐测试的消息数
+	private final static int MESSAGES = 200000;
+
+	// 每条消息的大小(前8字节为发送时间)
+	private final static int PAYLOAD = 64;
+
+	// 延迟测试的往返次数
+	private final static int PINGS = 2000;
+
+	private static class EchoServer implements Runnable {
+
+		final ServerSocketChannel server;
+
+		EchoServer() throws IOException {
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress("127.0.0.1", 0));
+		}
+
+		int port() {
+			return server.socket().getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			try (SocketChannel ch = server.accept()) {
+				ch.socket().setTcpNoDelay(true);
+				ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+				while (ch.read(buf) >= 0) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						ch.write(buf);
+					}
+					buf.clear();
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static class Receiver implements NetworkMessageHandler {
+
+		long count;
+
+		long latencySum;
+
+		@Override
+		public void handleMessage(byte[] data) {
+			count++;
+			long sent = 0;
+			for (int i = 0; i < 8; i++) {
+				sent = (sent << 8) | (data[i] & 0xFF);
+			}
+			latencySum += System.nanoTime() - sent;
+		}
+
+		@Override
+		public void handleError(Exception e) {
+		}
+
+		@Override
+		public void handleTimeout() {
+		}
+	}
+
+	private static byte[] message() {
+		final byte[] data = new byte[PAYLOAD];
+		long now = System.nanoTime();
+		for (int i = 7; i >= 0; i--) {
+			data[i] = (byte) now;
+			now >>>= 8;
+		}
+		return data;
+	}
+
+	private static JavaSENioClient open(Receiver receiver) throws Exception {
+		final EchoServer server = new EchoServer();
+		final Thread thread = new Thread(server);
+		thread.setDaemon(true);
+		thread.start();
+		final JavaSENioClient client = new JavaSENioClient();
+		// 由测试线程自行派发,模拟游戏线程每帧取一次
+		client.setAutoDispatch(false);
+		client.onMessage(receiver);
+		client.connect("127.0.0.1", server.port());
+		for (int i = 0; i < 1000 && !client.isConnected(); i++) {
+			Thread.sleep(1);
+		}
+		return client;
+	}
+
+	private static String throughput() throws Exception {
+		final Receiver receiver = new Receiver();
+		final JavaSENioClient client = open(receiver);
+		final long start = TimeUtils.nanoTime();
+		for (int i = 0; i < MESSAGES; i++) {
+			client.send(message());
+			// 每1000条模拟一帧,派发一次收到的消息
+			if (i % 1000 == 0) {
+				client.dispatch();
+			}
+		}
+		while (receiver.count < MESSAGES && TimeUtils.nanoTime() - start < 30000000000L) {
+			client.dispatch();
+			Thread.yield();
+		}
+		final long time = TimeUtils.nanoTime() - start;
+		client.close();
+		return "throughput : " + receiver.count + " messages in " + (time / 1000 / 1000f) + " ms, "
+				+ (long) (receiver.count * 1000000000d / time) + " msg/s, writes " + client.getWriteCalls()
+				+ " for " + client.getFramesSent() + " frames";
+	}
+
+	private static String latency() throws Exception {
+		final Receiver receiver = new Receiver();
+		final JavaSENioClient client = open(receiver);
+		for (int i = 0; i < PINGS; i++) {
+			client.send(message());
+			final long wait = TimeUtils.nanoTime();
+			while (receiver.count <= i && TimeUtils.nanoTime() - wait < 1000000000L) {
+				client.dispatch();
+			}
+		}
+		client.close();
+		return "latency : " + receiver.count + " round trips, avg "
+				+ (receiver.count == 0 ? 0 : receiver.latencySum / receiver.count / 1000f) + " us";
+	}
+
+	private static String[] bench() {
+		final String[] lines = new String[2];
+		try {
+			// 预热一次,避免包含JIT编译时间
+			throughput();
+			lines[0] = throughput();
+			lines[1] = latency();
+		} catch (Exception e) {
+			lines[0] = lines[1] = "error : " + e.getMessage();
+		}
+		return lines;
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 1));
+	}
+
+	public static void main(String[] args) {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			System.out.println(lines[i]);
+		}
+	}
+
+}
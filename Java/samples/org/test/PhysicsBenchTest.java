@@ -0,0 +1,228 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import loon.Asyn;
+import loon.LSystem;
+import loon.Stage;
+import loon.physics.PBody;
+import loon.physics.PBoxShape;
+import loon.physics.PPhysWorld;
+import loon.physics.PShape;
+import loon.utils.TimeUtils;
+
+/**
+ * 物理世界堆叠与金字塔场景的单线程,按岛屿并行与严格确定模式每步耗时对比,并检查三者结果是否逐位一致.
+ *
+ * 不依赖图形环境,可直接运行main在命令行中测试.
+ */
+public class PhysicsBenchTest extends Stage {
+
+	// 测试步数
+	private final static int STEPS = 300;
+
+	private final static float DT = 1f / 60f;
+
+	private final static int WORKERS = 4;
+
+	private final static int SERIAL = 0;
+
+	private final static int PARALLEL = 1;
+
+	private final static int DETERMINISTIC = 2;
+
+	/**
+	 * 命令行运行时使用的线程池
+	 */
+	private static class PoolAsyn extends Asyn {
+
+		private final ExecutorService _pool;
+
+		PoolAsyn(ExecutorService pool) {
+			this._pool = pool;
+		}
+
+		@Override
+		public void invokeLater(Runnable action) {
+			action.run();
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return true;
+		}
+
+		@Override
+		public void invokeAsync(Runnable action) {
+			_pool.execute(action);
+		}
+
+		@Override
+		public void invokeAsyncAndWait(final Runnable action, int workers) {
+			final CountDownLatch latch = new CountDownLatch(workers);
+			for (int i = 0; i < workers; i++) {
+				_pool.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							action.run();
+						} finally {
+							latch.countDown();
+						}
+					}
+				});
+			}
+			try {
+				action.run();
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static class Result {
+
+		long stepTime;
+
+		long checksum;
+	}
+
+	private static PBody box(boolean fix, float x, float y, float w, float h) {
+		return new PBody(0f, fix, new PShape[] { new PBoxShape(x, y, w, h, 0f, 1f) });
+	}
+
+	/**
+	 * 多列互不接触的方块堆叠,每列为一个岛屿
+	 */
+	private static PPhysWorld createStacks(int columns, int rows) {
+		PPhysWorld world = new PPhysWorld();
+		world.addBody(box(true, columns * 1.5f, 40.5f, columns * 3f + 4f, 1f));
+		for (int c = 0; c < columns; c++) {
+			for (int r = 0; r < rows; r++) {
+				world.addBody(box(false, 1f + c * 3f, 39.5f - r * 1.01f, 1f, 1f));
+			}
+		}
+		return world;
+	}
+
+	/**
+	 * 多座金字塔,每座为一个大岛屿
+	 */
+	private static PPhysWorld createPyramids(int count, int base) {
+		PPhysWorld world = new PPhysWorld();
+		final float width = base * 1.2f + 4f;
+		world.addBody(box(true, count * width * 0.5f, 40.5f, count * width + 4f, 1f));
+		for (int p = 0; p < count; p++) {
+			final float left = 2f + p * width;
+			for (int row = 0; row < base; row++) {
+				for (int i = 0; i < base - row; i++) {
+					world.addBody(box(false, left + row * 0.6f + i * 1.2f, 39.5f - row * 1.01f, 1f, 1f));
+				}
+			}
+		}
+		return world;
+	}
+
+	private static Result run(PPhysWorld world, int mode, Asyn asyn) {
+		// 只比较求解耗时,关闭休眠
+		world.setSleepEnabled(false);
+		if (mode == PARALLEL) {
+			if (asyn != null) {
+				world.setParallel(asyn, WORKERS);
+			} else {
+				world.setParallel(true);
+			}
+		} else if (mode == DETERMINISTIC) {
+			world.setDeterministic(true);
+			world.setFixedTimeStep(DT);
+		}
+		long total = 0;
+		for (int i = 0; i < STEPS; i++) {
+			long start = TimeUtils.nanoTime();
+			world.step(DT);
+			total += TimeUtils.nanoTime() - start;
+		}
+		Result result = new Result();
+		result.stepTime = total / STEPS;
+		long hash = 17;
+		PBody[] bodies = world.getBodies();
+		for (int i = 0; i < bodies.length; i++) {
+			hash = hash * 31 + Float.floatToIntBits(bodies[i].getPosition().x);
+			hash = hash * 31 + Float.floatToIntBits(bodies[i].getPosition().y);
+			hash = hash * 31 + Float.floatToIntBits(bodies[i].getAngularVelocity());
+		}
+		result.checksum = hash;
+		return result;
+	}
+
+	private static String[] bench(Asyn asyn) {
+		final String[] names = { "stacks 64x10", "pyramids 8x16" };
+		final String[] lines = new String[names.length];
+		for (int s = 0; s < names.length; s++) {
+			Result[] results = new Result[4];
+			// 预热一次,避免首个模式包含JIT编译时间
+			run(s == 0 ? createStacks(64, 10) : createPyramids(8, 16), SERIAL, asyn);
+			for (int mode = SERIAL; mode <= DETERMINISTIC; mode++) {
+				results[mode] = run(s == 0 ? createStacks(64, 10) : createPyramids(8, 16), mode, asyn);
+			}
+			// 严格确定模式再运行一次,检查回放结果是否相同
+			results[3] = run(s == 0 ? createStacks(64, 10) : createPyramids(8, 16), DETERMINISTIC, asyn);
+			lines[s] = names[s] + " serial : " + toMillis(results[SERIAL].stepTime) + " ms, parallel : "
+					+ toMillis(results[PARALLEL].stepTime) + " ms, deterministic : "
+					+ toMillis(results[DETERMINISTIC].stepTime) + " ms, parallel==serial : "
+					+ (results[PARALLEL].checksum == results[SERIAL].checksum) + ", replay : "
+					+ (results[DETERMINISTIC].checksum == results[3].checksum);
+		}
+		return lines;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench(LSystem.base() != null ? LSystem.base().asyn() : null);
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	public static void main(String[] args) {
+		ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+		try {
+			String[] lines = bench(new PoolAsyn(pool));
+			for (int i = 0; i < lines.length; i++) {
+				System.out.println(lines[i]);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
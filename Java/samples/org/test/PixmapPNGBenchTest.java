@@ -0,0 +1,174 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Inflater;
+
+import loon.Stage;
+import loon.canvas.Pixmap;
+import loon.javase.JavaSEDeflate;
+import loon.utils.ArrayByte;
+import loon.utils.Deflate;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+
+/**
+ * Pixmap.toPNG在不压缩(stored)与各压缩级别,不使用滤波与逐行自适应滤波下的大小与耗时,以及单线程与分段并行压缩的对比,
+ * 并用JDK的Inflater解压检查结果是否与原始扫描线一致.
+ *
+ * 并行部分需要JavaSE后端,可直接运行main在命令行中测试.
+ */
+public class PixmapPNGBenchTest extends Stage {
+
+	private final static int WIDTH = 1024;
+
+	private final static int HEIGHT = 1024;
+
+	// 每项测试的重复次数,取平均值
+	private final static int RUNS = 3;
+
+	private final static int WORKERS = 4;
+
+	private final static int[] PARALLEL_LEVELS = { Deflate.BEST_SPEED, Deflate.DEFAULT_COMPRESSION,
+			Deflate.BEST_COMPRESSION };
+
+	/**
+	 * 生成带渐变,色块与少量噪点的图片,接近游戏中截图与贴图的内容
+	 */
+	private static Pixmap createImage() {
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		int seed = 12345;
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				int r = (x * 255) / WIDTH;
+				int g = (y * 255) / HEIGHT;
+				int b = ((x / 64 + y / 64) & 1) == 0 ? 200 : 40;
+				int a = 255;
+				if ((x - 512) * (x - 512) + (y - 512) * (y - 512) < 160 * 160) {
+					a = 128;
+				}
+				seed = seed * 1103515245 + 12345;
+				if (((seed >>> 16) & 15) == 0) {
+					r = (r + (seed >>> 24)) & 0xFF;
+				}
+				pixels[y * WIDTH + x] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+		return new Pixmap(pixels, WIDTH, HEIGHT, true);
+	}
+
+	private static boolean check(byte[] zlib, byte[] raw) {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(zlib);
+			final byte[] out = new byte[raw.length];
+			int size = 0;
+			while (!inflater.finished() && size < out.length) {
+				final int n = inflater.inflate(out, size, out.length - size);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				size += n;
+			}
+			return inflater.finished() && size == raw.length && Arrays.equals(out, raw);
+		} catch (Exception ex) {
+			return false;
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static String serial(Pixmap pixmap, int level, boolean filter) {
+		long time = 0;
+		byte[] raw = null;
+		byte[] zlib = null;
+		for (int i = 0; i < RUNS; i++) {
+			final long start = TimeUtils.nanoTime();
+			raw = Pixmap.createScanlines(pixmap, filter);
+			zlib = ArrayByte.toZLIB(raw, level);
+			time += TimeUtils.nanoTime() - start;
+		}
+		return (zlib.length / 1024) + " KB " + toMillis(time / RUNS) + " ms" + (check(zlib, raw) ? "" : " (bad)");
+	}
+
+	private static String parallel(Pixmap pixmap, int level, ExecutorService pool) {
+		final byte[] raw = Pixmap.createScanlines(pixmap, true);
+		long serialTime = 0, parallelTime = 0;
+		byte[] serial = null, parallel = null;
+		for (int i = 0; i < RUNS; i++) {
+			long start = TimeUtils.nanoTime();
+			serial = ArrayByte.toZLIB(raw, level);
+			serialTime += TimeUtils.nanoTime() - start;
+			start = TimeUtils.nanoTime();
+			parallel = JavaSEDeflate.toZLIB(raw, level, JavaSEDeflate.DEFAULT_CHUNK_SIZE, pool);
+			parallelTime += TimeUtils.nanoTime() - start;
+		}
+		return "level " + level + " serial : " + (serial.length / 1024) + " KB " + toMillis(serialTime / RUNS)
+				+ " ms, parallel x" + WORKERS + " : " + (parallel.length / 1024) + " KB "
+				+ toMillis(parallelTime / RUNS) + " ms, check : " + (check(serial, raw) && check(parallel, raw));
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+	private static TArray<String> bench() {
+		final Pixmap pixmap = createImage();
+		// 预热一次,避免首个级别包含JIT编译时间
+		serial(pixmap, Deflate.DEFAULT_COMPRESSION, true);
+		final TArray<String> lines = new TArray<String>();
+		lines.add("image " + WIDTH + "x" + HEIGHT + ", raw " + (WIDTH * HEIGHT * 4 / 1024) + " KB");
+		for (int level = Deflate.NO_COMPRESSION; level <= Deflate.BEST_COMPRESSION; level++) {
+			final String name = level == Deflate.NO_COMPRESSION ? "stored" : "level " + level;
+			lines.add(name + " no filter : " + serial(pixmap, level, false) + ", adaptive filter : "
+					+ serial(pixmap, level, true));
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+		try {
+			for (int i = 0; i < PARALLEL_LEVELS.length; i++) {
+				lines.add(parallel(pixmap, PARALLEL_LEVELS[i], pool));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return lines;
+	}
+
+	@Override
+	public void create() {
+		final TArray<String> lines = bench();
+		for (int i = 0; i < lines.size; i++) {
+			addLabel(lines.get(i), 20, 20 + i * 25);
+		}
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	public static void main(String[] args) {
+		final TArray<String> lines = bench();
+		for (int i = 0; i < lines.size; i++) {
+			System.out.println(lines.get(i));
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.LTexture;
+import loon.Stage;
+import loon.action.sprite.Entity;
+import loon.action.sprite.IEntity;
+import loon.action.sprite.RetainedTransform;
+import loon.opengl.GLEx;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+
+/**
+ * 多层嵌套(带旋转缩放)的Entity在逐帧计算矩阵与保留变换(retained transform)模式下的绘制耗时对比,
+ * 分为全部静止,只有根节点旋转,以及少量叶子移动三种情况,并统计保留变换实际重算矩阵的次数.
+ */
+public class RetainedTransformBenchTest extends Stage {
+
+	// 每层子节点数量
+	private final static int BRANCH = 3;
+
+	// 层数
+	private final static int DEPTH = 6;
+
+	// 每种情况测试的帧数
+	private final static int FRAMES = 120;
+
+	// 预热帧数
+	private final static int WARMUP = 30;
+
+	private final static int STATIC = 0;
+
+	private final static int ROOT_MOVING = 1;
+
+	private final static int LEAF_MOVING = 2;
+
+	private final static String[] NAMES = { "static", "root moving", "leaf moving" };
+
+	private Entity _classic, _retained;
+
+	private final TArray<Entity> _classicNodes = new TArray<Entity>();
+
+	private final TArray<Entity> _retainedNodes = new TArray<Entity>();
+
+	private final long[] _classicTimes = new long[NAMES.length];
+
+	private final long[] _retainedTimes = new long[NAMES.length];
+
+	private final int[] _worldBuilds = new int[NAMES.length];
+
+	private int _frame;
+
+	private boolean _finished;
+
+	private Entity build(TArray<Entity> nodes, LTexture tex, boolean retained, int depth, float x, float y) {
+		final float size = 8f + depth * 4f;
+		final Entity e = new Entity(tex, x, y, size, size);
+		e.setRotation(depth * 7f);
+		e.setScale(0.95f, 0.95f);
+		e.setRetainedTransform(retained);
+		nodes.add(e);
+		if (depth > 1) {
+			for (int i = 0; i < BRANCH; i++) {
+				final IEntity child = build(nodes, tex, retained, depth - 1, (i - 1) * size * 1.5f, size * 1.2f);
+				e.addChild(child);
+			}
+		}
+		return e;
+	}
+
+	private static int worldBuilds(TArray<Entity> nodes) {
+		int count = 0;
+		for (int i = 0; i < nodes.size; i++) {
+			final RetainedTransform retained = nodes.get(i).getRetainedTransform();
+			if (retained != null) {
+				count += retained.getWorldBuildCount();
+			}
+		}
+		return count;
+	}
+
+	private static void change(TArray<Entity> nodes, int mode, int frame) {
+		if (mode == ROOT_MOVING) {
+			nodes.get(0).setRotation(frame);
+		} else if (mode == LEAF_MOVING) {
+			// 每帧只移动最后几个叶子
+			for (int i = nodes.size - BRANCH; i < nodes.size; i++) {
+				final Entity leaf = nodes.get(i);
+				leaf.setLocation(leaf.getX() + ((frame & 1) == 0 ? 1f : -1f), leaf.getY());
+			}
+		}
+	}
+
+	@Override
+	public void create() {
+		final LTexture tex = loadTexture("ball.png");
+		_classic = build(_classicNodes, tex, false, DEPTH, 240f, 60f);
+		_retained = build(_retainedNodes, tex, true, DEPTH, 240f, 60f);
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+	@Override
+	public void paint(GLEx g) {
+		if (_finished) {
+			return;
+		}
+		final int total = WARMUP + FRAMES;
+		final int mode = _frame / total;
+		final int step = _frame % total;
+		final boolean measure = step >= WARMUP;
+		if (step == WARMUP) {
+			_worldBuilds[mode] = -worldBuilds(_retainedNodes);
+		}
+		change(_classicNodes, mode, _frame);
+		change(_retainedNodes, mode, _frame);
+		long start = TimeUtils.nanoTime();
+		_classic.createUI(g);
+		long time = TimeUtils.nanoTime() - start;
+		if (measure) {
+			_classicTimes[mode] += time;
+		}
+		start = TimeUtils.nanoTime();
+		_retained.createUI(g);
+		time = TimeUtils.nanoTime() - start;
+		if (measure) {
+			_retainedTimes[mode] += time;
+		}
+		if (step == total - 1) {
+			_worldBuilds[mode] += worldBuilds(_retainedNodes);
+		}
+		_frame++;
+		if (_frame == total * NAMES.length) {
+			_finished = true;
+			int y = 20;
+			addLabel("entities " + _classicNodes.size + ", depth " + DEPTH + ", frames " + FRAMES, 20, y);
+			for (int i = 0; i < NAMES.length; i++) {
+				y += 30;
+				addLabel(NAMES[i] + " classic : " + toMillis(_classicTimes[i] / FRAMES) + " ms, retained : "
+						+ toMillis(_retainedTimes[i] / FRAMES) + " ms, world builds : " + _worldBuilds[i], 20, y);
+			}
+		}
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.Stage;
+import loon.action.avg.drama.CommandLink;
+import loon.action.avg.drama.IScriptLog;
+import loon.action.avg.drama.RocScript;
+import loon.action.avg.drama.RocScript.ScriptException;
+import loon.utils.TimeUtils;
+
+/**
+ * RocScript逐词解释执行与编译后执行在循环密集脚本上的耗时对比,并检查两者的结果是否相同.
+ *
+ * 不依赖图形环境,可直接运行main在命令行中测试.
+ */
+public class RocScriptBenchTest extends Stage {
+
+	// 每个脚本的执行次数
+	private final static int RUNS = 20;
+
+	/**
+	 * 不输出任何内容的日志
+	 */
+	private static class QuietLog implements IScriptLog {
+
+		@Override
+		public void err(String mes, Object... o) {
+		}
+
+		@Override
+		public void info(String mes, Object... o) {
+		}
+
+		@Override
+		public void err(Object mes) {
+		}
+
+		@Override
+		public void info(Object mes) {
+		}
+
+		@Override
+		public void line(Object mes) {
+		}
+
+		@Override
+		public void show(boolean flag) {
+		}
+	}
+
+	private static class Result {
+
+		long firstTime;
+
+		long runTime;
+
+		Object value;
+	}
+
+	private static String whileLoop() {
+		CommandLink command = new CommandLink();
+		command.line("sum = 0")
+		.line("i = 0")
+		.line("while i < 20000 begin")
+		.line("sum = sum + i % 7 * 2 - 1")
+		.line("i = i + 1")
+		.line("end")
+		.line("result = sum");
+		return command.getValue();
+	}
+
+	private static String functionLoop() {
+		CommandLink command = new CommandLink();
+		command.line("function mix(a, b) begin")
+		.line("return a * 31 + b % 17")
+		.line("end")
+		.line("acc = 0")
+		.line("for i = 0, i < 5000, i + 1 begin")
+		.line("acc = mix(acc % 1000, i)")
+		.line("end")
+		.line("result = acc");
+		return command.getValue();
+	}
+
+	private static String stringLoop() {
+		CommandLink command = new CommandLink();
+		command.line("text = \"\"")
+		.line("n = 0")
+		.line("while n < 3000 and n >= 0 begin")
+		.line("text = text + \"ab\"")
+		.line("n = n + 1")
+		.line("end")
+		.line("result = n");
+		return command.getValue();
+	}
+
+	private static Object execute(String script, boolean compiled) throws ScriptException {
+		RocScript roc = new RocScript(new QuietLog(), script, false);
+		roc.call(false);
+		roc.setCompiled(compiled);
+		for (; !roc.isCompleted();) {
+			roc.next();
+			if (roc.waitSleep() != -1) {
+				roc.resetWait();
+			}
+		}
+		return roc.getVar("result");
+	}
+
+	private static Result run(String script, boolean compiled) throws ScriptException {
+		Result result = new Result();
+		long start = TimeUtils.nanoTime();
+		result.value = execute(script, compiled);
+		result.firstTime = TimeUtils.nanoTime() - start;
+		start = TimeUtils.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			execute(script, compiled);
+		}
+		result.runTime = (TimeUtils.nanoTime() - start) / RUNS;
+		return result;
+	}
+
+	private static String[] bench() {
+		final String[] names = { "while 20000", "function 5000", "string 3000" };
+		final String[] scripts = { whileLoop(), functionLoop(), stringLoop() };
+		final String[] lines = new String[names.length];
+		for (int s = 0; s < scripts.length; s++) {
+			try {
+				// 预热一次,避免首个模式包含JIT编译时间
+				execute(scripts[s], false);
+				RocScript.clearCompiledCache();
+				Result interpreted = run(scripts[s], false);
+				Result compiled = run(scripts[s], true);
+				lines[s] = names[s] + " interpreted : " + toMillis(interpreted.runTime) + " ms, compiled : "
+						+ toMillis(compiled.runTime) + " ms (first " + toMillis(compiled.firstTime)
+						+ " ms), same : " + String.valueOf(interpreted.value).equals(String.valueOf(compiled.value));
+			} catch (ScriptException ex) {
+				lines[s] = names[s] + " failed : " + ex;
+			}
+		}
+		return lines;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 1));
+	}
+
+	public static void main(String[] args) {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			System.out.println(lines[i]);
+		}
+	}
+
+}
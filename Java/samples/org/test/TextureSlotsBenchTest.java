@@ -0,0 +1,126 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.LSystem;
+import loon.LTexture;
+import loon.LTexture.Format;
+import loon.LTextures;
+import loon.Stage;
+import loon.geom.Affine2f;
+import loon.opengl.BlendMethod;
+import loon.opengl.TrilateralBatch;
+import loon.utils.TimeUtils;
+
+/**
+ * 4张纹理交替绘制1000个四边形(之后切换一次混合模式再绘制100个),对比TrilateralBatch不同纹理槽数量下的绘制次数与提交原因.
+ *
+ * 期望结果:1个纹理槽1001次,2个纹理槽501次,4个纹理槽2次.另外检查锁定提交期间设置的纹理在解锁后是否分配到纹理槽.
+ */
+public class TextureSlotsBenchTest extends Stage {
+
+	// 交替使用的纹理数量
+	private final static int TEXTURES = 4;
+
+	// 每帧绘制的四边形数量
+	private final static int QUADS = 1000;
+
+	// 测试帧数
+	private final static int FRAMES = 100;
+
+	private final static int WHITE = 0xFFFFFFFF;
+
+	private static LTexture[] createTextures(int count) {
+		final LTexture[] textures = new LTexture[count];
+		for (int i = 0; i < count; i++) {
+			textures[i] = LTextures.createTexture(32, 32, Format.LINEAR);
+		}
+		return textures;
+	}
+
+	private static void drawFrame(TrilateralBatch batch, LTexture[] textures, Affine2f xf, float w, float h) {
+		batch.begin(w, h, true);
+		for (int i = 0; i < QUADS; i++) {
+			batch.addQuad(textures[i % TEXTURES], WHITE, xf, i % w, i % h, 32, 32);
+		}
+		batch.setBlendMode(BlendMethod.MODE_ADD);
+		for (int i = 0; i < 100; i++) {
+			batch.addQuad(textures[TEXTURES], WHITE, xf, i, i, 32, 32);
+		}
+		batch.setBlendMode(-1);
+		batch.end();
+	}
+
+	private static String bench(TrilateralBatch batch, LTexture[] textures, int slots, float w, float h) {
+		final Affine2f xf = new Affine2f();
+		batch.setTextureSlots(slots);
+		// 预热一帧
+		drawFrame(batch, textures, xf, w, h);
+		final long start = TimeUtils.nanoTime();
+		for (int i = 0; i < FRAMES; i++) {
+			drawFrame(batch, textures, xf, w, h);
+		}
+		final long time = (TimeUtils.nanoTime() - start) / FRAMES;
+		return "slots " + slots + " (multi " + batch.isMultiTexture() + ") : draw calls "
+				+ batch.getLastDrawCallCount() + ", texture " + batch.getLastFlushCount(TrilateralBatch.FLUSH_TEXTURE)
+				+ ", blend " + batch.getLastFlushCount(TrilateralBatch.FLUSH_BLEND) + ", "
+				+ (time / 1000 / 1000f) + " ms/frame";
+	}
+
+	/**
+	 * 锁定提交后换用新纹理,解锁时新纹理应进入纹理槽,锁定前的顶点仍按原纹理重复绘制
+	 */
+	private static String checkLockSubmit(TrilateralBatch batch, LTexture[] textures, float w, float h) {
+		final Affine2f xf = new Affine2f();
+		batch.setTextureSlots(TEXTURES);
+		batch.begin(w, h, true);
+		for (int i = 0; i < 10; i++) {
+			batch.addQuad(textures[0], WHITE, xf, i, i, 32, 32);
+		}
+		batch.setLockSubmit(true);
+		batch.setTexture(textures[1]);
+		batch.flush();
+		batch.setLockSubmit(false);
+		final boolean result = batch.getCurrentTextureID() == textures[1].getID();
+		batch.end();
+		return "lock submit keeps new texture : " + result;
+	}
+
+	@Override
+	public void create() {
+		final float w = getWidth();
+		final float h = getHeight();
+		final LTexture[] textures = createTextures(TEXTURES + 1);
+		final TrilateralBatch batch = new TrilateralBatch(LSystem.base().graphics().gl);
+		final int[] slots = { 1, 2, 4 };
+		for (int i = 0; i < slots.length; i++) {
+			addLabel(bench(batch, textures, slots[i], w, h), 20, 20 + i * 30);
+		}
+		addLabel(checkLockSubmit(batch, textures, w, h), 20, 20 + slots.length * 30);
+		batch.close();
+		for (int i = 0; i < textures.length; i++) {
+			putRelease(textures[i]);
+		}
+
+		add(MultiScreenTest.getBackButton(this, 2));
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2008 - 2019 The Loon Game Engine Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * @project loon
+ * @author cping
+ * @email：javachenpeng@yahoo.com
+ * @version 0.5
+ */
+package org.test;
+
+import loon.Stage;
+import loon.utils.TArray;
+import loon.utils.TimeUtils;
+import loon.utils.processes.RealtimeProcess;
+import loon.utils.processes.RealtimeProcessManager;
+import loon.utils.timer.Interval;
+import loon.utils.timer.LTimerContext;
+import loon.utils.timer.Scheduler;
+
+/**
+ * 大量长延迟进程(类似buff到期,技能冷却)在逐帧执行与时间轮模式下的耗时对比,并检查两者的执行次数是否相同.
+ *
+ * 不依赖图形环境,可直接运行main在命令行中测试.
+ */
+public class TimingWheelBenchTest extends Stage {
+
+	// 进程数量
+	private final static int COUNT = 20000;
+
+	// 模拟的帧数(每帧16毫秒)
+	private final static int FRAMES = 1200;
+
+	private final static long FRAME_TIME = 16;
+
+	private static class Counter {
+
+		long runs;
+	}
+
+	private static class BuffProcess extends RealtimeProcess {
+
+		private final Counter counter;
+
+		private int left;
+
+		public BuffProcess(long delay, int repeats, Counter c) {
+			super(delay);
+			this.counter = c;
+			this.left = repeats;
+		}
+
+		@Override
+		public void run(LTimerContext time) {
+			counter.runs++;
+			if (--left <= 0) {
+				kill();
+			}
+		}
+	}
+
+	private static class BuffInterval extends Interval {
+
+		private final Counter counter;
+
+		public BuffInterval(long delay, int repeats, Counter c) {
+			super(delay, repeats);
+			this.counter = c;
+		}
+
+		@Override
+		public void loop() {
+			counter.runs++;
+		}
+	}
+
+	private static long delayOf(int i) {
+		// 0.5秒到10秒之间的固定分布
+		return 500 + (i * 7919L) % 9500;
+	}
+
+	private static String processes(boolean wheel, Counter counter) {
+		RealtimeProcessManager manager = RealtimeProcessManager.newProcess();
+		manager.setTimingWheel(wheel);
+		TArray<RealtimeProcess> list = new TArray<RealtimeProcess>(COUNT);
+		for (int i = 0; i < COUNT; i++) {
+			RealtimeProcess p = new BuffProcess(delayOf(i), 1 + i % 3, counter);
+			list.add(p);
+			manager.addProcess(p);
+		}
+		LTimerContext context = new LTimerContext(FRAME_TIME);
+		long start = TimeUtils.nanoTime();
+		for (int f = 0; f < FRAMES; f++) {
+			// 中途取消一部分
+			if (f == FRAMES / 3) {
+				for (int i = 0; i < list.size; i += 5) {
+					list.get(i).kill();
+				}
+			}
+			manager.tick(context);
+		}
+		long time = TimeUtils.nanoTime() - start;
+		return toMillis(time) + " ms, left " + manager.size();
+	}
+
+	private static String scheduler(boolean wheel, Counter counter) {
+		Scheduler scheduler = new Scheduler("bench", 0, true, false);
+		scheduler.setTimingWheel(wheel);
+		for (int i = 0; i < COUNT; i++) {
+			scheduler.add(new BuffInterval(delayOf(i), 2 + i % 3, counter));
+		}
+		LTimerContext context = new LTimerContext(FRAME_TIME);
+		long start = TimeUtils.nanoTime();
+		for (int f = 0; f < FRAMES; f++) {
+			scheduler.update(context);
+		}
+		long time = TimeUtils.nanoTime() - start;
+		return toMillis(time) + " ms, left " + scheduler.size();
+	}
+
+	private static String toMillis(long nanos) {
+		return String.valueOf(nanos / 1000 / 1000f);
+	}
+
+	private static String[] bench() {
+		// 预热一次,避免首个模式包含JIT编译时间
+		processes(false, new Counter());
+		processes(true, new Counter());
+		final String[] lines = new String[2];
+		Counter polled = new Counter();
+		Counter wheel = new Counter();
+		String a = processes(false, polled);
+		String b = processes(true, wheel);
+		lines[0] = "process " + COUNT + " polled : " + a + ", wheel : " + b + ", runs : " + polled.runs + "/"
+				+ wheel.runs;
+		polled = new Counter();
+		wheel = new Counter();
+		a = scheduler(false, polled);
+		b = scheduler(true, wheel);
+		lines[1] = "scheduler " + COUNT + " polled : " + a + ", wheel : " + b + ", runs : " + polled.runs + "/"
+				+ wheel.runs;
+		return lines;
+	}
+
+	@Override
+	public void create() {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			addLabel(lines[i], 20, 20 + i * 30);
+		}
+		add(MultiScreenTest.getBackButton(this, 1));
+	}
+
+	public static void main(String[] args) {
+		String[] lines = bench();
+		for (int i = 0; i < lines.length; i++) {
+			System.out.println(lines[i]);
+		}
+	}
+
+}
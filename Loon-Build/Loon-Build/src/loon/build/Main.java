@@ -1,5 +1,6 @@
 package loon.build;
 
+import loon.build.packer.TexturePackMake;
 import loon.build.project.java.JavaBuild;
 
 public class Main {
@@ -10,6 +11,8 @@ public class Main {
 			if ("javase".equals(mode)) {
 				JavaBuild.load(new String[] { args[1],
 						"clean" });
+			} else if ("texturepack".equals(mode)) {
+				new TexturePackMake().packFolder(args[1], args[2], args.length > 3 ? args[3] : "pack");
 			}
 		}
 		//JavaBuild.load(new String[]{"f:\\ttes","clean"});
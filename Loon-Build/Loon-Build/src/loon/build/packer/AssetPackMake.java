@@ -0,0 +1,304 @@
+package loon.build.packer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import loon.build.tools.FileUtils;
+
+/**
+ * 生成LPK2资源包,用于替代旧的LPK格式.
+ *
+ * <pre>
+ * 全部数值为little-endian:
+ * 文件头(32字节) : int magic('L','P','K','2'), int version, int count, int buckets, long dirOffset, long namesOffset
+ * 散列桶 : int[buckets],每个桶为链表首个条目的序号,空桶为-1
+ * 条目(每个48字节) : int hash, int next, int nameOffset, int nameLength, int flags, int crc,
+ *                   long offset, long storedSize, long size
+ * 文件名 : UTF-8编码的小写路径,以'/'分隔
+ * 数据 : 每个条目的起点按ALIGNMENT字节对齐,flags含FLAG_DEFLATE时为无头deflate压缩数据
+ * </pre>
+ *
+ * 读取时只需要映射整个文件,按文件名散列值找到桶后沿链表比较名称,不需要读出或复制整个资源包.
+ * crc为解压后数据的CRC32,读取时用于校验.
+ *
+ * 打包时先按文件名确定目录大小,之后逐个读取文件并直接写到数据区,只保留条目信息,最后写入文件头与目录.
+ */
+public class AssetPackMake {
+
+	public static final int MAGIC = ('L') | ('P' << 8) | ('K' << 16) | ('2' << 24);
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 32;
+
+	public static final int ENTRY_SIZE = 48;
+
+	public static final int ALIGNMENT = 16;
+
+	public static final int FLAG_DEFLATE = 1;
+
+	// 已经压缩过的格式不再尝试压缩
+	private static final String[] STORED_EXTENSIONS = { "png", "jpg", "jpeg", "gif", "webp", "ogg", "mp3", "m4a",
+			"aac", "zip", "jar", "gz", "lpk" };
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class PackEntry {
+
+		String name;
+
+		byte[] nameBytes;
+
+		int hash;
+
+		int next = -1;
+
+		int nameOffset;
+
+		int flags;
+
+		int crc;
+
+		long offset;
+
+		long storedSize;
+
+		long size;
+	}
+
+	private boolean compress = true;
+
+	// 压缩后小于原大小的该比例才保存压缩数据
+	private float compressRatio = 0.9f;
+
+	public AssetPackMake setCompress(boolean c) {
+		this.compress = c;
+		return this;
+	}
+
+	public boolean isCompress() {
+		return compress;
+	}
+
+	public AssetPackMake setCompressRatio(float r) {
+		this.compressRatio = r;
+		return this;
+	}
+
+	/**
+	 * 规范化资源名称,与读取时使用的规则一致
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static String normalize(String name) {
+		String path = name.trim().replace('\\', '/');
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		if (path.startsWith("./")) {
+			path = path.substring(2);
+		}
+		return path.toLowerCase();
+	}
+
+	/**
+	 * FNV-1a散列
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	public static int hash(byte[] bytes) {
+		int h = 0x811C9DC5;
+		for (int i = 0; i < bytes.length; i++) {
+			h ^= (bytes[i] & 0xFF);
+			h *= 0x01000193;
+		}
+		return h;
+	}
+
+	private static long align(long v) {
+		return (v + ALIGNMENT - 1) & ~((long) ALIGNMENT - 1);
+	}
+
+	private static boolean isStored(String name) {
+		final int idx = name.lastIndexOf('.');
+		if (idx == -1) {
+			return false;
+		}
+		final String ext = name.substring(idx + 1);
+		for (String s : STORED_EXTENSIONS) {
+			if (s.equals(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] deflate(byte[] data) {
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+			final byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				final int n = deflater.deflate(buffer);
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * 把指定目录下的全部文件打包为LPK2资源包,资源名称为相对目录的路径
+	 *
+	 * @param srcFolder
+	 * @param destFile
+	 * @throws IOException
+	 */
+	public void packFolder(String srcFolder, String destFile) throws IOException {
+		final File root = new File(srcFolder).getCanonicalFile();
+		if (!root.isDirectory()) {
+			throw new IOException(srcFolder + " is not a directory !");
+		}
+		final ArrayList<String> files = FileUtils.getAllFiles(root.getPath());
+		Collections.sort(files);
+		final String prefix = root.getPath();
+		final ArrayList<String> names = new ArrayList<String>(files.size());
+		final ArrayList<File> sources = new ArrayList<File>(files.size());
+		for (String path : files) {
+			final File file = new File(path).getCanonicalFile();
+			if (!file.isFile()) {
+				continue;
+			}
+			String name = file.getPath();
+			if (name.startsWith(prefix)) {
+				name = name.substring(prefix.length());
+			}
+			names.add(name);
+			sources.add(file);
+		}
+		pack(names, sources, destFile);
+	}
+
+	/**
+	 * 把指定文件以指定名称打包为LPK2资源包
+	 *
+	 * @param names
+	 * @param files
+	 * @param destFile
+	 * @throws IOException
+	 */
+	public void pack(ArrayList<String> names, ArrayList<File> files, String destFile) throws IOException {
+		if (names.size() != files.size()) {
+			throw new IOException("names and files size mismatch !");
+		}
+		final int count = names.size();
+		int buckets = 16;
+		while (buckets < count * 2) {
+			buckets <<= 1;
+		}
+		final PackEntry[] entries = new PackEntry[count];
+		final int[] heads = new int[buckets];
+		for (int i = 0; i < buckets; i++) {
+			heads[i] = -1;
+		}
+		int nameSize = 0;
+		for (int i = 0; i < count; i++) {
+			final PackEntry entry = new PackEntry();
+			entry.name = normalize(names.get(i));
+			entry.nameBytes = entry.name.getBytes(UTF8);
+			entry.hash = hash(entry.nameBytes);
+			entry.nameOffset = nameSize;
+			nameSize += entry.nameBytes.length;
+			final int bucket = entry.hash & (buckets - 1);
+			for (int j = heads[bucket]; j != -1; j = entries[j].next) {
+				if (entries[j].name.equals(entry.name)) {
+					throw new IOException("duplicate resource name : " + entry.name);
+				}
+			}
+			entry.next = heads[bucket];
+			heads[bucket] = i;
+			entries[i] = entry;
+		}
+		final long namesOffset = HEADER_SIZE + (long) buckets * 4 + (long) count * ENTRY_SIZE;
+		final File dest = new File(destFile);
+		if (dest.exists()) {
+			dest.delete();
+		}
+		FileUtils.makedirs(dest);
+		final RandomAccessFile out = new RandomAccessFile(dest, "rw");
+		try {
+			out.setLength(0);
+			// 数据逐个写入,内存中同时只保留一个文件
+			long offset = align(namesOffset + nameSize);
+			for (int i = 0; i < count; i++) {
+				final PackEntry entry = entries[i];
+				final byte[] raw = Files.readAllBytes(files.get(i).toPath());
+				final CRC32 crc = new CRC32();
+				crc.update(raw);
+				entry.crc = (int) crc.getValue();
+				entry.size = raw.length;
+				byte[] data = raw;
+				if (compress && raw.length > 64 && !isStored(entry.name)) {
+					final byte[] packed = deflate(raw);
+					if (packed.length < raw.length * compressRatio) {
+						data = packed;
+						entry.flags |= FLAG_DEFLATE;
+					}
+				}
+				entry.offset = offset;
+				entry.storedSize = data.length;
+				out.seek(offset);
+				out.write(data);
+				offset = align(offset + data.length);
+			}
+			out.setLength(offset);
+			final ByteBuffer head = ByteBuffer
+					.allocate((int) (namesOffset + nameSize))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			head.putInt(MAGIC);
+			head.putInt(VERSION);
+			head.putInt(count);
+			head.putInt(buckets);
+			head.putLong(HEADER_SIZE);
+			head.putLong(namesOffset);
+			for (int i = 0; i < buckets; i++) {
+				head.putInt(heads[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				final PackEntry entry = entries[i];
+				head.putInt(entry.hash);
+				head.putInt(entry.next);
+				head.putInt(entry.nameOffset);
+				head.putInt(entry.nameBytes.length);
+				head.putInt(entry.flags);
+				head.putInt(entry.crc);
+				head.putLong(entry.offset);
+				head.putLong(entry.storedSize);
+				head.putLong(entry.size);
+			}
+			for (int i = 0; i < count; i++) {
+				head.put(entries[i].nameBytes);
+			}
+			out.seek(0);
+			out.write(head.array());
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,475 @@
+package loon.build.packer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+import loon.build.tools.FileUtils;
+
+/**
+ * 离线合并小图为纹理集,输出与LTexturePack相同的xml格式(每页一个png与一个xml).
+ *
+ * 使用MaxRects装箱,支持裁剪透明边缘(trim),间距(padding),边缘扩展(extrude)与多页输出.
+ * 裁剪后的图片在block中额外记录offsetX,offsetY(相对原图的偏移)与width,height(原图尺寸).
+ * LTexturePack不支持旋转放置的图片,因此这里不会旋转图片.
+ *
+ * <pre>
+ * new TexturePackMake().setMaxSize(2048, 2048).setPadding(2).setExtrude(1).setTrim(true).packFolder("assets/ui", "assets", "ui");
+ * </pre>
+ *
+ * 输出为ui.png,ui.xml,超过一页时依次为ui_1.png,ui_1.xml...
+ */
+public class TexturePackMake {
+
+	private static final String[] IMAGE_EXTENSIONS = { "png", "jpg", "jpeg", "gif", "bmp" };
+
+	private static class Sprite {
+
+		String name;
+
+		BufferedImage image;
+
+		// 裁剪后的内容区域
+		int trimX, trimY, width, height;
+
+		int sourceWidth, sourceHeight;
+
+		// 装箱结果,x,y为内容(不含extrude)在页中的位置
+		int x, y, page = -1;
+	}
+
+	private static class Free {
+
+		int x, y, w, h;
+
+		Free(int x, int y, int w, int h) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+
+		boolean contains(Free o) {
+			return o.x >= x && o.y >= y && o.x + o.w <= x + w && o.y + o.h <= y + h;
+		}
+	}
+
+	private static class Bin {
+
+		final ArrayList<Free> free = new ArrayList<Free>();
+
+		int usedRight, usedBottom;
+
+		int bestX, bestY, bestW, bestH, score1, score2;
+
+		Bin(int w, int h) {
+			free.add(new Free(0, 0, w, h));
+		}
+	}
+
+	private static class Page {
+
+		int width, height;
+
+		final ArrayList<Sprite> sprites = new ArrayList<Sprite>();
+	}
+
+	private int maxWidth = 2048, maxHeight = 2048;
+
+	private int padding = 2;
+
+	private int extrude;
+
+	private boolean trim = true;
+
+	private boolean powerOfTwo = true;
+
+	public TexturePackMake setMaxSize(int w, int h) {
+		this.maxWidth = Math.max(1, w);
+		this.maxHeight = Math.max(1, h);
+		return this;
+	}
+
+	public TexturePackMake setPadding(int p) {
+		this.padding = Math.max(0, p);
+		return this;
+	}
+
+	public int getPadding() {
+		return padding;
+	}
+
+	public TexturePackMake setExtrude(int e) {
+		this.extrude = Math.max(0, e);
+		return this;
+	}
+
+	public int getExtrude() {
+		return extrude;
+	}
+
+	/**
+	 * 是否裁剪图片四周的全透明像素
+	 */
+	public TexturePackMake setTrim(boolean t) {
+		this.trim = t;
+		return this;
+	}
+
+	public boolean isTrim() {
+		return trim;
+	}
+
+
+	public TexturePackMake setPowerOfTwo(boolean p) {
+		this.powerOfTwo = p;
+		return this;
+	}
+
+	public boolean isPowerOfTwo() {
+		return powerOfTwo;
+	}
+
+	/**
+	 * 合并目录(含子目录)中的全部图片,返回输出的页数
+	 */
+	public int packFolder(String srcFolder, String destFolder, String name) throws IOException {
+		File src = new File(srcFolder);
+		if (!src.isDirectory()) {
+			throw new IOException("The folder " + srcFolder + " does not exist !");
+		}
+		ArrayList<Sprite> sprites = new ArrayList<Sprite>();
+		collect(src, "", sprites);
+		if (sprites.isEmpty()) {
+			throw new IOException("Nothing to Pack !");
+		}
+		ArrayList<Page> pages = pack(sprites);
+		File dest = new File(destFolder);
+		if (!dest.exists() && !dest.mkdirs()) {
+			throw new IOException("Unable to create folder " + destFolder + " !");
+		}
+		for (int i = 0; i < pages.size(); i++) {
+			String pageName = i == 0 ? name : name + "_" + i;
+			Page page = pages.get(i);
+			ImageIO.write(draw(page), "png", new File(dest, pageName + ".png"));
+			FileUtils.write(new File(dest, pageName + ".xml"), toXML(page, pageName + ".png"), "UTF-8");
+		}
+		return pages.size();
+	}
+
+	private void collect(File dir, String prefix, ArrayList<Sprite> sprites) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		ArrayList<File> list = new ArrayList<File>(files.length);
+		Collections.addAll(list, files);
+		// 保持输出顺序稳定
+		Collections.sort(list);
+		for (File file : list) {
+			if (file.isDirectory()) {
+				collect(file, prefix + file.getName() + "/", sprites);
+				continue;
+			}
+			String fileName = file.getName();
+			int dot = fileName.lastIndexOf('.');
+			if (dot == -1 || !isImage(fileName.substring(dot + 1))) {
+				continue;
+			}
+			BufferedImage image = ImageIO.read(file);
+			if (image == null) {
+				continue;
+			}
+			Sprite s = new Sprite();
+			s.name = prefix + fileName.substring(0, dot);
+			s.image = image;
+			s.sourceWidth = image.getWidth();
+			s.sourceHeight = image.getHeight();
+			s.width = s.sourceWidth;
+			s.height = s.sourceHeight;
+			if (trim) {
+				trim(s);
+			}
+			sprites.add(s);
+		}
+	}
+
+	private static boolean isImage(String ext) {
+		for (String e : IMAGE_EXTENSIONS) {
+			if (e.equalsIgnoreCase(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void trim(Sprite s) {
+		BufferedImage img = s.image;
+		if (!img.getColorModel().hasAlpha()) {
+			return;
+		}
+		int w = img.getWidth(), h = img.getHeight();
+		int left = w, top = h, right = -1, bottom = -1;
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				if ((img.getRGB(x, y) >>> 24) != 0) {
+					if (x < left) {
+						left = x;
+					}
+					if (x > right) {
+						right = x;
+					}
+					if (y < top) {
+						top = y;
+					}
+					bottom = y;
+				}
+			}
+		}
+		if (right == -1) {
+			// 全透明的图片保留1像素
+			left = top = right = bottom = 0;
+		}
+		s.trimX = left;
+		s.trimY = top;
+		s.width = right - left + 1;
+		s.height = bottom - top + 1;
+	}
+
+	private ArrayList<Page> pack(ArrayList<Sprite> input) throws IOException {
+		ArrayList<Sprite> pending = new ArrayList<Sprite>(input);
+		for (Sprite s : pending) {
+			int w = s.width + extrude * 2 + padding;
+			int h = s.height + extrude * 2 + padding;
+			if (w > maxWidth + padding || h > maxHeight + padding) {
+				throw new IOException("The image " + s.name + " (" + s.width + "x" + s.height
+						+ ") is larger than the max page size " + maxWidth + "x" + maxHeight + " !");
+			}
+		}
+		Collections.sort(pending, new Comparator<Sprite>() {
+
+			@Override
+			public int compare(Sprite a, Sprite b) {
+				int ma = Math.max(a.width, a.height);
+				int mb = Math.max(b.width, b.height);
+				if (ma != mb) {
+					return mb - ma;
+				}
+				return b.width * b.height - a.width * a.height;
+			}
+		});
+		ArrayList<Page> pages = new ArrayList<Page>();
+		while (!pending.isEmpty()) {
+			Page page = packPage(pending, pages.size());
+			if (page.sprites.isEmpty()) {
+				break;
+			}
+			pages.add(page);
+		}
+		return pages;
+	}
+
+	private Page packPage(ArrayList<Sprite> pending, int index) {
+		int maxItemW = 0, maxItemH = 0;
+		long area = 0;
+		for (Sprite s : pending) {
+			int w = s.width + extrude * 2 + padding;
+			int h = s.height + extrude * 2 + padding;
+			maxItemW = Math.max(maxItemW, w);
+			maxItemH = Math.max(maxItemH, h);
+			area += (long) w * h;
+		}
+		final int limitW = maxWidth + padding;
+		final int limitH = maxHeight + padding;
+		int w = Math.min(pot(maxItemW), limitW);
+		int h = Math.min(pot(maxItemH), limitH);
+		ArrayList<Sprite> placed = new ArrayList<Sprite>();
+		Bin bin = null;
+		for (;;) {
+			if ((long) w * h >= area) {
+				bin = tryPack(pending, w, h, false, placed);
+				if (bin != null) {
+					break;
+				}
+			}
+			int lastW = w, lastH = h;
+			if ((w <= h && w < limitW) || h >= limitH) {
+				w = Math.min(w * 2, limitW);
+			} else {
+				h = Math.min(h * 2, limitH);
+			}
+			if (w == lastW && h == lastH) {
+				break;
+			}
+		}
+		if (bin == null) {
+			bin = tryPack(pending, limitW, limitH, true, placed);
+		}
+		Page page = new Page();
+		for (Sprite s : placed) {
+			s.page = index;
+			page.sprites.add(s);
+		}
+		pending.removeAll(placed);
+		page.width = bin.usedRight - padding;
+		page.height = bin.usedBottom - padding;
+		if (powerOfTwo) {
+			page.width = pot(page.width);
+			page.height = pot(page.height);
+		}
+		return page;
+	}
+
+	private Bin tryPack(ArrayList<Sprite> pending, int w, int h, boolean partial, ArrayList<Sprite> placed) {
+		Bin bin = new Bin(w, h);
+		placed.clear();
+		for (Sprite s : pending) {
+			int rw = s.width + extrude * 2 + padding;
+			int rh = s.height + extrude * 2 + padding;
+			if (!find(bin, rw, rh)) {
+				if (partial) {
+					continue;
+				}
+				return null;
+			}
+			place(bin);
+			s.x = bin.bestX + extrude;
+			s.y = bin.bestY + extrude;
+			placed.add(s);
+		}
+		return bin;
+	}
+
+	// 短边剩余最少优先(BestShortSideFit)
+	private boolean find(Bin bin, int w, int h) {
+		bin.score1 = Integer.MAX_VALUE;
+		bin.score2 = Integer.MAX_VALUE;
+		boolean found = false;
+		for (Free f : bin.free) {
+			if (f.w >= w && f.h >= h) {
+				found |= score(bin, f, w, h);
+			}
+		}
+		return found;
+	}
+
+	private static boolean score(Bin bin, Free f, int w, int h) {
+		int lw = f.w - w;
+		int lh = f.h - h;
+		int s1 = Math.min(lw, lh);
+		int s2 = Math.max(lw, lh);
+		if (s1 < bin.score1 || (s1 == bin.score1 && s2 < bin.score2)) {
+			bin.score1 = s1;
+			bin.score2 = s2;
+			bin.bestX = f.x;
+			bin.bestY = f.y;
+			bin.bestW = w;
+			bin.bestH = h;
+			return true;
+		}
+		return false;
+	}
+
+	private static void place(Bin bin) {
+		Free node = new Free(bin.bestX, bin.bestY, bin.bestW, bin.bestH);
+		ArrayList<Free> split = new ArrayList<Free>();
+		for (int i = bin.free.size() - 1; i > -1; i--) {
+			Free f = bin.free.get(i);
+			if (node.x >= f.x + f.w || node.x + node.w <= f.x || node.y >= f.y + f.h || node.y + node.h <= f.y) {
+				continue;
+			}
+			if (node.x > f.x) {
+				split.add(new Free(f.x, f.y, node.x - f.x, f.h));
+			}
+			if (node.x + node.w < f.x + f.w) {
+				split.add(new Free(node.x + node.w, f.y, f.x + f.w - node.x - node.w, f.h));
+			}
+			if (node.y > f.y) {
+				split.add(new Free(f.x, f.y, f.w, node.y - f.y));
+			}
+			if (node.y + node.h < f.y + f.h) {
+				split.add(new Free(f.x, node.y + node.h, f.w, f.y + f.h - node.y - node.h));
+			}
+			bin.free.remove(i);
+		}
+		for (int i = 0; i < split.size(); i++) {
+			Free s = split.get(i);
+			boolean contained = false;
+			for (int j = 0; j < split.size() && !contained; j++) {
+				if (i != j) {
+					Free o = split.get(j);
+					contained = o.contains(s) && (!s.contains(o) || j < i);
+				}
+			}
+			for (int j = 0; j < bin.free.size() && !contained; j++) {
+				contained = bin.free.get(j).contains(s);
+			}
+			if (!contained) {
+				for (int j = bin.free.size() - 1; j > -1; j--) {
+					if (s.contains(bin.free.get(j))) {
+						bin.free.remove(j);
+					}
+				}
+				bin.free.add(s);
+			}
+		}
+		bin.usedRight = Math.max(bin.usedRight, node.x + node.w);
+		bin.usedBottom = Math.max(bin.usedBottom, node.y + node.h);
+	}
+
+	private static int pot(int v) {
+		int power = 1;
+		while (power < v) {
+			power <<= 1;
+		}
+		return power;
+	}
+
+	private BufferedImage draw(Page page) {
+		BufferedImage out = new BufferedImage(page.width, page.height, BufferedImage.TYPE_INT_ARGB);
+		for (Sprite s : page.sprites) {
+			int pw = s.width, ph = s.height;
+			// 逐像素复制,extrude范围内取最近的边缘像素
+			for (int y = -extrude; y < ph + extrude; y++) {
+				int dy = s.y + y;
+				if (dy < 0 || dy >= page.height) {
+					continue;
+				}
+				int cy = Math.min(Math.max(y, 0), ph - 1);
+				for (int x = -extrude; x < pw + extrude; x++) {
+					int dx = s.x + x;
+					if (dx < 0 || dx >= page.width) {
+						continue;
+					}
+					int cx = Math.min(Math.max(x, 0), pw - 1);
+					out.setRGB(dx, dy, s.image.getRGB(s.trimX + cx, s.trimY + cy));
+				}
+			}
+		}
+		return out;
+	}
+
+	private static String toXML(Page page, String fileName) {
+		StringBuilder sbr = new StringBuilder(128 + page.sprites.size() * 128);
+		sbr.append("<?xml version=\"1.0\" standalone=\"yes\" ?>\n");
+		sbr.append("<pack file=\"" + fileName + "\">\n");
+		for (int i = 0; i < page.sprites.size(); i++) {
+			Sprite s = page.sprites.get(i);
+			sbr.append("<block id=\"" + i + "\" name=\"" + s.name + "\" left=\"" + s.x + "\" top=\"" + s.y
+					+ "\" right=\"" + (s.x + s.width) + "\" bottom=\"" + (s.y + s.height) + "\"");
+			if (s.trimX != 0 || s.trimY != 0 || s.width != s.sourceWidth || s.height != s.sourceHeight) {
+				sbr.append(" offsetX=\"" + s.trimX + "\" offsetY=\"" + s.trimY + "\" width=\"" + s.sourceWidth
+						+ "\" height=\"" + s.sourceHeight + "\"");
+			}
+			sbr.append("/>\n");
+		}
+		sbr.append("</pack>");
+		return sbr.toString();
+	}
+
+}
@@ -82,6 +82,24 @@ public class ZipFileMake {
 		zip.close();
 	}
 
+	/**
+	 * 把指定目录打包为可以内存映射读取的LPK2资源包
+	 */
+	public void packFolder(String srcFolder, String destPackFile) throws Exception {
+		packFolder(srcFolder, destPackFile, true);
+	}
+
+	public void packFolder(String srcFolder, String destPackFile, boolean compress) throws Exception {
+		new AssetPackMake().setCompress(compress).packFolder(srcFolder, destPackFile);
+	}
+
+	/**
+	 * 把指定目录中的图片合并为LTexturePack可读取的纹理集
+	 */
+	public int packTextures(String srcFolder, String destFolder, String name) throws Exception {
+		return new TexturePackMake().packFolder(srcFolder, destFolder, name);
+	}
+
 	static private void addFileToZip(String path, String srcFile, ZipOutputStream zip) throws Exception {
 		File folder = new File(srcFile);
 		if (folder.isDirectory()) {